@@ -1,32 +0,0 @@
-/* 
- * This file is part of the RootShell Project: https://github.com/Stericson/RootShell
- *  
- * Copyright (c) 2014 Stephen Erickson, Chris Ravenscroft
- *  
- * This code is dual-licensed under the terms of the Apache License Version 2.0 and
- * the terms of the General Public License (GPL) Version 2.
- * You may use this code according to either of these licenses as is most appropriate
- * for your project on a case-by-case basis.
- * 
- * The terms of each license can be found in the root directory of this project's repository as well as at:
- * 
- * * http://www.apache.org/licenses/LICENSE-2.0
- * * http://www.gnu.org/licenses/gpl-2.0.txt
- *  
- * Unless required by applicable law or agreed to in writing, software
- * distributed under these Licenses is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See each License for the specific language governing permissions and
- * limitations under that License.
- */
-
-package com.stericson.rootshell.exceptions;
-
-public class RootDeniedException extends Exception {
-
-    private static final long serialVersionUID = -8713947214162841310L;
-
-    public RootDeniedException(String error) {
-        super(error);
-    }
-}
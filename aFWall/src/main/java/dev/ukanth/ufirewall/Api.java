@@ -50,7 +50,6 @@ import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
@@ -58,20 +57,20 @@ import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.util.Base64;
 import android.util.DisplayMetrics;
+import android.util.JsonWriter;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.widget.Toast;
 
 import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.raizlabs.android.dbflow.sql.language.Delete;
 import com.raizlabs.android.dbflow.sql.language.SQLite;
-import com.stericson.roottools.RootTools;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -92,17 +91,16 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 import javax.crypto.Cipher;
@@ -111,16 +109,25 @@ import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.DESKeySpec;
 
 import dev.ukanth.ufirewall.MainActivity.GetAppList;
+import dev.ukanth.ufirewall.customrules.AddressRules;
+import dev.ukanth.ufirewall.customrules.CustomRules;
 import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.log.LogData;
 import dev.ukanth.ufirewall.log.LogData_Table;
+import dev.ukanth.ufirewall.log.LogPolicy;
+import dev.ukanth.ufirewall.profiles.ProfileChains;
 import dev.ukanth.ufirewall.profiles.ProfileData;
 import dev.ukanth.ufirewall.profiles.ProfileHelper;
+import dev.ukanth.ufirewall.schedule.Scheduler;
 import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.service.RootSessions;
+import dev.ukanth.ufirewall.traffic.TrafficSampler;
+import dev.ukanth.ufirewall.util.BootRules;
 import dev.ukanth.ufirewall.util.G;
-import dev.ukanth.ufirewall.util.JsonHelper;
-import eu.chainfire.libsuperuser.Shell;
-import eu.chainfire.libsuperuser.Shell.SU;
+import dev.ukanth.ufirewall.util.Metrics;
+import dev.ukanth.ufirewall.util.RuleState;
+import dev.ukanth.ufirewall.util.RulesFingerprint;
+import dev.ukanth.ufirewall.util.UserUids;
 
 import static dev.ukanth.ufirewall.util.G.ctx;
 
@@ -159,11 +166,11 @@ public final class Api {
     private static String algorithm = "DES";
     private static int base64Mode = Base64.DEFAULT;
 
-    private static final int WIFI_EXPORT = 0;
-    private static final int DATA_EXPORT = 1;
-    private static final int ROAM_EXPORT = 2;
-    private static final int VPN_EXPORT = 3;
-    private static final int LAN_EXPORT = 4;
+    static final int WIFI_EXPORT = 0;
+    static final int DATA_EXPORT = 1;
+    static final int ROAM_EXPORT = 2;
+    static final int VPN_EXPORT = 3;
+    static final int LAN_EXPORT = 4;
 
     // Preferences
     public static String PREFS_NAME = "AFWallPrefs";
@@ -210,7 +217,7 @@ public final class Api {
 
     private static final String dynChains[] = {"-3g-postcustom", "-3g-fork", "-wifi-postcustom", "-wifi-fork"};
 
-    private static final String staticChains[] = {"", "-3g", "-wifi", "-reject", "-vpn", "-3g-tether", "-3g-home", "-3g-roam", "-wifi-tether", "-wifi-wan", "-wifi-lan"};
+    private static final String staticChains[] = {"", "-3g", "-wifi", "-reject", "-vpn", "-3g-tether", "-3g-home", "-3g-roam", "-wifi-tether", "-wifi-wan", "-wifi-lan", "-hosts"};
 
     // Cached applications
     public static List<PackageInfoData> applications = null;
@@ -221,6 +228,15 @@ public final class Api {
     public static String bbPath = null;
     private static Map<String, Integer> specialApps = null;
 
+    /* device specific preferences, never restored from a backup */
+    static final List<String> IMPORT_IGNORED_PREFS = Arrays.asList("appVersion", "fixLeak", "enableLogService",
+            "sort", "storedProfile", "hasRoot", "logChains", "kingDetect", "fingerprintEnabled");
+
+    private static final Metrics.Histogram BUILD_TIME = Metrics.histogram("rules.build");
+    private static final Metrics.Histogram CHANGES_TIME = Metrics.histogram("rules.changes");
+    /* above this, rebuilding the chains is cheaper than one iptables call per change */
+    private static final int MAX_RULE_CHANGES = 32;
+
     public static void setRulesUpToDate(boolean rulesUpToDate) {
         Api.rulesUpToDate = rulesUpToDate;
     }
@@ -297,6 +313,19 @@ public final class Api {
     }
 
     public static void setBinaryPath(Context ctx, boolean setv6) {
+        Api.ipPath = getBinaryPath(ctx, setv6);
+        Api.bbPath = getBusyBoxPath(ctx, true);
+    }
+
+    /**
+     * Resolve the iptables/ip6tables command without touching the shared ipPath, so both
+     * families can be compiled at the same time.
+     *
+     * @param ctx
+     * @param setv6
+     * @return
+     */
+    public static String getBinaryPath(Context ctx, boolean setv6) {
         boolean builtin = true;
         String pref = G.ip_path();
 
@@ -308,14 +337,28 @@ public final class Api {
         if (builtin) {
             dir = ctx.getDir("bin", 0).getAbsolutePath() + "/";
         }
-        Api.ipPath = dir + (setv6 ? "ip6tables" : "iptables");
+        String path = dir + (setv6 ? "ip6tables" : "iptables");
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
             dir = ctx.getDir("bin", 0).getAbsolutePath() + "/";
-            Api.ipPath = dir + "run_pie " + dir + (setv6 ? "ip6tables" : "iptables");
+            path = dir + "run_pie " + dir + (setv6 ? "ip6tables" : "iptables");
         }
+        if (builtin || waitsForLock()) {
+            // both families run at once and share the xtables lock, wait for it instead of exiting with 4
+            path += " -w";
+        }
+        return path;
+    }
 
-        Api.bbPath = getBusyBoxPath(ctx, true);
+    /**
+     * The built-in binaries are 1.4.20 and know -w, so does the system iptables since Lollipop.
+     * On KitKat the system iptables would fail on the lock held by the IPv6 shell.
+     *
+     * @return true if the system iptables waits for the xtables lock
+     */
+    public static boolean waitsForLock() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                || Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
     }
 
 
@@ -399,8 +442,8 @@ public final class Api {
         }
     }
 
-    private static void addRulesForUidlist(List<String> cmds, List<Integer> uids, String chain, boolean whitelist) {
-        String action = whitelist ? " -j RETURN" : " -j " + AFWALL_CHAIN_NAME + "-reject";
+    private static void addRulesForUidlist(List<String> cmds, List<Integer> uids, String root, String chain, boolean whitelist) {
+        String action = whitelist ? " -j RETURN" : " -j " + root + "-reject";
 
         if (uids.indexOf(SPECIAL_UID_ANY) >= 0) {
             if (!whitelist) {
@@ -408,10 +451,8 @@ public final class Api {
             }
             // FIXME: in whitelist mode this blocks everything
         } else {
-            for (Integer uid : uids) {
-                if (uid != null && uid >= 0) {
-                    cmds.add("-A " + chain + " -m owner --uid-owner " + uid + action);
-                }
+            for (String range : UserUids.toRanges(uids)) {
+                cmds.add("-A " + chain + " -m owner --uid-owner " + range + action);
             }
 
 			/*// netd runs as root, and on Android 4.3+ it handles all DNS queries
@@ -426,16 +467,16 @@ public final class Api {
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
                         addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j RETURN");
                     } else {
-                        addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j " + AFWALL_CHAIN_NAME + "-reject");
+                        addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j " + root + "-reject");
                     }
                 } else if (pref.equals("disable")) {
-                    addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j " + AFWALL_CHAIN_NAME + "-reject");
+                    addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j " + root + "-reject");
                 } else {
                     addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j RETURN");
                 }
             } else {
                 if (pref.equals("disable")) {
-                    addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j " + AFWALL_CHAIN_NAME + "-reject");
+                    addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j " + root + "-reject");
                 } else if (pref.equals("enable")) {
                     addRuleForUsers(cmds, new String[]{"root"}, "-A " + chain + " -p udp --dport 53", " -j RETURN");
                 }
@@ -450,42 +491,31 @@ public final class Api {
             if (whitelist) {
                 if (kernel_checked) {
                     // reject any other UIDs, but allow the kernel through
-                    cmds.add("-A " + chain + " -m owner --uid-owner 0:999999999 -j " + AFWALL_CHAIN_NAME + "-reject");
+                    cmds.add("-A " + chain + " -m owner --uid-owner 0:999999999 -j " + root + "-reject");
                 } else {
                     // kernel is blocked so reject everything
-                    cmds.add("-A " + chain + " -j " + AFWALL_CHAIN_NAME + "-reject");
+                    cmds.add("-A " + chain + " -j " + root + "-reject");
                 }
             } else {
                 if (kernel_checked) {
                     // allow any other UIDs, but block the kernel
                     cmds.add("-A " + chain + " -m owner --uid-owner 0:999999999 -j RETURN");
-                    cmds.add("-A " + chain + " -j " + AFWALL_CHAIN_NAME + "-reject");
+                    cmds.add("-A " + chain + " -j " + root + "-reject");
                 }
             }
         }
     }
 
-    private static void addRejectRules(List<String> cmds) {
+    private static void addRejectRules(List<String> cmds, String root) {
         // set up reject chain to log or not log
         // this can be changed dynamically through the Firewall Logs activity
-
-        if (G.enableLogService() && G.logTarget() != null) {
-            if (G.logTarget().equals("LOG")) {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-reject" + " -m limit --limit 1000/min -j LOG --log-prefix \"{AFL}\" --log-level 4 --log-uid");
-            } else if (G.logTarget().equals("NFLOG")) {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-reject" + " -j NFLOG --nflog-prefix \"{AFL}\" --nflog-group 40");
-            }
-        }
-        cmds.add("-A " + AFWALL_CHAIN_NAME + "-reject" + " -j REJECT");
+        LogPolicy.addLogRules(cmds, root + "-reject", "REJECT");
+        cmds.add("-A " + root + "-reject" + " -j REJECT");
     }
 
-    private static void addCustomRules(String prefName, List<String> cmds) {
-        String[] customRules = G.pPrefs.getString(prefName, "").split("[\\r\\n]+");
-        for (String s : customRules) {
-            if (s.matches(".*\\S.*")) {
-                cmds.add("#LITERAL# " + s);
-            }
-        }
+    private static void addCustomRules(String prefName, List<String> cmds, boolean ipv6) {
+        // compiled once per edit, lines that failed validation are left out
+        cmds.addAll(CustomRules.get(prefName, G.pPrefs.getString(prefName, "")).get(ipv6));
     }
 
     /**
@@ -497,48 +527,47 @@ public final class Api {
      * @param ctx  application context
      * @param cmds command list
      */
-    private static void addInterfaceRouting(Context ctx, List<String> cmds, boolean ipv6) {
+    private static void addInterfaceRouting(Context ctx, List<String> cmds, boolean ipv6, String root, boolean whitelist) {
         try {
             final InterfaceDetails cfg = InterfaceTracker.getCurrentCfg(ctx);
-            final boolean whitelist = G.pPrefs.getString(PREF_MODE, MODE_WHITELIST).equals(MODE_WHITELIST);
             for (String s : dynChains) {
-                cmds.add("-F " + AFWALL_CHAIN_NAME + s);
+                cmds.add("-F " + root + s);
             }
 
             if (whitelist) {
                 // always allow the DHCP client full wifi access
-                addRuleForUsers(cmds, new String[]{"dhcp", "wifi"}, "-A " + AFWALL_CHAIN_NAME + "-wifi-postcustom", "-j RETURN");
+                addRuleForUsers(cmds, new String[]{"dhcp", "wifi"}, "-A " + root + "-wifi-postcustom", "-j RETURN");
             }
 
             if (cfg.isTethered) {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-wifi-postcustom -j " + AFWALL_CHAIN_NAME + "-wifi-tether");
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-3g-postcustom -j " + AFWALL_CHAIN_NAME + "-3g-tether");
+                cmds.add("-A " + root + "-wifi-postcustom -j " + root + "-wifi-tether");
+                cmds.add("-A " + root + "-3g-postcustom -j " + root + "-3g-tether");
             } else {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-wifi-postcustom -j " + AFWALL_CHAIN_NAME + "-wifi-fork");
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-3g-postcustom -j " + AFWALL_CHAIN_NAME + "-3g-fork");
+                cmds.add("-A " + root + "-wifi-postcustom -j " + root + "-wifi-fork");
+                cmds.add("-A " + root + "-3g-postcustom -j " + root + "-3g-fork");
             }
 
             if (G.enableLAN() && !cfg.isTethered) {
                 if (ipv6 && !cfg.lanMaskV6.equals("")) {
-                    cmds.add("-A afwall-wifi-fork -d " + cfg.lanMaskV6 + " -j afwall-wifi-lan");
-                    cmds.add("-A afwall-wifi-fork '!' -d " + cfg.lanMaskV6 + " -j afwall-wifi-wan");
+                    cmds.add("-A " + root + "-wifi-fork -d " + cfg.lanMaskV6 + " -j " + root + "-wifi-lan");
+                    cmds.add("-A " + root + "-wifi-fork '!' -d " + cfg.lanMaskV6 + " -j " + root + "-wifi-wan");
                 } else if (!ipv6 && !cfg.lanMaskV4.equals("")) {
-                    cmds.add("-A afwall-wifi-fork -d " + cfg.lanMaskV4 + " -j afwall-wifi-lan");
-                    cmds.add("-A afwall-wifi-fork '!' -d " + cfg.lanMaskV4 + " -j afwall-wifi-wan");
+                    cmds.add("-A " + root + "-wifi-fork -d " + cfg.lanMaskV4 + " -j " + root + "-wifi-lan");
+                    cmds.add("-A " + root + "-wifi-fork '!' -d " + cfg.lanMaskV4 + " -j " + root + "-wifi-wan");
                 } else {
                     Log.i(TAG, "No ipaddress found for LAN");
                     // lets find one more time
                     //atleast allow internet - don't block completely
-                    cmds.add("-A " + AFWALL_CHAIN_NAME + "-wifi-fork -j " + AFWALL_CHAIN_NAME + "-wifi-wan");
+                    cmds.add("-A " + root + "-wifi-fork -j " + root + "-wifi-wan");
                 }
             } else {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-wifi-fork -j " + AFWALL_CHAIN_NAME + "-wifi-wan");
+                cmds.add("-A " + root + "-wifi-fork -j " + root + "-wifi-wan");
             }
 
             if (G.enableRoam() && cfg.isRoaming) {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-3g-fork -j " + AFWALL_CHAIN_NAME + "-3g-roam");
+                cmds.add("-A " + root + "-3g-fork -j " + root + "-3g-roam");
             } else {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-3g-fork -j " + AFWALL_CHAIN_NAME + "-3g-home");
+                cmds.add("-A " + root + "-3g-fork -j " + root + "-3g-home");
             }
         } catch (Exception e) {
             Log.i(TAG, "Exception while applying shortRules " + e.getMessage());
@@ -629,7 +658,16 @@ public final class Api {
     private static void applyShortRules(Context ctx, List<String> cmds, boolean ipv6) {
         Log.i(TAG, "Setting OUTPUT chain to DROP");
         cmds.add("-P OUTPUT DROP");
-        addInterfaceRouting(ctx, cmds, ipv6);
+        List<String> built = ProfileChains.getBuilt(ctx);
+        if (built.isEmpty()) {
+            addInterfaceRouting(ctx, cmds, ipv6, AFWALL_CHAIN_NAME, isWhitelist(G.pPrefs));
+        } else {
+            // every pre-built profile tree has its own interface routing
+            for (int i = 0; i < built.size(); i++) {
+                addInterfaceRouting(ctx, cmds, ipv6, ProfileChains.rootChain(AFWALL_CHAIN_NAME, i),
+                        isWhitelist(ctx.getSharedPreferences(built.get(i), Context.MODE_PRIVATE)));
+            }
+        }
         Log.i(TAG, "Setting OUTPUT chain to ACCEPT");
         cmds.add("-P OUTPUT ACCEPT");
     }
@@ -637,11 +675,12 @@ public final class Api {
     /**
      * Purge and re-add all rules (internal implementation).
      *
-     * @param ctx        application context (mandatory)
-     * @param showErrors indicates if errors should be alerted
+     * @param ctx          application context (mandatory)
+     * @param profileTrees profiles to pre-build chains for, null for the classic single tree
+     * @param showErrors   indicates if errors should be alerted
      */
-    private static boolean applyIptablesRulesImpl(final Context ctx, RuleDataSet ruleDataSet, final boolean showErrors,
-                                                  List<String> out, boolean ipv6) {
+    private static boolean applyIptablesRulesImpl(final Context ctx, RuleDataSet ruleDataSet, List<String> profileTrees,
+                                                  final boolean showErrors, List<String> out, boolean ipv6) {
         if (ctx == null) {
             return false;
         }
@@ -653,7 +692,6 @@ public final class Api {
                 AFWALL_CHAIN_NAME = "afwall" + G.getMultiUserId();
             }
         }
-        final boolean whitelist = G.pPrefs.getString(PREF_MODE, MODE_WHITELIST).equals(MODE_WHITELIST);
 
         List<String> cmds = new ArrayList<String>();
 
@@ -665,106 +703,154 @@ public final class Api {
             Log.i(TAG, "Setting OUTPUT to Drop");
             cmds.add("-P OUTPUT DROP");
 
-            for (String s : staticChains) {
-                cmds.add("#NOCHK# -N " + AFWALL_CHAIN_NAME + s);
-                cmds.add("-F " + AFWALL_CHAIN_NAME + s);
-            }
-            for (String s : dynChains) {
-                cmds.add("#NOCHK# -N " + AFWALL_CHAIN_NAME + s);
-                // addInterfaceRouting() will flush these chains, but not create them
+            if (profileTrees != null) {
+                addProfileChains(ctx, ruleDataSet, profileTrees, cmds, ipv6);
+            } else {
+                addRuleChains(ctx, ruleDataSet, G.pPrefs, AFWALL_CHAIN_NAME, true, cmds, ipv6);
             }
 
-            cmds.add("#NOCHK# -D OUTPUT -j " + AFWALL_CHAIN_NAME);
-            cmds.add("-I OUTPUT 1 -j " + AFWALL_CHAIN_NAME);
+            Log.i(TAG, "Setting OUTPUT to Accept State");
+            cmds.add("-P OUTPUT ACCEPT");
 
-            // custom rules in afwall-{3g,wifi,reject} supersede everything else
-            addCustomRules(Api.PREF_CUSTOMSCRIPT, cmds);
-            cmds.add("-A " + AFWALL_CHAIN_NAME + "-3g -j " + AFWALL_CHAIN_NAME + "-3g-postcustom");
-            cmds.add("-A " + AFWALL_CHAIN_NAME + "-wifi -j " + AFWALL_CHAIN_NAME + "-wifi-postcustom");
-            addRejectRules(cmds);
+        } catch (Exception e) {
+            Log.e(e.getClass().getName(), e.getMessage(), e);
+        }
 
-            if (G.enableInbound()) {
-                // we don't have any rules in the INPUT chain prohibiting inbound traffic, but
-                // local processes can't reply to half-open connections without this rule
-                cmds.add("-A afwall -m state --state ESTABLISHED -j RETURN");
-            }
+        iptablesCommands(cmds, out, ipv6, getBinaryPath(ctx, ipv6));
+        return true;
+    }
 
-            addInterfaceRouting(ctx, cmds, ipv6);
+    private static boolean isWhitelist(SharedPreferences prefs) {
+        return prefs.getString(PREF_MODE, MODE_WHITELIST).equals(MODE_WHITELIST);
+    }
 
-            // send wifi, 3G, VPN packets to the appropriate dynamic chain based on interface
-            if (G.enableVPN()) {
-                // if !enableVPN then we ignore those interfaces (pass all traffic)
-                for (final String itf : ITFS_VPN) {
-                    cmds.add("-A " + AFWALL_CHAIN_NAME + " -o " + itf + " -j " + AFWALL_CHAIN_NAME + "-vpn");
-                }
-                // KitKat policy based routing - see:
-                // http://forum.xda-developers.com/showthread.php?p=48703545
-                // This covers mark range 0x3c - 0x47.  The official range is believed to be
-                // 0x3c - 0x45 but this is close enough.
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                    cmds.add("-A " + AFWALL_CHAIN_NAME + " -m mark --mark 0x3c/0xfffc -g " + AFWALL_CHAIN_NAME + "-vpn");
-                    cmds.add("-A " + AFWALL_CHAIN_NAME + " -m mark --mark 0x40/0xfff8 -g " + AFWALL_CHAIN_NAME + "-vpn");
-                }
-            }
-            for (final String itf : ITFS_WIFI) {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + " -o " + itf + " -j " + AFWALL_CHAIN_NAME + "-wifi");
-            }
+    /**
+     * Build one chain tree per profile and make the base chain jump into the tree of the
+     * active profile.  switchProfile() later only replaces that jump.
+     */
+    private static void addProfileChains(Context ctx, RuleDataSet ruleDataSet, List<String> profiles,
+                                         List<String> cmds, boolean ipv6) {
+        int active = Math.max(0, profiles.indexOf(PREFS_NAME));
+        for (int i = 0; i < profiles.size(); i++) {
+            SharedPreferences prefs = ctx.getSharedPreferences(profiles.get(i), Context.MODE_PRIVATE);
+            RuleDataSet dataSet = i == active ? ruleDataSet : ProfileResolver.resolve(ctx, profiles.get(i));
+            addRuleChains(ctx, dataSet, prefs, ProfileChains.rootChain(AFWALL_CHAIN_NAME, i), false, cmds, ipv6);
+        }
+        cmds.add("#NOCHK# -N " + AFWALL_CHAIN_NAME);
+        cmds.add("-F " + AFWALL_CHAIN_NAME);
+        cmds.add("-A " + AFWALL_CHAIN_NAME + " -j " + ProfileChains.rootChain(AFWALL_CHAIN_NAME, active));
+        cmds.add("#NOCHK# -D OUTPUT -j " + AFWALL_CHAIN_NAME);
+        cmds.add("-I OUTPUT 1 -j " + AFWALL_CHAIN_NAME);
+    }
 
-            for (final String itf : ITFS_3G) {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + " -o " + itf + " -j " + AFWALL_CHAIN_NAME + "-3g");
-            }
+    /**
+     * Create, flush and fill a complete chain tree below root.
+     *
+     * @param prefs      preferences of the profile the tree belongs to (mode)
+     * @param root       name of the top chain of the tree
+     * @param hookOutput jump to root from OUTPUT and add the custom script (classic layout)
+     */
+    private static void addRuleChains(final Context ctx, RuleDataSet ruleDataSet, SharedPreferences prefs,
+                                      String root, boolean hookOutput, List<String> cmds, boolean ipv6) {
+        final boolean whitelist = isWhitelist(prefs);
 
-            final boolean any_wifi = ruleDataSet.wifiList.indexOf(SPECIAL_UID_ANY) >= 0;
-            final boolean any_3g = ruleDataSet.dataList.indexOf(SPECIAL_UID_ANY) >= 0;
+        for (String s : staticChains) {
+            cmds.add("#NOCHK# -N " + root + s);
+            cmds.add("-F " + root + s);
+        }
+        for (String s : dynChains) {
+            cmds.add("#NOCHK# -N " + root + s);
+            // addInterfaceRouting() will flush these chains, but not create them
+        }
 
-            // special rules to allow 3G<->wifi tethering
-            // note that this can only blacklist DNS/DHCP services, not all tethered traffic
-            if (((!whitelist && (any_wifi || any_3g)) ||
-                    (ruleDataSet.dataList.indexOf(SPECIAL_UID_TETHER) >= 0) || (ruleDataSet.wifiList.indexOf(SPECIAL_UID_TETHER) >= 0))) {
+        if (hookOutput) {
+            cmds.add("#NOCHK# -D OUTPUT -j " + root);
+            cmds.add("-I OUTPUT 1 -j " + root);
 
-                String users[] = {"root", "nobody"};
-                String action = " -j " + (whitelist ? "RETURN" : AFWALL_CHAIN_NAME + "-reject");
+            // custom rules in afwall-{3g,wifi,reject} supersede everything else
+            addCustomRules(Api.PREF_CUSTOMSCRIPT, cmds, ipv6);
+        }
+        cmds.add("-A " + root + "-3g -j " + root + "-3g-postcustom");
+        cmds.add("-A " + root + "-wifi -j " + root + "-wifi-postcustom");
+        addRejectRules(cmds, root);
 
-                // DHCP replies to client
-                addRuleForUsers(cmds, users, "-A " + AFWALL_CHAIN_NAME + "-wifi-tether", "-p udp --sport=67 --dport=68" + action);
+        if (G.enableInbound()) {
+            // we don't have any rules in the INPUT chain prohibiting inbound traffic, but
+            // local processes can't reply to half-open connections without this rule
+            cmds.add("-A " + root + " -m state --state ESTABLISHED -j RETURN");
+        }
 
-                // DNS replies to client
-                addRuleForUsers(cmds, users, "-A " + AFWALL_CHAIN_NAME + "-wifi-tether", "-p udp --sport=53" + action);
-                addRuleForUsers(cmds, users, "-A " + AFWALL_CHAIN_NAME + "-wifi-tether", "-p tcp --sport=53" + action);
+        // allowed addresses skip the per-app rules, denied ones are rejected for every interface
+        if (AddressRules.addRules(ctx, cmds, root, ipv6)) {
+            cmds.add("-A " + root + " -j " + root + "-hosts");
+        }
+
+        addInterfaceRouting(ctx, cmds, ipv6, root, whitelist);
 
-                // DNS requests to upstream servers
-                addRuleForUsers(cmds, users, "-A " + AFWALL_CHAIN_NAME + "-3g-tether", "-p udp --dport=53" + action);
-                addRuleForUsers(cmds, users, "-A " + AFWALL_CHAIN_NAME + "-3g-tether", "-p tcp --dport=53" + action);
+        // send wifi, 3G, VPN packets to the appropriate dynamic chain based on interface
+        if (G.enableVPN()) {
+            // if !enableVPN then we ignore those interfaces (pass all traffic)
+            for (final String itf : ITFS_VPN) {
+                cmds.add("-A " + root + " -o " + itf + " -j " + root + "-vpn");
             }
+            // KitKat policy based routing - see:
+            // http://forum.xda-developers.com/showthread.php?p=48703545
+            // This covers mark range 0x3c - 0x47.  The official range is believed to be
+            // 0x3c - 0x45 but this is close enough.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                cmds.add("-A " + root + " -m mark --mark 0x3c/0xfffc -g " + root + "-vpn");
+                cmds.add("-A " + root + " -m mark --mark 0x40/0xfff8 -g " + root + "-vpn");
+            }
+        }
+        for (final String itf : ITFS_WIFI) {
+            cmds.add("-A " + root + " -o " + itf + " -j " + root + "-wifi");
+        }
 
-            // if tethered, try to match the above rules (if enabled).  no match -> fall through to the
-            // normal 3G/wifi rules
-            cmds.add("-A " + AFWALL_CHAIN_NAME + "-wifi-tether -j " + AFWALL_CHAIN_NAME + "-wifi-fork");
-            cmds.add("-A " + AFWALL_CHAIN_NAME + "-3g-tether -j " + AFWALL_CHAIN_NAME + "-3g-fork");
+        for (final String itf : ITFS_3G) {
+            cmds.add("-A " + root + " -o " + itf + " -j " + root + "-3g");
+        }
 
-            // NOTE: we still need to open a hole to let WAN-only UIDs talk to a DNS server
-            // on the LAN
-            if (whitelist) {
-                cmds.add("-A " + AFWALL_CHAIN_NAME + "-wifi-lan -p udp --dport 53 -j RETURN");
-            }
+        final boolean any_wifi = ruleDataSet.wifiList.indexOf(SPECIAL_UID_ANY) >= 0;
+        final boolean any_3g = ruleDataSet.dataList.indexOf(SPECIAL_UID_ANY) >= 0;
 
-            // now add the per-uid rules for 3G home, 3G roam, wifi WAN, wifi LAN, VPN
-            // in whitelist mode the last rule in the list routes everything else to afwall-reject
-            addRulesForUidlist(cmds, ruleDataSet.dataList, AFWALL_CHAIN_NAME + "-3g-home", whitelist);
-            addRulesForUidlist(cmds, ruleDataSet.roamList, AFWALL_CHAIN_NAME + "-3g-roam", whitelist);
-            addRulesForUidlist(cmds, ruleDataSet.wifiList, AFWALL_CHAIN_NAME + "-wifi-wan", whitelist);
-            addRulesForUidlist(cmds, ruleDataSet.lanList, AFWALL_CHAIN_NAME + "-wifi-lan", whitelist);
-            addRulesForUidlist(cmds, ruleDataSet.vpnList, AFWALL_CHAIN_NAME + "-vpn", whitelist);
+        // special rules to allow 3G<->wifi tethering
+        // note that this can only blacklist DNS/DHCP services, not all tethered traffic
+        if (((!whitelist && (any_wifi || any_3g)) ||
+                (ruleDataSet.dataList.indexOf(SPECIAL_UID_TETHER) >= 0) || (ruleDataSet.wifiList.indexOf(SPECIAL_UID_TETHER) >= 0))) {
 
-            Log.i(TAG, "Setting OUTPUT to Accept State");
-            cmds.add("-P OUTPUT ACCEPT");
+            String users[] = {"root", "nobody"};
+            String action = " -j " + (whitelist ? "RETURN" : root + "-reject");
 
-        } catch (Exception e) {
-            Log.e(e.getClass().getName(), e.getMessage(), e);
+            // DHCP replies to client
+            addRuleForUsers(cmds, users, "-A " + root + "-wifi-tether", "-p udp --sport=67 --dport=68" + action);
+
+            // DNS replies to client
+            addRuleForUsers(cmds, users, "-A " + root + "-wifi-tether", "-p udp --sport=53" + action);
+            addRuleForUsers(cmds, users, "-A " + root + "-wifi-tether", "-p tcp --sport=53" + action);
+
+            // DNS requests to upstream servers
+            addRuleForUsers(cmds, users, "-A " + root + "-3g-tether", "-p udp --dport=53" + action);
+            addRuleForUsers(cmds, users, "-A " + root + "-3g-tether", "-p tcp --dport=53" + action);
         }
 
-        iptablesCommands(cmds, out, ipv6);
-        return true;
+        // if tethered, try to match the above rules (if enabled).  no match -> fall through to the
+        // normal 3G/wifi rules
+        cmds.add("-A " + root + "-wifi-tether -j " + root + "-wifi-fork");
+        cmds.add("-A " + root + "-3g-tether -j " + root + "-3g-fork");
+
+        // NOTE: we still need to open a hole to let WAN-only UIDs talk to a DNS server
+        // on the LAN
+        if (whitelist) {
+            cmds.add("-A " + root + "-wifi-lan -p udp --dport 53 -j RETURN");
+        }
+
+        // now add the per-uid rules for 3G home, 3G roam, wifi WAN, wifi LAN, VPN
+        // in whitelist mode the last rule in the list routes everything else to afwall-reject
+        addRulesForUidlist(cmds, ruleDataSet.dataList, root, root + "-3g-home", whitelist);
+        addRulesForUidlist(cmds, ruleDataSet.roamList, root, root + "-3g-roam", whitelist);
+        addRulesForUidlist(cmds, ruleDataSet.wifiList, root, root + "-wifi-wan", whitelist);
+        addRulesForUidlist(cmds, ruleDataSet.lanList, root, root + "-wifi-lan", whitelist);
+        addRulesForUidlist(cmds, ruleDataSet.vpnList, root, root + "-vpn", whitelist);
     }
 
     /**
@@ -774,6 +860,10 @@ public final class Api {
      * @param out A list of UNIX commands to execute
      */
     private static void iptablesCommands(List<String> in, List<String> out, boolean ipv6) {
+        iptablesCommands(in, out, ipv6, ipPath);
+    }
+
+    static void iptablesCommands(List<String> in, List<String> out, boolean ipv6, String ipPath) {
         boolean firstLit = true;
         for (String s : in) {
             if (s.matches("#LITERAL# .*")) {
@@ -824,45 +914,7 @@ public final class Api {
             Log.i(TAG, "Using applySavedIptablesRules");
             initSpecial();
 
-            final String savedPkg_wifi_uid = G.pPrefs.getString(PREF_WIFI_PKG_UIDS, "");
-            final String savedPkg_3g_uid = G.pPrefs.getString(PREF_3G_PKG_UIDS, "");
-            final String savedPkg_roam_uid = G.pPrefs.getString(PREF_ROAMING_PKG_UIDS, "");
-            final String savedPkg_vpn_uid = G.pPrefs.getString(PREF_VPN_PKG_UIDS, "");
-            final String savedPkg_lan_uid = G.pPrefs.getString(PREF_LAN_PKG_UIDS, "");
-
-            boolean returnValue;
-            List<String> cmds = new ArrayList<String>();
-
-            setBinaryPath(ctx, false);
-            RuleDataSet dataSet = new RuleDataSet(getListFromPref(savedPkg_wifi_uid),
-                    getListFromPref(savedPkg_3g_uid),
-                    getListFromPref(savedPkg_roam_uid),
-                    getListFromPref(savedPkg_vpn_uid),
-                    getListFromPref(savedPkg_lan_uid));
-            returnValue = applyIptablesRulesImpl(ctx, dataSet, showErrors, cmds, false);
-            if (returnValue == false) {
-                return false;
-            }
-
-            if (G.enableIPv6()) {
-                setBinaryPath(ctx, true);
-                dataSet = new RuleDataSet(getListFromPref(savedPkg_wifi_uid),
-                        getListFromPref(savedPkg_3g_uid),
-                        getListFromPref(savedPkg_roam_uid),
-                        getListFromPref(savedPkg_vpn_uid),
-                        getListFromPref(savedPkg_lan_uid));
-
-                returnValue = applyIptablesRulesImpl(ctx, dataSet,
-                        showErrors,
-                        cmds, true);
-                if (returnValue == false) {
-                    return false;
-                }
-            }
-            rulesUpToDate = true;
-
-            callback.setRetryExitCode(IPTABLES_TRY_AGAIN).run(ctx, cmds);
-            return true;
+            return applyRulesParallel(ctx, ProfileResolver.resolve(ctx, PREFS_NAME), showErrors, callback);
         } catch (Exception e) {
             Log.d(TAG, "Exception while applying rules: " + e.getMessage());
             applyDefaultChains(ctx, callback);
@@ -878,38 +930,207 @@ public final class Api {
         try {
             Log.i(TAG, "Using applyQuickSavedIptablesRules");
             initSpecial();
+            return applyRulesParallel(ctx, dataSet, showErrors, callback);
+        } catch (Exception e) {
+            Log.d(TAG, "Exception while applying rules: " + e.getMessage());
+            applyDefaultChains(ctx, callback);
+            return false;
+        }
+    }
 
-            boolean returnValue;
-            List<String> cmds = new ArrayList<String>();
-            List<String> out = new ArrayList<String>();
-            setBinaryPath(ctx, false);
-            returnValue = applyIptablesRulesImpl(ctx, dataSet, showErrors, cmds, false);
-            if (returnValue == false) {
-                return false;
-            }
+    /**
+     * Activate the profile selected through G.setProfile().  With pre-built profile chains this
+     * only points the afwall chain at the profile's tree; otherwise (or if that fails, or the
+     * profile's time windows changed its saved rules) all rules are re-applied.
+     *
+     * @param ctx        application context (mandatory)
+     * @param showErrors indicates if errors should be alerted
+     * @param callback   called once the profile is active
+     */
+    public static boolean switchProfile(final Context ctx, final boolean showErrors, final RootCommand callback) {
+        // windows of the profile that opened or closed while another one was active
+        boolean scheduled = Scheduler.profileChanged(ctx);
+        List<String> built = ProfileChains.getBuilt(ctx);
+        final int index = built.indexOf(PREFS_NAME);
+        if (scheduled || index < 0 || !isEnabled(ctx) || !built.equals(ProfileChains.getAllProfiles())
+                || !ProfileChains.isSupported(ctx, built)) {
+            return applySavedIptablesRules(ctx, showErrors, callback);
+        }
 
-            iptablesCommands(cmds, out, false);
+        List<String> cmds = new ArrayList<String>();
+        cmds.add("-R " + AFWALL_CHAIN_NAME + " 1 -j " + ProfileChains.rootChain(AFWALL_CHAIN_NAME, index));
+        List<String> out = new ArrayList<String>();
+        List<String> out6 = null;
+        iptablesCommands(cmds, out, false, getBinaryPath(ctx, false));
+        if (G.enableIPv6()) {
+            out6 = new ArrayList<String>();
+            iptablesCommands(cmds, out6, true, getBinaryPath(ctx, true));
+        }
 
-            if (G.enableIPv6()) {
-                setBinaryPath(ctx, true);
-                returnValue = applyIptablesRulesImpl(ctx, dataSet,
-                        showErrors,
-                        cmds, true);
-                if (returnValue == false) {
-                    return false;
+        final long start = System.nanoTime();
+        final RootCommand.Callback userCallback = callback.cb;
+        callback.setCallback(new RootCommand.Callback() {
+            @Override
+            public void cbFunc(RootCommand state) {
+                if (state.exitCode == 0) {
+                    if (!state.superseded) {
+                        long elapsed = System.nanoTime() - start;
+                        Log.i(TAG, "Switched to profile " + index + " in " + (elapsed / 1000000) + " ms");
+                        ProfileChains.recordSwitch(ctx, elapsed);
+                    }
+                    if (userCallback != null) {
+                        userCallback.cbFunc(state);
+                    }
+                } else {
+                    Log.e(TAG, "Unable to switch profile chains, applying all rules");
+                    applySavedIptablesRules(ctx, showErrors, new RootCommand()
+                            .setFailureToast(R.string.error_apply)
+                            .setCallback(userCallback));
                 }
+            }
+        });
+        recordOnSuccess(ctx, null, out6 != null, callback);
+        callback.setRetryExitCode(IPTABLES_TRY_AGAIN).setScope(RootCommand.SCOPE_PARTIAL).runParallel(ctx, out, out6);
+        return true;
+    }
 
-                iptablesCommands(cmds, out, true);
+    /**
+     * Compile the IPv4 and IPv6 rules at the same time and run each family in its own root
+     * shell.  Both scripts carry their own OUTPUT DROP ... ACCEPT bracket, so the leak
+     * protection holds per family even though they are no longer serialized.
+     *
+     * @param ctx        application context (mandatory)
+     * @param dataSet    UID lists to apply (shared read-only by both families)
+     * @param showErrors indicates if errors should be alerted
+     * @param callback   called once, after both families are done
+     */
+    private static boolean applyRulesParallel(final Context ctx, final RuleDataSet dataSet, final boolean showErrors,
+                                              RootCommand callback) throws InterruptedException, ExecutionException {
+        long start = Metrics.start();
+        // install binaries and cache the interface state up front, the builders only read them
+        assertBinaries(ctx, showErrors);
+        InterfaceTracker.getCurrentCfg(ctx);
+        setBinaryPath(ctx, false);
+        List<String> profiles = ProfileChains.getAllProfiles();
+        final List<String> profileTrees = ProfileChains.isSupported(ctx, profiles) ? profiles : null;
 
-            }
-            rulesUpToDate = true;
-            callback.setRetryExitCode(IPTABLES_TRY_AGAIN).run(ctx, cmds);
-            return true;
-        } catch (Exception e) {
-            Log.d(TAG, "Exception while applying rules: " + e.getMessage());
-            applyDefaultChains(ctx, callback);
+        FutureTask<List<String>> ipv6Task = null;
+        if (G.enableIPv6()) {
+            ipv6Task = new FutureTask<>(() -> {
+                List<String> out = new ArrayList<String>();
+                return applyIptablesRulesImpl(ctx, dataSet, profileTrees, showErrors, out, true) ? out : null;
+            });
+            new Thread(ipv6Task, "afwall-ipv6-rules").start();
+        }
+
+        List<String> cmds = new ArrayList<String>();
+        boolean returnValue = applyIptablesRulesImpl(ctx, dataSet, profileTrees, showErrors, cmds, false);
+        List<String> cmds6 = ipv6Task != null ? ipv6Task.get() : null;
+        if (!returnValue || (ipv6Task != null && cmds6 == null)) {
             return false;
         }
+        BUILD_TIME.stop(start);
+        rulesUpToDate = true;
+        ProfileChains.store(ctx, profileTrees);
+
+        applyIfChanged(ctx, cmds, cmds6, callback);
+        return true;
+    }
+
+    /**
+     * Skip the apply when the compiled rules match the last applied set and the afwall chains
+     * in the kernel still look the way they did right after that apply.  If only some chains
+     * drifted (flushed by another tool), those are repaired; anything else (first run, changed
+     * rules, failed repair) falls through to a full apply.
+     *
+     * @param ctx      application context
+     * @param cmds     compiled IPv4 commands
+     * @param cmds6    compiled IPv6 commands, null if IPv6 is disabled
+     * @param callback called once, whether the rules were applied or not
+     */
+    private static void applyIfChanged(final Context ctx, final List<String> cmds, final List<String> cmds6,
+                                       final RootCommand callback) {
+        final String fingerprint = RulesFingerprint.of(cmds, cmds6);
+        if (!RulesFingerprint.isStored(ctx, fingerprint)) {
+            RulesFingerprint.miss(ctx);
+            applyAndRecord(ctx, cmds, cmds6, fingerprint, callback);
+            return;
+        }
+        // the snapshot decides whether the apply runs, so it waits in the same class
+        new RootCommand()
+                .setLogging(true)
+                .setPriority(callback.getPriority())
+                .setCallback(new RootCommand.Callback() {
+                    public void cbFunc(RootCommand state) {
+                        if (state.exitCode != 0) {
+                            RulesFingerprint.miss(ctx);
+                            applyAndRecord(ctx, cmds, cmds6, fingerprint, callback);
+                        } else if (RulesFingerprint.isKernelStored(ctx,
+                                RulesFingerprint.kernelHash(state.res.toString()))) {
+                            Log.i(TAG, "Rules unchanged since last apply, skipping");
+                            RulesFingerprint.hit(ctx);
+                            callback.skip(ctx);
+                        } else {
+                            ChainVerifier.repair(ctx, state.res.toString(), "apply", new RootCommand()
+                                    .setCallback(new RootCommand.Callback() {
+                                        public void cbFunc(RootCommand repaired) {
+                                            if (repaired.exitCode == 0) {
+                                                RulesFingerprint.hit(ctx);
+                                                callback.skip(ctx);
+                                            } else {
+                                                RulesFingerprint.miss(ctx);
+                                                applyAndRecord(ctx, cmds, cmds6, fingerprint, callback);
+                                            }
+                                        }
+                                    }));
+                        }
+                    }
+                }).run(ctx, RulesFingerprint.snapshotCommands(ctx, cmds6 != null));
+    }
+
+    private static void applyAndRecord(final Context ctx, List<String> cmds, final List<String> cmds6,
+                                       final String fingerprint, RootCommand callback) {
+        recordOnSuccess(ctx, fingerprint, cmds6 != null, callback);
+        callback.setRetryExitCode(IPTABLES_TRY_AGAIN).setScope(RootCommand.SCOPE_FULL).runParallel(ctx, cmds, cmds6);
+    }
+
+    /**
+     * Forget the stored fingerprint now and store a new one (with the live chains the drift
+     * verifier compares against) once the callback reports success.
+     *
+     * @param ctx
+     * @param fingerprint fingerprint of the rules about to be applied, null for partial applies
+     * @param ipv6        whether ip6tables chains are part of the rule set
+     * @param callback    command whose callback gets wrapped
+     */
+    private static void recordOnSuccess(final Context ctx, final String fingerprint, final boolean ipv6,
+                                        RootCommand callback) {
+        final RootCommand.Callback userCallback = callback.cb;
+        // a half-applied rule set must never match on the next run
+        RulesFingerprint.invalidate(ctx);
+        callback.setCallback(new RootCommand.Callback() {
+            public void cbFunc(RootCommand state) {
+                // a superseded partial apply completes after the full apply that replaced it,
+                // its snapshot would overwrite the full apply's fingerprint
+                if (state.exitCode == 0 && !state.superseded) {
+                    new RootCommand()
+                            .setLogging(true)
+                            .setPriority(RootCommand.Priority.DIAGNOSTICS)
+                            .setCallback(new RootCommand.Callback() {
+                                public void cbFunc(RootCommand snapshot) {
+                                    if (snapshot.exitCode == 0) {
+                                        RulesFingerprint.store(ctx, fingerprint, snapshot.res.toString());
+                                        BootRules.save(ctx, snapshot.res.toString());
+                                        ChainVerifier.schedule(ctx);
+                                    }
+                                }
+                            }).run(ctx, RulesFingerprint.snapshotCommands(ctx, ipv6));
+                }
+                if (userCallback != null) {
+                    userCallback.cbFunc(state);
+                }
+            }
+        });
     }
 
 
@@ -934,7 +1155,9 @@ public final class Api {
                 applyShortRules(ctx, cmds, true);
                 iptablesCommands(cmds, out, true);
             }
-            callback.setRetryExitCode(IPTABLES_TRY_AGAIN).run(ctx, out);
+            // the interface chains change, so the full rule fingerprint no longer applies
+            recordOnSuccess(ctx, null, G.enableIPv6(), callback);
+            callback.setRetryExitCode(IPTABLES_TRY_AGAIN).setScope(RootCommand.SCOPE_PARTIAL).run(ctx, out);
         } catch (Exception e) {
             Log.d(TAG, "Exception while applying rules: " + e.getMessage());
             applyDefaultChains(ctx, callback);
@@ -998,20 +1221,16 @@ public final class Api {
                 }
             }
 
-            String wifi = android.text.TextUtils.join("|", newpkg_wifi);
-            String data = android.text.TextUtils.join("|", newpkg_3g);
-            String roam = android.text.TextUtils.join("|", newpkg_roam);
-            String vpn = android.text.TextUtils.join("|", newpkg_vpn);
-            String lan = android.text.TextUtils.join("|", newpkg_lan);
             // save the new list of UIDs
             if (store) {
                 SharedPreferences prefs = ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
                 Editor edit = prefs.edit();
-                edit.putString(PREF_WIFI_PKG_UIDS, wifi);
-                edit.putString(PREF_3G_PKG_UIDS, data);
-                edit.putString(PREF_ROAMING_PKG_UIDS, roam);
-                edit.putString(PREF_VPN_PKG_UIDS, vpn);
-                edit.putString(PREF_LAN_PKG_UIDS, lan);
+                // relative to the parent profile, if there is one
+                ProfileResolver.store(ctx, PREFS_NAME, edit, RuleState.WIFI, newpkg_wifi);
+                ProfileResolver.store(ctx, PREFS_NAME, edit, RuleState.DATA, newpkg_3g);
+                ProfileResolver.store(ctx, PREFS_NAME, edit, RuleState.ROAM, newpkg_roam);
+                ProfileResolver.store(ctx, PREFS_NAME, edit, RuleState.VPN, newpkg_vpn);
+                ProfileResolver.store(ctx, PREFS_NAME, edit, RuleState.LAN, newpkg_lan);
                 edit.commit();
             } else {
                 dataSet = new RuleDataSet(new ArrayList<>(newpkg_wifi),
@@ -1025,6 +1244,162 @@ public final class Api {
 
     }
 
+    private static String uidChain(int net) {
+        switch (net) {
+            case RuleState.WIFI:
+                return "-wifi-wan";
+            case RuleState.DATA:
+                return "-3g-home";
+            case RuleState.ROAM:
+                return "-3g-roam";
+            case RuleState.VPN:
+                return "-vpn";
+            default:
+                return "-wifi-lan";
+        }
+    }
+
+    /**
+     * Save rule edits by patching the stored UID lists, without walking all apps.
+     *
+     * @param ctx     application context (mandatory)
+     * @param changes from RuleState.commit()
+     */
+    public static void saveRuleChanges(Context ctx, List<RuleState.Change> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        SharedPreferences prefs = ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Editor edit = prefs.edit();
+        // effective lists, inherited UIDs included
+        RuleDataSet saved = ProfileResolver.resolve(ctx, PREFS_NAME);
+        for (int net = RuleState.WIFI; net <= RuleState.LAN; net++) {
+            TreeSet<Integer> uids = null;
+            for (RuleState.Change change : changes) {
+                if (change.net != net) {
+                    continue;
+                }
+                if (uids == null) {
+                    uids = new TreeSet<>(ProfileResolver.listOf(saved, net));
+                }
+                if (change.value) {
+                    uids.add(change.uid);
+                } else {
+                    uids.remove(change.uid);
+                }
+            }
+            if (uids != null) {
+                ProfileResolver.store(ctx, PREFS_NAME, edit, net, uids);
+            }
+        }
+        edit.commit();
+    }
+
+    /**
+     * Push rule edits to the live chains: one owner rule inserted or deleted per change instead
+     * of rebuilding every chain.  Falls back to applySavedIptablesRules() if neither this session
+     * nor the chains recorded after the last apply show the edits start from the live rules, for
+     * pre-built profile trees, special UIDs and large batches, and whenever one of the edits fails.
+     * A UID inside a range rule of the recorded chains is taken out by splitting the range.
+     *
+     * @param ctx        application context (mandatory)
+     * @param changes    saved with saveRuleChanges()
+     * @param showErrors indicates if errors should be alerted
+     * @param callback   called once the rules are active
+     */
+    public static boolean applyRuleChanges(final Context ctx, List<RuleState.Change> changes,
+                                           final boolean showErrors, final RootCommand callback) {
+        String action = isWhitelist(G.pPrefs) ? " -j RETURN" : " -j " + AFWALL_CHAIN_NAME + "-reject";
+        if ((!rulesUpToDate && !matchesRecorded(ctx, changes, action)) || changes.isEmpty()
+                || changes.size() > MAX_RULE_CHANGES || !ProfileChains.getBuilt(ctx).isEmpty()) {
+            return applySavedIptablesRules(ctx, showErrors, callback);
+        }
+        List<String> cmds = new ArrayList<String>();
+        List<String> recorded = RulesFingerprint.expectedLines(ctx, false);
+        Map<String, List<int[]>> ranges = new HashMap<>();
+        for (RuleState.Change change : changes) {
+            if (change.uid < 0) {
+                return applySavedIptablesRules(ctx, showErrors, callback);
+            }
+            String chain = AFWALL_CHAIN_NAME + uidChain(change.net);
+            if (!ranges.containsKey(chain)) {
+                ranges.put(chain, UserUids.ownerRanges(recorded, chain, action));
+            }
+            if (change.value) {
+                // owner rules end in RETURN or reject and only have to stay above the
+                // "--uid-owner 0:999999999" catch-all at the end of the chain, so the top will do
+                ranges.get(chain).add(new int[]{change.uid, change.uid});
+                cmds.add("-I " + chain + " 1 -m owner --uid-owner " + change.uid + action);
+            } else {
+                cmds.addAll(UserUids.removeFromRanges(ranges.get(chain), chain, action, change.uid));
+            }
+        }
+        List<String> out = new ArrayList<String>();
+        List<String> out6 = null;
+        iptablesCommands(cmds, out, false, getBinaryPath(ctx, false));
+        if (G.enableIPv6()) {
+            out6 = new ArrayList<String>();
+            iptablesCommands(cmds, out6, true, getBinaryPath(ctx, true));
+        }
+
+        final long start = Metrics.start();
+        RootCommand edit = new RootCommand()
+                .setPriority(callback.getPriority())
+                .setCallback(new RootCommand.Callback() {
+                    @Override
+                    public void cbFunc(RootCommand state) {
+                        if (state.exitCode == 0) {
+                            if (!state.superseded) {
+                                CHANGES_TIME.stop(start);
+                            }
+                            callback.skip(ctx);
+                        } else {
+                            Log.w(TAG, "Unable to apply rule changes, applying all rules");
+                            applySavedIptablesRules(ctx, showErrors, callback);
+                        }
+                    }
+                });
+        recordOnSuccess(ctx, null, out6 != null, edit);
+        edit.setRetryExitCode(IPTABLES_TRY_AGAIN).setScope(RootCommand.SCOPE_PARTIAL).runParallel(ctx, out, out6);
+        return true;
+    }
+
+    /**
+     * A new process (e.g. woken by an alarm) has not applied the rules itself, but the chains
+     * recorded after the last apply tell whether every edit starts from what is live.
+     */
+    private static boolean matchesRecorded(Context ctx, List<RuleState.Change> changes, String action) {
+        List<String> lines = RulesFingerprint.expectedLines(ctx, false);
+        if (lines.isEmpty()) {
+            return false;
+        }
+        Map<String, List<int[]>> ranges = new HashMap<>();
+        for (RuleState.Change change : changes) {
+            String chain = AFWALL_CHAIN_NAME + uidChain(change.net);
+            if (!ranges.containsKey(chain)) {
+                ranges.put(chain, UserUids.ownerRanges(lines, chain, action));
+            }
+            boolean present = false;
+            for (int[] range : ranges.get(chain)) {
+                present |= change.uid >= range[0] && change.uid <= range[1];
+            }
+            if (present == change.value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param uid
+     * @param net network class, see RuleState
+     * @return true if the app is checked for the network class in the saved rules, directly or
+     * through the parent profile
+     */
+    public static boolean isSavedRule(Context ctx, int uid, int net) {
+        return ProfileResolver.listOf(ProfileResolver.resolve(ctx, PREFS_NAME), net).contains(uid);
+    }
+
     /*public static void checkPermission(Context ctx) {
         int ACTION_MANAGE_OVERLAY_PERMISSION_REQUEST_CODE = 5469;
 
@@ -1058,25 +1433,42 @@ public final class Api {
         for (String s : dynChains) {
             cmds.add("-F " + AFWALL_CHAIN_NAME + s);
         }
+        List<String> built = ProfileChains.getBuilt(ctx);
+        for (int i = 0; i < built.size(); i++) {
+            String root = ProfileChains.rootChain(AFWALL_CHAIN_NAME, i);
+            for (String s : staticChains) {
+                cmds.add("#NOCHK# -F " + root + s);
+            }
+            for (String s : dynChains) {
+                cmds.add("#NOCHK# -F " + root + s);
+            }
+        }
+        ProfileChains.store(ctx, null);
         //make sure reset the OUTPUT chain to accept state.
         cmds.add("-P OUTPUT ACCEPT");
 
         //Delete only when the afwall chain exist !
         cmds.add("-D OUTPUT -j " + AFWALL_CHAIN_NAME);
 
-        addCustomRules(Api.PREF_CUSTOMSCRIPT2, cmds);
+        RulesFingerprint.invalidate(ctx);
+        ChainVerifier.cancel(ctx);
+        BootRules.clear(ctx);
 
         try {
             assertBinaries(ctx, showErrors);
 
             // IPv4
             setBinaryPath(ctx, false);
-            iptablesCommands(cmds, out, false);
+            List<String> cmds4 = new ArrayList<>(cmds);
+            addCustomRules(Api.PREF_CUSTOMSCRIPT2, cmds4, false);
+            iptablesCommands(cmds4, out, false);
 
             // IPv6
             if (G.enableIPv6()) {
                 setBinaryPath(ctx, true);
-                iptablesCommands(cmds, out, true);
+                List<String> cmds6 = new ArrayList<>(cmds);
+                addCustomRules(Api.PREF_CUSTOMSCRIPT2, cmds6, true);
+                iptablesCommands(cmds6, out, true);
             }
 
             if (callback != null) {
@@ -1118,7 +1510,7 @@ public final class Api {
             setBinaryPath(ctx, true);
             iptablesCommands(cmds, out, true);
         }
-        callback.run(ctx, out);
+        callback.setPriority(RootCommand.Priority.DIAGNOSTICS).run(ctx, out);
     }
 
     /**
@@ -1146,16 +1538,13 @@ public final class Api {
         try {
             Set<String> uids = G.storedPid();
             if (uids != null && uids.size() > 0) {
-                Shell.Interactive tempSession = new Shell.Builder().useSU().open();
+                List<String> cmds = new ArrayList<>();
                 for (String uid : uids) {
                     Log.i(Api.TAG, "Cleaning up previous uid: " + uid);
-                    tempSession.addCommand("kill -9 " + uid);
+                    cmds.add("kill -9 " + uid);
                 }
                 G.storedPid(new HashSet());
-                if (tempSession != null) {
-                    tempSession.kill();
-                    tempSession.close();
-                }
+                RootSessions.submit(RootSessions.Priority.LOG, cmds, null);
             }
         } catch (ClassCastException e) {
             Log.e(TAG, "ClassCastException in cleanupUid: " + e.getMessage());
@@ -1199,6 +1588,22 @@ public final class Api {
         apply46(ctx, cmds, callback);
     }
 
+    /**
+     * @param ctx
+     * @return root of every chain tree in the kernel: afwall, or one per pre-built profile
+     */
+    private static List<String> getRootChains(Context ctx) {
+        List<String> roots = new ArrayList<String>();
+        List<String> built = ProfileChains.getBuilt(ctx);
+        if (built.isEmpty()) {
+            roots.add(AFWALL_CHAIN_NAME);
+        }
+        for (int i = 0; i < built.size(); i++) {
+            roots.add(ProfileChains.rootChain(AFWALL_CHAIN_NAME, i));
+        }
+        return roots;
+    }
+
     /**
      * Enable or disable logging by rewriting the afwall-reject chain.  Logging
      * will be enabled or disabled based on the preference setting.
@@ -1211,9 +1616,11 @@ public final class Api {
             return;
         }
         List<String> cmds = new ArrayList<String>();
-        cmds.add("#NOCHK# -N " + AFWALL_CHAIN_NAME + "-reject");
-        cmds.add("-F " + AFWALL_CHAIN_NAME + "-reject");
-        addRejectRules(cmds);
+        for (String root : getRootChains(ctx)) {
+            cmds.add("#NOCHK# -N " + root + "-reject");
+            cmds.add("-F " + root + "-reject");
+            addRejectRules(cmds, root);
+        }
         apply46(ctx, cmds, callback);
     }
 
@@ -1262,15 +1669,13 @@ public final class Api {
      * @param callback Callback for completion status
      */
     public static void runIfconfig(Context ctx, RootCommand callback) {
-        callback.run(ctx, getBusyBoxPath(ctx, true) + " ifconfig -a");
+        callback.setPriority(RootCommand.Priority.DIAGNOSTICS).run(ctx, getBusyBoxPath(ctx, true) + " ifconfig -a");
     }
 
     public static void runNetworkInterface(Context ctx, RootCommand callback) {
-        callback.run(ctx, getBusyBoxPath(ctx, true) + " ls /sys/class/net");
+        callback.setPriority(RootCommand.Priority.DIAGNOSTICS).run(ctx, getBusyBoxPath(ctx, true) + " ls /sys/class/net");
     }
 
-    private static final Pattern p = Pattern.compile("UserHandle\\{(.*)\\}");
-
    /* public boolean isSuPackage(PackageManager pm, String suPackage) {
         boolean found = false;
         try {
@@ -1285,6 +1690,8 @@ public final class Api {
     }*/
 
 
+    private static final Metrics.Histogram APPS_ENUM_TIME = Metrics.histogram("apps.enumerate");
+
     /**
      * @param ctx application context (mandatory)
      * @return a list of applications
@@ -1296,14 +1703,13 @@ public final class Api {
             // return cached instance
             return applications;
         }
+        // selections are reloaded from the saved rules, unsaved edits are gone
+        RuleState.discard();
 
         SharedPreferences prefs = ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
 
-        String savedPkg_wifi_uid = prefs.getString(PREF_WIFI_PKG_UIDS, "");
-        String savedPkg_3g_uid = prefs.getString(PREF_3G_PKG_UIDS, "");
-        String savedPkg_roam_uid = prefs.getString(PREF_ROAMING_PKG_UIDS, "");
-        String savedPkg_vpn_uid = prefs.getString(PREF_VPN_PKG_UIDS, "");
-        String savedPkg_lan_uid = prefs.getString(PREF_LAN_PKG_UIDS, "");
+        // effective rules: what the parent profile hands down shows as checked too
+        RuleDataSet saved = ProfileResolver.resolve(ctx, PREFS_NAME);
 
         List<Integer> selected_wifi;
         List<Integer> selected_3g;
@@ -1312,17 +1718,17 @@ public final class Api {
         List<Integer> selected_lan = new ArrayList<>();
 
 
-        selected_wifi = getListFromPref(savedPkg_wifi_uid);
-        selected_3g = getListFromPref(savedPkg_3g_uid);
+        selected_wifi = saved.wifiList;
+        selected_3g = saved.dataList;
 
         if (G.enableRoam()) {
-            selected_roam = getListFromPref(savedPkg_roam_uid);
+            selected_roam = saved.roamList;
         }
         if (G.enableVPN()) {
-            selected_vpn = getListFromPref(savedPkg_vpn_uid);
+            selected_vpn = saved.vpnList;
         }
         if (G.enableLAN()) {
-            selected_lan = getListFromPref(savedPkg_lan_uid);
+            selected_lan = saved.lanList;
         }
         //revert back to old approach
 
@@ -1330,26 +1736,9 @@ public final class Api {
         SharedPreferences cachePrefs = ctx.getSharedPreferences(DEFAULT_PREFS_NAME, Context.MODE_PRIVATE);
 
         int count = 0;
+        long start = Metrics.start();
         try {
-            List<Integer> uid = new ArrayList<>();
             PackageManager pkgmanager = ctx.getPackageManager();
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                //this code will be executed on devices running ICS or later
-                final UserManager um = (UserManager) ctx.getSystemService(Context.USER_SERVICE);
-                List<UserHandle> list = um.getUserProfiles();
-
-                for (UserHandle user : list) {
-                    Matcher m = p.matcher(user.toString());
-                    if (m.find()) {
-                        int id = Integer.parseInt(m.group(1));
-                        if (id > 0) {
-                            uid.add(id);
-                        }
-                    }
-                }
-            }
-
-
             List<ApplicationInfo> installed = pkgmanager.getInstalledApplications(PackageManager.GET_META_DATA);
             SparseArray<PackageInfoData> syncMap = new SparseArray<>();
             Editor edit = cachePrefs.edit();
@@ -1420,12 +1809,14 @@ public final class Api {
                 if (G.enableLAN() && !app.selected_lan && Collections.binarySearch(selected_lan, app.uid) >= 0) {
                     app.selected_lan = true;
                 }
-                if(G.supportDual()) {
-                    checkPartOfMultiUser(apinfo, name, uid, pkgmanager,multiUserAppsMap);
+                if (G.supportDual() && multiUserAppsMap.get(apinfo.uid) == null) {
+                    // keyed by the current user's uid until the profiles are known
+                    multiUserAppsMap.put(apinfo.uid, app);
                 }
             }
 
-            if(G.supportDual()) {
+            if (G.supportDual()) {
+                multiUserAppsMap = getMultiUserApps(ctx, installed, multiUserAppsMap, pkgmanager);
                 //run through multi user map
                 for (int i = 0; i < multiUserAppsMap.size(); i++) {
                     app = multiUserAppsMap.valueAt(i);
@@ -1495,6 +1886,7 @@ public final class Api {
             for (int i = 0; i < syncMap.size(); i++) {
                 applications.add(syncMap.valueAt(i));
             }
+            APPS_ENUM_TIME.stop(start);
 
             return applications;
         } catch (Exception e) {
@@ -1504,25 +1896,43 @@ public final class Api {
         return null;
     }
 
-    private static void checkPartOfMultiUser(ApplicationInfo apinfo, String name, List<Integer> uid1, PackageManager pkgmanager, SparseArray<PackageInfoData> syncMap) {
+    /**
+     * Copy the apps of the current user into every other profile they are installed in
+     *
+     * @param ctx
+     * @param installed  all applications of the current user
+     * @param primary    apps with internet permission, keyed by uid
+     * @param pkgmanager
+     * @return the copies, keyed by their uid in the other profile
+     */
+    private static SparseArray<PackageInfoData> getMultiUserApps(Context ctx, List<ApplicationInfo> installed,
+                                                                 SparseArray<PackageInfoData> primary, PackageManager pkgmanager) {
+        SparseArray<PackageInfoData> syncMap = new SparseArray<>();
         try {
-            for (Integer integer : uid1) {
-                int appUid = Integer.parseInt(integer + "" + apinfo.uid + "");
-                String[] pkgs = pkgmanager.getPackagesForUid(appUid);
-                if (pkgs != null) {
+            for (int userId : UserUids.getOtherUserIds(ctx)) {
+                // one package list per profile instead of one lookup per app and profile
+                SparseBooleanArray appIds = UserUids.getInstalledAppIds(userId, installed, pkgmanager);
+                for (int i = 0; i < primary.size(); i++) {
+                    PackageInfoData source = primary.valueAt(i);
+                    if (!appIds.get(UserUids.appId(source.uid))) {
+                        continue;
+                    }
                     PackageInfoData app = new PackageInfoData();
-                    app.uid = appUid;
-                    app.installTime = new File(apinfo.sourceDir).lastModified();
+                    app.uid = UserUids.uid(userId, UserUids.appId(source.uid));
+                    app.installTime = source.installTime;
                     app.names = new ArrayList<String>();
-                    app.names.add(name + "(M)");
-                    app.appinfo = apinfo;
-                    app.pkgName = apinfo.packageName;
-                    syncMap.put(appUid, app);
+                    for (String name : source.names) {
+                        app.names.add(name + "(M)");
+                    }
+                    app.appinfo = source.appinfo;
+                    app.pkgName = source.pkgName;
+                    syncMap.put(app.uid, app);
                 }
             }
         } catch (Exception e) {
             Log.e(TAG, e.getMessage(), e);
         }
+        return syncMap;
     }
 
     private static boolean isRecentlyInstalled(String packageName) {
@@ -1537,7 +1947,7 @@ public final class Api {
         return isRecent;
     }
 
-    private static List<Integer> getListFromPref(String savedPkg_uid) {
+    static List<Integer> getListFromPref(String savedPkg_uid) {
         StringTokenizer tok = new StringTokenizer(savedPkg_uid, "|");
         List<Integer> listUids = new ArrayList<Integer>();
         while (tok.hasMoreTokens()) {
@@ -1631,7 +2041,7 @@ public final class Api {
         cmds.add("-S FORWARD");
         iptablesCommands(base, out, true);
 
-        callback.run(ctx, out);
+        callback.setPriority(RootCommand.Priority.DIAGNOSTICS).run(ctx, out);
     }
 
     /**
@@ -1667,20 +2077,14 @@ public final class Api {
             List<String> commands = (List<String>) params[0];
             StringBuilder res = (StringBuilder) params[1];
             try {
-                if (!SU.available())
-                    return exitCode;
                 if (commands != null && commands.size() > 0) {
-                    List<String> output = SU.run(commands);
-                    if (output != null) {
-                        exitCode = 0;
-                        if (output.size() > 0) {
-                            for (String str : output) {
-                                res.append(str);
-                                res.append("\n");
-                            }
-                        }
-                    } else {
-                        exitCode = 1;
+                    List<String> output = new ArrayList<>();
+                    if (RootSessions.run(RootSessions.Priority.APPLY, commands, output) == RootSessions.EXIT_NO_ROOT)
+                        return exitCode;
+                    exitCode = 0;
+                    for (String str : output) {
+                        res.append(str);
+                        res.append("\n");
                     }
                 }
             } catch (Exception ex) {
@@ -1866,6 +2270,8 @@ public final class Api {
      */
     public static void setEnabled(Context ctx, boolean enabled, boolean showErrors) {
         if (ctx == null) return;
+        // switched by hand, or by the scheduler after it dropped the resume time
+        Scheduler.clearResume(ctx);
         SharedPreferences prefs = ctx.getSharedPreferences(PREF_FIREWALL_STATUS, Context.MODE_PRIVATE);
         if (prefs.getBoolean(PREF_ENABLED, false) == enabled) {
             return;
@@ -1879,6 +2285,8 @@ public final class Api {
             return;
         }
 
+        TrafficSampler.schedule(ctx);
+
         if (G.activeNotification()) {
             showNotification(Api.isEnabled(ctx), ctx);
         }
@@ -2238,6 +2646,43 @@ public final class Api {
         }
     }
 
+    /**
+     * @param full false writes only the changes since the previous snapshot export
+     */
+    public static void exportSnapshotToFileConfirm(final Context ctx, boolean full) {
+        String fileName = "afwall-snapshot-" + new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date()) + RulesSnapshot.EXTENSION;
+        boolean res = false;
+        if (isExternalStorageWritable()) {
+            File dir = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/afwall/");
+            dir.mkdirs();
+            try {
+                RulesSnapshot.export(ctx, dir, fileName, full);
+                res = true;
+            } catch (IOException e) {
+                Log.e(TAG, e.getLocalizedMessage());
+            }
+        }
+        if (res) {
+            Api.toast(ctx, ctx.getString(R.string.export_rules_success) + " " + Environment.getExternalStorageDirectory().getPath() + "/afwall/" + fileName
+                    + (full ? "" : "\n" + ctx.getString(R.string.export_snapshot_chain)));
+        } else {
+            Api.toast(ctx, ctx.getString(R.string.export_rules_fail));
+        }
+    }
+
+    private static boolean importSnapshot(Context ctx, File file, StringBuilder msg) {
+        try {
+            RulesSnapshot.read(file).restore(ctx);
+            return true;
+        } catch (FileNotFoundException e) {
+            // the file itself was just picked, it is an earlier snapshot of a delta that is gone
+            msg.append(ctx.getString(R.string.import_snapshot_base_missing));
+        } catch (IOException e) {
+            Log.e(TAG, e.getLocalizedMessage());
+        }
+        return false;
+    }
+
     public static void exportAllPreferencesToFileConfirm(final Context ctx) {
         String fileName = "afwall-backup-all-" + new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date()) + ".json";
         if (exportAll(ctx, fileName)) {
@@ -2247,183 +2692,208 @@ public final class Api {
         }
     }
 
-    private static void updateExportPackage(Map<String, JSONObject> exportMap, String packageName, int identifier) throws JSONException {
-        JSONObject obj;
+    /**
+     * Export flags of one package: bit n is set if the package is allowed on network class n
+     * (WIFI_EXPORT, DATA_EXPORT, ...)
+     */
+    static void addExportFlag(Map<String, Integer> exportMap, String packageName, int identifier) {
         if (packageName != null) {
-            if (exportMap.containsKey(packageName)) {
-                obj = exportMap.get(packageName);
-                obj.put(identifier + "", true);
-            } else {
-                obj = new JSONObject();
-                obj.put(identifier + "", true);
-                exportMap.put(packageName, obj);
-            }
+            Integer flags = exportMap.get(packageName);
+            exportMap.put(packageName, (flags != null ? flags : 0) | (1 << identifier));
         }
-
     }
 
-    private static void updatePackage(Context ctx, String savedPkg_uid, Map<String, JSONObject> exportMap, int identifier) throws JSONException {
+    /**
+     * @param names uid to package name, shared by all profiles and network classes of one export
+     */
+    private static void updatePackage(PackageManager pm, String savedPkg_uid, Map<String, Integer> exportMap,
+                                      int identifier, SparseArray<String> names) {
         StringTokenizer tok = new StringTokenizer(savedPkg_uid, "|");
         while (tok.hasMoreTokens()) {
             String uid = tok.nextToken();
             if (!uid.equals("")) {
-                String packageName = ctx.getPackageManager().getNameForUid(Integer.parseInt(uid));
-                updateExportPackage(exportMap, packageName, identifier);
+                try {
+                    int id = Integer.parseInt(uid);
+                    int index = names.indexOfKey(id);
+                    String packageName;
+                    if (index >= 0) {
+                        packageName = names.valueAt(index);
+                    } else {
+                        packageName = pm.getNameForUid(id);
+                        names.put(id, packageName);
+                    }
+                    addExportFlag(exportMap, packageName, identifier);
+                } catch (NumberFormatException e) {
+                    Log.e(TAG, "Invalid uid in rules: " + uid);
+                }
             }
         }
     }
 
-    private static Map<String, JSONObject> getCurrentRulesAsMap(Context ctx) {
+    private static Map<String, Integer> getCurrentRulesAsMap(Context ctx) {
         List<PackageInfoData> apps = getApps(ctx, null);
-        // Builds a pipe-separated list of names
-        Map<String, JSONObject> exportMap = new HashMap<>();
-        try {
-            for (int i = 0; i < apps.size(); i++) {
-                if (apps.get(i).selected_wifi) {
-                    updateExportPackage(exportMap, apps.get(i).pkgName, WIFI_EXPORT);
-                }
-                if (apps.get(i).selected_3g) {
-                    updateExportPackage(exportMap, apps.get(i).pkgName, DATA_EXPORT);
-                }
-                if (apps.get(i).selected_roam) {
-                    updateExportPackage(exportMap, apps.get(i).pkgName, ROAM_EXPORT);
-                }
-                if (apps.get(i).selected_vpn) {
-                    updateExportPackage(exportMap, apps.get(i).pkgName, VPN_EXPORT);
-                }
-                if (apps.get(i).selected_lan) {
-                    updateExportPackage(exportMap, apps.get(i).pkgName, LAN_EXPORT);
-                }
+        Map<String, Integer> exportMap = new HashMap<>();
+        for (PackageInfoData app : apps) {
+            if (app.selected_wifi) {
+                addExportFlag(exportMap, app.pkgName, WIFI_EXPORT);
+            }
+            if (app.selected_3g) {
+                addExportFlag(exportMap, app.pkgName, DATA_EXPORT);
+            }
+            if (app.selected_roam) {
+                addExportFlag(exportMap, app.pkgName, ROAM_EXPORT);
+            }
+            if (app.selected_vpn) {
+                addExportFlag(exportMap, app.pkgName, VPN_EXPORT);
+            }
+            if (app.selected_lan) {
+                addExportFlag(exportMap, app.pkgName, LAN_EXPORT);
             }
-        } catch (JSONException e) {
-            Log.e(TAG, e.getLocalizedMessage());
         }
         return exportMap;
     }
 
+    /**
+     * Write rules as {"pkg": {"0": true, "2": true}, ...}
+     */
+    private static void writeRules(JsonWriter writer, Map<String, Integer> rules) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, Integer> entry : rules.entrySet()) {
+            writer.name(entry.getKey()).beginObject();
+            for (int i = WIFI_EXPORT; i <= LAN_EXPORT; i++) {
+                if ((entry.getValue() & (1 << i)) != 0) {
+                    writer.name(String.valueOf(i)).value(true);
+                }
+            }
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    private static JsonWriter openExport(String fileName) throws IOException {
+        File dir = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/afwall/");
+        dir.mkdirs();
+        return new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, fileName)))));
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Export all profiles and preferences.  Every profile is written as soon as it has been
+     * collected, the document is never held in memory as a whole.
+     */
     public static boolean exportAll(Context ctx, final String fileName) {
         boolean res = false;
-        File sdCard = Environment.getExternalStorageDirectory();
         if (isExternalStorageWritable()) {
-            File dir = new File(sdCard.getAbsolutePath() + "/afwall/");
-            dir.mkdirs();
-            File file = new File(dir, fileName);
-
+            JsonWriter writer = null;
             try {
-                FileOutputStream fOut = new FileOutputStream(file);
-                OutputStreamWriter myOutWriter = new OutputStreamWriter(fOut);
-
-                JSONObject exportObject = new JSONObject();
+                writer = openExport(fileName);
+                PackageManager pm = ctx.getPackageManager();
+                SparseArray<String> names = new SparseArray<>();
+                writer.beginObject();
                 //if multiprofile is enabled
                 if (G.enableMultiProfile()) {
                     if (!G.isProfileMigrated()) {
-                        JSONObject profileObject = new JSONObject();
                         //store all the profile settings
+                        writer.name("profiles").beginObject();
                         for (String profile : G.profiles) {
-                            profileObject.put(profile, new JSONObject(getRulesForProfile(ctx, profile)));
+                            writer.name(profile);
+                            writeRules(writer, getRulesForProfile(ctx, pm, profile, names));
                         }
-                        exportObject.put("profiles", profileObject);
-                        //if any additional profiles
-                        //int defaultProfileCount = 3;
-                        JSONObject addProfileObject = new JSONObject();
+                        writer.endObject();
+                        //support for new profiles
+                        writer.name("additional_profiles").beginObject();
                         for (String profile : G.getAdditionalProfiles()) {
-                            addProfileObject.put(profile, new JSONObject(getRulesForProfile(ctx, profile)));
+                            writer.name(profile);
+                            writeRules(writer, getRulesForProfile(ctx, pm, profile, names));
                         }
-                        //support for new profiles
-                        exportObject.put("additional_profiles", addProfileObject);
+                        writer.endObject();
                     } else {
-                        JSONObject profileObject = new JSONObject();
+                        writer.name("_profiles").beginObject();
                         //add default profile
                         String profileName = "AFWallPrefs";
-                        profileObject.put(profileName, new JSONObject(getRulesForProfile(ctx, profileName)));
+                        writer.name(profileName);
+                        writeRules(writer, getRulesForProfile(ctx, pm, profileName, names));
                         //update for new profile logic
-                        List<ProfileData> profileDataList = ProfileHelper.getProfiles();
-                        //store all the profile settings
-                        for (ProfileData profile : profileDataList) {
+                        for (ProfileData profile : ProfileHelper.getProfiles()) {
                             profileName = profile.getName();
                             if (profile.getIdentifier().startsWith("AFWallProfile")) {
                                 profileName = profile.getIdentifier();
                             }
-                            profileObject.put(profile.getName(), new JSONObject(getRulesForProfile(ctx, profileName)));
+                            writer.name(profile.getName());
+                            writeRules(writer, getRulesForProfile(ctx, pm, profileName, names));
                         }
-                        exportObject.put("_profiles", profileObject);
+                        writer.endObject();
                     }
-
-
                 } else {
                     //default Profile - current one
-                    JSONObject obj = new JSONObject(getCurrentRulesAsMap(ctx));
-                    exportObject.put("default", obj);
+                    writer.name("default");
+                    writeRules(writer, getCurrentRulesAsMap(ctx));
                 }
 
                 //now gets all the preferences
-                exportObject.put("prefs", getAllAppPreferences(ctx, G.gPrefs));
-
-                myOutWriter.append(exportObject.toString());
+                writer.name("prefs");
+                writeAllAppPreferences(writer, G.gPrefs);
+                writer.endObject();
                 res = true;
-                myOutWriter.close();
-                fOut.close();
-            } catch (FileNotFoundException e) {
-                Log.d(TAG, e.getLocalizedMessage());
             } catch (IOException e) {
                 Log.d(TAG, e.getLocalizedMessage());
-            } catch (JSONException e) {
-                Log.d(TAG, e.getLocalizedMessage());
             } catch (Exception e) {
                 Log.d(TAG, e.getLocalizedMessage());
+            } finally {
+                closeQuietly(writer);
             }
         }
 
         return res;
     }
 
-    private static Map<String, JSONObject> getRulesForProfile(Context ctx, String profile) throws JSONException {
-        Map<String, JSONObject> exportMap = new HashMap<>();
+    private static Map<String, Integer> getRulesForProfile(Context ctx, PackageManager pm, String profile,
+                                                           SparseArray<String> names) {
+        Map<String, Integer> exportMap = new HashMap<>();
         SharedPreferences prefs = ctx.getSharedPreferences(profile, Context.MODE_PRIVATE);
-        updatePackage(ctx, prefs.getString(PREF_WIFI_PKG_UIDS, ""), exportMap, WIFI_EXPORT);
-        updatePackage(ctx, prefs.getString(PREF_3G_PKG_UIDS, ""), exportMap, DATA_EXPORT);
-        updatePackage(ctx, prefs.getString(PREF_ROAMING_PKG_UIDS, ""), exportMap, ROAM_EXPORT);
-        updatePackage(ctx, prefs.getString(PREF_VPN_PKG_UIDS, ""), exportMap, VPN_EXPORT);
-        updatePackage(ctx, prefs.getString(PREF_LAN_PKG_UIDS, ""), exportMap, LAN_EXPORT);
+        updatePackage(pm, prefs.getString(PREF_WIFI_PKG_UIDS, ""), exportMap, WIFI_EXPORT, names);
+        updatePackage(pm, prefs.getString(PREF_3G_PKG_UIDS, ""), exportMap, DATA_EXPORT, names);
+        updatePackage(pm, prefs.getString(PREF_ROAMING_PKG_UIDS, ""), exportMap, ROAM_EXPORT, names);
+        updatePackage(pm, prefs.getString(PREF_VPN_PKG_UIDS, ""), exportMap, VPN_EXPORT, names);
+        updatePackage(pm, prefs.getString(PREF_LAN_PKG_UIDS, ""), exportMap, LAN_EXPORT, names);
         return exportMap;
     }
 
-    private static JSONArray getAllAppPreferences(Context ctx, SharedPreferences gPrefs) throws JSONException {
-        Map<String, ?> keys = gPrefs.getAll();
-        JSONArray arr = new JSONArray();
-        for (Map.Entry<String, ?> entry : keys.entrySet()) {
-            JSONObject obj = new JSONObject();
-            obj.put(entry.getKey(), entry.getValue().toString());
-            arr.put(obj);
+    /**
+     * Write preferences as [{"key": "value"}, ...], all values as strings
+     */
+    private static void writeAllAppPreferences(JsonWriter writer, SharedPreferences gPrefs) throws IOException {
+        writer.beginArray();
+        for (Map.Entry<String, ?> entry : gPrefs.getAll().entrySet()) {
+            writer.beginObject().name(entry.getKey()).value(entry.getValue().toString()).endObject();
         }
-        return arr;
+        writer.endArray();
     }
 
     public static boolean exportRules(Context ctx, final String fileName) {
         boolean res = false;
-        File sdCard = Environment.getExternalStorageDirectory();
         if (isExternalStorageWritable()) {
-            File dir = new File(sdCard.getAbsolutePath() + "/afwall/");
-            dir.mkdirs();
-            File file = new File(dir, fileName);
+            JsonWriter writer = null;
             try {
-                FileOutputStream fOut = new FileOutputStream(file);
-                OutputStreamWriter myOutWriter = new OutputStreamWriter(fOut);
-
+                writer = openExport(fileName);
                 //default Profile - current one
-                JSONObject obj = new JSONObject(getCurrentRulesAsMap(ctx));
-                JSONArray jArray = new JSONArray("[" + obj.toString() + "]");
-
-                myOutWriter.append(jArray.toString());
+                writer.beginArray();
+                writeRules(writer, getCurrentRulesAsMap(ctx));
+                writer.endArray();
                 res = true;
-                myOutWriter.close();
-                fOut.close();
-            } catch (FileNotFoundException e) {
-                Log.e(TAG, e.getLocalizedMessage());
-            } catch (JSONException e) {
-                Log.e(TAG, e.getLocalizedMessage());
             } catch (IOException e) {
                 Log.e(TAG, e.getLocalizedMessage());
+            } finally {
+                closeQuietly(writer);
             }
         }
 
@@ -2432,140 +2902,51 @@ public final class Api {
 
     private static boolean importRules(Context ctx, File file, StringBuilder msg) {
         boolean returnVal = false;
-        BufferedReader br = null;
+        BufferedReader reader = null;
         try {
-            StringBuilder text = new StringBuilder();
-            br = new BufferedReader(new FileReader(file));
-            String line;
-            while ((line = br.readLine()) != null) {
-                text.append(line);
-            }
-            String data = text.toString();
-            JSONArray array = new JSONArray(data);
-            updateRulesFromJson(ctx, (JSONObject) array.get(0), PREFS_NAME);
+            reader = new BufferedReader(new FileReader(file));
+            Map<String, Integer> rules = BackupReader.readRulesOnly(reader);
+            updateRulesFromJson(ctx, rules, PREFS_NAME, getPackageUids(ctx));
             returnVal = true;
         } catch (FileNotFoundException e) {
             msg.append(ctx.getString(R.string.import_rules_missing));
         } catch (IOException e) {
             Log.e(TAG, e.getLocalizedMessage());
-        } catch (JSONException e) {
+        } catch (IllegalStateException e) {
+            // not the expected document structure
             Log.e(TAG, e.getLocalizedMessage());
         } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    Log.e(TAG, e.getLocalizedMessage());
-                }
-            }
+            closeQuietly(reader);
         }
         return returnVal;
     }
 
-
-    private static void updateRulesFromJson(Context ctx, JSONObject object, String preferenceName) throws JSONException {
-        final StringBuilder wifi_uids = new StringBuilder();
-        final StringBuilder data_uids = new StringBuilder();
-        final StringBuilder roam_uids = new StringBuilder();
-        final StringBuilder vpn_uids = new StringBuilder();
-        final StringBuilder lan_uids = new StringBuilder();
-
-        Map<String, Object> json = JsonHelper.toMap(object);
-        final PackageManager pm = ctx.getPackageManager();
-
-        for (Map.Entry<String, Object> entry : json.entrySet()) {
-            String pkgName = entry.getKey();
-            if (pkgName.contains(":")) {
-                pkgName = pkgName.split(":")[0];
-            }
-
-            JSONObject jsonObj = (JSONObject) JsonHelper.toJSON(entry.getValue());
-            Iterator<?> keys = jsonObj.keys();
-            while (keys.hasNext()) {
-                //get wifi/data/lan etc
-                String key = (String) keys.next();
-                switch (Integer.parseInt(key)) {
-                    case WIFI_EXPORT:
-                        if (wifi_uids.length() != 0) {
-                            wifi_uids.append('|');
-                        }
-                        if (pkgName.startsWith("dev.afwall.special")) {
-                            wifi_uids.append(specialApps.get(pkgName));
-                        } else {
-                            try {
-                                wifi_uids.append(pm.getApplicationInfo(pkgName, 0).uid);
-                            } catch (NameNotFoundException e) {
-
-                            }
-                        }
-                        break;
-                    case DATA_EXPORT:
-                        if (data_uids.length() != 0) {
-                            data_uids.append('|');
-                        }
-                        if (pkgName.startsWith("dev.afwall.special")) {
-                            data_uids.append(specialApps.get(pkgName));
-                        } else {
-                            try {
-                                data_uids.append(pm.getApplicationInfo(pkgName, 0).uid);
-                            } catch (NameNotFoundException e) {
-
-                            }
-                        }
-                        break;
-                    case ROAM_EXPORT:
-                        if (roam_uids.length() != 0) {
-                            roam_uids.append('|');
-                        }
-                        if (pkgName.startsWith("dev.afwall.special")) {
-                            roam_uids.append(specialApps.get(pkgName));
-                        } else {
-                            try {
-                                roam_uids.append(pm.getApplicationInfo(pkgName, 0).uid);
-                            } catch (NameNotFoundException e) {
-
-                            }
-                        }
-                        break;
-                    case VPN_EXPORT:
-                        if (vpn_uids.length() != 0) {
-                            vpn_uids.append('|');
-                        }
-                        if (pkgName.startsWith("dev.afwall.special")) {
-                            vpn_uids.append(specialApps.get(pkgName));
-                        } else {
-                            try {
-                                vpn_uids.append(pm.getApplicationInfo(pkgName, 0).uid);
-                            } catch (NameNotFoundException e) {
-
-                            }
-                        }
-                        break;
-                    case LAN_EXPORT:
-                        if (lan_uids.length() != 0) {
-                            lan_uids.append('|');
-                        }
-                        if (pkgName.startsWith("dev.afwall.special")) {
-                            lan_uids.append(specialApps.get(pkgName));
-                        } else {
-                            try {
-                                lan_uids.append(pm.getApplicationInfo(pkgName, 0).uid);
-                            } catch (NameNotFoundException e) {
-
-                            }
-                        }
-                        break;
-                }
-
-            }
+    /**
+     * Resolve all installed packages in one pass, shared by every profile and network
+     * class of an import
+     *
+     * @return package name to uid
+     */
+    static Map<String, Integer> getPackageUids(Context ctx) {
+        Map<String, Integer> uids = new HashMap<>();
+        for (ApplicationInfo info : ctx.getPackageManager().getInstalledApplications(0)) {
+            uids.put(info.packageName, info.uid);
         }
+        initSpecial();
+        uids.putAll(specialApps);
+        return uids;
+    }
+
+    static void updateRulesFromJson(Context ctx, Map<String, Integer> rules, String preferenceName,
+                                            Map<String, Integer> uids) {
+        String[] lists = BackupReader.uidLists(rules, uids);
         final SharedPreferences prefs = ctx.getSharedPreferences(preferenceName, Context.MODE_PRIVATE);
         final Editor edit = prefs.edit();
-        edit.putString(PREF_WIFI_PKG_UIDS, wifi_uids.toString());
-        edit.putString(PREF_3G_PKG_UIDS, data_uids.toString());
-        edit.putString(PREF_ROAMING_PKG_UIDS, roam_uids.toString());
-        edit.putString(PREF_VPN_PKG_UIDS, vpn_uids.toString());
-        edit.putString(PREF_LAN_PKG_UIDS, lan_uids.toString());
+        edit.putString(PREF_WIFI_PKG_UIDS, lists[WIFI_EXPORT]);
+        edit.putString(PREF_3G_PKG_UIDS, lists[DATA_EXPORT]);
+        edit.putString(PREF_ROAMING_PKG_UIDS, lists[ROAM_EXPORT]);
+        edit.putString(PREF_VPN_PKG_UIDS, lists[VPN_EXPORT]);
+        edit.putString(PREF_LAN_PKG_UIDS, lists[LAN_EXPORT]);
 
         edit.commit();
 
@@ -2573,118 +2954,73 @@ public final class Api {
 
     private static boolean importAll(Context ctx, File file, StringBuilder msg) {
         boolean returnVal = false;
-        BufferedReader br = null;
+        BufferedReader reader = null;
 
         try {
-            StringBuilder text = new StringBuilder();
-            br = new BufferedReader(new FileReader(file));
-            String line;
-            while ((line = br.readLine()) != null) {
-                text.append(line);
-            }
-            String data = text.toString();
-            JSONObject object = new JSONObject(data);
-            String[] ignore = {"appVersion", "fixLeak", "enableLogService", "sort", "storedProfile", "hasRoot", "logChains", "kingDetect", "fingerprintEnabled"};
-            String[] intType = {"logPingTime", "customDelay", "patternMax", "widgetX", "widgetY", "notification_priority"};
-            List<String> ignoreList = Arrays.asList(ignore);
-            List<String> intList = Arrays.asList(intType);
-            JSONArray prefArray = (JSONArray) object.get("prefs");
-            for (int i = 0; i < prefArray.length(); i++) {
-                JSONObject prefObj = (JSONObject) prefArray.get(i);
-                Iterator<?> keys = prefObj.keys();
-
-                while (keys.hasNext()) {
-                    String key = (String) keys.next();
-                    String value = (String) prefObj.get(key);
-                    if (!ignoreList.contains(key)) {
-                        //boolean type values
-                        if (value.equals("true") || value.equals("false")) {
-                            G.gPrefs.edit().putBoolean(key, Boolean.parseBoolean(value)).commit();
-                        } else {
-                            try {
-                                //handle Long
-                                if (key.equals("multiUserId")) {
-                                    G.gPrefs.edit().putLong(key, Long.parseLong(value)).commit();
-                                } else if (intList.contains(key)) {
-                                    G.gPrefs.edit().putString(key, value).commit();
-                                } else {
-                                    Integer intValue = Integer.parseInt(value);
-                                    G.gPrefs.edit().putInt(key, intValue).commit();
-                                }
-                            } catch (NumberFormatException e) {
-                                G.gPrefs.edit().putString(key, value).commit();
-                            }
-                        }
-                    }
-                }
+            // collect the sections first, which profile section applies depends on the imported prefs
+            reader = new BufferedReader(new FileReader(file));
+            BackupReader backup = BackupReader.readAll(reader);
+            if (backup.prefs == null) {
+                Log.e(TAG, "Import: no prefs in " + file.getName());
+                return false;
             }
+            Map<String, Map<String, Map<String, Integer>>> sections = backup.sections;
+            Map<String, Integer> defaultRules = backup.defaultRules;
+
+            // one editor and a single commit for all preferences
+            Editor edit = G.gPrefs.edit();
+            backup.restorePreferences(edit);
+            edit.commit();
+
+            Map<String, Integer> uids = getPackageUids(ctx);
             if (G.enableMultiProfile()) {
                 if (G.isProfileMigrated()) {
-                    JSONObject profileObject = object.getJSONObject("_profiles");
-                    Iterator<?> keys = profileObject.keys();
-                    while (keys.hasNext()) {
-                        String key = (String) keys.next();
+                    Map<String, Map<String, Integer>> profiles = sections.get("_profiles");
+                    if (profiles == null) {
+                        Log.e(TAG, "Import: no _profiles in " + file.getName());
+                        return false;
+                    }
+                    for (Map.Entry<String, Map<String, Integer>> profile : profiles.entrySet()) {
+                        String key = profile.getKey();
                         String identifier = key.replaceAll("\\s+", "");
                         ProfileData profileData = new ProfileData(key, identifier);
                         profileData.save();
-                        try {
-                            JSONObject obj = profileObject.getJSONObject(key);
-                            updateRulesFromJson(ctx, obj, key);
-                        } catch (JSONException e) {
-                            if (e.getMessage().contains("No value")) {
-                                continue;
-                            }
-                        }
+                        updateRulesFromJson(ctx, profile.getValue(), key, uids);
                     }
+                    ProfileResolver.invalidateParents();
                 } else {
-                    JSONObject profileObject = object.getJSONObject("profiles");
-                    Iterator<?> keys = profileObject.keys();
-                    while (keys.hasNext()) {
-                        String key = (String) keys.next();
-                        try {
-                            JSONObject obj = profileObject.getJSONObject(key);
-                            updateRulesFromJson(ctx, obj, key);
-                        } catch (JSONException e) {
-                            if (e.getMessage().contains("No value")) {
-                                continue;
-                            }
-                        }
-                    }
+                    Map<String, Map<String, Integer>> profiles = sections.get("profiles");
                     //handle custom/additional profiles
-                    JSONObject customProfileObject = object.getJSONObject("additional_profiles");
-                    keys = customProfileObject.keys();
-                    while (keys.hasNext()) {
-                        String key = (String) keys.next();
-                        try {
-                            JSONObject obj = customProfileObject.getJSONObject(key);
-                            updateRulesFromJson(ctx, obj, key);
-                        } catch (JSONException e) {
-                            if (e.getMessage().contains("No value")) {
-                                continue;
-                            }
-                        }
+                    Map<String, Map<String, Integer>> additional = sections.get("additional_profiles");
+                    if (profiles == null || additional == null) {
+                        Log.e(TAG, "Import: no profiles in " + file.getName());
+                        return false;
+                    }
+                    for (Map.Entry<String, Map<String, Integer>> profile : profiles.entrySet()) {
+                        updateRulesFromJson(ctx, profile.getValue(), profile.getKey(), uids);
+                    }
+                    for (Map.Entry<String, Map<String, Integer>> profile : additional.entrySet()) {
+                        updateRulesFromJson(ctx, profile.getValue(), profile.getKey(), uids);
                     }
                 }
             } else {
                 //now restore the default profile
-                JSONObject defaultRules = object.getJSONObject("default");
-                updateRulesFromJson(ctx, defaultRules, PREFS_NAME);
+                if (defaultRules == null) {
+                    Log.e(TAG, "Import: no default rules in " + file.getName());
+                    return false;
+                }
+                updateRulesFromJson(ctx, defaultRules, PREFS_NAME, uids);
             }
             returnVal = true;
         } catch (FileNotFoundException e) {
             msg.append(ctx.getString(R.string.import_rules_missing));
         } catch (IOException e) {
             Log.e(TAG, e.getLocalizedMessage());
-        } catch (JSONException e) {
+        } catch (IllegalStateException e) {
+            // not the expected document structure
             Log.e(TAG, e.getLocalizedMessage());
         } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    Log.e(TAG, e.getLocalizedMessage());
-                }
-            }
+            closeQuietly(reader);
         }
         return returnVal;
     }
@@ -2694,7 +3030,9 @@ public final class Api {
         boolean res = false;
         File file = new File(fileName);
         if (file.exists()) {
-            if (loadAll) {
+            if (fileName.endsWith(RulesSnapshot.EXTENSION)) {
+                res = importSnapshot(ctx, file, builder);
+            } else if (loadAll) {
                 res = importAll(ctx, file, builder);
             } else {
                 res = importRules(ctx, file, builder);
@@ -2738,6 +3076,12 @@ public final class Api {
                 return;
             }
             boolean logSet = false;
+            // only the IPv4 probe lists matches, hashlimit serves both families
+            if (state.res.indexOf("hashlimit") >= 0) {
+                G.logHashlimit(true);
+            } else if (state.getCommmands().get(0).contains("matches")) {
+                G.logHashlimit(false);
+            }
             for (String str : state.res.toString().split("\n")) {
                 if (str.equals("LOG")) {
                     G.logTarget("LOG");
@@ -2779,7 +3123,7 @@ public final class Api {
             return;
         }
 
-        if (G.logTarget() == null || G.logTarget().isEmpty()) {
+        if (G.logTarget() == null || G.logTarget().isEmpty() || !G.isLogMatchesProbed()) {
             LogProbeCallback cb = new LogProbeCallback();
             cb.ctx = ctx;
             // probe for LOG/NFLOG targets (unfortunately the file must be read by root)
@@ -2797,7 +3141,7 @@ public final class Api {
                     .setFailureToast(R.string.log_toggle_failed)
                     .setCallback(cb)
                     .setLogging(true)
-                    .run(ctx, "cat /proc/net/ip_tables_targets");
+                    .run(ctx, "cat /proc/net/ip_tables_targets && (cat /proc/net/ip_tables_matches; true)");
         } else {
             G.enableLogService(true);
             updateLogRules(ctx, new RootCommand()
@@ -2885,19 +3229,7 @@ public final class Api {
 
     public static RuleDataSet getExistingRuleSet() {
         initSpecial();
-
-        final String savedPkg_wifi_uid = G.pPrefs.getString(PREF_WIFI_PKG_UIDS, "");
-        final String savedPkg_3g_uid = G.pPrefs.getString(PREF_3G_PKG_UIDS, "");
-        final String savedPkg_roam_uid = G.pPrefs.getString(PREF_ROAMING_PKG_UIDS, "");
-        final String savedPkg_vpn_uid = G.pPrefs.getString(PREF_VPN_PKG_UIDS, "");
-        final String savedPkg_lan_uid = G.pPrefs.getString(PREF_LAN_PKG_UIDS, "");
-
-        Api.RuleDataSet dataSet = new Api.RuleDataSet(getListFromPref(savedPkg_wifi_uid),
-                getListFromPref(savedPkg_3g_uid),
-                getListFromPref(savedPkg_roam_uid),
-                getListFromPref(savedPkg_vpn_uid),
-                getListFromPref(savedPkg_lan_uid));
-        return dataSet;
+        return ProfileResolver.resolve(G.ctx, PREFS_NAME);
     }
 
     public static boolean hasKernelFeature(String[] features,
@@ -2921,6 +3253,11 @@ public final class Api {
         return new File("/proc/config.gz").exists();
     }
 
+    static Map<String, Integer> getSpecialApps() {
+        initSpecial();
+        return specialApps;
+    }
+
     private static void initSpecial() {
         if (specialApps == null || specialApps.size() == 0) {
             specialApps = new HashMap<String, Integer>();
@@ -2956,13 +3293,7 @@ public final class Api {
     public static void setUserOwner(Context context) {
         if (supportsMultipleUsers(context)) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-                try {
-                    Method getUserHandle = UserManager.class.getMethod("getUserHandle");
-                    int userHandle = (Integer) getUserHandle.invoke(context.getSystemService(Context.USER_SERVICE));
-                    G.setMultiUserId(userHandle);
-                } catch (Exception ex) {
-                    Log.e(TAG, "Exception on setUserOwner " + ex.getMessage());
-                }
+                G.setMultiUserId(UserUids.currentUserId());
             }
         }
     }
@@ -3255,19 +3586,7 @@ public final class Api {
     }
 
     public static boolean hasRoot() {
-        final boolean[] hasRoot = new boolean[1];
-        Thread t = new Thread() {
-            @Override
-            public void run() {
-                hasRoot[0] = Shell.SU.available();
-            }
-        };
-        t.start();
-        try {
-            t.join();
-        } catch (InterruptedException e) {
-        }
-        return hasRoot[0];
+        return RootSessions.isRootAvailable();
     }
 
     // Clipboard
@@ -3301,16 +3620,135 @@ public final class Api {
     }
 
 
+    /**
+     * Compare the installed script with the bundled one line by line.  The init path is read
+     * directly where possible and through root otherwise.  Blocking, call it off the UI thread.
+     *
+     * @param fileName
+     * @return true if the installed copy has the same content as the bundled script, false
+     * if it differs, is missing or can't be read
+     */
+    private static boolean isFixPathFileCurrent(String fileName) {
+        if (!isFixPathFileExist(fileName)) {
+            return false;
+        }
+        List<String> bundled = readLines(new File(ctx.getDir("bin", 0), fileName));
+        File file = new File(getFixLeakPath(fileName));
+        List<String> installed = file.canRead() ? readLines(file) : null;
+        if (installed == null) {
+            installed = new ArrayList<>();
+            if (RootSessions.run(RootSessions.Priority.DIAGNOSTICS, "cat " + file.getAbsolutePath(), installed) != 0) {
+                return false;
+            }
+        }
+        return bundled != null && bundled.equals(installed);
+    }
+
+    /**
+     * @return lines of file, null if it can't be read
+     */
+    private static List<String> readLines(File file) {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + file + ": " + e.getLocalizedMessage());
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
     public static boolean mountDir(Context context, String path, String mountType) {
         if (path != null) {
-            String busyboxPath = Api.getBusyBoxPath(context, false);
-            return RootTools.remount(path, mountType, busyboxPath);
+            String mountPoint = getMountPoint(path);
+            if (mountPoint == null) {
+                return false;
+            }
+            String option = "-o remount," + mountType.toLowerCase() + " " + mountPoint;
+            List<String> cmds = new ArrayList<>();
+            cmds.add("mount " + option + " || " + Api.getBusyBoxPath(context, false) + "mount " + option);
+            return RootSessions.run(RootSessions.Priority.DIAGNOSTICS, cmds, null) == 0;
+        }
+        return false;
+    }
+
+    /**
+     * Longest mount point of /proc/mounts holding a path
+     *
+     * @param path
+     * @return null if /proc/mounts can't be read
+     */
+    private static String getMountPoint(String path) {
+        String mountPoint = null;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader("/proc/mounts"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length < 2) {
+                    continue;
+                }
+                String point = fields[1];
+                if ((path.equals(point) || path.startsWith(point.endsWith("/") ? point : point + "/"))
+                        && (mountPoint == null || point.length() > mountPoint.length())) {
+                    mountPoint = point;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read mounts: " + e.getLocalizedMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        return mountPoint;
+    }
+
+    /**
+     * Copy a file as root.  Blocking, call it off the UI thread.
+     *
+     * @param source
+     * @param destination file or directory
+     * @return
+     */
+    public static boolean copyFileAsRoot(String source, String destination) {
+        List<String> cmds = new ArrayList<>();
+        // old toolbox has no cp
+        cmds.add("cp -f \"" + source + "\" \"" + destination + "\" || cat \"" + source + "\" > \"" + destination + "\"");
+        return RootSessions.run(RootSessions.Priority.DIAGNOSTICS, cmds, null) == 0;
+    }
+
+    /**
+     * Look a binary up on $PATH, without root
+     *
+     * @param name
+     * @return
+     */
+    public static boolean hasBinary(String name) {
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String dir : path.split(":")) {
+                if (new File(dir, name).exists()) {
+                    return true;
+                }
+            }
         }
         return false;
     }
 
     public static void checkAndCopyFixLeak(final Context context, final String fileName) {
-        if (G.initPath() != null && G.fixLeak() && !isFixPathFileExist(fileName)) {
+        if (G.initPath() != null && G.fixLeak()) {
             final String srcPath = new File(ctx.getDir("bin", 0), fileName)
                     .getAbsolutePath();
             new AsyncTask<Void, Void, Boolean>() {
@@ -3318,7 +3756,7 @@ public final class Api {
                 public Boolean doInBackground(Void... args) {
                     boolean returnFlag = false;
                     String path = G.initPath();
-                    if (path != null) {
+                    if (path != null && !isFixPathFileCurrent(fileName)) {
                         File f = new File(path);
                         if (mountDir(context, getFixLeakPath(fileName), "RW")) {
                             //make sure it's executable
@@ -3326,8 +3764,7 @@ public final class Api {
                                     .setReopenShell(true)
                                     .setLogging(true)
                                     .run(ctx, "chmod 755 " + f.getAbsolutePath());
-                            returnFlag = RootTools.copyFile(srcPath, (f.getAbsolutePath() + "/" + fileName),
-                                    true, false);
+                            returnFlag = copyFileAsRoot(srcPath, f.getAbsolutePath() + "/" + fileName);
                             mountDir(context, getFixLeakPath(fileName), "RO");
                         }
                     }
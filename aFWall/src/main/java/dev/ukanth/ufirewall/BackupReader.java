@@ -0,0 +1,218 @@
+package dev.ukanth.ufirewall;
+
+import android.content.SharedPreferences.Editor;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.ukanth.ufirewall.log.Log;
+
+import static dev.ukanth.ufirewall.Api.LAN_EXPORT;
+import static dev.ukanth.ufirewall.Api.TAG;
+import static dev.ukanth.ufirewall.Api.WIFI_EXPORT;
+
+/**
+ * Streaming reader of the JSON backups written by Api.exportAll() and Api.exportRules().
+ * Rules are kept as one bit mask of network classes per package, the document itself is
+ * never held in memory.
+ */
+
+final class BackupReader {
+
+    /* numeric preferences that are stored as strings */
+    private static final List<String> STRING_PREFS = Arrays.asList("logPingTime", "customDelay", "patternMax",
+            "widgetX", "widgetY", "notification_priority");
+
+    /* global preferences, null if the backup has none */
+    Map<String, String> prefs;
+    /* section (profiles, additional_profiles, _profiles) -> profile name -> rules */
+    final Map<String, Map<String, Map<String, Integer>>> sections = new HashMap<>();
+    /* rules of a backup without multiple profiles */
+    Map<String, Integer> defaultRules;
+
+    private BackupReader() {
+    }
+
+    /**
+     * Read a backup of all profiles and preferences
+     */
+    static BackupReader readAll(Reader in) throws IOException {
+        BackupReader backup = new BackupReader();
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "prefs":
+                    backup.prefs = readPreferences(reader);
+                    break;
+                case "profiles":
+                case "additional_profiles":
+                case "_profiles":
+                    backup.sections.put(name, readProfiles(reader));
+                    break;
+                case "default":
+                    backup.defaultRules = readRules(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return backup;
+    }
+
+    /**
+     * Read a rules only backup, [{"pkg": {"0": true}, ...}]
+     */
+    static Map<String, Integer> readRulesOnly(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        reader.beginArray();
+        return readRules(reader);
+    }
+
+    /**
+     * Read rules written by Api.writeRules()
+     *
+     * @return package name to export flags
+     */
+    private static Map<String, Integer> readRules(JsonReader reader) throws IOException {
+        Map<String, Integer> rules = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String pkgName = reader.nextName();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                // the key alone marks the network class, the value is always true
+                reader.skipValue();
+                try {
+                    int identifier = Integer.parseInt(key);
+                    if (identifier >= WIFI_EXPORT && identifier <= LAN_EXPORT) {
+                        Api.addExportFlag(rules, pkgName, identifier);
+                    }
+                } catch (NumberFormatException e) {
+                    Log.e(TAG, "Unknown network class " + key + " for " + pkgName);
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return rules;
+    }
+
+    /**
+     * Read an object of profile name to rules, in file order
+     */
+    private static Map<String, Map<String, Integer>> readProfiles(JsonReader reader) throws IOException {
+        Map<String, Map<String, Integer>> profiles = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                profiles.put(name, readRules(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return profiles;
+    }
+
+    /**
+     * Read the [{"key": "value"}, ...] preference array
+     */
+    private static Map<String, String> readPreferences(JsonReader reader) throws IOException {
+        Map<String, String> prefs = new LinkedHashMap<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() == JsonToken.BOOLEAN) {
+                    prefs.put(key, String.valueOf(reader.nextBoolean()));
+                } else if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else {
+                    prefs.put(key, reader.nextString());
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return prefs;
+    }
+
+    /**
+     * Put all restorable preferences into one editor, the caller commits once
+     */
+    void restorePreferences(Editor edit) {
+        for (Map.Entry<String, String> entry : prefs.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (Api.IMPORT_IGNORED_PREFS.contains(key)) {
+                continue;
+            }
+            //boolean type values
+            if (value.equals("true") || value.equals("false")) {
+                edit.putBoolean(key, Boolean.parseBoolean(value));
+            } else {
+                try {
+                    //handle Long
+                    if (key.equals("multiUserId")) {
+                        edit.putLong(key, Long.parseLong(value));
+                    } else if (STRING_PREFS.contains(key)) {
+                        edit.putString(key, value);
+                    } else {
+                        edit.putInt(key, Integer.parseInt(value));
+                    }
+                } catch (NumberFormatException e) {
+                    edit.putString(key, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param rules package name to export flags
+     * @param uids  package name to uid of the installed packages, see Api.getPackageUids()
+     * @return pipe separated uids, indexed by network class (WIFI_EXPORT, ...)
+     */
+    static String[] uidLists(Map<String, Integer> rules, Map<String, Integer> uids) {
+        StringBuilder[] lists = new StringBuilder[LAN_EXPORT + 1];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new StringBuilder();
+        }
+        for (Map.Entry<String, Integer> entry : rules.entrySet()) {
+            String pkgName = entry.getKey();
+            if (pkgName.contains(":")) {
+                pkgName = pkgName.split(":")[0];
+            }
+            Integer uid = uids.get(pkgName);
+            if (uid == null) {
+                // not installed on this device
+                continue;
+            }
+            for (int i = WIFI_EXPORT; i <= LAN_EXPORT; i++) {
+                if ((entry.getValue() & (1 << i)) != 0) {
+                    if (lists[i].length() != 0) {
+                        lists[i].append('|');
+                    }
+                    lists[i].append(uid);
+                }
+            }
+        }
+        String[] result = new String[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            result[i] = lists[i].toString();
+        }
+        return result;
+    }
+}
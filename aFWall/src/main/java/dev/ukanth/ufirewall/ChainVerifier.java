@@ -0,0 +1,311 @@
+/**
+ * Detect afwall chains that were flushed, deleted or reordered behind our back
+ * (netd restarts, other firewall tools) and rebuild only those chains.
+ * <p/>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dev.ukanth.ufirewall;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.ukanth.ufirewall.broadcast.ChainVerifyReceiver;
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.RulesFingerprint;
+
+public final class ChainVerifier {
+
+    public static final String TAG = "AFWall";
+
+    public static final String PERIODIC = "PERIODIC";
+
+    private static final String PREFS_NAME = "AFWallVerifier";
+    private static final String KEY_CHECKS = "checks";
+    private static final String KEY_DRIFTS = "drifts";
+    private static final String KEY_FAILURES = "failures";
+    private static final String KEY_REPAIR_TOTAL = "repairTotal";
+    private static final String KEY_REPAIR_LAST = "repairLast";
+    private static final String KEY_LAST_DRIFT = "lastDrift";
+    private static final String KEY_LAST_REASON = "lastReason";
+    private static final String KEY_LAST_CHAINS = "lastChains";
+
+    private static final int REQUEST_CODE = 10222;
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Run verify() every ~15 minutes while the firewall is enabled.  Inexact and non-waking,
+     * a sleeping device doesn't need its chains checked.
+     *
+     * @param ctx
+     */
+    public static void schedule(Context ctx) {
+        AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_FIFTEEN_MINUTES,
+                AlarmManager.INTERVAL_FIFTEEN_MINUTES, pendingIntent(ctx));
+    }
+
+    public static void cancel(Context ctx) {
+        AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(pendingIntent(ctx));
+    }
+
+    private static PendingIntent pendingIntent(Context ctx) {
+        Intent intent = new Intent(ctx, ChainVerifyReceiver.class);
+        return PendingIntent.getBroadcast(ctx.getApplicationContext(), REQUEST_CODE, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Snapshot the live afwall chains and repair the ones that differ from the last apply.
+     * Does nothing while the firewall is disabled or the rules are being rewritten.
+     *
+     * @param context
+     * @param reason  recorded with the drift event
+     */
+    public static void verify(Context context, final String reason) {
+        final Context ctx = context.getApplicationContext();
+        if (!Api.isEnabled(ctx) || RulesFingerprint.expectedLines(ctx, false).isEmpty()) {
+            return;
+        }
+        final String expectedHash = RulesFingerprint.storedKernelHash(ctx);
+        new RootCommand()
+                .setLogging(true)
+                .setPriority(RootCommand.Priority.DIAGNOSTICS)
+                .setCallback(new RootCommand.Callback() {
+                    @Override
+                    public void cbFunc(RootCommand state) {
+                        // an apply finished or started meanwhile, our snapshot is meaningless
+                        if (state.exitCode != 0 || !expectedHash.equals(RulesFingerprint.storedKernelHash(ctx))) {
+                            return;
+                        }
+                        repair(ctx, state.res.toString(), reason,
+                                new RootCommand().setPriority(RootCommand.Priority.CONNECTIVITY));
+                    }
+                }).run(ctx, RulesFingerprint.snapshotCommands(ctx, G.enableIPv6()));
+    }
+
+    /**
+     * Compare a snapshot with the expected chains and rebuild only the drifted ones.
+     *
+     * @param ctx
+     * @param dump     output of RulesFingerprint.snapshotCommands()
+     * @param reason   recorded with the drift event
+     * @param callback completes with exit code 0 right away if nothing drifted
+     */
+    public static void repair(final Context ctx, String dump, final String reason, final RootCommand callback) {
+        List<String> cmds = repairCommands(RulesFingerprint.expectedLines(ctx, false),
+                RulesFingerprint.chainLines(dump, false));
+        List<String> cmds6 = repairCommands(RulesFingerprint.expectedLines(ctx, true),
+                RulesFingerprint.chainLines(dump, true));
+
+        SharedPreferences prefs = prefs(ctx);
+        prefs.edit().putLong(KEY_CHECKS, prefs.getLong(KEY_CHECKS, 0) + 1).apply();
+        if (cmds.isEmpty() && cmds6.isEmpty()) {
+            callback.skip(ctx);
+            return;
+        }
+
+        final String chains = TextUtils.join(",", driftedChains(cmds, cmds6));
+        Log.w(TAG, reason + ": afwall chains drifted (" + chains + "), repairing");
+        prefs.edit().putLong(KEY_DRIFTS, prefs.getLong(KEY_DRIFTS, 0) + 1)
+                .putLong(KEY_LAST_DRIFT, System.currentTimeMillis())
+                .putString(KEY_LAST_REASON, reason)
+                .putString(KEY_LAST_CHAINS, chains).apply();
+
+        final RootCommand.Callback userCallback = callback.cb;
+        final long start = System.currentTimeMillis();
+        List<String> out = new ArrayList<String>();
+        List<String> out6 = new ArrayList<String>();
+        Api.iptablesCommands(cmds, out, false, Api.getBinaryPath(ctx, false));
+        Api.iptablesCommands(cmds6, out6, true, Api.getBinaryPath(ctx, true));
+        callback.setCallback(new RootCommand.Callback() {
+            @Override
+            public void cbFunc(RootCommand state) {
+                long elapsed = System.currentTimeMillis() - start;
+                SharedPreferences prefs = prefs(ctx);
+                SharedPreferences.Editor editor = prefs.edit();
+                if (state.exitCode == 0) {
+                    Log.i(TAG, reason + ": repaired " + chains + " in " + elapsed + " ms");
+                    editor.putLong(KEY_REPAIR_LAST, elapsed)
+                            .putLong(KEY_REPAIR_TOTAL, prefs.getLong(KEY_REPAIR_TOTAL, 0) + elapsed);
+                } else {
+                    Log.e(TAG, reason + ": unable to repair " + chains + ", exit code " + state.exitCode);
+                    editor.putLong(KEY_FAILURES, prefs.getLong(KEY_FAILURES, 0) + 1);
+                }
+                editor.apply();
+                if (userCallback != null) {
+                    userCallback.cbFunc(state);
+                }
+            }
+        }).runParallel(ctx, out, out6.isEmpty() ? null : out6);
+    }
+
+    /**
+     * Group "iptables -S" lines by chain, preserving kernel order
+     */
+    private static Map<String, List<String>> byChain(List<String> lines) {
+        Map<String, List<String>> chains = new LinkedHashMap<String, List<String>>();
+        for (String line : lines) {
+            String[] parts = line.split(" ", 3);
+            if (parts.length < 2 || !(parts[0].equals("-N") || parts[0].equals("-A"))) {
+                continue;
+            }
+            List<String> chain = chains.get(parts[1]);
+            if (chain == null) {
+                chain = new ArrayList<String>();
+                chains.put(parts[1], chain);
+            }
+            chain.add(line);
+        }
+        return chains;
+    }
+
+    private static boolean isOwnChain(String chain) {
+        return chain.startsWith(RulesFingerprint.CHAIN_PREFIX);
+    }
+
+    /**
+     * Commands (without the iptables binary) that turn the live chains back into the
+     * expected ones.  Our chains are flushed and refilled.  In the built-in chains the lines
+     * up to our jumps are compared, so a rule inserted above a jump counts as drift too, but
+     * only the jumps are replaced, at the top like a full apply does; other rules stay.
+     *
+     * @param expected chain lines recorded after the last apply
+     * @param live     chain lines currently in the kernel
+     * @return empty if nothing drifted
+     */
+    static List<String> repairCommands(List<String> expected, List<String> live) {
+        Map<String, List<String>> want = byChain(expected);
+        Map<String, List<String>> have = byChain(live);
+
+        List<String> drifted = new ArrayList<String>();
+        for (String chain : want.keySet()) {
+            if (!want.get(chain).equals(have.get(chain))) {
+                drifted.add(chain);
+            }
+        }
+        for (String chain : have.keySet()) {
+            // stale chains of our own are harmless, unexpected jumps into them are not
+            if (!isOwnChain(chain) && !want.containsKey(chain)) {
+                drifted.add(chain);
+            }
+        }
+
+        List<String> cmds = new ArrayList<String>();
+        if (drifted.isEmpty()) {
+            return cmds;
+        }
+        // create every missing chain first, refilled chains may jump into each other
+        for (String chain : drifted) {
+            if (isOwnChain(chain)) {
+                cmds.add("#NOCHK# -N " + chain);
+            }
+        }
+        for (String chain : drifted) {
+            if (isOwnChain(chain)) {
+                cmds.add("-F " + chain);
+                for (String line : want.get(chain)) {
+                    if (line.startsWith("-A ")) {
+                        cmds.add(line);
+                    }
+                }
+            }
+        }
+        for (String chain : drifted) {
+            if (isOwnChain(chain)) {
+                continue;
+            }
+            List<String> current = have.get(chain);
+            if (current != null) {
+                for (String line : current) {
+                    if (isJump(line)) {
+                        cmds.add("#NOCHK# -D " + line.substring(3));
+                    }
+                }
+            }
+            List<String> jumps = want.get(chain);
+            if (jumps != null) {
+                jumps = new ArrayList<String>(jumps);
+                Collections.reverse(jumps);
+                for (String line : jumps) {
+                    if (isJump(line)) {
+                        cmds.add("-I " + chain + " 1 " + line.substring(4 + chain.length()));
+                    }
+                }
+            }
+        }
+        return cmds;
+    }
+
+    /**
+     * @return true if a built-in chain line jumps into one of our chains
+     */
+    private static boolean isJump(String line) {
+        return line.contains(RulesFingerprint.CHAIN_PREFIX);
+    }
+
+    private static List<String> driftedChains(List<String> cmds, List<String> cmds6) {
+        List<String> chains = new ArrayList<String>();
+        List<String> all = new ArrayList<String>(cmds);
+        all.addAll(cmds6);
+        for (String cmd : all) {
+            String[] parts = cmd.replaceFirst("^#NOCHK# ", "").split(" ");
+            if (parts.length > 1 && (parts[0].equals("-F") || parts[0].equals("-I"))
+                    && !chains.contains(parts[1])) {
+                chains.add(parts[1]);
+            }
+        }
+        return chains;
+    }
+
+    public static String getStats(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        long drifts = prefs.getLong(KEY_DRIFTS, 0);
+        long failures = prefs.getLong(KEY_FAILURES, 0);
+        StringBuilder result = new StringBuilder();
+        result.append("Chain checks: " + prefs.getLong(KEY_CHECKS, 0) + ", drifts: " + drifts
+                + ", failed repairs: " + failures + "\n");
+        if (drifts > 0) {
+            long repaired = drifts - failures;
+            result.append("Last drift: "
+                    + DateFormat.getDateTimeInstance().format(new Date(prefs.getLong(KEY_LAST_DRIFT, 0)))
+                    + " (" + prefs.getString(KEY_LAST_REASON, "") + ") "
+                    + prefs.getString(KEY_LAST_CHAINS, "") + "\n");
+            result.append("Repair time: last " + prefs.getLong(KEY_REPAIR_LAST, 0) + " ms"
+                    + (repaired > 0 ? ", avg " + (prefs.getLong(KEY_REPAIR_TOTAL, 0) / repaired) + " ms" : "")
+                    + "\n");
+        }
+        return result.toString();
+    }
+}
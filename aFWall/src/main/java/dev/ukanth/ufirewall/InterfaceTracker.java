@@ -46,7 +46,10 @@ import java.util.Iterator;
 
 import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.service.RootResult;
+import dev.ukanth.ufirewall.util.BootRules;
 import dev.ukanth.ufirewall.util.G;
+import io.reactivex.Single;
 
 import static dev.ukanth.ufirewall.util.G.ctx;
 
@@ -263,49 +266,42 @@ public final class InterfaceTracker {
     }
 
     public static void applyRules(final String reason) {
-        Api.fastApply(ctx, new RootCommand()
-                .setFailureToast(R.string.error_apply)
-                .setCallback(new RootCommand.Callback() {
-                    @Override
-                    public void cbFunc(RootCommand state) {
-                        if (state.exitCode == 0) {
-                            Log.i(TAG, reason + ": applied rules at " + System.currentTimeMillis());
-                            Api.applyDefaultChains(ctx, new RootCommand()
-                                    .setCallback(new RootCommand.Callback() {
-                                        @Override
-                                        public void cbFunc(RootCommand state) {
-                                            if (state.exitCode != 0) {
-                                                errorNotification(ctx);
-                                            }
-                                        }
-                                    }));
-                        } else {
-                            //lets try applying all rules
-                            Api.setRulesUpToDate(false);
-                            Api.fastApply(ctx, new RootCommand()
-                                    .setCallback(new RootCommand.Callback() {
-                                        @Override
-                                        public void cbFunc(RootCommand state) {
-                                            if (state.exitCode == 0) {
-                                                Log.i(TAG, reason + ": applied rules at " + System.currentTimeMillis());
-                                            } else {
-                                                Log.e(TAG, reason + ": applySavedIptablesRules() returned an error");
-                                                errorNotification(ctx);
-                                            }
-                                            Api.applyDefaultChains(ctx, new RootCommand()
-                                                    .setFailureToast(R.string.error_apply)
-                                                    .setCallback(new RootCommand.Callback() {
-                                                        @Override
-                                                        public void cbFunc(RootCommand state) {
-                                                            if (state.exitCode != 0) {
-                                                                errorNotification(ctx);
-                                                            }
-                                                        }
-                                                    }));
-                                        }
-                                    }));
-                        }
+        RootCommand.single(cmd -> Api.fastApply(ctx, cmd.setPriority(RootCommand.Priority.CONNECTIVITY)
+                .setFailureToast(R.string.error_apply)))
+                .flatMap(result -> {
+                    if (result.isSuccess()) {
+                        return applyDefaultChains(reason, result, false);
+                    }
+                    //lets try applying all rules
+                    Api.setRulesUpToDate(false);
+                    return RootCommand.single(cmd -> Api.fastApply(ctx, cmd.setPriority(RootCommand.Priority.CONNECTIVITY)))
+                            .flatMap(fallback -> applyDefaultChains(reason, fallback, true));
+                })
+                .subscribe(result -> {
+                    if (!result.isSuccess()) {
+                        errorNotification(ctx);
                     }
-                }));
+                }, error -> Log.e(TAG, reason + ": unable to apply rules: " + error.getMessage()));
+    }
+
+    /**
+     * @param applied  result of the rules apply
+     * @param fallback the rules were applied a second time after the first attempt failed, a
+     *                 failure of the default chains is then shown as a toast too
+     */
+    private static Single<RootResult> applyDefaultChains(String reason, RootResult applied, boolean fallback) {
+        if (applied.isSuccess()) {
+            Log.i(TAG, reason + ": applied rules at " + System.currentTimeMillis());
+            if (BOOT_COMPLETED.equals(reason)) {
+                BootRules.enforced(ctx);
+            }
+        } else {
+            Log.e(TAG, reason + ": applySavedIptablesRules() returned an error");
+            errorNotification(ctx);
+        }
+        return RootCommand.single(cmd -> {
+            cmd.setPriority(RootCommand.Priority.CONNECTIVITY);
+            Api.applyDefaultChains(ctx, fallback ? cmd.setFailureToast(R.string.error_apply) : cmd);
+        });
     }
 }
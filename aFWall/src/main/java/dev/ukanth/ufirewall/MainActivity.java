@@ -51,6 +51,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.text.Editable;
 import android.text.InputType;
+import android.text.TextUtils;
 import android.text.TextUtils.TruncateAt;
 import android.text.TextWatcher;
 import android.view.KeyEvent;
@@ -74,15 +75,17 @@ import android.widget.Toast;
 
 import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
-import com.raizlabs.android.dbflow.config.FlowManager;
 import com.squareup.leakcanary.LeakCanary;
 
 import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import dev.ukanth.ufirewall.Api.PackageInfoData;
 import dev.ukanth.ufirewall.activity.CustomScriptActivity;
@@ -90,20 +93,22 @@ import dev.ukanth.ufirewall.activity.HelpActivity;
 import dev.ukanth.ufirewall.activity.LogActivity;
 import dev.ukanth.ufirewall.activity.OldLogActivity;
 import dev.ukanth.ufirewall.activity.RulesActivity;
+import dev.ukanth.ufirewall.customrules.AddressRules;
 import dev.ukanth.ufirewall.log.Log;
-import dev.ukanth.ufirewall.log.LogPreference;
-import dev.ukanth.ufirewall.log.LogPreferenceDB;
 import dev.ukanth.ufirewall.preferences.PreferencesActivity;
 import dev.ukanth.ufirewall.profiles.ProfileData;
 import dev.ukanth.ufirewall.profiles.ProfileHelper;
+import dev.ukanth.ufirewall.schedule.Scheduler;
 import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.service.RootSessions;
 import dev.ukanth.ufirewall.util.AppListArrayAdapter;
 import dev.ukanth.ufirewall.util.FileDialog;
 import dev.ukanth.ufirewall.util.FingerprintUtil;
 import dev.ukanth.ufirewall.util.G;
 import dev.ukanth.ufirewall.util.ImportApi;
+import dev.ukanth.ufirewall.util.Metrics;
 import dev.ukanth.ufirewall.util.PackageComparator;
-import eu.chainfire.libsuperuser.Shell;
+import dev.ukanth.ufirewall.util.RuleState;
 import haibison.android.lockpattern.LockPatternActivity;
 import haibison.android.lockpattern.utils.AlpSettings;
 
@@ -152,10 +157,9 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
     private BroadcastReceiver uiProgressReceiver;
     private BroadcastReceiver toastReceiver;
 
-    private Shell.Interactive rootShell = null;
 
     public boolean isDirty() {
-        return dirty;
+        return dirty || RuleState.hasChanges();
     }
 
     public void setDirty(boolean dirty) {
@@ -213,7 +217,7 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         if (!G.hasRoot()) {
             (new RootCheck()).setContext(this).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         } else {
-            startRootShell(rootShell);
+            startRootShell();
             passCheck();
         }
         //registerQuickApply();
@@ -227,11 +231,7 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         if(!G.isNotificationMigrated()){
             List<Integer> idList = G.getBlockedNotifyList();
             for(Integer uid: idList) {
-                LogPreference preference = new LogPreference();
-                preference.setUid(uid);
-                preference.setTimestamp(System.currentTimeMillis());
-                preference.setDisable(true);
-                FlowManager.getDatabase(LogPreferenceDB.class).beginTransactionAsync(databaseWrapper -> preference.save(databaseWrapper)).build().execute();
+                G.updateLogNotification(uid, true);
             }
             G.isNotificationMigrated(true);
         }
@@ -352,27 +352,25 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         }
     }
 
-    private void startRootShell(Shell.Interactive rootShell) {
-        if (rootShell == null) {
-            List<String> cmds = new ArrayList<String>();
-            cmds.add("true");
-            new RootCommand().setFailureToast(R.string.error_su)
-                    .setReopenShell(true)
-                    .setCallback(new RootCommand.Callback() {
-                        public void cbFunc(RootCommand state) {
-                            //failed to acquire root
-                            if (state.exitCode != 0) {
-                                runOnUiThread(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        showRootNotFoundMessage();
-                                    }
-                                });
+    private void startRootShell() {
+        List<String> cmds = new ArrayList<String>();
+        cmds.add("true");
+        new RootCommand().setFailureToast(R.string.error_su)
+                .setReopenShell(true)
+                .setCallback(new RootCommand.Callback() {
+                    public void cbFunc(RootCommand state) {
+                        //failed to acquire root
+                        if (state.exitCode != 0) {
+                            runOnUiThread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    showRootNotFoundMessage();
+                                }
+                            });
 
-                            }
                         }
-                    }).run(getApplicationContext(), cmds);
-        }
+                    }
+                }).run(getApplicationContext(), cmds);
 
         if (G.activeNotification()) {
             Api.showNotification(Api.isEnabled(getApplicationContext()), getApplicationContext());
@@ -857,7 +855,14 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
             refreshHeader();
             showOrLoadApplications();
             if (G.applyOnSwitchProfiles()) {
-                applyOrSaveRules();
+                if (Api.isEnabled(this)) {
+                    final Context ctx = getApplicationContext();
+                    new Thread(() -> Api.switchProfile(ctx, true, new RootCommand()
+                            .setSuccessToast(R.string.rules_applied)
+                            .setFailureToast(R.string.error_apply))).start();
+                } else {
+                    applyOrSaveRules();
+                }
             }
         }
     }
@@ -867,6 +872,8 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
 
     }
 
+    private static final Metrics.Histogram APPS_LOAD_TIME = Metrics.histogram("ui.apps.load");
+
     public class GetAppList extends AsyncTask<Void, Integer, Void> {
 
         Context context = null;
@@ -890,7 +897,9 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
 
         @Override
         protected Void doInBackground(Void... params) {
+            long start = Metrics.start();
             Api.getApps(MainActivity.this, this);
+            APPS_LOAD_TIME.stop(start);
             if (isCancelled())
                 return null;
             //publishProgress(-1);
@@ -1064,10 +1073,12 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                 if (isEnabled) {
                     menu.findItem(R.id.menu_toggle).setTitle(R.string.fw_disabled).setIcon(R.drawable.notification_error);
                     menu.findItem(R.id.menu_apply).setTitle(R.string.applyrules);
+                    menu.findItem(R.id.menu_disable_for).setVisible(true);
                     getSupportActionBar().setIcon(R.drawable.notification);
                 } else {
                     menu.findItem(R.id.menu_toggle).setTitle(R.string.fw_enabled).setIcon(R.drawable.notification);
                     menu.findItem(R.id.menu_apply).setTitle(R.string.saverules);
+                    menu.findItem(R.id.menu_disable_for).setVisible(false);
                     getSupportActionBar().setIcon(R.drawable.notification_error);
                 }
             }
@@ -1099,6 +1110,33 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         refreshHeader();
     }
 
+    /**
+     * Disable the firewall and have the scheduler enable it again later
+     */
+    private void disableFor() {
+        final int[] minutes = {15, 30, 60};
+        new MaterialDialog.Builder(this)
+                .title(R.string.disable_for)
+                .items(new String[]{
+                        getString(R.string.disable_minutes, minutes[0]),
+                        getString(R.string.disable_minutes, minutes[1]),
+                        getString(R.string.disable_minutes, minutes[2])})
+                .itemsCallback(new MaterialDialog.ListCallback() {
+                    @Override
+                    public void onSelection(MaterialDialog dialog, View view, int which, CharSequence text) {
+                        if (!Api.isEnabled(MainActivity.this)) {
+                            return;
+                        }
+                        // after disabling, which drops any earlier resume time
+                        Api.setEnabled(MainActivity.this, false, true);
+                        Scheduler.resumeAfter(getApplicationContext(), minutes[which] * 60 * 1000L);
+                        purgeRules();
+                        refreshHeader();
+                    }
+                })
+                .show();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
 
@@ -1127,11 +1165,16 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
             case R.id.menu_toggle:
                 disableOrEnable();
                 return true;
+            case R.id.menu_disable_for:
+                disableFor();
+                return true;
             case R.id.allowmode:
                 item.setChecked(true);
                 Editor editor = getSharedPreferences(Api.PREFS_NAME, 0).edit();
                 editor.putString(Api.PREF_MODE, Api.MODE_WHITELIST);
                 editor.commit();
+                // the owner rules change their target, only a full apply can do that
+                Api.setRulesUpToDate(false);
                 refreshHeader();
                 return true;
             case R.id.blockmode:
@@ -1139,6 +1182,7 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                 Editor editor2 = getSharedPreferences(Api.PREFS_NAME, 0).edit();
                 editor2.putString(Api.PREF_MODE, Api.MODE_BLACKLIST);
                 editor2.commit();
+                Api.setRulesUpToDate(false);
                 refreshHeader();
                 return true;
             case R.id.sort_default:
@@ -1162,6 +1206,18 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
             case R.id.menu_apply:
                 applyOrSaveRules();
                 return true;
+            case R.id.menu_undo:
+                if (!RuleState.undo()) {
+                    Api.toast(this, getString(R.string.nothing_to_undo));
+                }
+                notifyAppsChanged();
+                return true;
+            case R.id.menu_redo:
+                if (!RuleState.redo()) {
+                    Api.toast(this, getString(R.string.nothing_to_redo));
+                }
+                notifyAppsChanged();
+                return true;
             case R.id.menu_exit:
                 finish();
                 System.exit(0);
@@ -1251,6 +1307,117 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         });
     }
 
+    /**
+     * List the imported address lists, picking one offers to remove it
+     */
+    private void showAddressLists() {
+        final Context ctx = getApplicationContext();
+        new Thread(() -> {
+            final List<AddressRules.Source> sources = AddressRules.getSources();
+            final List<Integer> uids = new ArrayList<>();
+            final List<String> labels = new ArrayList<>();
+            uids.add(Api.SPECIAL_UID_ANY);
+            labels.add(getString(R.string.address_scope_all));
+            for (PackageInfoData app : Api.getApps(ctx, null)) {
+                // special entries without a uid of their own can't be matched by owner
+                if (app.uid >= 0 && !uids.contains(app.uid)) {
+                    uids.add(app.uid);
+                    labels.add(TextUtils.join(", ", app.names));
+                }
+            }
+            final List<String> items = new ArrayList<>();
+            for (AddressRules.Source source : sources) {
+                int scope = uids.indexOf(source.uid);
+                items.add(getString(source.allow ? R.string.address_list_allow : R.string.address_list_deny,
+                        source.name, source.count, scope >= 0 ? labels.get(scope) : String.valueOf(source.uid)));
+            }
+            items.add(getString(R.string.import_blocklist));
+            runOnUiThread(() -> new MaterialDialog.Builder(MainActivity.this)
+                    .title(R.string.address_lists)
+                    .items(items.toArray(new String[items.size()]))
+                    .itemsCallback((dialog, view, which, text) -> {
+                        if (which == sources.size()) {
+                            pickBlocklist(uids, labels);
+                        } else {
+                            removeAddressList(sources.get(which), text);
+                        }
+                    })
+                    .show());
+        }, "afwall-address-lists").start();
+    }
+
+    private void pickBlocklist(final List<Integer> uids, final List<String> labels) {
+        FileDialog listDialog = new FileDialog(MainActivity.this,
+                new File(Environment.getExternalStorageDirectory() + "//afwall//"),
+                Pattern.compile("hosts|.*\\.(txt|list|hosts|conf)"));
+        listDialog.addFileListener(new FileDialog.FileSelectedListener() {
+            public void fileSelected(final File file) {
+                new MaterialDialog.Builder(MainActivity.this)
+                        .title(file.getName())
+                        .items(new String[]{
+                                getString(R.string.address_list_action_deny),
+                                getString(R.string.address_list_action_allow)})
+                        .itemsCallback((dialog, view, action, text) -> new MaterialDialog.Builder(MainActivity.this)
+                                .title(R.string.address_list_scope)
+                                .items(labels.toArray(new String[labels.size()]))
+                                .itemsCallback((dialog2, view2, scope, text2) -> importBlocklist(file, uids.get(scope), action == 1))
+                                .show())
+                        .show();
+            }
+        });
+        listDialog.showDialog();
+    }
+
+    private void removeAddressList(final AddressRules.Source source, CharSequence label) {
+        new MaterialDialog.Builder(this)
+                .title(R.string.address_lists)
+                .content(getString(R.string.address_list_remove, label))
+                .positiveText(R.string.delete)
+                .negativeText(R.string.Cancel)
+                .onPositive((dialog, which) -> new Thread(() -> {
+                    AddressRules.remove(source);
+                    Api.setRulesUpToDate(false);
+                    runOnUiThread(() -> Api.toast(MainActivity.this, getString(R.string.address_list_removed, source.name)));
+                }, "afwall-address-lists").start())
+                .show();
+    }
+
+    /**
+     * Replace the list imported from the same file name for the same app and action.  Host
+     * names that were not stored are listed afterwards.
+     */
+    private void importBlocklist(final File file, final int uid, final boolean allow) {
+        new Thread(() -> {
+            AddressRules.ImportResult result = null;
+            try (Reader reader = new FileReader(file)) {
+                result = AddressRules.importList(reader, uid, allow, file.getName());
+                // the address chain is only built by a full apply
+                Api.setRulesUpToDate(false);
+            } catch (Exception e) {
+                Log.e(Api.TAG, "Unable to import " + file + ": " + e.getLocalizedMessage());
+            }
+            if (result == null) {
+                runOnUiThread(() -> Api.toast(MainActivity.this, getString(R.string.import_rules_fail)));
+                return;
+            }
+            final List<String> left = new ArrayList<>(result.skipped);
+            left.addAll(result.failed);
+            if (left.isEmpty()) {
+                final String message = getString(R.string.import_blocklist_success, result.stored, file.getName());
+                runOnUiThread(() -> Api.toast(MainActivity.this, message));
+                return;
+            }
+            final String message = getString(R.string.import_blocklist_skipped, result.stored, file.getName(),
+                    result.skipped.size(), AddressRules.MAX_RESOLVE, result.failed.size());
+            runOnUiThread(() -> new MaterialDialog.Builder(MainActivity.this)
+                    .title(R.string.import_blocklist)
+                    .content(message)
+                    .items(left.toArray(new String[left.size()]))
+                    .positiveText(R.string.OK)
+                    .show());
+        }, "afwall-blocklist-import").start();
+    }
+
     private void showImportDialog() {
         new MaterialDialog.Builder(this)
                 .title(R.string.imports)
@@ -1258,7 +1425,8 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                 .items(new String[]{
                         getString(R.string.import_rules),
                         getString(R.string.import_all),
-                        getString(R.string.import_rules_droidwall)})
+                        getString(R.string.import_rules_droidwall),
+                        getString(R.string.address_lists)})
                 .itemsCallbackSingleChoice(-1, new MaterialDialog.ListCallbackSingleChoice() {
                     @Override
                     public boolean onSelection(MaterialDialog dialog, View view, int which, CharSequence text) {
@@ -1352,6 +1520,9 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                                         .show();
 
 
+                                break;
+                            case 3:
+                                showAddressLists();
                                 break;
                         }
                         return true;
@@ -1368,7 +1539,9 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                 .cancelable(false)
                 .items(new String[]{
                         getString(R.string.export_rules),
-                        getString(R.string.export_all)})
+                        getString(R.string.export_all),
+                        getString(R.string.export_snapshot),
+                        getString(R.string.export_snapshot_full)})
                 .itemsCallbackSingleChoice(-1, new MaterialDialog.ListCallbackSingleChoice() {
                     @Override
                     public boolean onSelection(MaterialDialog dialog, View view, int which, CharSequence text) {
@@ -1379,6 +1552,12 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                             case 1:
                                 Api.exportAllPreferencesToFileConfirm(MainActivity.this);
                                 break;
+                            case 2:
+                                Api.exportSnapshotToFileConfirm(MainActivity.this, false);
+                                break;
+                            case 3:
+                                Api.exportSnapshotToFileConfirm(MainActivity.this, true);
+                                break;
                         }
                         return true;
                     }
@@ -1625,7 +1804,9 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         final boolean enabled = Api.isEnabled(this);
         final Context ctx = getApplicationContext();
 
-        Api.generateRules(ctx, Api.getApps(ctx, null), true);
+        // only the edited uids are saved and pushed to the chains
+        final List<RuleState.Change> changes = RuleState.commit();
+        Api.saveRuleChanges(ctx, changes);
 
         if (!enabled) {
             Api.setEnabled(ctx, false, true);
@@ -1634,7 +1815,7 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
             return;
         }
         Api.showNotification(Api.isEnabled(getApplicationContext()), getApplicationContext());
-        new RunApply().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        new RunApply(changes).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
 
@@ -1700,6 +1881,11 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
 
     private class RunApply extends AsyncTask<Void, Long, Void> {
         boolean enabled = Api.isEnabled(getApplicationContext());
+        final List<RuleState.Change> changes;
+
+        RunApply(List<RuleState.Change> changes) {
+            this.changes = changes;
+        }
 
         @Override
         protected void onPreExecute() {
@@ -1715,7 +1901,7 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         @Override
         protected Void doInBackground(Void... params) {
             //set the progress
-            Api.applySavedIptablesRules(getApplicationContext(), true, new RootCommand()
+            Api.applyRuleChanges(getApplicationContext(), changes, true, new RootCommand()
                     .setSuccessToast(R.string.rules_applied)
                     .setFailureToast(R.string.error_apply)
                     .setReopenShell(true)
@@ -1808,22 +1994,10 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
     }
 
     private void selectAllLAN(boolean flag) {
-        if (this.listview == null) {
-            this.listview = (ListView) this.findViewById(R.id.listview);
-        }
-        ListAdapter adapter = listview.getAdapter();
-        if (adapter != null) {
-            int count = adapter.getCount(), item;
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                if (data.uid != Api.SPECIAL_UID_ANY) {
-                    data.selected_lan = flag;
-                    //addToQueue(data);
-                }
-                setDirty(true);
-            }
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+        if (RuleState.setAll(getListedApps(), RuleState.LAN, flag, false) > 0) {
+            setDirty(true);
         }
+        notifyAppsChanged();
     }
 
     /**
@@ -1841,161 +2015,96 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
     }*/
 
     private void selectAllVPN(boolean flag) {
-        if (this.listview == null) {
-            this.listview = (ListView) this.findViewById(R.id.listview);
-        }
-        ListAdapter adapter = listview.getAdapter();
-        if (adapter != null) {
-            int count = adapter.getCount(), item;
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                if (data.uid != Api.SPECIAL_UID_ANY) {
-                    data.selected_vpn = flag;
-                    //addToQueue(data);
-                }
-                setDirty(true);
-            }
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+        if (RuleState.setAll(getListedApps(), RuleState.VPN, flag, false) > 0) {
+            setDirty(true);
         }
+        notifyAppsChanged();
     }
 
     private void selectRevert(int flag) {
-        if (this.listview == null) {
-            this.listview = (ListView) this.findViewById(R.id.listview);
+        if (RuleState.invert(getListedApps(), getNetworkClass(flag)) > 0) {
+            setDirty(true);
         }
-        ListAdapter adapter = listview.getAdapter();
-        if (adapter != null) {
-            int count = adapter.getCount(), item;
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                if (data.uid != Api.SPECIAL_UID_ANY) {
-                    switch (flag) {
-                        case R.id.img_wifi:
-                            data.selected_wifi = !data.selected_wifi;
-                            break;
-                        case R.id.img_3g:
-                            data.selected_3g = !data.selected_3g;
-                            break;
-                        case R.id.img_roam:
-                            data.selected_roam = !data.selected_roam;
-                            break;
-                        case R.id.img_vpn:
-                            data.selected_vpn = !data.selected_vpn;
-                            break;
-                        case R.id.img_lan:
-                            data.selected_lan = !data.selected_lan;
-                            break;
-                    }
-                    //addToQueue(data);
-                }
-                setDirty(true);
-            }
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+        notifyAppsChanged();
+    }
+
+    /**
+     * @param id header icon of a network class
+     * @return RuleState network class
+     */
+    private static int getNetworkClass(int id) {
+        switch (id) {
+            case R.id.img_3g:
+                return RuleState.DATA;
+            case R.id.img_roam:
+                return RuleState.ROAM;
+            case R.id.img_vpn:
+                return RuleState.VPN;
+            case R.id.img_lan:
+                return RuleState.LAN;
+            default:
+                return RuleState.WIFI;
         }
     }
 
-    private void selectRevert() {
+    /**
+     * @return apps currently shown, the search filter applies
+     */
+    private List<PackageInfoData> getListedApps() {
         if (this.listview == null) {
             this.listview = (ListView) this.findViewById(R.id.listview);
         }
+        List<PackageInfoData> apps = new ArrayList<>();
         ListAdapter adapter = listview.getAdapter();
         if (adapter != null) {
-            int count = adapter.getCount(), item;
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                if (data.uid != Api.SPECIAL_UID_ANY) {
-                    data.selected_wifi = !data.selected_wifi;
-                    data.selected_3g = !data.selected_3g;
-                    data.selected_roam = !data.selected_roam;
-                    data.selected_vpn = !data.selected_vpn;
-                    data.selected_lan = !data.selected_lan;
-                    //addToQueue(data);
-                }
-                setDirty(true);
+            for (int item = 0; item < adapter.getCount(); item++) {
+                apps.add((PackageInfoData) adapter.getItem(item));
             }
+        }
+        return apps;
+    }
+
+    private void notifyAppsChanged() {
+        ListAdapter adapter = listview != null ? listview.getAdapter() : null;
+        if (adapter != null) {
             ((BaseAdapter) adapter).notifyDataSetChanged();
         }
     }
 
+    private void selectRevert() {
+        if (RuleState.invert(getListedApps(), -1) > 0) {
+            setDirty(true);
+        }
+        notifyAppsChanged();
+    }
+
 
     private void selectAllRoam(boolean flag) {
-        if (this.listview == null) {
-            this.listview = (ListView) this.findViewById(R.id.listview);
-        }
-        ListAdapter adapter = listview.getAdapter();
-        if (adapter != null) {
-            int count = adapter.getCount(), item;
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                if (data.uid != Api.SPECIAL_UID_ANY) {
-                    data.selected_roam = flag;
-                    //addToQueue(data);
-                }
-                setDirty(true);
-            }
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+        if (RuleState.setAll(getListedApps(), RuleState.ROAM, flag, false) > 0) {
+            setDirty(true);
         }
+        notifyAppsChanged();
     }
 
     private void clearAll() {
-        if (this.listview == null) {
-            this.listview = (ListView) this.findViewById(R.id.listview);
-        }
-        ListAdapter adapter = listview.getAdapter();
-        if (adapter != null) {
-            int count = adapter.getCount(), item;
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                data.selected_wifi = false;
-                data.selected_3g = false;
-                data.selected_roam = false;
-                data.selected_vpn = false;
-                data.selected_lan = false;
-                //addToQueue(data);
-                setDirty(true);
-            }
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+        if (RuleState.clear(getListedApps()) > 0) {
+            setDirty(true);
         }
+        notifyAppsChanged();
     }
 
     private void selectAll3G(boolean flag) {
-        if (this.listview == null) {
-            this.listview = (ListView) this.findViewById(R.id.listview);
-        }
-        ListAdapter adapter = listview.getAdapter();
-        if (adapter != null) {
-            int count = adapter.getCount(), item;
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                if (data.uid != Api.SPECIAL_UID_ANY) {
-                    data.selected_3g = flag;
-                    //addToQueue(data);
-                }
-               // addToQueue(data);
-                setDirty(true);
-            }
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+        if (RuleState.setAll(getListedApps(), RuleState.DATA, flag, false) > 0) {
+            setDirty(true);
         }
-
+        notifyAppsChanged();
     }
 
     private void selectAllWifi(boolean flag) {
-        if (this.listview == null) {
-            this.listview = (ListView) this.findViewById(R.id.listview);
-        }
-        ListAdapter adapter = listview.getAdapter();
-        int count = adapter.getCount(), item;
-        if (adapter != null) {
-            for (item = 0; item < count; item++) {
-                PackageInfoData data = (PackageInfoData) adapter.getItem(item);
-                if (data.uid != Api.SPECIAL_UID_ANY) {
-                    data.selected_wifi = flag;
-                   // addToQueue(data);
-                }
-                setDirty(true);
-            }
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+        if (RuleState.setAll(getListedApps(), RuleState.WIFI, flag, false) > 0) {
+            setDirty(true);
         }
+        notifyAppsChanged();
     }
 
     @Override
@@ -2091,10 +2200,16 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         new MaterialDialog.Builder(this)
                 .title(R.string.select_action)
                 .cancelable(true)
-                .items(new String[]{
+                .items(i == R.id.img_wifi ? new String[]{
                         getString(R.string.check_all),
                         getString(R.string.invert_all),
-                        getString(R.string.uncheck_all)})
+                        getString(R.string.uncheck_all),
+                        getString(R.string.check_system)} : new String[]{
+                        getString(R.string.check_all),
+                        getString(R.string.invert_all),
+                        getString(R.string.uncheck_all),
+                        getString(R.string.check_system),
+                        getString(R.string.copy_wifi)})
                 .itemsCallback(new MaterialDialog.ListCallback() {
                     @Override
                     public void onSelection(MaterialDialog dialog, View view, int which, CharSequence text) {
@@ -2168,6 +2283,18 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                                         break;
                                 }
                                 break;
+                            case 3:
+                                if (RuleState.setAll(getListedApps(), getNetworkClass(i), true, true) > 0) {
+                                    setDirty(true);
+                                }
+                                notifyAppsChanged();
+                                break;
+                            case 4:
+                                if (RuleState.copy(getListedApps(), RuleState.WIFI, getNetworkClass(i)) > 0) {
+                                    setDirty(true);
+                                }
+                                notifyAppsChanged();
+                                break;
                         }
                     }
                 }).show();
@@ -2207,22 +2334,10 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
 
         @Override
         protected Void doInBackground(Void... params) {
-            rootShell = (new Shell.Builder())
-                    .useSU()
-                    .addCommand("id", 0, new Shell.OnCommandResultListener() {
-                        @Override
-                        public void onCommandResult(int commandCode, int exitCode, List<String> output) {
-                            synchronized (suGranted) {
-                                suGranted[0] = true;
-                            }
-                        }
-                    })
-                    .open(new Shell.OnCommandResultListener() {
-                        @Override
-                        public void onCommandResult(int commandCode, int exitCode, List<String> output) {
-                        }
-                    });
-            rootShell.waitForIdle();
+            boolean granted = RootSessions.isRootAvailable();
+            synchronized (suGranted) {
+                suGranted[0] = granted;
+            }
             unsupportedSU = isSuPackage(getPackageManager(), "com.kingouser.com");
             return null;
         }
@@ -2268,7 +2383,7 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                 showRootNotFoundMessage();
             } else {
                 G.hasRoot(suGranted[0]);
-                startRootShell(rootShell);
+                startRootShell();
                 passCheck();
             }
         }
@@ -0,0 +1,225 @@
+/**
+ * Resolve the effective rule set of a profile: the rule set of its parent profile plus the
+ * UIDs the profile allows itself, minus the UIDs it excludes.  Results are cached and only
+ * recomputed when the profile or one of its ancestors changed.
+ * <p/>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dev.ukanth.ufirewall;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.profiles.ProfileData;
+import dev.ukanth.ufirewall.profiles.ProfileHelper;
+import dev.ukanth.ufirewall.util.G;
+
+public final class ProfileResolver {
+
+    public static final String TAG = "AFWall";
+
+    /* suffix of the preference holding the UIDs a profile removes from its parent's list,
+     * written by store() */
+    public static final String EXCLUDED_SUFFIX = "_Excluded";
+
+    /* same order as the RuleDataSet constructor */
+    private static final String[] KEYS = {Api.PREF_WIFI_PKG_UIDS, Api.PREF_3G_PKG_UIDS,
+            Api.PREF_ROAMING_PKG_UIDS, Api.PREF_VPN_PKG_UIDS, Api.PREF_LAN_PKG_UIDS};
+
+    private static final int MAX_DEPTH = 8;
+
+    private static class Resolved {
+        // raw preference values the set was computed from
+        List<String> stamp;
+        // resolved set of the parent at that time, compared by identity
+        Api.RuleDataSet parent;
+        Api.RuleDataSet set;
+    }
+
+    // guarded by ProfileResolver.class
+    private static final Map<String, Resolved> cache = new HashMap<>();
+    private static Map<String, String> parents;
+    private static long hits;
+    private static long misses;
+
+    private ProfileResolver() {
+    }
+
+    /**
+     * Effective rule set of a profile
+     *
+     * @param ctx
+     * @param profile preference name of the profile
+     * @return a copy the caller may modify
+     */
+    public static synchronized Api.RuleDataSet resolve(Context ctx, String profile) {
+        return copyOf(resolve(ctx, profile, new HashSet<String>()));
+    }
+
+    private static Api.RuleDataSet resolve(Context ctx, String profile, Set<String> visited) {
+        visited.add(profile);
+        String parent = getParents().get(profile);
+        Api.RuleDataSet parentSet = null;
+        if (parent != null) {
+            if (visited.contains(parent) || visited.size() >= MAX_DEPTH) {
+                Log.w(TAG, "Ignoring parent " + parent + " of profile " + profile + ": loop or too deep");
+            } else {
+                parentSet = resolve(ctx, parent, visited);
+            }
+        }
+
+        SharedPreferences prefs = ctx.getSharedPreferences(profile, Context.MODE_PRIVATE);
+        // SharedPreferences hands out the same strings until a value changes, equals() is cheap
+        List<String> stamp = new ArrayList<>(KEYS.length * 2);
+        for (String key : KEYS) {
+            stamp.add(prefs.getString(key, ""));
+            stamp.add(prefs.getString(key + EXCLUDED_SUFFIX, ""));
+        }
+
+        Resolved resolved = cache.get(profile);
+        if (resolved != null && resolved.parent == parentSet && resolved.stamp.equals(stamp)) {
+            hits++;
+            return resolved.set;
+        }
+        misses++;
+
+        List<List<Integer>> lists = new ArrayList<>(KEYS.length);
+        for (int i = 0; i < KEYS.length; i++) {
+            List<Integer> uids = Api.getListFromPref(stamp.get(i * 2));
+            if (parentSet != null) {
+                Set<Integer> merged = new HashSet<>(listOf(parentSet, i));
+                merged.addAll(uids);
+                merged.removeAll(Api.getListFromPref(stamp.get(i * 2 + 1)));
+                uids = new ArrayList<>(merged);
+                // keep the ordering getListFromPref() guarantees
+                Collections.sort(uids);
+            }
+            lists.add(uids);
+        }
+
+        resolved = new Resolved();
+        resolved.stamp = stamp;
+        resolved.parent = parentSet;
+        resolved.set = new Api.RuleDataSet(lists.get(0), lists.get(1), lists.get(2), lists.get(3), lists.get(4));
+        cache.put(profile, resolved);
+        return resolved.set;
+    }
+
+    /**
+     * Save the effective UIDs of one network class.  For a profile with a parent, UIDs the
+     * parent already has are left out and the parent's UIDs missing from uids are stored as
+     * exclusions, so unchecking an inherited app revokes it in this profile only and later
+     * edits of the parent still come through.
+     *
+     * @param ctx
+     * @param profile preference name of the profile
+     * @param edit    editor of the profile's preferences, the caller commits
+     * @param net     network class, see RuleState
+     * @param uids    effective UIDs
+     */
+    public static synchronized void store(Context ctx, String profile, SharedPreferences.Editor edit, int net,
+                                          Collection<Integer> uids) {
+        Api.RuleDataSet parentSet = null;
+        String parent = getParents().get(profile);
+        if (parent != null) {
+            Set<String> visited = new HashSet<>();
+            visited.add(profile);
+            if (!parent.equals(profile)) {
+                parentSet = resolve(ctx, parent, visited);
+            }
+        }
+        Set<Integer> own = new TreeSet<>(uids);
+        Set<Integer> excluded = new TreeSet<>();
+        if (parentSet != null) {
+            for (Integer uid : listOf(parentSet, net)) {
+                if (!own.remove(uid)) {
+                    excluded.add(uid);
+                }
+            }
+        }
+        edit.putString(KEYS[net], android.text.TextUtils.join("|", own));
+        if (excluded.isEmpty()) {
+            edit.remove(KEYS[net] + EXCLUDED_SUFFIX);
+        } else {
+            edit.putString(KEYS[net] + EXCLUDED_SUFFIX, android.text.TextUtils.join("|", excluded));
+        }
+    }
+
+    /**
+     * Profile to parent profile, both by identifier.  Only migrated profiles can have a parent.
+     */
+    private static Map<String, String> getParents() {
+        if (parents == null) {
+            parents = new HashMap<>();
+            if (G.isProfileMigrated()) {
+                for (ProfileData data : ProfileHelper.getProfiles()) {
+                    String parent = data.getParentProfile();
+                    if (parent != null && parent.length() > 0) {
+                        parents.put(data.getIdentifier(), parent);
+                    }
+                }
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Reload the profile hierarchy on next use, call after profiles are added, removed or
+     * re-parented.  Resolved sets stay cached until their inputs actually differ.
+     */
+    public static synchronized void invalidateParents() {
+        parents = null;
+    }
+
+    /**
+     * @param index network class, see RuleState
+     */
+    static List<Integer> listOf(Api.RuleDataSet set, int index) {
+        switch (index) {
+            case 0:
+                return set.wifiList;
+            case 1:
+                return set.dataList;
+            case 2:
+                return set.roamList;
+            case 3:
+                return set.vpnList;
+            default:
+                return set.lanList;
+        }
+    }
+
+    private static Api.RuleDataSet copyOf(Api.RuleDataSet set) {
+        return new Api.RuleDataSet(new ArrayList<>(set.wifiList), new ArrayList<>(set.dataList),
+                new ArrayList<>(set.roamList), new ArrayList<>(set.vpnList), new ArrayList<>(set.lanList));
+    }
+
+    public static synchronized String getStats() {
+        long total = hits + misses;
+        return "Profile resolver: " + cache.size() + " cached, " + hits + " hits, " + misses + " misses"
+                + (total > 0 ? " (" + (hits * 100 / total) + "% cached)" : "") + "\n";
+    }
+}
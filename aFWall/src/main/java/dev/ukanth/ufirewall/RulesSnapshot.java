@@ -0,0 +1,592 @@
+/**
+ * Compact binary backup of all profiles and preferences.
+ * <p/>
+ * Layout (gzip compressed, big endian):
+ * header      magic "AFWS", version, kind (full/delta), created, delta depth
+ *             delta only: base file name, base created, base string table size
+ * strings     package names; a delta only holds the names appended to the base table
+ * profiles    preference name, display name, parent, one bitset over the string table per
+ *             network class; a delta stores the bitsets XORed with the base profile
+ * prefs       typed global preferences; a delta holds changed entries and removed keys
+ * <p/>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dev.ukanth.ufirewall;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.profiles.ProfileChains;
+import dev.ukanth.ufirewall.profiles.ProfileData;
+import dev.ukanth.ufirewall.profiles.ProfileHelper;
+import dev.ukanth.ufirewall.util.G;
+
+public final class RulesSnapshot {
+
+    public static final String TAG = "AFWall";
+
+    public static final String EXTENSION = ".afws";
+
+    private static final int MAGIC = 0x41465753;
+    private static final int VERSION = 1;
+    private static final int KIND_FULL = 0;
+    private static final int KIND_DELTA = 1;
+
+    /* deltas on top of deltas make every restore read the whole chain, start over after this */
+    private static final int MAX_DEPTH = 5;
+
+    private static final int TYPE_BOOLEAN = 0;
+    private static final int TYPE_INT = 1;
+    private static final int TYPE_LONG = 2;
+    private static final int TYPE_FLOAT = 3;
+    private static final int TYPE_STRING = 4;
+    private static final int TYPE_STRING_SET = 5;
+
+    private static final String PREFS_NAME = "AFWallSnapshot";
+    private static final String KEY_LAST = "last";
+
+    private static final int CLASSES = Api.LAN_EXPORT + 1;
+
+    private static class Profile {
+        String name;
+        String parent;
+        final BitSet[] classes = new BitSet[CLASSES];
+
+        Profile() {
+            for (int i = 0; i < CLASSES; i++) {
+                classes[i] = new BitSet();
+            }
+        }
+    }
+
+    private long created;
+    private int depth;
+    private final List<String> packages = new ArrayList<>();
+    private final Map<String, Integer> packageIndex = new HashMap<>();
+    private final Map<String, Profile> profiles = new LinkedHashMap<>();
+    private final Map<String, Object> prefs = new LinkedHashMap<>();
+
+    private RulesSnapshot() {
+    }
+
+    RulesSnapshot(long created) {
+        this.created = created;
+    }
+
+    private Profile profile(String identifier) {
+        Profile profile = profiles.get(identifier);
+        if (profile == null) {
+            profile = new Profile();
+            profile.name = identifier;
+            profile.parent = "";
+            profiles.put(identifier, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * @param identifier   profile, created if missing
+     * @param packageName
+     * @param networkClass e.g. Api.WIFI_EXPORT
+     * @param allowed
+     */
+    void setRule(String identifier, String packageName, int networkClass, boolean allowed) {
+        profile(identifier).classes[networkClass].set(indexOf(packageName), allowed);
+    }
+
+    boolean isAllowed(String identifier, String packageName, int networkClass) {
+        Profile profile = profiles.get(identifier);
+        Integer index = packageIndex.get(packageName);
+        return profile != null && index != null && profile.classes[networkClass].get(index);
+    }
+
+    Map<String, Object> getPrefs() {
+        return prefs;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    private int indexOf(String packageName) {
+        Integer index = packageIndex.get(packageName);
+        if (index == null) {
+            index = packages.size();
+            packages.add(packageName);
+            packageIndex.put(packageName, index);
+        }
+        return index;
+    }
+
+    /**
+     * Current rules of all profiles and the global preferences
+     *
+     * @param ctx
+     * @return
+     */
+    public static RulesSnapshot capture(Context ctx) {
+        RulesSnapshot snapshot = new RulesSnapshot();
+        snapshot.created = System.currentTimeMillis();
+
+        SparseArray<String> names = new SparseArray<>();
+        for (Map.Entry<String, Integer> special : Api.getSpecialApps().entrySet()) {
+            names.put(special.getValue(), special.getKey());
+        }
+        Map<String, ProfileData> rows = new HashMap<>();
+        if (G.isProfileMigrated()) {
+            for (ProfileData data : ProfileHelper.getProfiles()) {
+                rows.put(data.getIdentifier(), data);
+            }
+        }
+
+        PackageManager pm = ctx.getPackageManager();
+        String[] keys = {Api.PREF_WIFI_PKG_UIDS, Api.PREF_3G_PKG_UIDS, Api.PREF_ROAMING_PKG_UIDS,
+                Api.PREF_VPN_PKG_UIDS, Api.PREF_LAN_PKG_UIDS};
+        int[] classes = {Api.WIFI_EXPORT, Api.DATA_EXPORT, Api.ROAM_EXPORT, Api.VPN_EXPORT, Api.LAN_EXPORT};
+        for (String identifier : ProfileChains.getAllProfiles()) {
+            Profile profile = new Profile();
+            ProfileData row = rows.get(identifier);
+            profile.name = row != null ? row.getName() : identifier;
+            profile.parent = row != null && row.getParentProfile() != null ? row.getParentProfile() : "";
+            SharedPreferences prefs = ctx.getSharedPreferences(identifier, Context.MODE_PRIVATE);
+            for (int i = 0; i < keys.length; i++) {
+                StringTokenizer tok = new StringTokenizer(prefs.getString(keys[i], ""), "|");
+                while (tok.hasMoreTokens()) {
+                    try {
+                        int uid = Integer.parseInt(tok.nextToken());
+                        int index = names.indexOfKey(uid);
+                        String packageName;
+                        if (index >= 0) {
+                            packageName = names.valueAt(index);
+                        } else {
+                            packageName = pm.getNameForUid(uid);
+                            names.put(uid, packageName);
+                        }
+                        if (packageName != null) {
+                            profile.classes[classes[i]].set(snapshot.indexOf(packageName));
+                        }
+                    } catch (NumberFormatException e) {
+                        // empty or broken entry
+                    }
+                }
+            }
+            snapshot.profiles.put(identifier, profile);
+        }
+
+        snapshot.prefs.putAll(G.gPrefs.getAll());
+        return snapshot;
+    }
+
+    /**
+     * Renumber the string table so that it starts with the table of base, a delta then only
+     * appends to it
+     */
+    private void alignTo(RulesSnapshot base) {
+        List<String> previous = new ArrayList<>(packages);
+        packages.clear();
+        packageIndex.clear();
+        for (String packageName : base.packages) {
+            indexOf(packageName);
+        }
+        for (Profile profile : profiles.values()) {
+            for (int c = 0; c < CLASSES; c++) {
+                BitSet bits = profile.classes[c];
+                BitSet aligned = new BitSet();
+                for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                    aligned.set(indexOf(previous.get(i)));
+                }
+                profile.classes[c] = aligned;
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot
+     *
+     * @param file     destination
+     * @param base     previous snapshot to write a delta against (string table aligned with
+     *                 alignTo()), null for a full snapshot
+     * @param baseFile name of the base file, resolved relative to file when reading
+     * @throws IOException
+     */
+    public void write(File file, RulesSnapshot base, String baseFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(base == null ? KIND_FULL : KIND_DELTA);
+            out.writeLong(created);
+            out.writeByte(depth);
+            int first = 0;
+            if (base != null) {
+                out.writeUTF(baseFile);
+                out.writeLong(base.created);
+                out.writeInt(base.packages.size());
+                first = base.packages.size();
+            }
+
+            out.writeInt(packages.size() - first);
+            for (int i = first; i < packages.size(); i++) {
+                out.writeUTF(packages.get(i));
+            }
+
+            out.writeInt(profiles.size());
+            for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+                Profile profile = entry.getValue();
+                Profile previous = base != null ? base.profiles.get(entry.getKey()) : null;
+                out.writeUTF(entry.getKey());
+                out.writeUTF(profile.name);
+                out.writeUTF(profile.parent);
+                for (int i = 0; i < CLASSES; i++) {
+                    BitSet bits = profile.classes[i];
+                    if (previous != null) {
+                        bits = (BitSet) bits.clone();
+                        bits.xor(previous.classes[i]);
+                    }
+                    writeBits(out, bits);
+                }
+            }
+
+            Map<String, Object> changed = prefs;
+            if (base != null) {
+                changed = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> entry : prefs.entrySet()) {
+                    if (!entry.getValue().equals(base.prefs.get(entry.getKey()))) {
+                        changed.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            out.writeInt(changed.size());
+            for (Map.Entry<String, Object> entry : changed.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+            if (base != null) {
+                List<String> removed = new ArrayList<>(base.prefs.keySet());
+                removed.removeAll(prefs.keySet());
+                writeStrings(out, removed);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a snapshot; a delta also reads its base (and the base's base, ...) from the
+     * same directory.
+     *
+     * @param file
+     * @return the complete snapshot
+     * @throws IOException if the file or one of its bases is missing or corrupt
+     */
+    public static RulesSnapshot read(File file) throws IOException {
+        return read(file, 0);
+    }
+
+    /**
+     * @param bases number of deltas already read on the way to file
+     */
+    private static RulesSnapshot read(File file, int bases) throws IOException {
+        // a chain never gets longer than MAX_DEPTH, a longer one refers back to itself
+        if (bases > MAX_DEPTH) {
+            throw new IOException(file.getName() + " is part of a loop of snapshots");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new IOException(file.getName() + " is not a snapshot");
+            }
+            int kind = in.readUnsignedByte();
+            RulesSnapshot snapshot = new RulesSnapshot();
+            snapshot.created = in.readLong();
+            snapshot.depth = in.readUnsignedByte();
+            RulesSnapshot base = null;
+            if (kind == KIND_DELTA) {
+                String baseFile = in.readUTF();
+                long baseCreated = in.readLong();
+                int baseTableSize = in.readInt();
+                if (baseFile.equals(file.getName())) {
+                    throw new IOException(file.getName() + " is its own base");
+                }
+                base = read(new File(file.getParentFile(), baseFile), bases + 1);
+                if (base.created != baseCreated || base.packages.size() != baseTableSize) {
+                    throw new IOException(baseFile + " is not the base of " + file.getName());
+                }
+                for (String packageName : base.packages) {
+                    snapshot.indexOf(packageName);
+                }
+                snapshot.prefs.putAll(base.prefs);
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                snapshot.indexOf(in.readUTF());
+            }
+
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String identifier = in.readUTF();
+                Profile profile = new Profile();
+                profile.name = in.readUTF();
+                profile.parent = in.readUTF();
+                Profile previous = base != null ? base.profiles.get(identifier) : null;
+                for (int c = 0; c < CLASSES; c++) {
+                    profile.classes[c] = readBits(in);
+                    if (previous != null) {
+                        profile.classes[c].xor(previous.classes[c]);
+                    }
+                }
+                snapshot.profiles.put(identifier, profile);
+            }
+
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                snapshot.prefs.put(key, readValue(in));
+            }
+            if (base != null) {
+                for (String key : readStrings(in)) {
+                    snapshot.prefs.remove(key);
+                }
+            }
+            return snapshot;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Restore rules and preferences, resolving every package once
+     *
+     * @param ctx
+     */
+    public void restore(Context ctx) {
+        SharedPreferences.Editor edit = G.gPrefs.edit();
+        for (Map.Entry<String, Object> entry : prefs.entrySet()) {
+            if (Api.IMPORT_IGNORED_PREFS.contains(entry.getKey())) {
+                continue;
+            }
+            Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                edit.putBoolean(entry.getKey(), (Boolean) value);
+            } else if (value instanceof Integer) {
+                edit.putInt(entry.getKey(), (Integer) value);
+            } else if (value instanceof Long) {
+                edit.putLong(entry.getKey(), (Long) value);
+            } else if (value instanceof Float) {
+                edit.putFloat(entry.getKey(), (Float) value);
+            } else if (value instanceof Set) {
+                //noinspection unchecked
+                edit.putStringSet(entry.getKey(), (Set<String>) value);
+            } else {
+                edit.putString(entry.getKey(), String.valueOf(value));
+            }
+        }
+        edit.commit();
+
+        Map<String, Integer> uids = Api.getPackageUids(ctx);
+        for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+            String identifier = entry.getKey();
+            Profile profile = entry.getValue();
+            if (G.isProfileMigrated() && !identifier.equals(Api.DEFAULT_PREFS_NAME)
+                    && ProfileHelper.getProfileByIdentifier(identifier) == null) {
+                ProfileData data = new ProfileData(profile.name, identifier);
+                if (profile.parent.length() > 0) {
+                    data.setParentProfile(profile.parent);
+                }
+                data.save();
+            }
+            Map<String, Integer> rules = new HashMap<>();
+            for (int c = 0; c < CLASSES; c++) {
+                BitSet bits = profile.classes[c];
+                for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                    String packageName = packages.get(i);
+                    Integer flags = rules.get(packageName);
+                    rules.put(packageName, (flags != null ? flags : 0) | (1 << c));
+                }
+            }
+            Api.updateRulesFromJson(ctx, rules, identifier, uids);
+        }
+        ProfileResolver.invalidateParents();
+    }
+
+    /**
+     * Export a snapshot to the backup directory: a delta against the previous export when
+     * that file is still there, a full snapshot otherwise.  A delta can only be restored
+     * together with every earlier file of its chain.
+     *
+     * @param ctx
+     * @param dir      backup directory
+     * @param fileName
+     * @param full     write a full snapshot even if a delta is possible
+     * @return
+     * @throws IOException
+     */
+    public static File export(Context ctx, File dir, String fileName, boolean full) throws IOException {
+        long start = System.currentTimeMillis();
+        RulesSnapshot snapshot = capture(ctx);
+        SharedPreferences prefs = ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String last = full ? "" : prefs.getString(KEY_LAST, "");
+        File file = new File(dir, fileName);
+        String base = snapshot.writeTo(file, last);
+        prefs.edit().putString(KEY_LAST, fileName).apply();
+        Log.i(TAG, "Snapshot " + fileName + (base != null ? " (delta of " + base + ")" : "") + ": "
+                + file.length() + " bytes, " + snapshot.packages.size() + " packages, "
+                + snapshot.profiles.size() + " profiles in " + (System.currentTimeMillis() - start) + " ms");
+        return file;
+    }
+
+    /**
+     * Write as a delta against the snapshot last in the same directory when it is still there
+     * and not too deep, as a full snapshot otherwise
+     *
+     * @param file destination
+     * @param last name of the previous export, "" if there is none
+     * @return name of the base, null if a full snapshot was written
+     * @throws IOException
+     */
+    String writeTo(File file, String last) throws IOException {
+        RulesSnapshot base = null;
+        File previous = new File(file.getParentFile(), last);
+        // exported within the same second: the new file would replace its own base
+        if (last.length() > 0 && !last.equals(file.getName()) && previous.exists()) {
+            try {
+                base = read(previous);
+                if (base.depth >= MAX_DEPTH) {
+                    base = null;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read previous snapshot " + last + ": " + e.getLocalizedMessage());
+            }
+        }
+        if (base != null) {
+            alignTo(base);
+            depth = base.depth + 1;
+        } else {
+            depth = 0;
+        }
+        write(file, base, last);
+        return base != null ? last : null;
+    }
+
+    /* BitSet.toByteArray() needs API 19 */
+    private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        byte[] bytes = new byte[(bits.length() + 7) / 8];
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            bytes[i / 8] |= 1 << (i % 8);
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BitSet readBits(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        BitSet bits = new BitSet(bytes.length * 8);
+        for (int i = 0; i < bytes.length * 8; i++) {
+            if ((bytes[i / 8] & (1 << (i % 8))) != 0) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Set) {
+            out.writeByte(TYPE_STRING_SET);
+            List<String> strings = new ArrayList<>();
+            for (Object item : (Set<?>) value) {
+                strings.add(String.valueOf(item));
+            }
+            writeStrings(out, strings);
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_STRING_SET:
+                return new HashSet<>(readStrings(in));
+            default:
+                throw new IOException("Unknown preference type " + type);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package dev.ukanth.ufirewall.activity;
 
+import android.app.TimePickerDialog;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
@@ -7,6 +8,7 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.format.DateFormat;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -15,24 +17,28 @@ import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.raizlabs.android.dbflow.sql.language.SQLite;
+import com.afollestad.materialdialogs.MaterialDialog;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.R;
-import dev.ukanth.ufirewall.log.Log;
-import dev.ukanth.ufirewall.log.LogPreference;
-import dev.ukanth.ufirewall.log.LogPreference_Table;
+import dev.ukanth.ufirewall.schedule.Scheduler;
+import dev.ukanth.ufirewall.schedule.TimeWindow;
+import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.traffic.TrafficSampler;
 import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.RuleState;
 
 public class AppDetailActivity extends AppCompatActivity {
     public static final String TAG = "AFWall";
+    // indexed by RuleState network class
+    private static final int[] NETWORK_NAMES = {R.string.wifi, R.string.data, R.string.roam, R.string.vpn, R.string.lan};
     private static String packageName = "";
     private CheckBox logOption;
+    private CheckBox skipLogOption;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -45,13 +51,7 @@ public class AppDetailActivity extends AppCompatActivity {
         try {
             logOption = (CheckBox) findViewById(R.id.notification_p);
 
-            LogPreference logPreference = SQLite.select()
-                    .from(LogPreference.class)
-                    .where(LogPreference_Table.uid.eq(appid)).querySingle();
-
-            if(logPreference != null) {
-                logOption.setChecked(logPreference.isDisable());
-            }
+            logOption.setChecked(!G.canShow(appid));
 
             logOption.setOnCheckedChangeListener((buttonView, isChecked) -> {
                 //only use when triggered by user
@@ -60,6 +60,21 @@ public class AppDetailActivity extends AppCompatActivity {
                     G.updateLogNotification(appid, isChecked);
                 }
             });
+
+            skipLogOption = (CheckBox) findViewById(R.id.skip_log);
+            skipLogOption.setChecked(G.getLogPreference(appid).isSkip());
+            skipLogOption.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                if (buttonView.isPressed()) {
+                    final Context ctx = getApplicationContext();
+                    G.updateLogSkip(appid, isChecked, transaction -> {
+                        if (G.enableLogService()) {
+                            Api.updateLogRules(ctx, new RootCommand()
+                                    .setReopenShell(true)
+                                    .setFailureToast(R.string.log_toggle_failed));
+                        }
+                    });
+                }
+            });
         } catch (Exception e) {
         }
 
@@ -97,6 +112,7 @@ public class AppDetailActivity extends AppCompatActivity {
                     Api.showInstalledAppDetails(getApplicationContext(), packageName);
                 }
             });
+            findViewById(R.id.app_schedule).setOnClickListener(v -> showSchedule(appid));
             ApplicationInfo applicationInfo;
 
             try {
@@ -109,7 +125,7 @@ public class AppDetailActivity extends AppCompatActivity {
                 } else {
                     textView2.setText(packageName);
                 }
-                setTotalBytesManual(down, up, applicationInfo.uid);
+                setTotalBytes(down, up, applicationInfo.uid);
             } catch (final NameNotFoundException e) {
                 down.setText(" : " + humanReadableByteCount(0, false));
                 up.setText(" : " + humanReadableByteCount(0, false));
@@ -118,46 +134,104 @@ public class AppDetailActivity extends AppCompatActivity {
         }
     }
 
-    private void setTotalBytesManual(TextView down, TextView up, int localUid) {
-        File dir = new File("/proc/uid_stat/");
-        down.setText(" : " + humanReadableByteCount(Long.parseLong("0"), false));
-        up.setText(" : " + humanReadableByteCount(Long.parseLong("0"), false));
-        if (dir.exists()) {
-            String[] children = dir.list();
-            if (!Arrays.asList(children).contains(String.valueOf(localUid))) {
-                down.setText(" : " + humanReadableByteCount(Long.parseLong("0"), false));
-                up.setText(" : " + humanReadableByteCount(Long.parseLong("0"), false));
-                return;
-            }
-            File uidFileDir = new File("/proc/uid_stat/" + String.valueOf(localUid));
-            if (uidFileDir.exists()) {
-                File uidActualFileReceived = new File(uidFileDir, "tcp_rcv");
-                File uidActualFileSent = new File(uidFileDir, "tcp_snd");
-                String textReceived = "0";
-                String textSent = "0";
-                try {
-                    if (uidActualFileReceived.exists() && uidActualFileSent.exists()) {
-                        BufferedReader brReceived = new BufferedReader(new FileReader(uidActualFileReceived));
-                        BufferedReader brSent = new BufferedReader(new FileReader(uidActualFileSent));
-                        String receivedLine;
-                        String sentLine;
-                        if ((receivedLine = brReceived.readLine()) != null) {
-                            textReceived = receivedLine;
-                        }
-                        if ((sentLine = brSent.readLine()) != null) {
-                            textSent = sentLine;
-                        }
-                        down.setText(" : " + humanReadableByteCount(Long.parseLong(textReceived), false));
-                        up.setText(" : " + humanReadableByteCount(Long.parseLong(textSent), false));
-                        brReceived.close();
-                        brSent.close();
+    /**
+     * List the time windows of the app, picking one offers to remove it
+     */
+    private void showSchedule(final int uid) {
+        final List<TimeWindow> windows = Scheduler.getWindows(getApplicationContext(), uid);
+        List<String> items = new ArrayList<>();
+        for (TimeWindow window : windows) {
+            items.add(getString(window.allow ? R.string.schedule_window_allow : R.string.schedule_window_block,
+                    getString(NETWORK_NAMES[window.net]), window.toString()));
+        }
+        items.add(getString(R.string.schedule_add));
+        new MaterialDialog.Builder(this)
+                .title(R.string.schedule)
+                .items(items.toArray(new String[items.size()]))
+                .itemsCallback((dialog, view, which, text) -> {
+                    if (which == windows.size()) {
+                        addWindow(uid);
+                    } else {
+                        removeWindow(windows.get(which));
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "Exception while reading tx bytes: " + e.getLocalizedMessage());
-                }
+                })
+                .show();
+    }
+
+    private void addWindow(final int uid) {
+        final List<Integer> nets = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int net = RuleState.WIFI; net <= RuleState.LAN; net++) {
+            if (RuleState.isEnabled(net)) {
+                nets.add(net);
+                names.add(getString(NETWORK_NAMES[net]));
             }
         }
-        // return Long.valueOf(textReceived).longValue() + Long.valueOf(textReceived).longValue();
+        new MaterialDialog.Builder(this)
+                .title(R.string.schedule_add)
+                .items(names.toArray(new String[names.size()]))
+                .itemsCallback((dialog, view, which, text) -> new MaterialDialog.Builder(this)
+                        .title(text)
+                        .items(new String[]{
+                                getString(R.string.schedule_allow),
+                                getString(R.string.schedule_block)})
+                        .itemsCallback((dialog2, view2, action, text2) -> pickTimes(uid, nets.get(which), action == 0))
+                        .show())
+                .show();
+    }
+
+    private void pickTimes(final int uid, final int net, final boolean allow) {
+        final boolean is24 = DateFormat.is24HourFormat(this);
+        TimePickerDialog start = new TimePickerDialog(this, (view, hour, minute) -> {
+            final int from = hour * 60 + minute;
+            TimePickerDialog end = new TimePickerDialog(this, (view2, hour2, minute2) -> {
+                final Context ctx = getApplicationContext();
+                final TimeWindow window = new TimeWindow(System.currentTimeMillis(), uid, net, allow,
+                        from, hour2 * 60 + minute2, TimeWindow.ALL_DAYS);
+                // applies the rule for the current state of the window right away
+                new Thread(() -> Scheduler.addWindow(ctx, window), "afwall-schedule").start();
+            }, 18, 0, is24);
+            end.setTitle(R.string.schedule_end);
+            end.show();
+        }, 8, 0, is24);
+        start.setTitle(R.string.schedule_start);
+        start.show();
+    }
+
+    private void removeWindow(final TimeWindow window) {
+        new MaterialDialog.Builder(this)
+                .title(R.string.schedule)
+                .content(R.string.schedule_remove)
+                .positiveText(R.string.delete)
+                .negativeText(R.string.Cancel)
+                .onPositive((dialog, which) -> Scheduler.removeWindow(getApplicationContext(), window.id))
+                .show();
+    }
+
+    /**
+     * Show the traffic recorded for the uid, sampling first (if accounting is on) so the
+     * numbers include the last few minutes.  Runs off the UI thread.
+     */
+    private void setTotalBytes(final TextView down, final TextView up, final int localUid) {
+        down.setText(" : " + humanReadableByteCount(0, false));
+        up.setText(" : " + humanReadableByteCount(0, false));
+        final Context ctx = getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (G.trafficAccounting()) {
+                    TrafficSampler.sample(ctx);
+                }
+                final long[] usage = TrafficSampler.getUsage(localUid, 0);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        down.setText(" : " + humanReadableByteCount(usage[0], false));
+                        up.setText(" : " + humanReadableByteCount(usage[1], false));
+                    }
+                });
+            }
+        }, "afwall-traffic").start();
     }
 
     public static String humanReadableByteCount(long bytes, boolean si) {
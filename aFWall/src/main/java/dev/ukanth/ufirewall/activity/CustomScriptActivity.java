@@ -29,6 +29,7 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.TextUtils;
 import android.text.method.LinkMovementMethod;
 import android.view.KeyEvent;
 import android.view.MenuItem;
@@ -41,8 +42,12 @@ import android.widget.TextView;
 import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.R;
+import dev.ukanth.ufirewall.customrules.CustomRules;
 
 /**
  * Custom scripts activity.
@@ -91,6 +96,19 @@ public class CustomScriptActivity extends AppCompatActivity implements OnClickLi
      * Set the activity result to RESULT_OK and terminate this activity.
      */
     private void resultOk() {
+        List<String> errors = new ArrayList<>(CustomRules.compile(script.getText().toString()).errors);
+        for (String error : CustomRules.compile(script2.getText().toString()).errors) {
+            errors.add(getString(R.string.custom_script2_error, error));
+        }
+        if (!errors.isEmpty()) {
+            // invalid lines would never make it into the rules, don't let them be saved
+            new MaterialDialog.Builder(this)
+                    .title(R.string.custom_script_invalid)
+                    .content(TextUtils.join("\n", errors))
+                    .positiveText(R.string.OK)
+                    .show();
+            return;
+        }
         final Intent response = new Intent(Api.CUSTOM_SCRIPT_MSG);
         response.putExtra(Api.SCRIPT_EXTRA, script.getText().toString());
         response.putExtra(Api.SCRIPT2_EXTRA, script2.getText().toString());
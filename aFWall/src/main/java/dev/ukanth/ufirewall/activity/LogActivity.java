@@ -32,6 +32,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
+import android.util.SparseArray;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.SubMenu;
@@ -46,20 +47,19 @@ import com.raizlabs.android.dbflow.sql.language.SQLite;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.R;
 import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.log.LogData;
-import dev.ukanth.ufirewall.log.LogData_Table;
 import dev.ukanth.ufirewall.log.LogDatabase;
 import dev.ukanth.ufirewall.log.LogRecyclerViewAdapter;
+import dev.ukanth.ufirewall.log.LogRollups;
 import dev.ukanth.ufirewall.log.RecyclerItemClickListener;
 import dev.ukanth.ufirewall.util.DateComparator;
 import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.Metrics;
 
 public class LogActivity extends AppCompatActivity implements SwipeRefreshLayout.OnRefreshListener {
 
@@ -72,6 +72,15 @@ public class LogActivity extends AppCompatActivity implements SwipeRefreshLayout
     protected  static final int MENU_TOGGLE = -4;
     protected static final int MENU_CLEAR = 40;
     protected static final int MENU_SWITCH_OLD = 42;
+    protected static final int MENU_RANGE = 43;
+
+    private static final int GROUP_RANGE = 1;
+    private static final long[] RANGES = {86400000L, 259200000L, 604800000L, 2592000000L};
+    private static final int[] RANGE_TITLES = {R.string.log_range_day, R.string.log_range_3days,
+            R.string.log_range_week, R.string.log_range_month};
+    private static final int TREND_WIDTH = 24;
+
+    private static final Metrics.Histogram LOAD_TIME = Metrics.histogram("ui.log.load");
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -130,20 +139,26 @@ public class LogActivity extends AppCompatActivity implements SwipeRefreshLayout
         recyclerView.setAdapter(recyclerViewAdapter);
     }
 
-    private List<LogData> getLogData() {
-        //load 3 day data
-        long loadInterval = System.currentTimeMillis() - 259200000;
-
-        List<LogData> logData = SQLite.select()
-                .from(LogData.class)
-                .where(LogData_Table.timestamp.greaterThan(loadInterval))
-                .orderBy(LogData_Table.timestamp,true)
-                .queryList();
+    /**
+     * Blocked packets per app within the selected range, read from the rollups
+     */
+    private List<LogData> getLogData(long since) {
+        List<LogData> logData = LogRollups.getTotals(LogRollups.KIND_UID, since);
         //auto purge old data - > week old data
         Api.purgeOldLog();
         return logData;
     }
 
+    private SparseArray<String> getTrends(long since) {
+        int resolution = LogRollups.resolutionFor(System.currentTimeMillis() - since);
+        SparseArray<long[]> series = LogRollups.getSeries(LogRollups.KIND_UID, resolution, since);
+        SparseArray<String> trends = new SparseArray<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            trends.put(series.keyAt(i), LogRollups.sparkline(series.valueAt(i), TREND_WIDTH));
+        }
+        return trends;
+    }
+
     private int getCount() {
         long l = SQLite.selectCountOf().from(LogData.class).count();
         return (int) l;
@@ -173,12 +188,15 @@ public class LogActivity extends AppCompatActivity implements SwipeRefreshLayout
 
         @Override
         protected Boolean doInBackground(Void... params) {
-            List<LogData> logData = getLogData();
+            long start = Metrics.start();
+            long since = System.currentTimeMillis() - G.logRange();
+            List<LogData> logData = getLogData(since);
             try {
                 if(logData != null && logData.size() > 0) {
-                    logData = updateMap(logData,this);
                     Collections.sort(logData, new DateComparator());
                     recyclerViewAdapter.updateData(logData);
+                    recyclerViewAdapter.updateTrends(getTrends(since));
+                    LOAD_TIME.stop(start);
                     return true;
                 } else {
                     return false;
@@ -238,6 +256,10 @@ public class LogActivity extends AppCompatActivity implements SwipeRefreshLayout
         SubMenu sub = menu.addSubMenu(0, MENU_TOGGLE, 0, "").setIcon(R.drawable.ic_flow);
         sub.add(0, MENU_CLEAR, 0, R.string.clear_log).setIcon(R.drawable.ic_clearlog);
         sub.add(0, MENU_SWITCH_OLD, 0, R.string.switch_old).setIcon(R.drawable.ic_log);
+        for (int i = 0; i < RANGES.length; i++) {
+            sub.add(GROUP_RANGE, MENU_RANGE + i, 0, RANGE_TITLES[i]).setChecked(RANGES[i] == G.logRange());
+        }
+        sub.setGroupCheckable(GROUP_RANGE, true, true);
         //populateMenu(sub);
         sub.getItem().setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS| MenuItem.SHOW_AS_ACTION_WITH_TEXT);
         super.onCreateOptionsMenu(menu);
@@ -258,54 +280,6 @@ public class LogActivity extends AppCompatActivity implements SwipeRefreshLayout
     }
 
 
-    private List<LogData> updateMap(final List<LogData> logDataList, CollectLog collectLog) {
-        final HashMap<Integer, LogData> logMap = new HashMap<>();
-        final HashMap<Integer, Integer> count = new HashMap<>();
-        final HashMap<Integer, Long> lastBlocked = new HashMap<>();
-        List<LogData> analyticsList = new ArrayList();
-
-        //int counter = 0;
-        final int size = logDataList.size();
-        //List<List<LogData>> parts = split(logDataList, 10);
-        /*for(List listLog: parts) {
-            Thread t = new Thread() {*/
-                LogData tmpData,data;
-               // public void run() {
-                    for (int i=0; i<size; i++) {
-                        //collectLog.doProgress(counter++);
-                        tmpData = logDataList.get(i);
-                        data = logDataList.get(i);
-                        if (logMap.containsKey(data.getUid())) {
-                            if (data.getTimestamp() > lastBlocked.get(data.getUid())) {
-                                lastBlocked.put(data.getUid(), data.getTimestamp());
-                                tmpData.setTimestamp(data.getTimestamp());
-                            } else {
-                                tmpData.setTimestamp(lastBlocked.get(data.getUid()));
-                            }
-                            //data already Present. Update the template here
-                            count.put(data.getUid(), count.get(data.getUid()).intValue() + 1);
-                            tmpData.setCount(count.get(data.getUid()).intValue());
-                            logMap.put(data.getUid(), tmpData);
-                        } else {
-                            //process template here
-                            count.put(data.getUid(), 1);
-                            tmpData.setCount(1);
-                            lastBlocked.put(data.getUid(), data.getTimestamp());
-                            logMap.put(data.getUid(), tmpData);
-                        }
-                    }
-                //}
-            //};
-            //t.start();
-        //}
-
-        for (Map.Entry<Integer, LogData> entry : logMap.entrySet()) {
-            analyticsList.add(entry.getValue());
-        }
-        return analyticsList;
-    }
-
-
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
@@ -326,6 +300,12 @@ public class LogActivity extends AppCompatActivity implements SwipeRefreshLayout
                 finish();
                 return true;
             default:
+                if (item.getItemId() >= MENU_RANGE && item.getItemId() < MENU_RANGE + RANGES.length) {
+                    G.logRange(RANGES[item.getItemId() - MENU_RANGE]);
+                    item.setChecked(true);
+                    (new CollectLog()).setContext(this).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                    return true;
+                }
                 return super.onOptionsItemSelected(item);
         }
     }
@@ -47,12 +47,14 @@ import com.raizlabs.android.dbflow.sql.language.SQLite;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.R;
+import dev.ukanth.ufirewall.log.HostResolver;
 import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.log.LogData;
 import dev.ukanth.ufirewall.log.LogData_Table;
@@ -60,7 +62,9 @@ import dev.ukanth.ufirewall.log.LogDatabase;
 import dev.ukanth.ufirewall.log.LogDetailRecyclerViewAdapter;
 import dev.ukanth.ufirewall.log.RecyclerItemClickListener;
 import dev.ukanth.ufirewall.util.DateComparator;
+import dev.ukanth.ufirewall.util.G;
 import dev.ukanth.ufirewall.util.LogNetUtil;
+import dev.ukanth.ufirewall.util.Metrics;
 
 public class LogDetailActivity extends AppCompatActivity implements SwipeRefreshLayout.OnRefreshListener {
 
@@ -73,6 +77,8 @@ public class LogDetailActivity extends AppCompatActivity implements SwipeRefresh
     protected Menu mainMenu;
     private LogData current_selected_logData;
 
+    private static final Metrics.Histogram LOAD_TIME = Metrics.histogram("ui.logdetail.load");
+
     private int uid;
     protected static final int MENU_TOGGLE = -4;
     protected static final int MENU_CLEAR = 40;
@@ -308,11 +314,20 @@ public class LogDetailActivity extends AppCompatActivity implements SwipeRefresh
 
         @Override
         protected Boolean doInBackground(Void... params) {
+            long start = Metrics.start();
             List<LogData> logData = getLogData(uid);
             try {
                 if (logData != null && logData.size() > 0) {
                     Collections.sort(logData, new DateComparator());
+                    LOAD_TIME.stop(start);
                     recyclerViewAdapter.updateData(logData);
+                    if (G.resolveLogHosts()) {
+                        List<String> addresses = new ArrayList<>();
+                        for (LogData data : logData) {
+                            addresses.add(data.getDst());
+                        }
+                        HostResolver.prefetch(addresses);
+                    }
                     return true;
                 } else {
                     return false;
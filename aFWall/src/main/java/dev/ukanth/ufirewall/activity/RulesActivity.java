@@ -42,12 +42,24 @@ import java.util.Map;
 import java.util.TreeSet;
 
 import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.ChainVerifier;
 import dev.ukanth.ufirewall.InterfaceDetails;
 import dev.ukanth.ufirewall.InterfaceTracker;
+import dev.ukanth.ufirewall.ProfileResolver;
 import dev.ukanth.ufirewall.R;
+import dev.ukanth.ufirewall.customrules.AddressRules;
+import dev.ukanth.ufirewall.log.HostResolver;
 import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.log.LogRxEvent;
+import dev.ukanth.ufirewall.profiles.ProfileChains;
+import dev.ukanth.ufirewall.schedule.Scheduler;
+import dev.ukanth.ufirewall.service.LogService;
 import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.service.RootSessions;
+import dev.ukanth.ufirewall.util.BootRules;
 import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.Metrics;
+import dev.ukanth.ufirewall.util.RulesFingerprint;
 
 public class RulesActivity extends DataDumpActivity {
 
@@ -105,6 +117,20 @@ public class RulesActivity extends DataDumpActivity {
             result.append("Error retrieving preferences\n");
         }
 
+        writeHeading(result, true, "Diagnostics");
+        result.append(RulesFingerprint.getStats(ctx));
+        result.append(ChainVerifier.getStats(ctx));
+        result.append(BootRules.getStats(ctx));
+        result.append(Scheduler.getStats(ctx));
+        result.append(LogRxEvent.getStats());
+        result.append(LogService.getToastStats());
+        result.append(HostResolver.getStats());
+        result.append(AddressRules.getStats());
+        result.append(ProfileChains.getStats(ctx));
+        result.append(ProfileResolver.getStats());
+        result.append(RootSessions.getStats());
+        result.append(Metrics.getStats());
+
         // Sixth section: "Logcat"
         writeHeading(result, true, "Logcat");
         result.append(Log.getLog());
@@ -32,7 +32,9 @@ import java.util.HashSet;
 
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.InterfaceTracker;
+import dev.ukanth.ufirewall.schedule.Scheduler;
 import dev.ukanth.ufirewall.service.LogService;
+import dev.ukanth.ufirewall.util.BootRules;
 import dev.ukanth.ufirewall.util.G;
 
 /**
@@ -45,6 +47,10 @@ public class BootBroadcast extends BroadcastReceiver {
 	@Override
 	public void onReceive(final Context context, final Intent intent) {
 
+		// rules restored by afwallstart match the stored fingerprint, the apply below only verifies them
+		BootRules.onBoot(context);
+		// catch up on windows that opened or closed while off and re-arm the alarm, the apply below picks the rules up
+		Scheduler.reconcile(context, false);
 		InterfaceTracker.applyRulesOnChange(context, InterfaceTracker.BOOT_COMPLETED);
 
 		if (G.enableLogService()) {
@@ -0,0 +1,36 @@
+/**
+ * Periodic trigger for the afwall chain verifier.
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dev.ukanth.ufirewall.broadcast;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.ChainVerifier;
+
+public class ChainVerifyReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Api.isEnabled(context)) {
+            ChainVerifier.verify(context, ChainVerifier.PERIODIC);
+        } else {
+            ChainVerifier.cancel(context);
+        }
+    }
+}
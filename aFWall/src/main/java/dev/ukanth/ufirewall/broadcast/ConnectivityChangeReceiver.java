@@ -26,6 +26,7 @@ import android.content.Context;
 import android.content.Intent;
 
 import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.ChainVerifier;
 import dev.ukanth.ufirewall.InterfaceTracker;
 import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.util.G;
@@ -61,6 +62,8 @@ public class ConnectivityChangeReceiver extends BroadcastReceiver {
         }
         if (Api.isEnabled(context) && G.activeRules()) {
             InterfaceTracker.applyRulesOnChange(context, InterfaceTracker.CONNECTIVITY_CHANGE);
+            // netd tends to rebuild its chains on network changes, make sure ours survived
+            ChainVerifier.verify(context, InterfaceTracker.CONNECTIVITY_CHANGE);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package dev.ukanth.ufirewall.customrules;
+
+import com.raizlabs.android.dbflow.annotation.Column;
+import com.raizlabs.android.dbflow.annotation.PrimaryKey;
+import com.raizlabs.android.dbflow.annotation.Table;
+import com.raizlabs.android.dbflow.structure.BaseModel;
+
+/**
+ * One outbound address rule: an address, CIDR or host name that is allowed or denied for one
+ * app or, with Api.SPECIAL_UID_ANY, for all of them.
+ */
+
+@Table(database = CustomRuleDatabase.class)
+public class AddressRule extends BaseModel {
+
+    @Column
+    @PrimaryKey(autoincrement = true)
+    long id;
+
+    @Column
+    private String address;
+
+    @Column
+    private int uid;
+
+    @Column
+    private boolean allow;
+
+    @Column
+    private String source;
+
+    @Column
+    private long timestamp;
+
+    public AddressRule() {
+    }
+
+    public AddressRule(String address, int uid, boolean allow, String source) {
+        this.address = address;
+        this.uid = uid;
+        this.allow = allow;
+        this.source = source;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public int getUid() {
+        return uid;
+    }
+
+    public void setUid(int uid) {
+        this.uid = uid;
+    }
+
+    public boolean isAllow() {
+        return allow;
+    }
+
+    public void setAllow(boolean allow) {
+        this.allow = allow;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
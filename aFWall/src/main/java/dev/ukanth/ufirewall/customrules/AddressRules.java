@@ -0,0 +1,421 @@
+package dev.ukanth.ufirewall.customrules;
+
+import android.content.Context;
+
+import com.raizlabs.android.dbflow.config.FlowManager;
+import com.raizlabs.android.dbflow.sql.language.SQLite;
+import com.raizlabs.android.dbflow.sql.language.Where;
+import com.raizlabs.android.dbflow.structure.database.DatabaseWrapper;
+import com.raizlabs.android.dbflow.structure.database.transaction.ITransaction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.util.Metrics;
+
+/**
+ * Outbound allow/deny lists of addresses, per app or global.  The AddressRule table is
+ * compiled into one AddressTrie per app, action and family, so overlapping and adjacent
+ * entries of a large blocklist end up as few CIDRs.  Those are loaded into the root-hosts
+ * chain:
+ * <ul>
+ * <li>large lists go into an ipset (hash:net) matched by a single rule, if ipset exists</li>
+ * <li>otherwise all rules are loaded with one iptables-restore --noflush call</li>
+ * <li>with the built-in iptables (no restore binary) one iptables call per rule</li>
+ * </ul>
+ * Allowed destinations are accepted before the per-app rules are looked at, denied ones go to
+ * the reject chain.  Host names are resolved once on import and stored as addresses, building
+ * the apply script never waits for DNS.
+ */
+
+public final class AddressRules {
+
+    public static final String TAG = "AFWall";
+
+    /* host names resolved per import, a hosts file of names is not what this is for */
+    public static final int MAX_RESOLVE = 64;
+    /* below this plain rules are as fast as a set lookup */
+    private static final int IPSET_MIN = 32;
+
+    private static final Metrics.Histogram COMPILE_TIME = Metrics.histogram("hosts.compile");
+    private static final Metrics.Histogram IMPORT_TIME = Metrics.histogram("hosts.import");
+
+    static final class Group {
+        final int uid;
+        final boolean allow;
+        AddressTrie v4 = new AddressTrie(32);
+        AddressTrie v6 = new AddressTrie(128);
+        List<String> prefixes4;
+        List<String> prefixes6;
+
+        Group(int uid, boolean allow) {
+            this.uid = uid;
+            this.allow = allow;
+        }
+    }
+
+    // guarded by AddressRules.class, null until compiled after the last change
+    private static List<Group> compiled;
+    private static int entries;
+    private static int invalid;
+    private static int prefixes;
+    private static long compileMillis;
+
+    /**
+     * Outcome of an import
+     */
+    public static final class ImportResult {
+        /* addresses stored */
+        public final int stored;
+        /* host names beyond the first MAX_RESOLVE, not looked up */
+        public final List<String> skipped;
+        /* host names that did not resolve */
+        public final List<String> failed;
+
+        ImportResult(int stored, List<String> skipped, List<String> failed) {
+            this.stored = stored;
+            this.skipped = skipped;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * One imported list: the entries stored under a name for one app and action
+     */
+    public static final class Source {
+        public final String name;
+        public final int uid;
+        public final boolean allow;
+        public final long count;
+
+        Source(String name, int uid, boolean allow, long count) {
+            this.name = name;
+            this.uid = uid;
+            this.allow = allow;
+            this.count = count;
+        }
+    }
+
+    private AddressRules() {
+    }
+
+    /**
+     * Drop the compiled rules after the table changed
+     */
+    public static synchronized void invalidate() {
+        compiled = null;
+    }
+
+    /**
+     * Pick the address out of a blocklist line: plain addresses, CIDRs, host names and hosts
+     * file entries ("0.0.0.0 example.com"), comments start with '#'
+     *
+     * @param line
+     * @return null for blank, comment and unusable lines
+     */
+    static String parseLine(String line) {
+        int comment = line.indexOf('#');
+        if (comment >= 0) {
+            line = line.substring(0, comment);
+        }
+        String[] tokens = line.trim().split("\\s+");
+        String address = tokens[0];
+        if (tokens.length > 1 && AddressTrie.parse(tokens[0]) != null) {
+            // hosts file, the address is only a sink
+            address = tokens[1];
+        }
+        if (address.isEmpty() || address.equals("localhost") || address.equals("0.0.0.0")) {
+            return null;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (!Character.isLetterOrDigit(c) && ".-_:/".indexOf(c) < 0) {
+                return null;
+            }
+        }
+        return address.toLowerCase();
+    }
+
+    /**
+     * Replace the entries of one source with the addresses of a list.  Host names are resolved
+     * here, so this blocks on DNS and must not run on the main thread.  Only the first
+     * MAX_RESOLVE names are looked up, the result lists the ones left out.
+     *
+     * @param in     blocklist, one entry per line
+     * @param uid    app the entries apply to, Api.SPECIAL_UID_ANY for all
+     * @param allow  allow list instead of deny list
+     * @param source name the entries are stored under, together with uid and allow
+     * @return number of entries stored and the host names not stored
+     * @throws IOException
+     */
+    public static ImportResult importList(Reader in, final int uid, final boolean allow, final String source) throws IOException {
+        long start = Metrics.start();
+        final List<AddressRule> rules = new ArrayList<>();
+        Set<String> names = new LinkedHashSet<>();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String address = parseLine(line);
+            if (address == null) {
+                continue;
+            }
+            if (isName(address)) {
+                names.add(address);
+            } else {
+                rules.add(new AddressRule(address, uid, allow, source));
+            }
+        }
+        List<String> skipped = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        int resolved = 0;
+        for (String name : names) {
+            if (resolved >= MAX_RESOLVE) {
+                skipped.add(name);
+                continue;
+            }
+            resolved++;
+            try {
+                for (InetAddress inet : InetAddress.getAllByName(name)) {
+                    rules.add(new AddressRule(inet.getHostAddress(), uid, allow, source));
+                }
+            } catch (IOException e) {
+                failed.add(name);
+            }
+        }
+        FlowManager.getDatabase(CustomRuleDatabase.class).executeTransaction(new ITransaction() {
+            @Override
+            public void execute(DatabaseWrapper databaseWrapper) {
+                delete(source, uid, allow).execute(databaseWrapper);
+                for (AddressRule rule : rules) {
+                    rule.insert(databaseWrapper);
+                }
+            }
+        });
+        invalidate();
+        IMPORT_TIME.stop(start);
+        Log.i(TAG, "Imported " + rules.size() + " address rules from " + source + ", skipped "
+                + skipped.size() + " and failed to resolve " + failed.size() + " host names");
+        return new ImportResult(rules.size(), skipped, failed);
+    }
+
+    /**
+     * @return true if address is neither an address nor a prefix, but a host name
+     */
+    static boolean isName(String address) {
+        int slash = address.indexOf('/');
+        return slash < 0 && address.indexOf(':') < 0 && AddressTrie.parse(address) == null;
+    }
+
+    private static Where<AddressRule> delete(String source, int uid, boolean allow) {
+        return SQLite.delete(AddressRule.class).where(AddressRule_Table.source.eq(source),
+                AddressRule_Table.uid.eq(uid), AddressRule_Table.allow.eq(allow));
+    }
+
+    /**
+     * @return the imported lists, by name
+     */
+    public static List<Source> getSources() {
+        List<AddressRule> first = SQLite.select().from(AddressRule.class)
+                .groupBy(AddressRule_Table.source, AddressRule_Table.uid, AddressRule_Table.allow)
+                .orderBy(AddressRule_Table.source, true)
+                .queryList();
+        List<Source> sources = new ArrayList<>();
+        for (AddressRule rule : first) {
+            long count = SQLite.selectCountOf().from(AddressRule.class).where(
+                    AddressRule_Table.source.eq(rule.getSource()),
+                    AddressRule_Table.uid.eq(rule.getUid()),
+                    AddressRule_Table.allow.eq(rule.isAllow())).count();
+            sources.add(new Source(rule.getSource(), rule.getUid(), rule.isAllow(), count));
+        }
+        return sources;
+    }
+
+    /**
+     * Remove all entries of one imported list
+     *
+     * @param source
+     */
+    public static void remove(Source source) {
+        delete(source.name, source.uid, source.allow).execute();
+        invalidate();
+        Log.i(TAG, "Removed " + source.count + " address rules of " + source.name);
+    }
+
+    private static synchronized List<Group> compile() {
+        if (compiled != null) {
+            return compiled;
+        }
+        long start = System.currentTimeMillis();
+        long sample = Metrics.start();
+        List<Group> result = compile(SQLite.select().from(AddressRule.class).queryList());
+        compileMillis = System.currentTimeMillis() - start;
+        COMPILE_TIME.stop(sample);
+        Log.i(TAG, "Compiled " + entries + " address rules into " + prefixes + " prefixes in " + compileMillis + " ms");
+        compiled = result;
+        return result;
+    }
+
+    /**
+     * Merge the entries of each app and action into prefixes, allow lists first
+     *
+     * @param rules all address rules
+     * @return one group per app and action
+     */
+    static synchronized List<Group> compile(List<AddressRule> rules) {
+        Map<Long, Group> groups = new LinkedHashMap<>();
+        invalid = 0;
+        for (AddressRule rule : rules) {
+            long key = ((long) rule.getUid() << 1) | (rule.isAllow() ? 1 : 0);
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group(rule.getUid(), rule.isAllow());
+                groups.put(key, group);
+            }
+            String address = rule.getAddress();
+            // names were resolved on import, anything else left is unusable
+            if (!group.v4.add(address) && !group.v6.add(address)) {
+                invalid++;
+            }
+        }
+        List<Group> result = new ArrayList<>();
+        int count = 0;
+        // allow lists first, an accepted destination never reaches a deny rule
+        for (int pass = 0; pass < 2; pass++) {
+            for (Group group : groups.values()) {
+                if (group.allow == (pass == 0)) {
+                    group.prefixes4 = group.v4.toPrefixes();
+                    group.prefixes6 = group.v6.toPrefixes();
+                    group.v4 = null;
+                    group.v6 = null;
+                    count += group.prefixes4.size() + group.prefixes6.size();
+                    result.add(group);
+                }
+            }
+        }
+        entries = rules.size();
+        prefixes = count;
+        return result;
+    }
+
+    /**
+     * Emit the address rules of one chain tree
+     *
+     * @param ctx
+     * @param cmds iptables commands of the apply script
+     * @param root top chain of the tree, the rules go into root-hosts
+     * @param ipv6
+     * @return false if there are no rules for this family, root-hosts need not be jumped to
+     */
+    public static boolean addRules(Context ctx, List<String> cmds, String root, boolean ipv6) {
+        String chain = root + "-hosts";
+        String reject = root + "-reject";
+        boolean ipset = Api.hasBinary("ipset");
+        List<String> rules = new ArrayList<>();
+        StringBuilder sets = new StringBuilder();
+        for (Group group : compile()) {
+            List<String> list = ipv6 ? group.prefixes6 : group.prefixes4;
+            if (list.isEmpty()) {
+                continue;
+            }
+            String owner = group.uid >= 0 ? " -m owner --uid-owner " + group.uid : "";
+            String target = group.allow ? " -j ACCEPT" : " -j " + reject;
+            if (ipset && list.size() >= IPSET_MIN) {
+                String name = root + "-" + (group.allow ? "a" : "d") + (group.uid >= 0 ? group.uid : "x") + (ipv6 ? "6" : "4");
+                sets.append("create ").append(name).append(" hash:net family ").append(ipv6 ? "inet6" : "inet")
+                        .append(" maxelem ").append(Math.max(65536, list.size())).append(" -exist\n");
+                sets.append("flush ").append(name).append('\n');
+                for (String prefix : list) {
+                    sets.append("add ").append(name).append(' ').append(prefix).append('\n');
+                }
+                rules.add("-A " + chain + owner + " -m set --match-set " + name + " dst" + target);
+            } else {
+                for (String prefix : list) {
+                    rules.add("-A " + chain + owner + " -d " + prefix + target);
+                }
+            }
+        }
+        if (rules.isEmpty()) {
+            return false;
+        }
+        if (sets.length() > 0) {
+            String file = write(ctx, chain + (ipv6 ? ".sets6" : ".sets4"), sets.toString());
+            // the hash makes a changed list change the script, and with it the rules fingerprint
+            cmds.add("#LITERAL# ipset restore -exist < " + file + " # " + hash(sets));
+        }
+        String restore = restoreBinary(Api.getBinaryPath(ctx, ipv6));
+        if (restore == null || rules.size() == 1) {
+            cmds.addAll(rules);
+            return true;
+        }
+        StringBuilder content = new StringBuilder("*filter\n:").append(chain).append(" - [0:0]\n");
+        for (String rule : rules) {
+            content.append(rule).append('\n');
+        }
+        content.append("COMMIT\n");
+        String file = write(ctx, chain + (ipv6 ? ".v6" : ".v4"), content.toString());
+        cmds.add("#LITERAL# " + restore + " --noflush < " + file + " # " + hash(content));
+        return true;
+    }
+
+    /**
+     * @param iptables as returned by Api.getBinaryPath()
+     * @return matching restore binary, null if there is none (built-in iptables)
+     */
+    private static String restoreBinary(String iptables) {
+        if (iptables.endsWith(" -w")) {
+            // iptables-restore only learned -w in 1.6.2
+            iptables = iptables.substring(0, iptables.length() - 3);
+        }
+        if (iptables.indexOf('/') >= 0 || iptables.indexOf(' ') >= 0) {
+            return null;
+        }
+        String restore = iptables + "-restore";
+        return Api.hasBinary(restore) ? restore : null;
+    }
+
+    private static String hash(CharSequence content) {
+        return Integer.toHexString(content.toString().hashCode()) + "-" + content.length();
+    }
+
+    private static String write(Context ctx, String name, String content) {
+        File file = new File(ctx.getDir("bin", 0), name);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+            writer.write(content);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write " + name + ": " + e.getLocalizedMessage());
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    public static synchronized String getStats() {
+        if (compiled == null) {
+            return "Address rules: not compiled\n";
+        }
+        return "Address rules: " + entries + " entries, " + prefixes + " prefixes, " + invalid
+                + " unusable, compiled in " + compileMillis + " ms\n";
+    }
+}
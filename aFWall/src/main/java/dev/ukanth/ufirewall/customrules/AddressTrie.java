@@ -0,0 +1,227 @@
+package dev.ukanth.ufirewall.customrules;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary trie over address bits, one per address family.  Adding a prefix covered by one
+ * already present is a no-op, and two sibling prefixes that are both covered collapse into
+ * their parent, so toPrefixes() returns the smallest set of CIDRs covering exactly the union of
+ * everything added.
+ * <p>
+ * Nodes live in parallel int arrays rather than objects, a 50k entry list needs a few hundred
+ * thousand nodes.
+ */
+
+public final class AddressTrie {
+
+    private static final int ROOT = 0;
+    private static final int NONE = 0;
+
+    private final int bits;
+    private int[] zero = new int[1024];
+    private int[] one = new int[1024];
+    private boolean[] covered = new boolean[1024];
+    private int nodes = 1;
+    private int added;
+
+    /**
+     * @param bits 32 for IPv4, 128 for IPv6
+     */
+    public AddressTrie(int bits) {
+        this.bits = bits;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return number of prefixes added, including redundant ones
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    public boolean isEmpty() {
+        return !covered[ROOT] && zero[ROOT] == NONE && one[ROOT] == NONE;
+    }
+
+    private int newNode() {
+        if (nodes == zero.length) {
+            int size = nodes * 2;
+            zero = Arrays.copyOf(zero, size);
+            one = Arrays.copyOf(one, size);
+            covered = Arrays.copyOf(covered, size);
+        }
+        return nodes++;
+    }
+
+    private static boolean bit(byte[] address, int index) {
+        return (address[index >> 3] & (0x80 >> (index & 7))) != 0;
+    }
+
+    /**
+     * @param address network address, 4 or 16 bytes matching the trie
+     * @param length  prefix length, host bits of address are ignored
+     */
+    public void add(byte[] address, int length) {
+        if (address.length * 8 != bits || length < 0 || length > bits) {
+            throw new IllegalArgumentException("Prefix does not match a " + bits + " bit trie");
+        }
+        added++;
+        int node = ROOT;
+        for (int i = 0; i < length; i++) {
+            if (covered[node]) {
+                return;
+            }
+            boolean set = bit(address, i);
+            int next = set ? one[node] : zero[node];
+            if (next == NONE) {
+                next = newNode();
+                if (set) {
+                    one[node] = next;
+                } else {
+                    zero[node] = next;
+                }
+            }
+            node = next;
+        }
+        // everything below is covered now, toPrefixes() never descends past this node
+        covered[node] = true;
+        zero[node] = NONE;
+        one[node] = NONE;
+    }
+
+    /**
+     * @param cidr "a.b.c.d", "a.b.c.d/n", or the IPv6 equivalents
+     * @return false if cidr is not an address literal of this family
+     */
+    public boolean add(String cidr) {
+        int slash = cidr.indexOf('/');
+        byte[] address = parse(slash < 0 ? cidr : cidr.substring(0, slash));
+        if (address == null || address.length * 8 != bits) {
+            return false;
+        }
+        int length = bits;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (length < 0 || length > bits) {
+                return false;
+            }
+        }
+        add(address, length);
+        return true;
+    }
+
+    /**
+     * Parse an address literal without ever triggering a DNS lookup
+     *
+     * @param address
+     * @return 4 or 16 bytes, null if address is not a literal
+     */
+    public static byte[] parse(String address) {
+        if (address.indexOf(':') >= 0) {
+            for (int i = 0; i < address.length(); i++) {
+                char c = address.charAt(i);
+                if (Character.digit(c, 16) < 0 && c != ':' && c != '.') {
+                    return null;
+                }
+            }
+            try {
+                // a literal containing ':' is never resolved
+                return InetAddress.getByName(address).getAddress();
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+        String[] parts = address.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        byte[] result = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            if (parts[i].isEmpty() || parts[i].length() > 3) {
+                return null;
+            }
+            int value = 0;
+            for (int j = 0; j < parts[i].length(); j++) {
+                int digit = Character.digit(parts[i].charAt(j), 10);
+                if (digit < 0) {
+                    return null;
+                }
+                value = value * 10 + digit;
+            }
+            if (value > 255) {
+                return null;
+            }
+            result[i] = (byte) value;
+        }
+        return result;
+    }
+
+    /**
+     * Merge covered siblings bottom up
+     *
+     * @return true if node is covered completely
+     */
+    private boolean collapse(int node) {
+        if (covered[node]) {
+            return true;
+        }
+        boolean left = zero[node] != NONE && collapse(zero[node]);
+        boolean right = one[node] != NONE && collapse(one[node]);
+        if (left && right) {
+            covered[node] = true;
+            zero[node] = NONE;
+            one[node] = NONE;
+        }
+        return covered[node];
+    }
+
+    /**
+     * @return minimal list of CIDRs, in address order
+     */
+    public List<String> toPrefixes() {
+        collapse(ROOT);
+        List<String> prefixes = new ArrayList<>();
+        walk(ROOT, new byte[bits / 8], 0, prefixes);
+        return prefixes;
+    }
+
+    private void walk(int node, byte[] address, int depth, List<String> prefixes) {
+        if (covered[node]) {
+            prefixes.add(format(address) + "/" + depth);
+            return;
+        }
+        if (zero[node] != NONE) {
+            walk(zero[node], address, depth + 1, prefixes);
+        }
+        if (one[node] != NONE) {
+            address[depth >> 3] |= (byte) (0x80 >> (depth & 7));
+            walk(one[node], address, depth + 1, prefixes);
+            address[depth >> 3] &= (byte) ~(0x80 >> (depth & 7));
+        }
+    }
+
+    private static String format(byte[] address) {
+        if (address.length == 4) {
+            return (address[0] & 0xff) + "." + (address[1] & 0xff) + "." + (address[2] & 0xff) + "." + (address[3] & 0xff);
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 16; i += 2) {
+            if (i > 0) {
+                result.append(':');
+            }
+            result.append(Integer.toHexString(((address[i] & 0xff) << 8) | (address[i + 1] & 0xff)));
+        }
+        return result.toString();
+    }
+}
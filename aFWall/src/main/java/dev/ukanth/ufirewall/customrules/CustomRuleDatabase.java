@@ -9,5 +9,5 @@ import com.raizlabs.android.dbflow.annotation.Database;
 @Database(name = CustomRuleDatabase.NAME, version = CustomRuleDatabase.VERSION)
 public class CustomRuleDatabase {
     public static final String NAME = "rules";
-    public static final int VERSION = 1;
+    public static final int VERSION = 2;
 }
\ No newline at end of file
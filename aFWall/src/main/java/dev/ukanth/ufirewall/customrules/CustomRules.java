@@ -0,0 +1,305 @@
+package dev.ukanth.ufirewall.customrules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.util.Metrics;
+
+/**
+ * Compiler for the custom scripts.  Every line is parsed and checked once, "$IPTABLES ..." lines
+ * become the same "-A chain ..." commands the rest of the rules are built from, anything else
+ * stays a "#LITERAL#" shell line.  Lines with an address literal only go into the script of its
+ * family, iptables/ip6tables lines only into their own.
+ * <p>
+ * Compiled lines are cached by their text, so after an edit only the changed lines are parsed
+ * again.  Invalid lines are reported on save and left out of the apply script.
+ */
+
+public final class CustomRules {
+
+    public static final String TAG = "AFWall";
+
+    private static final int V4 = 1;
+    private static final int V6 = 2;
+    private static final int BOTH = V4 | V6;
+
+    /* cap of the line cache, a script is rarely more than a few dozen lines */
+    private static final int MAX_CACHED = 512;
+
+    private static final Metrics.Histogram COMPILE_TIME = Metrics.histogram("custom.compile");
+
+    private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList(
+            "-A", "--append", "-I", "--insert", "-D", "--delete", "-R", "--replace",
+            "-N", "--new-chain", "-X", "--delete-chain", "-F", "--flush", "-Z", "--zero",
+            "-P", "--policy", "-E", "--rename-chain", "-L", "--list", "-S", "--list-rules"));
+    // commands that can't do without a chain name
+    private static final Set<String> NEED_CHAIN = new HashSet<>(Arrays.asList(
+            "-A", "--append", "-I", "--insert", "-D", "--delete", "-R", "--replace",
+            "-N", "--new-chain", "-P", "--policy", "-E", "--rename-chain"));
+    private static final Set<String> NEED_VALUE = new HashSet<>(Arrays.asList(
+            "-s", "--source", "-d", "--destination", "-j", "--jump", "-g", "--goto",
+            "-i", "--in-interface", "-o", "--out-interface", "-p", "--protocol",
+            "-m", "--match", "-t", "--table"));
+    private static final Set<String> TABLES = new HashSet<>(Arrays.asList(
+            "filter", "nat", "mangle", "raw", "security"));
+    // each line runs on its own, these only make sense as part of a multi-line construct
+    private static final Set<String> CONTINUATIONS = new HashSet<>(Arrays.asList(
+            "then", "else", "elif", "fi", "do", "done", "esac", "}"));
+
+    /**
+     * One compiled line
+     */
+    private static final class Fragment {
+        final String command;
+        final int family;
+        final String error;
+
+        Fragment(String command, int family, String error) {
+            this.command = command;
+            this.family = family;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A compiled script, commands in the format Api.iptablesCommands() takes
+     */
+    public static final class Script {
+        public final List<String> v4;
+        public final List<String> v6;
+        public final List<String> errors;
+
+        Script(List<String> v4, List<String> v6, List<String> errors) {
+            this.v4 = Collections.unmodifiableList(v4);
+            this.v6 = Collections.unmodifiableList(v6);
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        public List<String> get(boolean ipv6) {
+            return ipv6 ? v6 : v4;
+        }
+    }
+
+    // guarded by CustomRules.class
+    private static final Map<String, Fragment> fragments = new HashMap<>();
+    private static final Map<String, String> sources = new HashMap<>();
+    private static final Map<String, Script> scripts = new HashMap<>();
+
+    private CustomRules() {
+    }
+
+    /**
+     * Compiled form of a script, from the cache if the text has not changed
+     *
+     * @param key  e.g. the preference the script is stored under
+     * @param text the script
+     */
+    public static synchronized Script get(String key, String text) {
+        if (text.equals(sources.get(key))) {
+            return scripts.get(key);
+        }
+        Script script = compile(text);
+        sources.put(key, text);
+        scripts.put(key, script);
+        if (!script.isValid()) {
+            Log.w(TAG, "Skipping invalid lines of " + key + ": " + script.errors);
+        }
+        return script;
+    }
+
+    /**
+     * @param text script, one command per line
+     */
+    public static synchronized Script compile(String text) {
+        long start = Metrics.start();
+        List<String> v4 = new ArrayList<>();
+        List<String> v6 = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        String[] lines = text.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Fragment fragment = fragments.get(line);
+            if (fragment == null) {
+                fragment = parse(line);
+                if (fragments.size() >= MAX_CACHED) {
+                    fragments.clear();
+                }
+                fragments.put(line, fragment);
+            }
+            if (fragment.error != null) {
+                errors.add("Line " + (i + 1) + ": " + fragment.error);
+                continue;
+            }
+            if ((fragment.family & V4) != 0) {
+                v4.add(fragment.command);
+            }
+            if ((fragment.family & V6) != 0) {
+                v6.add(fragment.command);
+            }
+        }
+        COMPILE_TIME.stop(start);
+        return new Script(v4, v6, errors);
+    }
+
+    private static Fragment parse(String line) {
+        String error = checkShell(line);
+        if (error != null) {
+            return new Fragment(null, 0, error);
+        }
+        String[] tokens = line.split("\\s+");
+        String binary = tokens[0];
+        int family;
+        if (binary.equals("$IPTABLES") || binary.equals("${IPTABLES}")) {
+            family = BOTH;
+        } else if (binary.endsWith("ip6tables")) {
+            family = V6;
+        } else if (binary.endsWith("iptables")) {
+            family = V4;
+        } else {
+            return new Fragment("#LITERAL# " + line, BOTH, null);
+        }
+        if (line.indexOf(';') >= 0 || line.indexOf('|') >= 0 || line.indexOf('&') >= 0) {
+            // several commands chained, leave them to the shell
+            return new Fragment("#LITERAL# " + line, family, null);
+        }
+        List<String> args = Arrays.asList(tokens).subList(1, tokens.length);
+        String command = null;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            String value = i + 1 < args.size() ? args.get(i + 1) : null;
+            if (COMMANDS.contains(arg)) {
+                if (command != null) {
+                    return new Fragment(null, 0, "more than one command (" + command + ", " + arg + ")");
+                }
+                command = arg;
+                if (NEED_CHAIN.contains(arg) && (value == null || value.startsWith("-"))) {
+                    return new Fragment(null, 0, arg + " needs a chain name");
+                }
+            } else if (NEED_VALUE.contains(arg)) {
+                if (value == null || (value.startsWith("-") && !value.equals("-"))) {
+                    return new Fragment(null, 0, arg + " needs a value");
+                }
+                if ((arg.equals("-t") || arg.equals("--table")) && !TABLES.contains(value)) {
+                    return new Fragment(null, 0, "unknown table " + value);
+                }
+                if ((arg.equals("-s") || arg.equals("--source") || arg.equals("-d") || arg.equals("--destination"))
+                        && isPlain(value)) {
+                    int found = addressFamily(value);
+                    if (found == 0) {
+                        return new Fragment(null, 0, "invalid address " + value);
+                    }
+                    if ((family & found) == 0) {
+                        return new Fragment(null, 0, value + " does not match " + binary);
+                    }
+                    family &= found;
+                }
+            }
+        }
+        if (command == null) {
+            return new Fragment(null, 0, "no command (-A, -I, -D, -N, ...)");
+        }
+        if (family != BOTH && !binary.startsWith("$")) {
+            // an explicit binary is the user's choice, only restrict it to its family
+            return new Fragment("#LITERAL# " + line, family, null);
+        }
+        if (isPlain(line.substring(binary.length()))) {
+            return new Fragment(line.substring(binary.length()).trim(), family, null);
+        }
+        return new Fragment("#LITERAL# " + line, family, null);
+    }
+
+    /**
+     * @return V4, V6, BOTH for host names, 0 if value is not usable for -s/-d
+     */
+    private static int addressFamily(String value) {
+        int family = 0;
+        for (String address : value.split(",", -1)) {
+            if (address.isEmpty()) {
+                return 0;
+            }
+            int slash = address.indexOf('/');
+            String host = slash < 0 ? address : address.substring(0, slash);
+            byte[] bytes = AddressTrie.parse(host);
+            int found;
+            if (bytes != null) {
+                found = bytes.length == 4 ? V4 : V6;
+            } else if (host.indexOf(':') < 0 && !host.matches("[0-9.]+") && host.matches("[A-Za-z0-9.\\-_]+")) {
+                found = BOTH;
+            } else {
+                return 0;
+            }
+            if (slash >= 0) {
+                try {
+                    int length = Integer.parseInt(address.substring(slash + 1));
+                    if (length < 0 || length > (found == V6 ? 128 : 32)) {
+                        return 0;
+                    }
+                } catch (NumberFormatException e) {
+                    // netmask notation, a.b.c.d/255.255.255.0
+                    if (found != V4 || AddressTrie.parse(address.substring(slash + 1)) == null) {
+                        return 0;
+                    }
+                }
+            }
+            family = family == 0 ? found : family & found;
+            if (family == 0) {
+                return 0;
+            }
+        }
+        return family;
+    }
+
+    /**
+     * @return a description of what can't run as a single line, null if it can
+     */
+    private static String checkShell(String line) {
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'') {
+                if (i == line.length() - 1) {
+                    return "line continuation is not supported, write the command on one line";
+                }
+                i++;
+            } else if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+        }
+        if (quote != 0) {
+            return "unterminated " + quote + " quote";
+        }
+        String first = line.split("\\s+")[0];
+        if (CONTINUATIONS.contains(first) || line.endsWith(" then") || line.endsWith(" do") || line.endsWith("{")) {
+            return "multi-line commands are not supported, write them on one line";
+        }
+        return null;
+    }
+
+    /**
+     * @return true if args need no shell: no quoting, variables, redirection or chaining
+     */
+    private static boolean isPlain(String args) {
+        for (int i = 0; i < args.length(); i++) {
+            if ("'\"\\$`;|&<>(){}*?".indexOf(args.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+package dev.ukanth.ufirewall.log;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import dev.ukanth.ufirewall.R;
+
+/**
+ * Groups blocked packets per UID for the log toasts.  Instead of one toast per packet, each
+ * interval shows at most MAX_SUMMARIES lines like "AppX(10123) blocked 37x to 3 hosts";
+ * groups that are not shown within WINDOW are dropped and counted as suppressed.
+ */
+
+public class BlockAggregator {
+
+    public static final long INTERVAL = 2000;
+    public static final long WINDOW = 10000;
+    public static final int MAX_SUMMARIES = 3;
+
+    private static class Group {
+        String appName;
+        int uid;
+        int count;
+        String lastDst;
+        int lastDpt;
+        final Set<String> hosts = new HashSet<>();
+        long lastSeen;
+    }
+
+    private static final Comparator<Group> BY_COUNT = new Comparator<Group>() {
+        @Override
+        public int compare(Group a, Group b) {
+            return b.count < a.count ? -1 : (b.count == a.count ? 0 : 1);
+        }
+    };
+
+    // guarded by this
+    private final SparseArray<Group> groups = new SparseArray<>();
+    private long received;
+    private long shown;
+    private long suppressed;
+    private long toasts;
+
+    /**
+     * @param logInfo blocked packet, not kept after return
+     * @param now     time of arrival
+     */
+    public synchronized void add(LogInfo logInfo, long now) {
+        Group group = groups.get(logInfo.uid);
+        if (group == null) {
+            group = new Group();
+            group.uid = logInfo.uid;
+            groups.put(logInfo.uid, group);
+        }
+        group.appName = logInfo.appName;
+        group.count++;
+        group.lastDst = logInfo.dst;
+        group.lastDpt = logInfo.dpt;
+        if (logInfo.dst != null) {
+            group.hosts.add(logInfo.dst);
+        }
+        group.lastSeen = now;
+        received++;
+    }
+
+    /**
+     * Take the summaries for the next toast
+     *
+     * @param ctx
+     * @param now
+     * @return null if nothing is pending
+     */
+    public synchronized String flush(Context ctx, long now) {
+        List<Group> pending = new ArrayList<>(groups.size());
+        for (int i = groups.size() - 1; i >= 0; i--) {
+            Group group = groups.valueAt(i);
+            if (now - group.lastSeen > WINDOW) {
+                suppressed += group.count;
+                groups.removeAt(i);
+            } else {
+                pending.add(group);
+            }
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Collections.sort(pending, BY_COUNT);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pending.size() && i < MAX_SUMMARIES; i++) {
+            Group group = pending.get(i);
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            if (group.count == 1) {
+                text.append(group.appName).append("(").append(group.uid).append(") ")
+                        .append(group.lastDst).append(":").append(group.lastDpt);
+            } else {
+                text.append(ctx.getString(R.string.log_toast_summary, group.appName, group.uid,
+                        group.count, group.hosts.size()));
+            }
+            shown += group.count;
+            groups.remove(group.uid);
+        }
+        toasts++;
+        return text.toString();
+    }
+
+    public synchronized boolean hasPending() {
+        return groups.size() > 0;
+    }
+
+    public synchronized String getStats() {
+        long pending = received - shown - suppressed;
+        return "Block toasts: " + received + " events, " + shown + " shown in " + toasts + " toasts, "
+                + suppressed + " suppressed, " + pending + " pending\n";
+    }
+}
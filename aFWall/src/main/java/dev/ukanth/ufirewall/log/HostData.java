@@ -0,0 +1,48 @@
+package dev.ukanth.ufirewall.log;
+
+import com.raizlabs.android.dbflow.annotation.Column;
+import com.raizlabs.android.dbflow.annotation.PrimaryKey;
+import com.raizlabs.android.dbflow.annotation.Table;
+import com.raizlabs.android.dbflow.structure.BaseModel;
+
+/**
+ * Cached reverse lookup of a blocked destination.  An empty host records a failed lookup,
+ * so the address isn't queried again before the entry expires.
+ */
+
+@Table(database = HostDatabase.class)
+public class HostData extends BaseModel {
+    @Column
+    @PrimaryKey
+    private String address;
+
+    @Column
+    private String host;
+
+    @Column
+    private long expires;
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    public void setExpires(long expires) {
+        this.expires = expires;
+    }
+}
@@ -0,0 +1,11 @@
+package dev.ukanth.ufirewall.log;
+
+import com.raizlabs.android.dbflow.annotation.Database;
+
+@Database(name = HostDatabase.NAME, version = HostDatabase.VERSION)
+public class HostDatabase {
+
+    public static final String NAME = "Hosts";
+
+    public static final int VERSION = 1;
+}
@@ -0,0 +1,332 @@
+package dev.ukanth.ufirewall.log;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.raizlabs.android.dbflow.config.FlowManager;
+import com.raizlabs.android.dbflow.sql.language.SQLite;
+import com.raizlabs.android.dbflow.structure.database.DatabaseWrapper;
+import com.raizlabs.android.dbflow.structure.database.transaction.ITransaction;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reverse lookups of blocked destinations for the log views.  Results are kept in a bounded
+ * LRU cache backed by HostData, lookups run on a small pool and concurrent requests for the
+ * same address share one lookup.
+ */
+
+public final class HostResolver {
+
+    public static final String TAG = "AFWall";
+
+    public interface Lookup {
+        /**
+         * @param address IP address
+         * @return host name, null if the address has none
+         * @throws IOException if the lookup failed
+         */
+        String reverse(String address) throws IOException;
+    }
+
+    interface Clock {
+        long now();
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread
+         *
+         * @param address
+         * @param host    empty if the address has no name
+         */
+        void onResolved(String address, String host);
+    }
+
+    static final int MAX_ENTRIES = 1024;
+    private static final int MAX_CONCURRENT = 4;
+    // InetAddress doesn't expose the record TTL, use fixed lifetimes instead
+    static final long TTL = 24 * 60 * 60 * 1000;
+    static final long NEGATIVE_TTL = 10 * 60 * 1000;
+
+    private static final Lookup SYSTEM_LOOKUP = new Lookup() {
+        @Override
+        public String reverse(String address) throws IOException {
+            String host = InetAddress.getByName(address).getCanonicalHostName();
+            return host.equals(address) ? null : host;
+        }
+    };
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static class Entry {
+        final String host;
+        final long expires;
+
+        Entry(String host, long expires) {
+            this.host = host;
+            this.expires = expires;
+        }
+    }
+
+    // all guarded by HostResolver.class
+    private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final Map<String, List<Listener>> inFlight = new HashMap<>();
+    private static final List<HostData> pendingWrites = new ArrayList<>();
+    private static boolean loaded;
+    private static long hits;
+    private static long lookups;
+    private static long failures;
+
+    private static Lookup resolver = SYSTEM_LOOKUP;
+    private static Clock clock = SYSTEM_CLOCK;
+
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "afwall-resolver");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private HostResolver() {
+    }
+
+    /**
+     * Replace the system resolver, e.g. with a local stand-in
+     *
+     * @param replacement null restores the system resolver
+     */
+    public static synchronized void setLookup(Lookup replacement) {
+        resolver = replacement != null ? replacement : SYSTEM_LOOKUP;
+    }
+
+    /**
+     * Replace the time source the expiry of entries is measured with
+     *
+     * @param replacement null restores the system clock
+     */
+    static synchronized void setClock(Clock replacement) {
+        clock = replacement != null ? replacement : SYSTEM_CLOCK;
+    }
+
+    private static synchronized long now() {
+        return clock.now();
+    }
+
+    /**
+     * Cached result, never blocks
+     *
+     * @param address
+     * @return host name, empty if the address has no name, null if unknown or expired
+     */
+    public static synchronized String get(String address) {
+        Entry entry = cache.get(address);
+        if (entry == null || entry.expires < now()) {
+            return null;
+        }
+        hits++;
+        return entry.host;
+    }
+
+    /**
+     * Resolve an address in the background unless it is cached or already being resolved
+     *
+     * @param address
+     * @param listener notified once the lookup finished, may be null
+     */
+    public static synchronized void request(final String address, Listener listener) {
+        if (address == null || address.length() == 0 || get(address) != null) {
+            return;
+        }
+        List<Listener> listeners = inFlight.get(address);
+        if (listeners != null) {
+            if (listener != null) {
+                listeners.add(listener);
+            }
+            return;
+        }
+        listeners = new ArrayList<>();
+        if (listener != null) {
+            listeners.add(listener);
+        }
+        inFlight.put(address, listeners);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliver(address, resolve(address));
+            }
+        });
+    }
+
+    /**
+     * Queue lookups for all addresses of a list, blocking only to load the persisted cache
+     *
+     * @param addresses duplicates are fine
+     */
+    public static void prefetch(Collection<String> addresses) {
+        ensureLoaded();
+        for (String address : addresses) {
+            request(address, null);
+        }
+    }
+
+    /**
+     * Resolve now, using the cache.  Blocking, call it off the UI thread.
+     *
+     * @param address
+     * @return host name, null if there is none
+     */
+    public static String lookup(String address) {
+        ensureLoaded();
+        String host = get(address);
+        if (host == null) {
+            host = resolve(address);
+            flushWrites();
+        }
+        return host.length() > 0 ? host : null;
+    }
+
+    private static String resolve(String address) {
+        ensureLoaded();
+        String host = get(address);
+        if (host != null) {
+            return host;
+        }
+        Lookup current;
+        synchronized (HostResolver.class) {
+            current = resolver;
+            lookups++;
+        }
+        long ttl = TTL;
+        try {
+            host = current.reverse(address);
+        } catch (IOException e) {
+            Log.d(TAG, "Unable to resolve " + address + ": " + e.getLocalizedMessage());
+        }
+        if (host == null) {
+            host = "";
+            ttl = NEGATIVE_TTL;
+        }
+        HostData data = new HostData();
+        data.setAddress(address);
+        data.setHost(host);
+        data.setExpires(now() + ttl);
+        synchronized (HostResolver.class) {
+            if (host.length() == 0) {
+                failures++;
+            }
+            cache.put(address, new Entry(host, data.getExpires()));
+            pendingWrites.add(data);
+        }
+        return host;
+    }
+
+    private static void deliver(final String address, final String host) {
+        final List<Listener> listeners;
+        boolean idle;
+        synchronized (HostResolver.class) {
+            listeners = inFlight.remove(address);
+            idle = inFlight.isEmpty();
+        }
+        if (listeners != null && !listeners.isEmpty()) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Listener listener : listeners) {
+                        listener.onResolved(address, host);
+                    }
+                }
+            });
+        }
+        // persist once per burst of lookups instead of once per address
+        if (idle) {
+            flushWrites();
+        }
+    }
+
+    private static void ensureLoaded() {
+        synchronized (HostResolver.class) {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+        }
+        try {
+            List<HostData> rows = SQLite.select().from(HostData.class)
+                    .where(HostData_Table.expires.greaterThan(now()))
+                    .orderBy(HostData_Table.expires, true)
+                    .queryList();
+            synchronized (HostResolver.class) {
+                for (HostData row : rows) {
+                    if (!cache.containsKey(row.getAddress())) {
+                        cache.put(row.getAddress(), new Entry(row.getHost(), row.getExpires()));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Exception while loading host cache: " + e.getLocalizedMessage());
+        }
+    }
+
+    private static void flushWrites() {
+        final List<HostData> writes;
+        synchronized (HostResolver.class) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            writes = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+        }
+        try {
+            FlowManager.getDatabase(HostDatabase.class).executeTransaction(new ITransaction() {
+                @Override
+                public void execute(DatabaseWrapper databaseWrapper) {
+                    for (HostData data : writes) {
+                        data.save(databaseWrapper);
+                    }
+                    databaseWrapper.execSQL("DELETE FROM HostData WHERE expires < " + now());
+                    // keep the table as small as the memory cache
+                    databaseWrapper.execSQL("DELETE FROM HostData WHERE address NOT IN (SELECT address FROM HostData "
+                            + "ORDER BY expires DESC LIMIT " + MAX_ENTRIES + ")");
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Exception while saving host cache: " + e.getLocalizedMessage());
+        }
+    }
+
+    public static synchronized String getStats() {
+        return "Host cache: " + cache.size() + " entries, " + hits + " hits, " + lookups + " lookups, "
+                + failures + " unresolved, " + inFlight.size() + " in flight\n";
+    }
+}
@@ -11,5 +11,5 @@ public class LogDatabase {
 
     public static final String NAME = "Logs";
 
-    public static final int VERSION = 1;
+    public static final int VERSION = 2;
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import dev.ukanth.ufirewall.R;
+import dev.ukanth.ufirewall.util.G;
 
 /**
  * Created by ukanth on 25/7/16.
@@ -24,6 +25,15 @@ public class LogDetailRecyclerViewAdapter extends RecyclerView.Adapter<LogDetail
     private LogData data;
     private RecyclerItemClickListener recyclerItemClickListener;
 
+    // redraw the rows of an address once its name is known
+    private final HostResolver.Listener hostListener = (address, host) -> {
+        for (int i = 0; i < logData.size(); i++) {
+            if (address.equals(logData.get(i).getDst())) {
+                notifyItemChanged(i);
+            }
+        }
+    };
+
 
     public LogDetailRecyclerViewAdapter(final Context context, RecyclerItemClickListener recyclerItemClickListener){
         this.context = context;
@@ -56,7 +66,15 @@ public class LogDetailRecyclerViewAdapter extends RecyclerView.Adapter<LogDetail
        // }
         //holder.appName.setText(data.getAppName() != null ? data.getAppName() + "(" + data.getUid() + ")" : context.getString(R.string.log_deletedapp));
         //holder.dataInterface.setText();
-        holder.dataDest.setText(context.getResources().getString(R.string.log_dst)+ data.getDst() + ":" +data.getDpt());
+        String host = null;
+        if (G.resolveLogHosts()) {
+            host = HostResolver.get(data.getDst());
+            if (host == null) {
+                HostResolver.request(data.getDst(), hostListener);
+            }
+        }
+        holder.dataDest.setText(context.getResources().getString(R.string.log_dst)+ data.getDst() + ":" +data.getDpt()
+                + (host != null && host.length() > 0 ? " (" + host + ")" : ""));
         holder.dataSrc.setText(context.getResources().getString(R.string.log_src)+ data.getSrc() +":" + data.getSpt());
         holder.dataProto.setText(context.getResources().getString(R.string.log_proto)+ data.getProto());
     }
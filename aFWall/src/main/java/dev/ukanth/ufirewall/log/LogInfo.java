@@ -29,6 +29,7 @@ import android.util.SparseArray;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.Api.PackageInfoData;
@@ -51,8 +52,49 @@ public class LogInfo {
 
     private HashMap<String, Integer> dstBlocked; // Number of packets blocked per destination IP address
 
+    /* kernel packets carry no UID= */
+    static final int UNKNOWN_UID = -11;
+
+    // guarded by LogInfo.class: uid -> name, built from namedApps
+    private static List<PackageInfoData> namedApps;
+    private static Map<Integer, String> appNames;
+
     public LogInfo() {
-        this.dstBlocked = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Copy the parsed fields of another instance, so slots can be reused instead of allocated
+     *
+     * @param other
+     */
+    public void copyFrom(LogInfo other) {
+        this.uidString = other.uidString;
+        this.appName = other.appName;
+        this.uid = other.uid;
+        this.in = other.in;
+        this.out = other.out;
+        this.proto = other.proto;
+        this.spt = other.spt;
+        this.dst = other.dst;
+        this.len = other.len;
+        this.src = other.src;
+        this.dpt = other.dpt;
+        this.timestamp = other.timestamp;
+    }
+
+    private void reset() {
+        uidString = null;
+        appName = null;
+        uid = 0;
+        in = null;
+        out = null;
+        proto = null;
+        spt = 0;
+        dst = null;
+        len = 0;
+        src = null;
+        dpt = 0;
+        timestamp = null;
     }
 
 
@@ -72,6 +114,7 @@ public class LogInfo {
                 loginfo = map.get(appid);
                 if (loginfo == null) {
                     loginfo = new LogInfo();
+                    loginfo.dstBlocked = new HashMap<String, Integer>();
                 }
 
                 loginfo.dst = logData.getDst();
@@ -230,115 +273,143 @@ public class LogInfo {
 
 
     public static LogInfo parseLogs(String result, final Context ctx) {
+        return parseLogs(result, ctx, new LogInfo());
+    }
 
-        final int unknownUID = -11;
-        StringBuilder address;
-        int start, end;
-        Integer uid;
-        String out, src, dst, proto, spt, dpt, len;
-        LogInfo logInfo = new LogInfo();
+    /**
+     * Parse a log line into an existing instance (all fields are overwritten)
+     *
+     * @param result  log line
+     * @param ctx
+     * @param logInfo instance to fill
+     * @return logInfo
+     */
+    public static LogInfo parseLogs(String result, final Context ctx, LogInfo logInfo) {
+        if (parse(result, logInfo)) {
+            String appName;
+            if (logInfo.uid == UNKNOWN_UID) {
+                appName = ctx.getString(R.string.kernel_item);
+            } else {
+                appName = appName(ctx, logInfo.uid);
+            }
+            describe(logInfo, appName);
+        }
+        return logInfo;
+    }
 
-        HashMap<Integer, String> appNameMap = new HashMap<Integer, String>();
+    /**
+     * Name of a uid, looked up in a map that is built once per app list refresh.  A uid that is
+     * not in the list is asked from the package manager once and kept until the next refresh.
+     *
+     * @param ctx
+     * @param uid
+     * @return name, may be null for a uid the system does not know
+     */
+    static synchronized String appName(Context ctx, int uid) {
+        if (uid == 1020) {
+            return "mDNS";
+        }
         final List<PackageInfoData> apps = Api.getApps(ctx, null);
+        if (apps != namedApps) {
+            appNames = uidNames(apps);
+            namedApps = apps;
+        }
+        if (appNames.containsKey(uid)) {
+            return appNames.get(uid);
+        }
+        //system level packages
+        String appName = ctx.getPackageManager().getNameForUid(uid);
+        appNames.put(uid, appName);
+        return appName;
+    }
 
+    /**
+     * @param apps app list
+     * @return uid -> first name of the first app with that uid
+     */
+    static Map<Integer, String> uidNames(List<PackageInfoData> apps) {
+        Map<Integer, String> names = new HashMap<Integer, String>(apps.size() * 2);
+        for (PackageInfoData app : apps) {
+            if (!names.containsKey(app.uid) && app.names != null && !app.names.isEmpty()) {
+                names.put(app.uid, app.names.get(0));
+            }
+        }
+        return names;
+    }
 
-        int pos = 0;
-        try {
-            while ((pos = result.indexOf("{AFL}", pos)) > -1) {
-                if (result.indexOf("{AFL}") == -1)
-                    continue;
-                uid = unknownUID;
-
-                if (((start = result.indexOf("UID=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    uid = Integer.parseInt(result.substring(start + 4, end));
-                    if (uid != null) logInfo.uid = uid;
-                }
-
-                //logInfo = new LogInfo();
-
-                if (((start = result.indexOf("DST=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    dst = result.substring(start + 4, end);
-                    logInfo.dst = dst;
-                }
+    /**
+     * Fill appName and the one line summary of a parsed entry
+     */
+    static void describe(LogInfo logInfo, String appName) {
+        logInfo.appName = appName;
+        StringBuilder address = new StringBuilder();
+        address.append(appName);
+        address.append("(" + logInfo.uid + ") ");
+        address.append(logInfo.dst);
+        address.append(":");
+        address.append(logInfo.dpt);
+        address.append("\n");
+        logInfo.uidString = address.toString();
+    }
 
-                if (((start = result.indexOf("DPT=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    dpt = result.substring(start + 4, end);
-                    logInfo.dpt = Integer.parseInt(dpt);
-                }
+    /**
+     * Parse the fields of an {AFL} log line, without the app name
+     *
+     * @param result  log line
+     * @param logInfo instance to fill, reset first
+     * @return false if result is not an AFWall log line
+     */
+    static boolean parse(String result, LogInfo logInfo) {
+        int start, end;
+        logInfo.reset();
+        if (result.indexOf("{AFL}") == -1) {
+            return false;
+        }
+        try {
+            logInfo.uid = UNKNOWN_UID;
+            if (((start = result.indexOf("UID=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.uid = Integer.parseInt(result.substring(start + 4, end));
+            }
 
-                if (((start = result.indexOf("SPT=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    spt = result.substring(start + 4, end);
-                    logInfo.spt = Integer.parseInt(spt);
-                }
+            if (((start = result.indexOf("DST=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.dst = result.substring(start + 4, end);
+            }
 
-                if (((start = result.indexOf("PROTO=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    proto = result.substring(start + 6, end);
-                    logInfo.proto = proto;
-                }
+            if (((start = result.indexOf("DPT=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.dpt = Integer.parseInt(result.substring(start + 4, end));
+            }
 
-                if (((start = result.indexOf("LEN=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    len = result.substring(start + 4, end);
-                    logInfo.len = Integer.parseInt(len);
-                }
+            if (((start = result.indexOf("SPT=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.spt = Integer.parseInt(result.substring(start + 4, end));
+            }
 
-                if (((start = result.indexOf("SRC=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    src = result.substring(start + 4, end);
-                    logInfo.src = src;
-                }
+            if (((start = result.indexOf("PROTO=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.proto = result.substring(start + 6, end);
+            }
 
-                if (((start = result.indexOf("OUT=")) != -1)
-                        && ((end = result.indexOf(" ", start)) != -1)) {
-                    out = result.substring(start + 4, end);
-                    logInfo.out = out;
-                }
-                String appName = "";
-                if (uid.intValue() != unknownUID) {
-                    if (uid == 1020) {
-                        appName = "mDNS";
-                    } else {
-                        //system level packages
-                        if (!appNameMap.containsKey(uid)) {
-                            appName = ctx.getPackageManager().getNameForUid(uid);
-                            for (PackageInfoData app : apps) {
-                                if (app.uid == uid) {
-                                    appName = app.names.get(0);
-                                    break;
-                                }
-                            }
-                            appNameMap.put(uid, appName);
-                        } else {
-                            appName = appNameMap.get(uid);
-                        }
-                    }
+            if (((start = result.indexOf("LEN=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.len = Integer.parseInt(result.substring(start + 4, end));
+            }
 
-                } else {
-                    appName = ctx.getString(R.string.kernel_item);
-                }
-                logInfo.appName = appName;
-                address = new StringBuilder();
-                //address.append(ctx.getString(R.string.blocked));
-                //address.append(" ");
-                address.append(appName);
-                address.append("(" + uid + ") ");
-                address.append(logInfo.dst);
-                address.append(":");
-                address.append(logInfo.dpt);
-                address.append("\n");
-                logInfo.uidString = address.toString();
-                return logInfo;
-                //return address.toString();
+            if (((start = result.indexOf("SRC=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.src = result.substring(start + 4, end);
+            }
 
+            if (((start = result.indexOf("OUT=")) != -1)
+                    && ((end = result.indexOf(" ", start)) != -1)) {
+                logInfo.out = result.substring(start + 4, end);
             }
         } catch (Exception e) {
             Log.e(Api.TAG, e.getMessage());
+            return false;
         }
-        return logInfo;
+        return true;
     }
 }
@@ -0,0 +1,108 @@
+package dev.ukanth.ufirewall.log;
+
+import com.raizlabs.android.dbflow.sql.language.SQLite;
+
+import java.util.List;
+
+import dev.ukanth.ufirewall.util.G;
+
+/**
+ * Logging rules of the reject chain, built from the per-UID LogPreference settings:
+ * <ul>
+ * <li>skip: packets of the UID are rejected without being logged, nothing reaches userspace</li>
+ * <li>skipInterval: the UID gets its own budget of one packet per interval (ms)</li>
+ * </ul>
+ * Everything else shares the default budget.  With hashlimit available that budget is also
+ * split per destination, so a single app hammering one host can't use it all up.
+ */
+
+public final class LogPolicy {
+
+    public static final String TAG = "AFWall";
+
+    /* shared budget of the LOG target, NFLOG was never limited */
+    private static final String LOG_LIMIT = "1000/min";
+
+    private static final String DESTINATION_LIMIT = "60/min";
+    private static final int DESTINATION_BURST = 10;
+
+    private static final int NFLOG_GROUP = 40;
+
+    private LogPolicy() {
+    }
+
+    /**
+     * Append the logging rules of a reject chain
+     *
+     * @param cmds   command list
+     * @param chain  reject chain, e.g. afwall-reject
+     * @param target where packets go after the logging rules, REJECT for the reject chain
+     */
+    public static void addLogRules(List<String> cmds, String chain, String target) {
+        String logTarget = getLogTarget();
+        if (logTarget == null) {
+            return;
+        }
+        List<LogPreference> preferences;
+        try {
+            preferences = SQLite.select().from(LogPreference.class).queryList();
+        } catch (Exception e) {
+            Log.e(TAG, "Unable to read log preferences: " + e.getLocalizedMessage());
+            preferences = null;
+        }
+        if (preferences != null) {
+            for (LogPreference preference : preferences) {
+                // kernel, root etc. have no socket owner to match on
+                if (preference.getUid() < 0) {
+                    continue;
+                }
+                String owner = "-A " + chain + " -m owner --uid-owner " + preference.getUid();
+                if (preference.isSkip()) {
+                    cmds.add(owner + " -j " + target);
+                } else if (preference.getSkipInterval() > 0) {
+                    long perMinute = Math.max(1, 60000 / preference.getSkipInterval());
+                    cmds.add(owner + " -m limit --limit " + perMinute + "/min --limit-burst 1 -j " + logTarget);
+                    cmds.add(owner + " -j " + target);
+                }
+            }
+        }
+
+        StringBuilder rule = new StringBuilder("-A ").append(chain);
+        if (G.logHashlimit()) {
+            // hashlimit names are limited to 15 characters
+            String name = chain.replace("afwall", "afl");
+            rule.append(" -m hashlimit --hashlimit-upto ").append(DESTINATION_LIMIT)
+                    .append(" --hashlimit-burst ").append(DESTINATION_BURST)
+                    .append(" --hashlimit-mode dstip,dstport --hashlimit-name ")
+                    .append(name.length() > 15 ? name.substring(0, 15) : name);
+        }
+        if (G.logTarget().equals("LOG")) {
+            rule.append(" -m limit --limit ").append(LOG_LIMIT);
+        }
+        cmds.add(rule.append(" -j ").append(logTarget).toString());
+    }
+
+    /**
+     * @return target spec of the configured log target, null if logging is off
+     */
+    private static String getLogTarget() {
+        if (!G.enableLogService() || G.logTarget() == null) {
+            return null;
+        }
+        if (G.logTarget().equals("LOG")) {
+            return "LOG --log-prefix \"{AFL}\" --log-level 4 --log-uid";
+        } else if (G.logTarget().equals("NFLOG")) {
+            StringBuilder target = new StringBuilder("NFLOG --nflog-prefix \"{AFL}\" --nflog-group ").append(NFLOG_GROUP);
+            // let the kernel hand packets over in batches
+            if (G.nflogThreshold() > 1) {
+                target.append(" --nflog-threshold ").append(G.nflogThreshold());
+            }
+            // only the headers are parsed, no need to copy payloads
+            if (G.nflogSize() > 0) {
+                target.append(" --nflog-size ").append(G.nflogSize());
+            }
+            return target.toString();
+        }
+        return null;
+    }
+}
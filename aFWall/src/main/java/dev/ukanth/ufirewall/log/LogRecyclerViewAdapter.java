@@ -3,6 +3,7 @@ package dev.ukanth.ufirewall.log;
 import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -34,6 +35,7 @@ public class LogRecyclerViewAdapter  extends RecyclerView.Adapter<LogRecyclerVie
     private PackageInfo info;
     private static PrettyTime prettyTime;
     private RecyclerItemClickListener recyclerItemClickListener;
+    private SparseArray<String> trends = new SparseArray<>();
 
 
     public LogRecyclerViewAdapter(final Context context,RecyclerItemClickListener recyclerItemClickListener){
@@ -47,6 +49,13 @@ public class LogRecyclerViewAdapter  extends RecyclerView.Adapter<LogRecyclerVie
         logData.addAll(logDataList);
     }
 
+    /**
+     * @param trends uid to sparkline of the blocked packets
+     */
+    public void updateTrends(SparseArray<String> trends) {
+        this.trends = trends;
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View mView = LayoutInflater.from(parent.getContext()).inflate(R.layout.log_recycle_item,parent,false);
@@ -78,6 +87,13 @@ public class LogRecyclerViewAdapter  extends RecyclerView.Adapter<LogRecyclerVie
         } else {
             holder.dataDenied.setText(context.getString(R.string.log_denied) + " " + data.getCount() + " " + context.getString(R.string.log_time)) ;
         }
+        String trend = trends.get(data.getUid());
+        if (trend != null) {
+            holder.trend.setText(trend);
+            holder.trend.setVisibility(View.VISIBLE);
+        } else {
+            holder.trend.setVisibility(View.GONE);
+        }
     }
 
     public static String pretty(Date date) {
@@ -106,6 +122,7 @@ public class LogRecyclerViewAdapter  extends RecyclerView.Adapter<LogRecyclerVie
         final TextView appName;
         final TextView lastDenied;
         final TextView dataDenied;
+        final TextView trend;
 
         public ViewHolder(View itemView) {
             super(itemView);
@@ -113,6 +130,7 @@ public class LogRecyclerViewAdapter  extends RecyclerView.Adapter<LogRecyclerVie
             appName = (TextView)itemView.findViewById(R.id.app_name);
             lastDenied = (TextView)itemView.findViewById(R.id.last_denied);
             dataDenied = (TextView)itemView.findViewById(R.id.data_denied);
+            trend = (TextView)itemView.findViewById(R.id.trend);
         }
 
         public void bind(final LogData item, final RecyclerItemClickListener listener) {
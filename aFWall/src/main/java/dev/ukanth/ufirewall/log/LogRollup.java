@@ -0,0 +1,98 @@
+package dev.ukanth.ufirewall.log;
+
+import com.raizlabs.android.dbflow.annotation.Column;
+import com.raizlabs.android.dbflow.annotation.PrimaryKey;
+import com.raizlabs.android.dbflow.annotation.Table;
+import com.raizlabs.android.dbflow.structure.BaseModel;
+
+/**
+ * Blocked packets of one UID or destination port within one minute, hour or day bucket.
+ * Maintained by LogRollups while LogData rows are written, so ranges and trends can be
+ * shown without scanning the raw log.
+ */
+
+@Table(database = LogDatabase.class)
+public class LogRollup extends BaseModel {
+    @Column
+    @PrimaryKey
+    private int resolution;
+
+    @Column
+    @PrimaryKey
+    private long bucket;
+
+    @Column
+    @PrimaryKey
+    private int kind;
+
+    /* uid or port, depending on kind */
+    @Column
+    @PrimaryKey
+    private int keyId;
+
+    @Column
+    private long hits;
+
+    @Column
+    private long lastSeen;
+
+    /* last known application name, uid rollups only */
+    @Column
+    private String appName;
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(int resolution) {
+        this.resolution = resolution;
+    }
+
+    public long getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(long bucket) {
+        this.bucket = bucket;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public void setKind(int kind) {
+        this.kind = kind;
+    }
+
+    public int getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(int keyId) {
+        this.keyId = keyId;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(long lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public void setAppName(String appName) {
+        this.appName = appName;
+    }
+}
@@ -0,0 +1,18 @@
+package dev.ukanth.ufirewall.log;
+
+import com.raizlabs.android.dbflow.annotation.Migration;
+import com.raizlabs.android.dbflow.sql.migration.BaseMigration;
+import com.raizlabs.android.dbflow.structure.database.DatabaseWrapper;
+
+/**
+ * LogRollup was added in version 2, roll up the log kept so far.
+ */
+
+@Migration(version = 2, database = LogDatabase.class)
+public class LogRollupMigration extends BaseMigration {
+
+    @Override
+    public void migrate(DatabaseWrapper database) {
+        LogRollups.rebuild(database);
+    }
+}
@@ -0,0 +1,280 @@
+package dev.ukanth.ufirewall.log;
+
+import android.database.Cursor;
+import android.util.SparseArray;
+
+import com.raizlabs.android.dbflow.config.FlowManager;
+import com.raizlabs.android.dbflow.structure.database.DatabaseStatement;
+import com.raizlabs.android.dbflow.structure.database.DatabaseWrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minute, hour and day rollups of blocked packets per UID and per destination port.
+ * Rows are counted in memory while a batch of LogData is written and the rollups are
+ * updated in the same transaction, one upsert per bucket and key touched by the batch.
+ * <p>
+ * Buckets are aligned to UTC.
+ */
+
+public final class LogRollups {
+
+    public static final String TAG = "AFWall";
+
+    public static final int MINUTE = 0;
+    public static final int HOUR = 1;
+    public static final int DAY = 2;
+
+    public static final int KIND_UID = 0;
+    public static final int KIND_PORT = 1;
+
+    private static final long[] SIZES = {60 * 1000L, 60 * 60 * 1000L, 24 * 60 * 60 * 1000L};
+    /* minutes only feed short trends, hours cover a week, days the long ranges */
+    private static final long[] RETENTION = {24 * 60 * 60 * 1000L, 8 * 24 * 60 * 60 * 1000L,
+            90L * 24 * 60 * 60 * 1000L};
+
+    private static final long PURGE_INTERVAL = 60 * 60 * 1000;
+
+    private static final String BLOCKS = "\u2581\u2582\u2583\u2584\u2585\u2586\u2587\u2588";
+
+    private static class Counter {
+        long hits;
+        String appName;
+    }
+
+    // only touched by the thread writing the log
+    private final Map<Integer, Counter> uids = new HashMap<>();
+    private final Map<Integer, Counter> ports = new HashMap<>();
+    private long lastPurge;
+
+    /**
+     * Count a blocked packet for the next write
+     *
+     * @param logInfo
+     */
+    public void add(LogInfo logInfo) {
+        Counter counter = uids.get(logInfo.uid);
+        if (counter == null) {
+            counter = new Counter();
+            uids.put(logInfo.uid, counter);
+        }
+        counter.hits++;
+        if (logInfo.appName != null) {
+            counter.appName = logInfo.appName;
+        }
+        counter = ports.get(logInfo.dpt);
+        if (counter == null) {
+            counter = new Counter();
+            ports.put(logInfo.dpt, counter);
+        }
+        counter.hits++;
+    }
+
+    /**
+     * Add everything counted since the last write to the buckets of now
+     *
+     * @param databaseWrapper inside the transaction that inserts the LogData rows
+     * @param now             timestamp of the rows
+     */
+    public void write(DatabaseWrapper databaseWrapper, long now) {
+        if (uids.isEmpty()) {
+            return;
+        }
+        DatabaseStatement insert = databaseWrapper.compileStatement("INSERT OR IGNORE INTO LogRollup "
+                + "(resolution, bucket, kind, keyId, hits, lastSeen) VALUES (?, ?, ?, ?, 0, 0)");
+        DatabaseStatement update = databaseWrapper.compileStatement("UPDATE LogRollup SET hits = hits + ?, "
+                + "lastSeen = ?, appName = COALESCE(?, appName) "
+                + "WHERE resolution = ? AND bucket = ? AND kind = ? AND keyId = ?");
+        try {
+            for (int resolution = MINUTE; resolution <= DAY; resolution++) {
+                long bucket = now / SIZES[resolution] * SIZES[resolution];
+                upsert(insert, update, resolution, bucket, KIND_UID, uids, now);
+                upsert(insert, update, resolution, bucket, KIND_PORT, ports, now);
+            }
+        } finally {
+            insert.close();
+            update.close();
+            uids.clear();
+            ports.clear();
+        }
+        if (now - lastPurge > PURGE_INTERVAL) {
+            lastPurge = now;
+            for (int resolution = MINUTE; resolution <= DAY; resolution++) {
+                databaseWrapper.execSQL("DELETE FROM LogRollup WHERE resolution = " + resolution
+                        + " AND bucket < " + (now - RETENTION[resolution]));
+            }
+        }
+    }
+
+    private static void upsert(DatabaseStatement insert, DatabaseStatement update, int resolution, long bucket,
+                               int kind, Map<Integer, Counter> counters, long now) {
+        for (Map.Entry<Integer, Counter> entry : counters.entrySet()) {
+            insert.bindLong(1, resolution);
+            insert.bindLong(2, bucket);
+            insert.bindLong(3, kind);
+            insert.bindLong(4, entry.getKey());
+            insert.execute();
+
+            Counter counter = entry.getValue();
+            update.bindLong(1, counter.hits);
+            update.bindLong(2, now);
+            if (counter.appName != null) {
+                update.bindString(3, counter.appName);
+            } else {
+                update.bindNull(3);
+            }
+            update.bindLong(4, resolution);
+            update.bindLong(5, bucket);
+            update.bindLong(6, kind);
+            update.bindLong(7, entry.getKey());
+            update.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Fill the rollups from the raw log, for logs written before the rollups existed
+     *
+     * @param databaseWrapper
+     */
+    static void rebuild(DatabaseWrapper databaseWrapper) {
+        long now = System.currentTimeMillis();
+        databaseWrapper.execSQL("DELETE FROM LogRollup");
+        for (int resolution = MINUTE; resolution <= DAY; resolution++) {
+            long size = SIZES[resolution];
+            long since = now - RETENTION[resolution];
+            databaseWrapper.execSQL("INSERT INTO LogRollup (resolution, bucket, kind, keyId, hits, lastSeen, appName) "
+                    + "SELECT " + resolution + ", timestamp / " + size + " * " + size + " AS b, " + KIND_UID
+                    + ", uid, COUNT(*), MAX(timestamp), appName FROM LogData WHERE timestamp >= " + since
+                    + " GROUP BY b, uid");
+            databaseWrapper.execSQL("INSERT INTO LogRollup (resolution, bucket, kind, keyId, hits, lastSeen) "
+                    + "SELECT " + resolution + ", timestamp / " + size + " * " + size + " AS b, " + KIND_PORT
+                    + ", dpt, COUNT(*), MAX(timestamp) FROM LogData WHERE timestamp >= " + since
+                    + " GROUP BY b, dpt");
+        }
+    }
+
+    /**
+     * Finest resolution that still covers a range
+     *
+     * @param range length of the range (ms)
+     * @return MINUTE, HOUR or DAY
+     */
+    public static int resolutionFor(long range) {
+        for (int resolution = MINUTE; resolution < DAY; resolution++) {
+            // keep the number of buckets per key reasonable
+            if (range <= RETENTION[resolution] && range / SIZES[resolution] <= 24 * 7) {
+                return resolution;
+            }
+        }
+        return DAY;
+    }
+
+    public static long getBucketSize(int resolution) {
+        return SIZES[resolution];
+    }
+
+    /**
+     * Blocked packets per UID or port within a range, one LogData per key.  The count holds
+     * the number of packets, the timestamp the last block and the uid the key.
+     *
+     * @param kind  KIND_UID or KIND_PORT
+     * @param since start of the range (ms)
+     * @return entries ordered by count, descending
+     */
+    public static List<LogData> getTotals(int kind, long since) {
+        int resolution = resolutionFor(System.currentTimeMillis() - since);
+        List<LogData> totals = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            // appName comes from the row holding MAX(lastSeen)
+            cursor = FlowManager.getDatabase(LogDatabase.class).getWritableDatabase()
+                    .rawQuery("SELECT keyId, SUM(hits) AS h, MAX(lastSeen), appName FROM LogRollup "
+                                    + "WHERE resolution = ? AND kind = ? AND bucket >= ? GROUP BY keyId ORDER BY h DESC",
+                            new String[]{String.valueOf(resolution), String.valueOf(kind),
+                                    String.valueOf(since / SIZES[resolution] * SIZES[resolution])});
+            while (cursor.moveToNext()) {
+                LogData data = new LogData();
+                data.setUid(cursor.getInt(0));
+                if (kind == KIND_PORT) {
+                    data.setDpt(cursor.getInt(0));
+                }
+                data.setCount(cursor.getLong(1));
+                data.setTimestamp(cursor.getLong(2));
+                data.setAppName(cursor.getString(3));
+                totals.add(data);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Exception while reading log rollups: " + e.getLocalizedMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Blocked packets per bucket for every UID or port active within a range
+     *
+     * @param kind       KIND_UID or KIND_PORT
+     * @param resolution MINUTE, HOUR or DAY
+     * @param since      start of the range (ms)
+     * @return key to counts, oldest bucket first, the last one holding now
+     */
+    public static SparseArray<long[]> getSeries(int kind, int resolution, long since) {
+        long size = SIZES[resolution];
+        long first = since / size * size;
+        int buckets = (int) ((System.currentTimeMillis() / size * size - first) / size) + 1;
+        SparseArray<long[]> series = new SparseArray<>();
+        Cursor cursor = null;
+        try {
+            cursor = FlowManager.getDatabase(LogDatabase.class).getWritableDatabase()
+                    .rawQuery("SELECT keyId, bucket, hits FROM LogRollup WHERE resolution = ? AND kind = ? AND bucket >= ?",
+                            new String[]{String.valueOf(resolution), String.valueOf(kind), String.valueOf(first)});
+            while (cursor.moveToNext()) {
+                int index = (int) ((cursor.getLong(1) - first) / size);
+                if (index < 0 || index >= buckets) {
+                    continue;
+                }
+                long[] counts = series.get(cursor.getInt(0));
+                if (counts == null) {
+                    counts = new long[buckets];
+                    series.put(cursor.getInt(0), counts);
+                }
+                counts[index] += cursor.getLong(2);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Exception while reading log rollups: " + e.getLocalizedMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Render counts as a line of block characters, adjacent buckets are summed up to fit
+     *
+     * @param counts
+     * @param width  maximum number of characters
+     * @return
+     */
+    public static String sparkline(long[] counts, int width) {
+        int step = (counts.length + width - 1) / width;
+        long[] points = new long[(counts.length + step - 1) / step];
+        long max = 0;
+        for (int i = 0; i < counts.length; i++) {
+            points[i / step] += counts[i];
+            max = Math.max(max, points[i / step]);
+        }
+        StringBuilder line = new StringBuilder(points.length);
+        for (long point : points) {
+            line.append(BLOCKS.charAt(max > 0 ? (int) (point * (BLOCKS.length() - 1) / max) : 0));
+        }
+        return line.toString();
+    }
+}
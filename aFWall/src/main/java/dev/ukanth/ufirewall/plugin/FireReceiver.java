@@ -150,7 +150,7 @@ public final class FireReceiver extends BroadcastReceiver {
                                 if (!disableToasts) {
                                     Toast.makeText(context, R.string.tasker_apply, Toast.LENGTH_SHORT).show();
                                 }
-                                Api.applySavedIptablesRules(context, false, new RootCommand()
+                                Api.switchProfile(context, false, new RootCommand()
                                         .setFailureToast(R.string.error_apply)
                                         .setCallback(new RootCommand.Callback() {
                                             @Override
@@ -241,7 +241,7 @@ public final class FireReceiver extends BroadcastReceiver {
                                 if (!disableToasts) {
                                     Toast.makeText(context, R.string.tasker_apply, Toast.LENGTH_SHORT).show();
                                 }
-                                Api.applySavedIptablesRules(context, false, new RootCommand()
+                                Api.switchProfile(context, false, new RootCommand()
                                         .setFailureToast(R.string.error_apply)
                                         .setCallback(new RootCommand.Callback() {
                                             @Override
@@ -14,7 +14,6 @@ import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 
-import com.stericson.roottools.RootTools;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -23,7 +22,9 @@ import java.util.List;
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.R;
 import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.traffic.TrafficSampler;
 import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.Metrics;
 
 import static dev.ukanth.ufirewall.Api.getFixLeakPath;
 import static dev.ukanth.ufirewall.Api.mountDir;
@@ -104,6 +105,14 @@ public class ExpPreferenceFragment extends PreferenceFragment implements
             }
         }
 
+        if (key.equals("enableMetrics")) {
+            Metrics.setEnabled(G.enableMetrics());
+        }
+
+        if (key.equals("trafficAccounting")) {
+            TrafficSampler.schedule(this.getActivity().getApplicationContext());
+        }
+
         if (key.equals("multiUser")) {
             if (!Api.supportsMultipleUsers(this.getActivity().getApplicationContext())) {
                 CheckBoxPreference multiUserPref = (CheckBoxPreference) findPreference(key);
@@ -161,8 +170,7 @@ public class ExpPreferenceFragment extends PreferenceFragment implements
                                 new RootCommand()
                                         .setReopenShell(true)
                                         .run(ctx, "chmod 755 " + f.getAbsolutePath());
-                                if (RootTools.copyFile(srcPath, (f.getAbsolutePath() + "/" + initScript),
-                                        true, false)) {
+                                if (Api.copyFileAsRoot(srcPath, f.getAbsolutePath() + "/" + initScript)) {
                                     Api.sendToastBroadcast(ctx, ctx.getString(R.string.success_initd));
                                 }
                                 mountDir(ctx, getFixLeakPath(initScript), "RO");
@@ -8,7 +8,6 @@ import android.preference.Preference;
 import android.preference.PreferenceFragment;
 
 import com.afollestad.materialdialogs.MaterialDialog;
-import com.stericson.roottools.RootTools;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -49,7 +48,7 @@ public class LogPreferenceFragment extends PreferenceFragment {
         val.add("OS");
 
         ListPreference listPreference = (ListPreference) logDmesg;
-        if (RootTools.isBusyboxAvailable()) {
+        if (Api.hasBinary("busybox")) {
             ar.add("Busybox");
             val.add("BX");
         }
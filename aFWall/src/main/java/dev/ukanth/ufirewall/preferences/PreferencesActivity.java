@@ -279,6 +279,12 @@ public class PreferencesActivity extends PreferenceActivity implements SharedPre
             rxEvent.publish(new LogChangeEvent("", ctx));
         }
 
+        if ((key.equals("nflogThreshold") || key.equals("nflogSize")) && G.enableLogService()) {
+            Api.updateLogRules(ctx, new RootCommand()
+                    .setReopenShell(true)
+                    .setFailureToast(R.string.log_toggle_failed));
+        }
+
         if (key.equals("activeNotification")) {
             boolean enabled = sharedPreferences.getBoolean(key, false);
             if (enabled) {
@@ -0,0 +1,128 @@
+package dev.ukanth.ufirewall.profiles;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.Metrics;
+
+/**
+ * Bookkeeping for pre-built profile chains.  Every profile gets its own chain tree
+ * (afwall-p0, afwall-p0-3g, ...) and the afwall chain only holds a jump into the tree of
+ * the active profile, so a profile switch is a single "iptables -R".
+ */
+public class ProfileChains {
+
+    private static final String PREFS_NAME = "AFWallProfileChains";
+    private static final String KEY_PROFILES = "profiles";
+    private static final String KEY_SWITCHES = "switches";
+    private static final String KEY_SWITCH_LAST = "switchLast";
+    private static final String KEY_SWITCH_TOTAL = "switchTotal";
+
+    /* queue to kernel, both families; percentiles in the metrics dump */
+    private static final Metrics.Histogram SWITCH_TIME = Metrics.histogram("profiles.switch");
+
+    /* profile index is a single digit, keeps the longest chain name within iptables' 28 chars */
+    public static final int MAX_PROFILES = 10;
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Preference names of all profiles, default profile first.  The position in this list
+     * is the profile index used in the chain names.
+     *
+     * @return
+     */
+    public static List<String> getAllProfiles() {
+        List<String> profiles = new ArrayList<>();
+        profiles.add(Api.DEFAULT_PREFS_NAME);
+        if (G.isProfileMigrated()) {
+            for (ProfileData data : ProfileHelper.getProfiles()) {
+                profiles.add(data.getIdentifier());
+            }
+        } else {
+            profiles.addAll(G.getDefaultProfiles());
+            profiles.addAll(G.getAdditionalProfiles());
+        }
+        return profiles;
+    }
+
+    /**
+     * Custom scripts address afwall-3g, afwall-wifi etc. by name, so profiles using them
+     * need the classic single-tree layout.
+     *
+     * @param ctx
+     * @param profiles
+     * @return
+     */
+    public static boolean isSupported(Context ctx, List<String> profiles) {
+        if (!G.prebuiltProfileChains() || !G.enableMultiProfile() || profiles.size() > MAX_PROFILES) {
+            return false;
+        }
+        for (String profile : profiles) {
+            SharedPreferences prefs = ctx.getSharedPreferences(profile, Context.MODE_PRIVATE);
+            if (prefs.getString(Api.PREF_CUSTOMSCRIPT, "").trim().length() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param base  base chain name (afwall, or afwall<userid> for secondary users)
+     * @param index position in getAllProfiles()
+     * @return root chain of the profile's tree
+     */
+    public static String rootChain(String base, int index) {
+        return base + "-p" + index;
+    }
+
+    /**
+     * Remember which profiles have trees in the kernel
+     *
+     * @param ctx
+     * @param profiles null if the classic layout is in use
+     */
+    public static void store(Context ctx, List<String> profiles) {
+        prefs(ctx).edit().putString(KEY_PROFILES, profiles != null ? TextUtils.join(",", profiles) : "").apply();
+    }
+
+    /**
+     * @param ctx
+     * @return profiles with trees in the kernel, empty for the classic layout
+     */
+    public static List<String> getBuilt(Context ctx) {
+        String saved = prefs(ctx).getString(KEY_PROFILES, "");
+        return saved.length() > 0 ? new ArrayList<>(Arrays.asList(saved.split(","))) : new ArrayList<String>();
+    }
+
+    /**
+     * @param ctx
+     * @param nanos time from queueing the switch until the root shell reported success
+     */
+    public static void recordSwitch(Context ctx, long nanos) {
+        SWITCH_TIME.record(nanos);
+        long elapsed = nanos / 1000000;
+        SharedPreferences prefs = prefs(ctx);
+        prefs.edit().putLong(KEY_SWITCHES, prefs.getLong(KEY_SWITCHES, 0) + 1)
+                .putLong(KEY_SWITCH_LAST, elapsed)
+                .putLong(KEY_SWITCH_TOTAL, prefs.getLong(KEY_SWITCH_TOTAL, 0) + elapsed).apply();
+    }
+
+    public static String getStats(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        long switches = prefs.getLong(KEY_SWITCHES, 0);
+        List<String> built = getBuilt(ctx);
+        return "Pre-built profile chains: " + (built.isEmpty() ? "none" : TextUtils.join(", ", built))
+                + (switches > 0 ? ", " + switches + " switches, last " + prefs.getLong(KEY_SWITCH_LAST, 0)
+                + " ms, avg " + (prefs.getLong(KEY_SWITCH_TOTAL, 0) / switches) + " ms" : "") + "\n";
+    }
+}
@@ -16,6 +16,7 @@ import java.util.Collections;
 import java.util.List;
 
 import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.ProfileResolver;
 import dev.ukanth.ufirewall.R;
 import dev.ukanth.ufirewall.activity.LogActivity;
 import dev.ukanth.ufirewall.log.Log;
@@ -31,11 +32,15 @@ public class ProfileHelper {
     private static final String TAG = "AFWall";
 
     public static void storeProfile(final ProfileData profile, Context ctx, ProfileData parentProfile) {
+        if (parentProfile != null) {
+            profile.setParentProfile(parentProfile.getIdentifier());
+        }
         try {
             FlowManager.getDatabase(ProfilesDatabase.class).beginTransactionAsync(new ITransaction() {
                 @Override
                 public void execute(DatabaseWrapper databaseWrapper) {
                     profile.save(databaseWrapper);
+                    ProfileResolver.invalidateParents();
                 }
             }).build().execute();
         } catch (IllegalStateException e) {
@@ -88,6 +93,7 @@ public class ProfileHelper {
         ProfileData data = getProfileByIdentifier(identifier);
         if (data != null) {
             data.delete();
+            ProfileResolver.invalidateParents();
         }
         return true;
     }
@@ -95,6 +101,7 @@ public class ProfileHelper {
         ProfileData data = getProfileByName(profileName);
         if (data != null) {
             data.delete();
+            ProfileResolver.invalidateParents();
         }
         return true;
     }
@@ -0,0 +1,13 @@
+package dev.ukanth.ufirewall.schedule;
+
+/**
+ * Wall clock the scheduler reads, replaceable so transitions can be checked without waiting
+ * for them.
+ */
+
+public interface Clock {
+
+    Clock SYSTEM = System::currentTimeMillis;
+
+    long currentTimeMillis();
+}
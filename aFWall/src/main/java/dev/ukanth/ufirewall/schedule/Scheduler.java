@@ -0,0 +1,336 @@
+package dev.ukanth.ufirewall.schedule;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.broadcast.ScheduleReceiver;
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.service.RootCommand;
+import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.Metrics;
+import dev.ukanth.ufirewall.util.RuleState;
+
+/**
+ * Time based rules: per-app time windows and re-enabling the firewall after a timed disable.
+ * <p>
+ * Nothing polls.  The windows and the resume time are stored, the next transition is computed
+ * from them and one exact alarm is set for it.  Windows belong to a profile, only those of the
+ * active one are followed.  When it fires the state every window should be
+ * in now is compared with the state last applied, and only the apps whose window opened or
+ * closed are changed, through Api.applyRuleChanges().  Transitions missed while the device was
+ * off are caught up the same way on boot, and a changed clock or time zone just recomputes.
+ */
+
+public final class Scheduler {
+
+    public static final String TAG = "AFWall";
+
+    private static final String PREFS_NAME = "AFWallSchedule";
+    private static final String KEY_WINDOWS = "windows";
+    private static final String KEY_STATES = "states";
+    private static final String KEY_RESUME = "resume";
+    private static final String KEY_NEXT = "next";
+    private static final String KEY_TRANSITIONS = "transitions";
+    private static final String KEY_LAST = "last";
+
+    private static final int REQUEST_CODE = 10224;
+
+    private static final Metrics.Histogram TRANSITION_TIME = Metrics.histogram("schedule.transition");
+
+    private static volatile Clock clock = Clock.SYSTEM;
+
+    private Scheduler() {
+    }
+
+    /**
+     * Replace the clock, for checking transitions without waiting for them
+     */
+    public static void setClock(Clock value) {
+        clock = value == null ? Clock.SYSTEM : value;
+    }
+
+    public static long now() {
+        return clock.currentTimeMillis();
+    }
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return key of a value kept per profile, for the active one
+     */
+    private static String profileKey(String key) {
+        return key + "." + Api.PREFS_NAME;
+    }
+
+    /**
+     * @return windows of the active profile
+     */
+    public static List<TimeWindow> getWindows(Context ctx) {
+        List<TimeWindow> windows = new ArrayList<>();
+        for (String value : prefs(ctx).getStringSet(profileKey(KEY_WINDOWS), Collections.<String>emptySet())) {
+            TimeWindow window = TimeWindow.decode(value);
+            if (window != null) {
+                windows.add(window);
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * @param uid
+     * @return windows of one app
+     */
+    public static List<TimeWindow> getWindows(Context ctx, int uid) {
+        List<TimeWindow> windows = new ArrayList<>();
+        for (TimeWindow window : getWindows(ctx)) {
+            if (window.uid == uid) {
+                windows.add(window);
+            }
+        }
+        return windows;
+    }
+
+    private static void putWindows(Context ctx, List<TimeWindow> windows) {
+        Set<String> values = new HashSet<>();
+        for (TimeWindow window : windows) {
+            values.add(window.encode());
+        }
+        prefs(ctx).edit().putStringSet(profileKey(KEY_WINDOWS), values).commit();
+    }
+
+    /**
+     * Store a window and bring the app's rule in line with it right away
+     */
+    public static void addWindow(Context ctx, TimeWindow window) {
+        List<TimeWindow> windows = getWindows(ctx);
+        windows.add(window);
+        putWindows(ctx, windows);
+        reconcile(ctx, true);
+    }
+
+    /**
+     * Forget a window, the app keeps the rule it has at the moment
+     */
+    public static void removeWindow(Context ctx, long id) {
+        List<TimeWindow> windows = getWindows(ctx);
+        for (int i = windows.size() - 1; i >= 0; i--) {
+            if (windows.get(i).id == id) {
+                windows.remove(i);
+            }
+        }
+        putWindows(ctx, windows);
+        schedule(ctx);
+    }
+
+    /**
+     * Re-enable the firewall at a given time, the caller disables it
+     *
+     * @param millis from now
+     */
+    public static void resumeAfter(Context ctx, long millis) {
+        prefs(ctx).edit().putLong(KEY_RESUME, now() + millis).commit();
+        schedule(ctx);
+    }
+
+    /**
+     * The firewall was switched on or off by other means, a pending resume is moot
+     */
+    public static void clearResume(Context ctx) {
+        if (prefs(ctx).getLong(KEY_RESUME, 0) > 0) {
+            prefs(ctx).edit().remove(KEY_RESUME).commit();
+            schedule(ctx);
+        }
+    }
+
+    /**
+     * Earliest upcoming transition of the windows and the resume time
+     *
+     * @return -1 if there is none
+     */
+    static long nextTransition(List<TimeWindow> windows, long resume, long time, TimeZone zone) {
+        long next = resume > time ? resume : -1;
+        for (TimeWindow window : windows) {
+            long candidate = window.nextTransition(time, zone);
+            if (candidate > 0 && (next < 0 || candidate < next)) {
+                next = candidate;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Checkbox values that make the saved rules match the windows at a given time.  Only
+     * windows whose state differs from the one last applied are looked at, so a rule the user
+     * changed by hand stays until the window opens or closes next.  New windows are always
+     * applied.
+     *
+     * @param states "id:1" or "id:0" for every window at the last transition
+     * @param next   receives the states at time
+     */
+    static List<RuleState.Change> transition(List<TimeWindow> windows, Set<String> states, Set<String> next,
+                                             boolean whitelist, long time, TimeZone zone) {
+        Map<Long, RuleState.Change> changes = new LinkedHashMap<>();
+        for (TimeWindow window : windows) {
+            boolean inside = window.isActive(time, zone);
+            String state = window.id + ":" + (inside ? 1 : 0);
+            next.add(state);
+            if (states.contains(state)) {
+                continue;
+            }
+            // checked means allowed in whitelist mode and blocked in blacklist mode
+            boolean allowed = inside == window.allow;
+            // overlapping windows of one app and network, the last one wins
+            changes.put(((long) window.uid << 3) | window.net,
+                    new RuleState.Change(window.uid, window.net, allowed == whitelist));
+        }
+        return new ArrayList<>(changes.values());
+    }
+
+    /**
+     * Bring the saved rules in line with the windows, push the difference to the chains and set
+     * the alarm for the next transition.
+     *
+     * @param apply false only saves the rules, for callers that apply them right after (boot)
+     */
+    public static synchronized void reconcile(final Context context, boolean apply) {
+        final Context ctx = context.getApplicationContext();
+        long start = Metrics.start();
+        long time = now();
+        SharedPreferences prefs = prefs(ctx);
+
+        long resume = prefs.getLong(KEY_RESUME, 0);
+        if (resume > 0 && resume <= time) {
+            prefs.edit().remove(KEY_RESUME).commit();
+            if (!Api.isEnabled(ctx)) {
+                Log.i(TAG, "Timed disable is over, enabling the firewall");
+                if (apply) {
+                    Api.applySavedIptablesRules(ctx, false, new RootCommand()
+                            .setPriority(RootCommand.Priority.CONNECTIVITY)
+                            .setCallback(new RootCommand.Callback() {
+                                @Override
+                                public void cbFunc(RootCommand state) {
+                                    Api.setEnabled(ctx, state.exitCode == 0, false);
+                                }
+                            }));
+                } else {
+                    Api.setEnabled(ctx, true, false);
+                }
+            }
+        }
+
+        reconcileWindows(ctx, prefs, time, apply);
+        schedule(ctx);
+        TRANSITION_TIME.stop(start);
+    }
+
+    /**
+     * Bring the saved rules of the profile just selected in line with its windows, without
+     * applying them, and set the alarm for its next transition
+     *
+     * @return true if saved rules were changed, the chains of the profile are out of date
+     */
+    public static synchronized boolean profileChanged(Context context) {
+        Context ctx = context.getApplicationContext();
+        boolean changed = reconcileWindows(ctx, prefs(ctx), now(), false);
+        schedule(ctx);
+        return changed;
+    }
+
+    private static boolean reconcileWindows(Context ctx, SharedPreferences prefs, long time, boolean apply) {
+        List<TimeWindow> windows = getWindows(ctx);
+        Set<String> states = new HashSet<>();
+        boolean whitelist = G.pPrefs.getString(Api.PREF_MODE, Api.MODE_WHITELIST).equals(Api.MODE_WHITELIST);
+        List<RuleState.Change> changes = new ArrayList<>();
+        for (RuleState.Change change : transition(windows,
+                prefs.getStringSet(profileKey(KEY_STATES), Collections.<String>emptySet()), states, whitelist, time,
+                TimeZone.getDefault())) {
+            // already like that, e.g. edited by hand, inserting the rule again would duplicate it
+            if (Api.isSavedRule(ctx, change.uid, change.net) != change.value) {
+                changes.add(change);
+            }
+        }
+        prefs.edit().putStringSet(profileKey(KEY_STATES), states).commit();
+        if (changes.isEmpty()) {
+            return false;
+        }
+
+        Log.i(TAG, "Schedule: " + changes.size() + " rule changes");
+        Api.saveRuleChanges(ctx, changes);
+        // the in-memory list takes them too, it would write the old values back on the next save
+        List<Api.PackageInfoData> apps = Api.applications;
+        if (apps != null) {
+            RuleState.saved(apps, changes);
+        }
+        if (apply && Api.isEnabled(ctx)) {
+            Api.applyRuleChanges(ctx, changes, false, new RootCommand()
+                    .setPriority(RootCommand.Priority.CONNECTIVITY));
+        } else {
+            Api.setRulesUpToDate(false);
+        }
+        prefs.edit().putLong(KEY_TRANSITIONS, prefs.getLong(KEY_TRANSITIONS, 0) + changes.size())
+                .putLong(KEY_LAST, time).apply();
+        return true;
+    }
+
+    /**
+     * Set the alarm for the next transition, or cancel it if there is none
+     */
+    public static void schedule(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        long next = nextTransition(getWindows(ctx), prefs.getLong(KEY_RESUME, 0), now(), TimeZone.getDefault());
+        prefs.edit().putLong(KEY_NEXT, next).apply();
+        AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent pendingIntent = pendingIntent(ctx);
+        if (next < 0) {
+            alarmManager.cancel(pendingIntent);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // the rule has to change on time even in doze
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next, pendingIntent);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, next, pendingIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, next, pendingIntent);
+        }
+    }
+
+    private static PendingIntent pendingIntent(Context ctx) {
+        Intent intent = new Intent(ctx, ScheduleReceiver.class);
+        return PendingIntent.getBroadcast(ctx.getApplicationContext(), REQUEST_CODE, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    public static String getStats(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        DateFormat format = DateFormat.getDateTimeInstance();
+        StringBuilder result = new StringBuilder();
+        result.append("Schedule: " + getWindows(ctx).size() + " windows, "
+                + prefs.getLong(KEY_TRANSITIONS, 0) + " rule changes");
+        long next = prefs.getLong(KEY_NEXT, -1);
+        if (next > 0) {
+            result.append(", next at " + format.format(new Date(next)));
+        }
+        long resume = prefs.getLong(KEY_RESUME, 0);
+        if (resume > 0) {
+            result.append(", firewall resumes at " + format.format(new Date(resume)));
+        }
+        return result.append("\n").toString();
+    }
+}
@@ -0,0 +1,128 @@
+package dev.ukanth.ufirewall.schedule;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A daily time window for one app and network class, e.g. "allow wifi 08:00-18:00 on
+ * weekdays".  Outside the window the opposite applies.  A window whose end is before its start
+ * runs past midnight into the next day, one whose end equals its start lasts 24 hours.
+ */
+
+public final class TimeWindow {
+
+    public static final int ALL_DAYS = 0x7f;
+
+    public final long id;
+    public final int uid;
+    public final int net;
+    public final boolean allow;
+    public final int start;
+    public final int end;
+    public final int days;
+
+    /**
+     * @param id    unique, e.g. the creation time
+     * @param uid   app
+     * @param net   network class, see RuleState
+     * @param allow allow traffic inside the window (and block it outside), or the reverse
+     * @param start minute of the day the window opens
+     * @param end   minute of the day the window closes
+     * @param days  bit (Calendar.DAY_OF_WEEK - 1) set for every day the window opens on
+     */
+    public TimeWindow(long id, int uid, int net, boolean allow, int start, int end, int days) {
+        this.id = id;
+        this.uid = uid;
+        this.net = net;
+        this.allow = allow;
+        this.start = start;
+        this.end = end;
+        this.days = days;
+    }
+
+    public String encode() {
+        return id + ":" + uid + ":" + net + ":" + (allow ? 1 : 0) + ":" + start + ":" + end + ":" + days;
+    }
+
+    /**
+     * @return null if value was not written by encode()
+     */
+    public static TimeWindow decode(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 7) {
+            return null;
+        }
+        try {
+            return new TimeWindow(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                    parts[3].equals("1"), Integer.parseInt(parts[4]), Integer.parseInt(parts[5]),
+                    Integer.parseInt(parts[6]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean onDay(int dayOfWeek) {
+        return (days & (1 << (dayOfWeek - 1))) != 0;
+    }
+
+    /**
+     * @return true if time is inside the window
+     */
+    public boolean isActive(long time, TimeZone zone) {
+        Calendar cal = Calendar.getInstance(zone);
+        cal.setTimeInMillis(time);
+        int minute = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+        int day = cal.get(Calendar.DAY_OF_WEEK);
+        if (start < end) {
+            return onDay(day) && minute >= start && minute < end;
+        }
+        int previous = day == Calendar.SUNDAY ? Calendar.SATURDAY : day - 1;
+        return (onDay(day) && minute >= start) || (onDay(previous) && minute < end);
+    }
+
+    /**
+     * The state only changes at the start or end minute of a day, so the first of those after
+     * time that flips isActive() is the next transition.
+     *
+     * @return time the window next opens or closes, -1 if it never does
+     */
+    public long nextTransition(long time, TimeZone zone) {
+        boolean active = isActive(time, zone);
+        Calendar cal = Calendar.getInstance(zone);
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        // a week and a day covers every combination of days and midnight crossings
+        for (int i = 0; i <= 8; i++) {
+            long first = -1;
+            for (int minute : new int[]{Math.min(start, end), Math.max(start, end)}) {
+                cal.set(Calendar.HOUR_OF_DAY, minute / 60);
+                cal.set(Calendar.MINUTE, minute % 60);
+                long candidate = cal.getTimeInMillis();
+                if (cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE) != minute) {
+                    // skipped by a DST gap, the lenient calendar lands past it: the state flips
+                    // where the gap ends
+                    while (candidate - 60000 > time && isActive(candidate - 60000, zone) != active) {
+                        candidate -= 60000;
+                    }
+                }
+                if (candidate > time && candidate != first && isActive(candidate, zone) != active) {
+                    return candidate;
+                }
+                first = candidate;
+            }
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return -1;
+    }
+
+    public static String formatMinute(int minute) {
+        return String.format(Locale.US, "%02d:%02d", minute / 60, minute % 60);
+    }
+
+    @Override
+    public String toString() {
+        return formatMinute(start) + "-" + formatMinute(end);
+    }
+}
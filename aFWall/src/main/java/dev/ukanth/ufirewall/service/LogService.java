@@ -44,16 +44,19 @@ import com.raizlabs.android.dbflow.structure.database.transaction.ITransaction;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.R;
-import dev.ukanth.ufirewall.events.LogEvent;
+import dev.ukanth.ufirewall.log.BlockAggregator;
 import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.log.LogData;
 import dev.ukanth.ufirewall.log.LogDatabase;
 import dev.ukanth.ufirewall.log.LogInfo;
+import dev.ukanth.ufirewall.log.LogRollups;
 import dev.ukanth.ufirewall.log.LogRxEvent;
 import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.Metrics;
 import eu.chainfire.libsuperuser.Shell;
 import eu.chainfire.libsuperuser.StreamGobbler;
 
@@ -65,7 +68,6 @@ public class LogService extends Service {
     private final IBinder mBinder = new Binder();
 
     private Shell.Interactive rootSession;
-    public static LogRxEvent logRx;
 
     static Handler handler;
 
@@ -77,12 +79,20 @@ public class LogService extends Service {
     public static int toastDuration;
     public static int toastDefaultYOffset;
     public static int toastYOffset;
-    LogData data;
+    private final LogData data = new LogData();
+    private final LogRollups rollups = new LogRollups();
+
+    private static final Metrics.Histogram STORE_TIME = Metrics.histogram("log.store");
+    private static final Metrics.Counter STORED = Metrics.counter("log.stored");
 
     private static Runnable showOnlyToastRunnable;
     private static CancelableRunnable showToastRunnable;
     private static View toastLayout;
 
+    private static final BlockAggregator blockAggregator = new BlockAggregator();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private Runnable flushRunnable;
+
     private static abstract class CancelableRunnable implements Runnable {
         public boolean cancel;
     }
@@ -147,7 +157,7 @@ public class LogService extends Service {
                             break;
                     }
 
-                    toastTextView.setText(android.text.Html.fromHtml(toastText.toString()));
+                    toastTextView.setText(toastText);
                     toast.show();
                 }
             };
@@ -174,17 +184,33 @@ public class LogService extends Service {
     }
 
     private void startLogService() {
-        LogRxEvent.subscribe((event -> {
-            if (event != null) {
-                store(event.logInfo);
-                if (event != null && event.logInfo.uidString != null && event.logInfo.uidString.length() > 0) {
-                    if (G.showLogToasts() && G.canShow(event.logInfo.uid)) {
-                        showToast(event.ctx, handler, event.logInfo.uidString, false);
+        final Context context = getApplicationContext();
+        flushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                String text = blockAggregator.flush(context, System.currentTimeMillis());
+                if (text != null) {
+                    showToast(context, handler, text, false);
+                }
+                flushScheduled.set(false);
+                if (blockAggregator.hasPending()) {
+                    scheduleFlush();
+                }
+            }
+        };
+        LogRxEvent.subscribe((batch, size) -> {
+            store(batch, size);
+            if (handler != null && G.showLogToasts()) {
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < size; i++) {
+                    LogInfo logInfo = batch[i];
+                    if (logInfo.uidString != null && logInfo.uidString.length() > 0 && G.canShow(logInfo.uid)) {
+                        blockAggregator.add(logInfo, now);
+                        scheduleFlush();
                     }
                 }
             }
-        })
-        );
+        });
         if (G.enableLogService()) {
             // this method is executed in a background thread
             // no problem calling su here
@@ -217,8 +243,7 @@ public class LogService extends Service {
                 handler = new Handler();
 
                 closeSession();
-                rootSession = new Shell.Builder()
-                        .useSU()
+                rootSession = RootSessions.open(RootSessions.Priority.LOG, new Shell.Builder()
                         .setMinimalLogging(true)
                         .setOnSTDOUTLineListener(new StreamGobbler.OnLineListener() {
                             @Override
@@ -246,7 +271,7 @@ public class LogService extends Service {
                                 }
 
                             }
-                        }).addCommand(logPath).open();
+                        }).addCommand(logPath), null);
             } else {
                 Log.i(TAG, "Unable to start log service. LogTarget is empty");
                 Api.toast(getApplicationContext(), getApplicationContext().getString(R.string.error_log));
@@ -258,6 +283,19 @@ public class LogService extends Service {
         }
     }
 
+    /**
+     * Summaries are shown on the handler thread, at most once per BlockAggregator.INTERVAL
+     */
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            handler.postDelayed(flushRunnable, BlockAggregator.INTERVAL);
+        }
+    }
+
+    public static String getToastStats() {
+        return blockAggregator.getStats();
+    }
+
     private void closeSession() {
         new Thread(new Runnable() {
             @Override
@@ -276,33 +314,44 @@ public class LogService extends Service {
         if (G.enableLogService()) {
             if (line != null && line.trim().length() > 0) {
                 if (line.contains("AFL")) {
-                    //bus.post(new LogEvent(LogInfo.parseLogs(line, context), context));
-                    LogRxEvent.publish(new LogEvent(LogInfo.parseLogs(line, context), context));
+                    LogRxEvent.publish(line, context);
                 }
             }
         }
     }
 
-    private void store(final LogInfo logInfo) {
+    /**
+     * Persist a batch in one transaction, on the log event consumer thread.  The same
+     * LogData instance is refilled for every row.
+     */
+    private void store(final LogInfo[] batch, final int size) {
         try {
-            data = new LogData();
-            data.setDst(logInfo.dst);
-            data.setOut(logInfo.out);
-            data.setSrc(logInfo.src);
-            data.setDpt(logInfo.dpt);
-            data.setIn(logInfo.in);
-            data.setLen(logInfo.len);
-            data.setProto(logInfo.proto);
-            data.setTimestamp(System.currentTimeMillis());
-            data.setSpt(logInfo.spt);
-            data.setUid(logInfo.uid);
-            data.setAppName(logInfo.appName);
-            FlowManager.getDatabase(LogDatabase.class).beginTransactionAsync(new ITransaction() {
+            final long now = System.currentTimeMillis();
+            long start = Metrics.start();
+            FlowManager.getDatabase(LogDatabase.class).executeTransaction(new ITransaction() {
                 @Override
                 public void execute(DatabaseWrapper databaseWrapper) {
-                    data.save(databaseWrapper);
+                    for (int i = 0; i < size; i++) {
+                        LogInfo logInfo = batch[i];
+                        data.setDst(logInfo.dst);
+                        data.setOut(logInfo.out);
+                        data.setSrc(logInfo.src);
+                        data.setDpt(logInfo.dpt);
+                        data.setIn(logInfo.in);
+                        data.setLen(logInfo.len);
+                        data.setProto(logInfo.proto);
+                        data.setTimestamp(now);
+                        data.setSpt(logInfo.spt);
+                        data.setUid(logInfo.uid);
+                        data.setAppName(logInfo.appName);
+                        data.insert(databaseWrapper);
+                        rollups.add(logInfo);
+                    }
+                    rollups.write(databaseWrapper, now);
                 }
-            }).build().execute();
+            });
+            STORE_TIME.stop(start);
+            STORED.add(size);
         } catch (IllegalStateException e) {
             if (e.getMessage().contains("connection pool has been closed")) {
                 //reconnect logic
@@ -321,6 +370,11 @@ public class LogService extends Service {
 
     @Override
     public void onDestroy() {
+        LogRxEvent.unsubscribe();
+        if (handler != null) {
+            handler.removeCallbacks(flushRunnable);
+        }
+        flushScheduled.set(false);
         closeSession();
         super.onDestroy();
     }
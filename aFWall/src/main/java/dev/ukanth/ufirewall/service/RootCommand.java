@@ -3,8 +3,15 @@ package dev.ukanth.ufirewall.service;
 import android.content.Context;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.util.Metrics;
+import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
 
 import static dev.ukanth.ufirewall.service.RootShellService.NO_TOAST;
 
@@ -13,6 +20,28 @@ import static dev.ukanth.ufirewall.service.RootShellService.NO_TOAST;
  */
 
 public class RootCommand {
+
+    /**
+     * Scheduling class, a pipeline always runs the highest class queued first
+     */
+    public enum Priority {
+        /* the user is waiting, e.g. Apply */
+        INTERACTIVE,
+        /* connectivity changes, boot */
+        CONNECTIVITY,
+        /* rule dumps, status checks, logs */
+        DIAGNOSTICS
+    }
+
+    /* what a script does to the rules, a queued full apply makes queued partial ones pointless */
+    public static final int SCOPE_OTHER = 0;
+    public static final int SCOPE_PARTIAL = 1;
+    public static final int SCOPE_FULL = 2;
+
+    /* both families of an apply, for comparing the two ways on one device */
+    private static final Metrics.Histogram PARALLEL_TIME = Metrics.histogram("rules.families.parallel");
+    private static final Metrics.Histogram SEQUENTIAL_TIME = Metrics.histogram("rules.families.sequential");
+
     private List<String> commmands;
 
     public Callback cb = null;
@@ -23,7 +52,8 @@ public class RootCommand {
 
     public int commandIndex;
     public boolean ignoreExitCode;
-    public Date startTime;
+    /* Metrics.start() of the current phase: queued, then running */
+    public long startTime;
     public int retryCount;
 
     public StringBuilder res;
@@ -31,6 +61,25 @@ public class RootCommand {
     public StringBuilder lastCommandResult;
     public int exitCode;
     public boolean done = false;
+    /* a full apply took the place of this partial one, its own script never ran */
+    public boolean superseded;
+
+    /* wall clock time (ms) spent per address family by runParallel(), -1 if not run */
+    public long ipv4Elapsed = -1;
+    public long ipv6Elapsed = -1;
+
+    /* exit code to stop with, set by cancel(); the pipeline checks it before every line */
+    volatile int cancelCode;
+    /* ms from submission until the command is cancelled with EXIT_TIMEOUT, 0 for no deadline */
+    long timeout;
+    TimerTask deadline;
+    final List<RootResult.Step> steps = new ArrayList<RootResult.Step>();
+    Priority priority = Priority.INTERACTIVE;
+    int scope = SCOPE_OTHER;
+    /* identical or superseded submissions completed together with this one */
+    final List<RootCommand> followers = new ArrayList<RootCommand>();
+    RootFuture future;
+    private RootCommand[] children;
 
 
     public List<String> getCommmands() {
@@ -120,6 +169,167 @@ public class RootCommand {
         return this;
     }
 
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @param priority scheduling class, INTERACTIVE by default
+     * @return RootCommand builder object
+     */
+    public RootCommand setPriority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * @param scope SCOPE_FULL for a complete rule set, SCOPE_PARTIAL for scripts a full apply
+     *              makes redundant
+     * @return RootCommand builder object
+     */
+    public RootCommand setScope(int scope) {
+        this.scope = scope;
+        return this;
+    }
+
+    /**
+     * Give up if the command hasn't finished in time; it then completes with EXIT_TIMEOUT
+     *
+     * @param timeout ms after submission, 0 for no deadline
+     * @return RootCommand builder object
+     */
+    public RootCommand setTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Future of this command.  Works with any API taking a RootCommand; fetch it before the
+     * command is handed over.
+     *
+     * @return
+     */
+    public final synchronized RootFuture getFuture() {
+        if (future == null) {
+            future = new RootFuture(this);
+        }
+        return future;
+    }
+
+    /**
+     * Stop before the next line of the script.  The callback still runs, with the given code,
+     * once the pipeline gets to the command; the future completes right away.
+     *
+     * @param code RootShellService.EXIT_CANCELLED or EXIT_TIMEOUT
+     */
+    public final void cancel(int code) {
+        RootCommand[] current;
+        RootFuture pending;
+        synchronized (this) {
+            if (done || cancelCode != 0) {
+                return;
+            }
+            cancelCode = code;
+            current = children;
+            pending = future;
+        }
+        if (current != null) {
+            for (RootCommand child : current) {
+                if (child != null) {
+                    child.cancel(code);
+                }
+            }
+        }
+        if (pending != null) {
+            pending.complete(RootResult.of(this, code));
+        }
+    }
+
+    void addStep(String command, int exitCode, List<String> output) {
+        synchronized (steps) {
+            steps.add(new RootResult.Step(command, exitCode, output));
+        }
+    }
+
+    /**
+     * Run a series of commands as root
+     *
+     * @param ctx    Context object used to create toasts
+     * @param script List of commands to run as root
+     * @return future of the result, cb.cbFunc() is called as well
+     */
+    public final RootFuture submit(Context ctx, List<String> script) {
+        RootFuture result = getFuture();
+        run(ctx, script);
+        return result;
+    }
+
+    /**
+     * Like runParallel(), returning a future of the combined result
+     */
+    public final RootFuture submitParallel(Context ctx, List<String> script, List<String> script6) {
+        RootFuture result = getFuture();
+        runParallel(ctx, script, script6);
+        return result;
+    }
+
+    /**
+     * Adapt any API taking a RootCommand to RxJava.  Nothing runs until subscribed, disposing
+     * cancels the command.
+     * <pre>
+     * RootCommand.single(cmd -&gt; Api.fastApply(ctx, cmd))
+     * </pre>
+     *
+     * @param start hands a fresh RootCommand to the API
+     * @return
+     */
+    public static Single<RootResult> single(final Consumer<RootCommand> start) {
+        return Single.create(emitter -> {
+            RootCommand command = new RootCommand();
+            RootFuture result = command.getFuture();
+            emitter.setCancellable(() -> result.cancel(true));
+            result.setListener(emitter::onSuccess);
+            start.accept(command);
+        });
+    }
+
+    /**
+     * @see #single(Consumer)
+     */
+    public static Single<RootResult> single(final Context ctx, final List<String> script) {
+        return single(command -> command.run(ctx, script));
+    }
+
+    /**
+     * Run steps one after another, stopping at the first one that fails
+     *
+     * @param steps
+     * @return result of the last step that ran
+     */
+    public static Single<RootResult> sequence(List<Single<RootResult>> steps) {
+        Single<RootResult> chain = Single.just(new RootResult(0, new ArrayList<RootResult.Step>()));
+        for (final Single<RootResult> step : steps) {
+            chain = chain.flatMap(result -> result.isSuccess() ? step : Single.just(result));
+        }
+        return chain;
+    }
+
+    /**
+     * Run steps at the same time
+     *
+     * @param steps
+     * @return merged result, see RootResult.merge()
+     */
+    public static Single<RootResult> parallel(List<Single<RootResult>> steps) {
+        return Single.zip(steps, results -> {
+            List<RootResult> list = new ArrayList<RootResult>();
+            for (Object result : results) {
+                list.add((RootResult) result);
+            }
+            return RootResult.merge(list);
+        });
+    }
+
     /**
      * Run a series of commands as root; call cb.cbFunc() when complete
      *
@@ -151,4 +361,126 @@ public class RootCommand {
         script.add(cmd);
         RootShellService.runScriptAsRoot(ctx, script, this, false);
     }
+
+    /**
+     * Run the IPv4 and IPv6 scripts on two independent root shells and call cb.cbFunc()
+     * once after both of them have finished.  exitCode is the first non-zero exit code
+     * (IPv4 first); the time spent by each family is stored in ipv4Elapsed/ipv6Elapsed.
+     * If the system iptables can't wait for the xtables lock the IPv6 script starts only
+     * after the IPv4 one.  Total times go to rules.families.parallel/sequential.
+     *
+     * @param ctx      Context object used to create toasts
+     * @param script   List of IPv4 commands to run as root
+     * @param script6  List of IPv6 commands to run as root, may be null
+     */
+    public final void runParallel(Context ctx, List<String> script, final List<String> script6) {
+        final RootCommand parent = this;
+        final boolean hasV6 = script6 != null && !script6.isEmpty();
+        final long start = System.currentTimeMillis();
+        final AtomicInteger pending = new AtomicInteger(hasV6 ? 2 : 1);
+        final RootCommand[] children = new RootCommand[2];
+        final boolean sequential = hasV6 && !Api.waitsForLock();
+        final long sample = Metrics.start();
+
+        List<String> all = new ArrayList<String>(script);
+        if (hasV6) {
+            all.addAll(script6);
+        }
+        setCommmands(all);
+        ipv4Elapsed = -1;
+        ipv6Elapsed = -1;
+        superseded = false;
+        synchronized (this) {
+            this.children = children;
+        }
+
+        final Context context = ctx;
+        children[0] = newChild().setCallback(new Callback() {
+            @Override
+            public void cbFunc(RootCommand state) {
+                parent.ipv4Elapsed = System.currentTimeMillis() - start;
+                if (sequential) {
+                    RootShellService.runScriptAsRootV6(context, script6, children[1]);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    parent.join(children, sequential, sample);
+                }
+            }
+        });
+        if (hasV6) {
+            children[1] = newChild().setCallback(new Callback() {
+                @Override
+                public void cbFunc(RootCommand state) {
+                    parent.ipv6Elapsed = System.currentTimeMillis() - start;
+                    if (pending.decrementAndGet() == 0) {
+                        parent.join(children, sequential, sample);
+                    }
+                }
+            });
+        }
+
+        if (cancelCode != 0) {
+            children[0].cancel(cancelCode);
+            if (hasV6) {
+                children[1].cancel(cancelCode);
+            }
+        }
+        RootShellService.runScriptAsRoot(ctx, script, children[0], false);
+        if (hasV6 && !sequential) {
+            RootShellService.runScriptAsRootV6(ctx, script6, children[1]);
+        }
+    }
+
+    /**
+     * Finish without running anything, e.g. when the kernel already has the requested rules.
+     * Callbacks and toasts behave as if an empty script had succeeded.
+     *
+     * @param ctx Context object used to create toasts
+     */
+    public final void skip(Context ctx) {
+        RootShellService.skip(ctx, this);
+    }
+
+    private RootCommand newChild() {
+        RootCommand child = new RootCommand()
+                .setReopenShell(reopenShell)
+                .setRetryExitCode(retryExitCode)
+                .setLogging(res != null)
+                .setTimeout(timeout)
+                .setPriority(priority)
+                .setScope(scope);
+        child.startTime = startTime;
+        return child;
+    }
+
+    private void join(RootCommand[] children, boolean sequential, long sample) {
+        if (children[1] != null) {
+            (sequential ? SEQUENTIAL_TIME : PARALLEL_TIME).stop(sample);
+        }
+        int code = 0;
+        for (RootCommand child : children) {
+            if (child == null) {
+                continue;
+            }
+            if (res != null && child.res != null) {
+                res.append(child.res);
+            }
+            synchronized (child.steps) {
+                for (RootResult.Step step : child.steps) {
+                    addStep(step.command, step.exitCode, step.output);
+                }
+            }
+            if (child.superseded) {
+                superseded = true;
+            }
+            if (code == 0 && child.exitCode != 0) {
+                code = child.exitCode;
+                lastCommand = child.lastCommand;
+                lastCommandResult = child.lastCommandResult;
+            }
+        }
+        commandIndex = getCommmands().size();
+        Log.i(RootShellService.TAG, "Rules applied, IPv4: " + ipv4Elapsed + " ms, IPv6: " + ipv6Elapsed + " ms");
+        RootShellService.complete(this, code);
+    }
 }
@@ -0,0 +1,97 @@
+package dev.ukanth.ufirewall.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pending result of a RootCommand.  Cancelling completes the future right away; the command
+ * itself stops before its next line, a line already handed to the shell still runs.
+ */
+
+public final class RootFuture implements Future<RootResult> {
+
+    public interface Listener {
+        /**
+         * Called once, on the thread that completed the command (or cancelled it)
+         *
+         * @param result
+         */
+        void onResult(RootResult result);
+    }
+
+    private final RootCommand command;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile RootResult result;
+    private Listener listener;
+
+    RootFuture(RootCommand command) {
+        this.command = command;
+    }
+
+    /**
+     * @param listener replaces any earlier one, called immediately if already done
+     * @return this
+     */
+    public RootFuture setListener(Listener listener) {
+        RootResult current;
+        synchronized (this) {
+            this.listener = listener;
+            current = result;
+        }
+        if (current != null && listener != null) {
+            listener.onResult(current);
+        }
+        return this;
+    }
+
+    void complete(RootResult value) {
+        Listener current;
+        synchronized (this) {
+            if (result != null) {
+                return;
+            }
+            result = value;
+            current = listener;
+        }
+        done.countDown();
+        if (current != null) {
+            current.onResult(value);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (result != null) {
+            return false;
+        }
+        command.cancel(RootShellService.EXIT_CANCELLED);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        RootResult current = result;
+        return current != null && current.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return result != null;
+    }
+
+    @Override
+    public RootResult get() throws InterruptedException {
+        done.await();
+        return result;
+    }
+
+    @Override
+    public RootResult get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Root command still running");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package dev.ukanth.ufirewall.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable outcome of a RootCommand: the overall exit code plus the exit code and output of
+ * every command that ran, in order.  Commands after a failing one are not listed.
+ */
+
+public final class RootResult {
+
+    public static final class Step {
+        public final String command;
+        public final int exitCode;
+        public final List<String> output;
+
+        Step(String command, int exitCode, List<String> output) {
+            this.command = command;
+            this.exitCode = exitCode;
+            this.output = Collections.unmodifiableList(output);
+        }
+    }
+
+    public final int exitCode;
+    public final List<Step> steps;
+
+    RootResult(int exitCode, List<Step> steps) {
+        this.exitCode = exitCode;
+        this.steps = Collections.unmodifiableList(new ArrayList<Step>(steps));
+    }
+
+    static RootResult of(RootCommand state, int exitCode) {
+        synchronized (state.steps) {
+            return new RootResult(exitCode, state.steps);
+        }
+    }
+
+    /**
+     * Combine the results of independent commands, e.g. the IPv4 and IPv6 scripts
+     *
+     * @param results
+     * @return first non-zero exit code, all steps
+     */
+    public static RootResult merge(List<RootResult> results) {
+        int code = 0;
+        List<Step> steps = new ArrayList<Step>();
+        for (RootResult result : results) {
+            if (code == 0) {
+                code = result.exitCode;
+            }
+            steps.addAll(result.steps);
+        }
+        return new RootResult(code, steps);
+    }
+
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+
+    public boolean isCancelled() {
+        return exitCode == RootShellService.EXIT_CANCELLED || exitCode == RootShellService.EXIT_TIMEOUT;
+    }
+
+    /**
+     * @return output of all steps, in order
+     */
+    public List<String> getOutput() {
+        List<String> output = new ArrayList<String>();
+        for (Step step : steps) {
+            output.addAll(step.output);
+        }
+        return output;
+    }
+
+    /**
+     * @return the step that failed, null if none did
+     */
+    public Step getFailedStep() {
+        for (Step step : steps) {
+            if (step.exitCode != 0) {
+                return step;
+            }
+        }
+        return null;
+    }
+}
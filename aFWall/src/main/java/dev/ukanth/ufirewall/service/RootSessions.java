@@ -0,0 +1,321 @@
+package dev.ukanth.ufirewall.service;
+
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.util.Metrics;
+import eu.chainfire.libsuperuser.Shell;
+
+/**
+ * Broker for the root shells of the app.  Every su spawn goes through open() and is counted:
+ * <ul>
+ * <li>APPLY: the RootShellService pipelines, plus one-off scripts of the rule code</li>
+ * <li>LOG: the log reader's streaming shell and its cleanup</li>
+ * <li>DIAGNOSTICS: root checks, file copies, remounts, traffic counters, ping</li>
+ * </ul>
+ * Only short commands are pooled: those of all priorities share one long-lived shell.  Its
+ * queue is ordered by priority, the shell is health checked before use after being idle and
+ * reopened if it died.  The two rule pipelines (IPv4 and IPv6) and the log reader keep a
+ * dedicated shell each, they stream or run long scripts that would hold up everything else.
+ */
+
+public final class RootSessions {
+
+    public static final String TAG = "AFWall";
+
+    public enum Priority {
+        APPLY,
+        LOG,
+        DIAGNOSTICS
+    }
+
+    public interface Listener {
+        /**
+         * Called on the broker thread
+         *
+         * @param exitCode exit code of the last command, negative if su failed
+         * @param output   stdout and stderr
+         */
+        void onResult(int exitCode, List<String> output);
+    }
+
+    public static final int EXIT_NO_ROOT = -1;
+
+    private static final int WATCHDOG_TIMEOUT = 30;
+    /* an idle shell is probed before use, su managers sometimes kill idle shells */
+    private static final long HEALTH_CHECK_IDLE = 60 * 1000;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static final Metrics.Counter SPAWNS = Metrics.counter("su.spawns");
+    private static final Metrics.Gauge SPAWNS_PER_HOUR = Metrics.gauge("su.spawns.hour");
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private static class Request implements Comparable<Request> {
+        final Priority priority;
+        final long order = sequence.incrementAndGet();
+        final List<String> commands;
+        final Listener listener;
+
+        Request(Priority priority, List<String> commands, Listener listener) {
+            this.priority = priority;
+            this.commands = commands;
+            this.listener = listener;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (priority != other.priority) {
+                return priority.compareTo(other.priority);
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    private static final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<>();
+    private static Thread worker;
+
+    // only touched by the worker
+    private static Shell.Interactive shared;
+    private static long lastUsed;
+
+    // guarded by RootSessions.class
+    private static final LinkedList<Long> recentSpawns = new LinkedList<>();
+    private static final Map<Priority, Integer> spawns = new EnumMap<>(Priority.class);
+    private static long reconnects;
+
+    private RootSessions() {
+    }
+
+    /**
+     * Spawn a root shell.  For shells with a life of their own (pipelines, streaming readers);
+     * short commands should use run() or submit() instead.
+     *
+     * @param priority what the shell is for
+     * @param builder  configured builder, su is set here
+     * @param onOpen   notified once su answered, may be null
+     * @return the new shell
+     */
+    public static Shell.Interactive open(Priority priority, Shell.Builder builder,
+                                         Shell.OnCommandResultListener onOpen) {
+        recordSpawn(priority);
+        builder.useSU();
+        return onOpen != null ? builder.open(onOpen) : builder.open();
+    }
+
+    private static synchronized void recordSpawn(Priority priority) {
+        long now = System.currentTimeMillis();
+        recentSpawns.add(now);
+        while (recentSpawns.getFirst() < now - HOUR) {
+            recentSpawns.removeFirst();
+        }
+        Integer count = spawns.get(priority);
+        spawns.put(priority, count == null ? 1 : count + 1);
+        SPAWNS.inc();
+        SPAWNS_PER_HOUR.set(recentSpawns.size());
+        Log.d(TAG, "Spawning " + priority + " root shell, " + recentSpawns.size() + " in the last hour");
+    }
+
+    /**
+     * Queue commands on the shared shell
+     *
+     * @param priority
+     * @param commands
+     * @param listener may be null
+     */
+    public static void submit(Priority priority, List<String> commands, Listener listener) {
+        startWorker();
+        queue.add(new Request(priority, commands, listener));
+    }
+
+    /**
+     * Run commands on the shared shell and wait for them.  Blocking, call it off the UI thread.
+     *
+     * @param priority
+     * @param commands
+     * @param output   receives stdout and stderr, may be null
+     * @return exit code of the last command, EXIT_NO_ROOT if su failed
+     * @throws IllegalStateException on the main thread, waiting for su there means an ANR
+     */
+    public static int run(Priority priority, List<String> commands, final List<String> output) {
+        if (Looper.myLooper() != null && Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("RootSessions.run must not be called from the main thread, use submit()");
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        final int[] exitCode = {EXIT_NO_ROOT};
+        submit(priority, commands, new Listener() {
+            @Override
+            public void onResult(int code, List<String> lines) {
+                exitCode[0] = code;
+                if (output != null) {
+                    output.addAll(lines);
+                }
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return exitCode[0];
+    }
+
+    public static int run(Priority priority, String command, List<String> output) {
+        return run(priority, Collections.singletonList(command), output);
+    }
+
+    /**
+     * @return true if su grants uid 0.  Blocking.
+     */
+    public static boolean isRootAvailable() {
+        List<String> output = new ArrayList<>();
+        if (run(Priority.DIAGNOSTICS, "id", output) != 0) {
+            return false;
+        }
+        for (String line : output) {
+            if (line.contains("uid=0")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static synchronized void startWorker() {
+        if (worker == null) {
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        try {
+                            execute(queue.take());
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            Log.e(TAG, "Exception in root session broker: " + e.getLocalizedMessage());
+                        }
+                    }
+                }
+            }, "afwall-root-broker");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private static void execute(Request request) {
+        final int[] exitCode = {EXIT_NO_ROOT};
+        final List<String> output = new ArrayList<>();
+        // one reconnect per request, a shell dying twice in a row means su is gone
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (!ensureShell()) {
+                break;
+            }
+            output.clear();
+            shared.addCommand(request.commands, 0, new Shell.OnCommandResultListener() {
+                @Override
+                public void onCommandResult(int commandCode, int code, List<String> lines) {
+                    exitCode[0] = code;
+                    if (lines != null) {
+                        output.addAll(lines);
+                    }
+                }
+            });
+            shared.waitForIdle();
+            lastUsed = System.currentTimeMillis();
+            if (exitCode[0] != Shell.OnCommandResultListener.SHELL_DIED
+                    && exitCode[0] != Shell.OnCommandResultListener.WATCHDOG_EXIT) {
+                break;
+            }
+            Log.w(TAG, "Shared root shell died (" + exitCode[0] + "), reconnecting");
+            closeShell();
+        }
+        if (request.listener != null) {
+            request.listener.onResult(exitCode[0] < 0 ? EXIT_NO_ROOT : exitCode[0], output);
+        }
+    }
+
+    /**
+     * Open the shared shell, or make sure the open one still answers
+     *
+     * @return false if no root shell could be opened
+     */
+    private static boolean ensureShell() {
+        if (shared != null && shared.isRunning()
+                && System.currentTimeMillis() - lastUsed > HEALTH_CHECK_IDLE) {
+            final boolean[] healthy = {false};
+            shared.addCommand("true", 0, new Shell.OnCommandResultListener() {
+                @Override
+                public void onCommandResult(int commandCode, int exitCode, List<String> output) {
+                    healthy[0] = exitCode == 0;
+                }
+            });
+            shared.waitForIdle();
+            if (!healthy[0]) {
+                Log.w(TAG, "Shared root shell failed the health check");
+                closeShell();
+            }
+        }
+        if (shared == null || !shared.isRunning()) {
+            if (shared != null) {
+                closeShell();
+            }
+            synchronized (RootSessions.class) {
+                reconnects++;
+            }
+            final int[] openCode = {EXIT_NO_ROOT};
+            shared = open(Priority.DIAGNOSTICS, new Shell.Builder()
+                    .setAutoHandler(false)
+                    .setWantSTDERR(true)
+                    .setMinimalLogging(true)
+                    .setWatchdogTimeout(WATCHDOG_TIMEOUT), new Shell.OnCommandResultListener() {
+                @Override
+                public void onCommandResult(int commandCode, int exitCode, List<String> output) {
+                    openCode[0] = exitCode;
+                }
+            });
+            shared.waitForIdle();
+            if (openCode[0] != Shell.OnCommandResultListener.SHELL_RUNNING) {
+                Log.e(TAG, "Unable to open shared root shell: " + openCode[0]);
+                closeShell();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void closeShell() {
+        if (shared != null) {
+            try {
+                shared.kill();
+            } catch (Exception e) {
+                Log.e(TAG, "Exception while closing root shell: " + e.getLocalizedMessage());
+            }
+            shared = null;
+        }
+    }
+
+    public static synchronized String getStats() {
+        long now = System.currentTimeMillis();
+        while (!recentSpawns.isEmpty() && recentSpawns.getFirst() < now - HOUR) {
+            recentSpawns.removeFirst();
+        }
+        StringBuilder result = new StringBuilder("Root sessions: ").append(recentSpawns.size())
+                .append(" su spawns in the last hour");
+        for (Priority priority : Priority.values()) {
+            Integer count = spawns.get(priority);
+            result.append(", ").append(priority.name().toLowerCase()).append(" ").append(count == null ? 0 : count);
+        }
+        return result.append(", ").append(reconnects).append(" shared shell opens, ").append(queue.size())
+                .append(" queued\n").toString();
+    }
+}
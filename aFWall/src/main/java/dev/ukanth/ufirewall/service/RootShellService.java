@@ -33,7 +33,6 @@ import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -46,6 +45,7 @@ import dev.ukanth.ufirewall.MainActivity;
 import dev.ukanth.ufirewall.R;
 import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.util.G;
+import dev.ukanth.ufirewall.util.Metrics;
 import eu.chainfire.libsuperuser.Debug;
 import eu.chainfire.libsuperuser.Shell;
 
@@ -56,10 +56,24 @@ public class RootShellService extends Service {
 
     public static final String TAG = "AFWall";
 
-    /* write command completion times to logcat */
-    private static final boolean enableProfiling = false;
+    private static final Metrics.Histogram[] QUEUE_TIME = new Metrics.Histogram[RootCommand.Priority.values().length];
+    private static final Metrics.Histogram[] RUN_TIME = new Metrics.Histogram[RootCommand.Priority.values().length];
+    private static final Metrics.Counter MERGED = Metrics.counter("root.merged");
+    private static final Metrics.Counter SUPERSEDED = Metrics.counter("root.superseded");
+
+    static {
+        for (RootCommand.Priority priority : RootCommand.Priority.values()) {
+            String name = priority.name().toLowerCase();
+            QUEUE_TIME[priority.ordinal()] = Metrics.histogram("root.queue." + name);
+            RUN_TIME[priority.ordinal()] = Metrics.histogram("root.run." + name);
+        }
+    }
+    private static final Metrics.Counter COMMANDS = Metrics.counter("root.commands");
+    private static final Metrics.Counter FAILURES = Metrics.counter("root.failures");
+    private static final Metrics.Counter RETRIES = Metrics.counter("root.retries");
+    /* ms before the first retry, doubled for each further one */
+    private static final long RETRY_DELAY = 50;
 
-    private static Shell.Interactive rootSession;
     private static Context mContext;
     private static NotificationManager notificationManager;
     public static final int NOTIFICATION_ID = 33347;
@@ -71,39 +85,80 @@ public class RootShellService extends Service {
         FAIL
     }
 
-    private static ShellState rootState = INIT;
-
     //number of retries
     private final static int MAX_RETRIES = 5;
 
-    private static LinkedList<RootCommand> waitQueue = new LinkedList<RootCommand>();
-
     public final static int EXIT_NO_ROOT_ACCESS = -1;
 
+    /* below the codes libsuperuser reports */
+    public final static int EXIT_CANCELLED = -10;
+    public final static int EXIT_TIMEOUT = -11;
+
+    private static final Timer deadlines = new Timer("afwall-root-deadlines", true);
+
     public final static int NO_TOAST = -1;
 
     private static NotificationCompat.Builder builder;
 
-    private static void complete(final RootCommand state, int exitCode) {
-        if (enableProfiling) {
-            Log.d(TAG, "RootShell: " + state.getCommmands().size() + " commands completed in " +
-                    (new Date().getTime() - state.startTime.getTime()) + " ms");
+    /* default pipeline, runs everything including IPv4 rules */
+    private static final Pipeline rootPipeline = new Pipeline("main");
+
+    /* second root shell, so IPv6 rules can be applied alongside IPv4 */
+    private static final Pipeline ipv6Pipeline = new Pipeline("ipv6");
+
+    static void complete(final RootCommand state, int exitCode) {
+        RUN_TIME[state.priority.ordinal()].stop(state.startTime);
+        COMMANDS.add(state.commandIndex);
+        if (exitCode != 0) {
+            FAILURES.inc();
+        }
+        if (state.deadline != null) {
+            state.deadline.cancel();
+            state.deadline = null;
+        }
+        synchronized (state) {
+            state.exitCode = exitCode;
+            state.done = true;
         }
-        state.exitCode = exitCode;
-        state.done = true;
         if (state.cb != null) {
             state.cb.cbFunc(state);
         }
+        if (state.future != null) {
+            state.future.complete(RootResult.of(state, exitCode));
+        }
 
         if (exitCode == 0 && state.successToast != NO_TOAST) {
             Api.sendToastBroadcast(mContext, mContext.getString(state.successToast));
-        } else if (exitCode != 0 && state.failureToast != NO_TOAST) {
+        } else if (exitCode != 0 && state.failureToast != NO_TOAST && state.cancelCode == 0) {
             Api.sendToastBroadcast(mContext, mContext.getString(state.failureToast));
         }
 
         if (notificationManager != null) {
             notificationManager.cancel(NOTIFICATION_ID);
         }
+
+        List<RootCommand> followers;
+        synchronized (state.followers) {
+            followers = new ArrayList<RootCommand>(state.followers);
+            state.followers.clear();
+        }
+        for (RootCommand follower : followers) {
+            follower.setCommmands(state.getCommmands());
+            follower.lastCommand = state.lastCommand;
+            follower.lastCommandResult = state.lastCommandResult;
+            if (follower.res != null && state.res != null) {
+                follower.res.append(state.res);
+            }
+            synchronized (state.steps) {
+                for (RootResult.Step step : state.steps) {
+                    follower.addStep(step.command, step.exitCode, step.output);
+                }
+            }
+            // nothing ran on their behalf
+            follower.startTime = 0;
+            follower.commandIndex = 0;
+            complete(follower, follower.cancelCode != 0 ? follower.cancelCode : exitCode);
+        }
     }
 
 
@@ -119,106 +174,281 @@ public class RootShellService extends Service {
         return Service.START_STICKY;
     }
 
-    private static void runNextSubmission() {
+    /**
+     * A root shell with its own queue of pending submissions.  Submissions on the same
+     * pipeline run strictly one after another; separate pipelines run independently.
+     */
+    static class Pipeline {
 
-        do {
-            RootCommand state;
-            try {
-                state = waitQueue.remove();
-            } catch (NoSuchElementException e) {
-                // nothing left to do
-                if (rootState == ShellState.BUSY) {
-                    rootState = ShellState.READY;
-                }
-                break;
-            }
+        private final String name;
+        private Shell.Interactive rootSession;
+        private ShellState rootState = INIT;
+        final LinkedList<RootCommand> waitQueue = new LinkedList<RootCommand>();
 
-            Log.i(TAG, "Start processing next state");
-            if (enableProfiling) {
-                state.startTime = new Date();
-            }
+        Pipeline(String name) {
+            this.name = name;
+        }
 
-            if (rootState == ShellState.FAIL) {
-                // if we don't have root, abort all queued commands
-                complete(state, EXIT_NO_ROOT_ACCESS);
-                continue;
-            } else if (rootState == ShellState.READY) {
-                Log.i(TAG, "Total commamds: #" + state.getCommmands().size());
-                rootState = ShellState.BUSY;
-                if(G.isRun()) {
-                    createNotification(mContext);
+        private void runNextSubmission() {
+
+            do {
+                RootCommand state;
+                try {
+                    synchronized (waitQueue) {
+                        state = waitQueue.remove();
+                    }
+                } catch (NoSuchElementException e) {
+                    // nothing left to do
+                    if (rootState == ShellState.BUSY) {
+                        rootState = ShellState.READY;
+                    }
+                    break;
                 }
-                processCommands(state);
-            }
-        } while (false);
-    }
 
-    private static void processCommands(final RootCommand state) {
-        if (state.commandIndex < state.getCommmands().size() && state.getCommmands().get(state.commandIndex) != null) {
-            String command = state.getCommmands().get(state.commandIndex);
-            sendUpdate(state);
-            if (command != null) {
-                state.ignoreExitCode = false;
+                Log.i(TAG, "Start processing next state on " + name + " shell");
+                QUEUE_TIME[state.priority.ordinal()].stop(state.startTime);
+                state.startTime = Metrics.start();
 
-                if (command.startsWith("#NOCHK# ")) {
-                    command = command.replaceFirst("#NOCHK# ", "");
-                    state.ignoreExitCode = true;
+                if (state.cancelCode != 0) {
+                    Log.i(TAG, "Dropping cancelled submission on " + name + " shell");
+                    completeCancelled(state);
+                    runNextSubmission();
+                    break;
+                } else if (rootState == ShellState.FAIL) {
+                    // if we don't have root, abort all queued commands
+                    complete(state, EXIT_NO_ROOT_ACCESS);
+                    continue;
+                } else if (rootState == ShellState.READY) {
+                    Log.i(TAG, "Total commamds: #" + state.getCommmands().size());
+                    rootState = ShellState.BUSY;
+                    if (G.isRun()) {
+                        createNotification(mContext);
+                    }
+                    processCommands(state);
                 }
-                state.lastCommand = command;
-                state.lastCommandResult = new StringBuilder();
-                try {
-                    rootSession.addCommand(command, 0, new Shell.OnCommandResultListener() {
-                        @Override
-                        public void onCommandResult(int commandCode, int exitCode,
-                                                    List<String> output) {
-                            if (output != null) {
-                                ListIterator<String> iter = output.listIterator();
-                                while (iter.hasNext()) {
-                                    String line = iter.next();
-                                    if (line != null && !line.equals("")) {
-                                        if (state.res != null) {
-                                            state.res.append(line + "\n");
+            } while (false);
+        }
+
+        private void processCommands(final RootCommand state) {
+            if (state.cancelCode != 0) {
+                Log.i(TAG, "Stopping cancelled submission on " + name + " shell after " + state.commandIndex + " commands");
+                completeCancelled(state);
+                rootState = ShellState.READY;
+                runNextSubmission();
+                return;
+            }
+            if (state.commandIndex < state.getCommmands().size() && state.getCommmands().get(state.commandIndex) != null) {
+                String command = state.getCommmands().get(state.commandIndex);
+                sendUpdate(state);
+                if (command != null) {
+                    state.ignoreExitCode = false;
+
+                    if (command.startsWith("#NOCHK# ")) {
+                        command = command.replaceFirst("#NOCHK# ", "");
+                        state.ignoreExitCode = true;
+                    }
+                    state.lastCommand = command;
+                    state.lastCommandResult = new StringBuilder();
+                    try {
+                        rootSession.addCommand(command, 0, new Shell.OnCommandResultListener() {
+                            @Override
+                            public void onCommandResult(int commandCode, int exitCode,
+                                                        List<String> output) {
+                                List<String> lines = new ArrayList<String>();
+                                if (output != null) {
+                                    ListIterator<String> iter = output.listIterator();
+                                    while (iter.hasNext()) {
+                                        String line = iter.next();
+                                        if (line != null && !line.equals("")) {
+                                            if (state.res != null) {
+                                                state.res.append(line + "\n");
+                                            }
+                                            state.lastCommandResult.append(line + "\n");
+                                            lines.add(line);
                                         }
-                                        state.lastCommandResult.append(line + "\n");
                                     }
                                 }
-                            }
-                            if (exitCode >= 0 && exitCode == state.retryExitCode && state.retryCount < MAX_RETRIES) {
-                                state.retryCount++;
-                                Log.d(TAG, "command '" + state.lastCommand + "' exited with status " + exitCode +
-                                        ", retrying (attempt " + state.retryCount + "/" + MAX_RETRIES + ")");
-                                processCommands(state);
-                                return;
-                            }
+                                if (exitCode >= 0 && exitCode == state.retryExitCode && state.retryCount < MAX_RETRIES) {
+                                    state.retryCount++;
+                                    RETRIES.inc();
+                                    Log.d(TAG, "command '" + state.lastCommand + "' exited with status " + exitCode +
+                                            ", retrying (attempt " + state.retryCount + "/" + MAX_RETRIES + ")");
+                                    // the other family's shell holds the lock, give it time to finish
+                                    deadlines.schedule(new TimerTask() {
+                                        @Override
+                                        public void run() {
+                                            processCommands(state);
+                                        }
+                                    }, RETRY_DELAY << (state.retryCount - 1));
+                                    return;
+                                }
 
-                            state.commandIndex++;
-                            state.retryCount = 0;
+                                state.addStep(state.lastCommand, exitCode, lines);
+                                state.commandIndex++;
+                                state.retryCount = 0;
+
+                                boolean errorExit = exitCode != 0 && !state.ignoreExitCode;
+                                if (state.commandIndex >= state.getCommmands().size() || errorExit) {
+                                    complete(state, exitCode);
+                                    if (exitCode < 0) {
+                                        rootState = ShellState.FAIL;
+                                        Log.e(TAG, "libsuperuser error " + exitCode + " on command '" + state.lastCommand + "'");
+                                    } else {
+                                        if (errorExit) {
+                                            Log.i(TAG, "command '" + state.lastCommand + "' exited with status " + exitCode +
+                                                    "\nOutput:\n" + state.lastCommandResult);
+                                        }
+                                        rootState = ShellState.READY;
+                                    }
+                                    runNextSubmission();
+                                } else {
+                                    processCommands(state);
+                                }
+                            }
+                        });
+                    } catch (NullPointerException | ArrayIndexOutOfBoundsException e) {
+                        Log.e(TAG, e.getMessage(), e);
+                    }
+                }
+            } else {
+                complete(state, 0);
+            }
+        }
 
-                            boolean errorExit = exitCode != 0 && !state.ignoreExitCode;
-                            if (state.commandIndex >= state.getCommmands().size() || errorExit) {
-                                complete(state, exitCode);
+        private void startShellInBackground() {
+            Log.d(TAG, "Starting " + name + " root shell...");
+            setupLogging();
+            //start only rootSession is null
+            if (rootSession == null) {
+                rootSession = RootSessions.open(RootSessions.Priority.APPLY, new Shell.Builder().
+                        setWantSTDERR(true).
+                        setWatchdogTimeout(5), new Shell.OnCommandResultListener() {
+                            public void onCommandResult(int commandCode, int exitCode, List<String> output) {
                                 if (exitCode < 0) {
+                                    Log.e(TAG, "Can't open " + name + " root shell: exitCode " + exitCode);
                                     rootState = ShellState.FAIL;
-                                    Log.e(TAG, "libsuperuser error " + exitCode + " on command '" + state.lastCommand + "'");
                                 } else {
-                                    if (errorExit) {
-                                        Log.i(TAG, "command '" + state.lastCommand + "' exited with status " + exitCode +
-                                                "\nOutput:\n" + state.lastCommandResult);
-                                    }
+                                    Log.d(TAG, "Root shell " + name + " is open");
                                     rootState = ShellState.READY;
                                 }
                                 runNextSubmission();
-                            } else {
-                                processCommands(state);
                             }
+                        });
+            }
+
+        }
+
+        private void reOpenShell(Context context) {
+            if (rootState == null || rootState != ShellState.READY || rootState == ShellState.FAIL) {
+                if (notificationManager != null) {
+                    notificationManager.cancel(NOTIFICATION_ID);
+                }
+                rootState = ShellState.BUSY;
+                startShellInBackground();
+                Intent intent = new Intent(context, RootShellService.class);
+                context.startService(intent);
+            }
+        }
+
+        /**
+         * Complete a cancelled submission; whatever was merged into it is queued again on its own
+         */
+        private void completeCancelled(RootCommand state) {
+            List<RootCommand> followers;
+            synchronized (state.followers) {
+                followers = new ArrayList<RootCommand>(state.followers);
+                state.followers.clear();
+            }
+            complete(state, state.cancelCode);
+            if (!followers.isEmpty()) {
+                RootCommand next = followers.remove(0);
+                next.followers.addAll(followers);
+                synchronized (waitQueue) {
+                    waitQueue.addFirst(next);
+                }
+            }
+        }
+
+        /**
+         * Queue a submission behind everything of the same or a higher priority.  A script
+         * identical to a queued one rides along with it, and a full apply takes over queued
+         * partial applies.
+         *
+         * @return false if the submission was merged into a queued one
+         */
+        boolean enqueue(RootCommand state) {
+            synchronized (waitQueue) {
+                for (RootCommand queued : waitQueue) {
+                    if (queued.cancelCode == 0 && queued.scope == state.scope
+                            && (queued.res != null || state.res == null)
+                            && queued.getCommmands().equals(state.getCommmands())) {
+                        Log.i(TAG, "Merging duplicate submission on " + name + " shell");
+                        MERGED.inc();
+                        queued.followers.add(state);
+                        if (state.priority.compareTo(queued.priority) < 0) {
+                            // the merged submission inherits the more urgent class
+                            waitQueue.remove(queued);
+                            queued.priority = state.priority;
+                            insert(queued);
                         }
-                    });
-                } catch (NullPointerException | ArrayIndexOutOfBoundsException e) {
-                    Log.e(TAG, e.getMessage(), e);
+                        return false;
+                    }
                 }
+                if (state.scope == RootCommand.SCOPE_FULL) {
+                    ListIterator<RootCommand> iter = waitQueue.listIterator();
+                    while (iter.hasNext()) {
+                        RootCommand queued = iter.next();
+                        if (queued.scope == RootCommand.SCOPE_PARTIAL && queued.cancelCode == 0) {
+                            Log.i(TAG, "Full apply supersedes a queued partial apply on " + name + " shell");
+                            SUPERSEDED.inc();
+                            iter.remove();
+                            queued.superseded = true;
+                            state.followers.add(queued);
+                            if (queued.priority.compareTo(state.priority) < 0) {
+                                state.priority = queued.priority;
+                            }
+                        }
+                    }
+                }
+                insert(state);
+                return true;
+            }
+        }
+
+        private void insert(RootCommand state) {
+            ListIterator<RootCommand> iter = waitQueue.listIterator();
+            while (iter.hasNext()) {
+                if (iter.next().priority.compareTo(state.priority) > 0) {
+                    iter.previous();
+                    break;
+                }
+            }
+            iter.add(state);
+        }
+
+        private void submit(Context ctx, RootCommand state) {
+            state.startTime = Metrics.start();
+            if (!enqueue(state)) {
+                return;
+            }
+            if (rootState == ShellState.INIT || (rootState == ShellState.FAIL && state.reopenShell)) {
+                reOpenShell(ctx);
+            } else if (rootState != ShellState.BUSY) {
+                runNextSubmission();
+            } else {
+                new Timer().schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        Log.i(TAG, "State of " + name + " rootShell" + rootState);
+                        if (rootState == ShellState.BUSY) {
+                            //try resetting state to READY forcefully
+                            Log.i(TAG, "Forcefully changing the state " + rootState);
+                            rootState = ShellState.READY;
+                        }
+                        runNextSubmission();
+                    }
+                }, 5000);
             }
-        } else {
-            complete(state, 0);
         }
     }
 
@@ -253,74 +483,49 @@ public class RootShellService extends Service {
         });
     }
 
-
-    private static void startShellInBackground() {
-        Log.d(TAG, "Starting root shell...");
-        setupLogging();
-        //start only rootSession is null
-        if (rootSession == null) {
-            rootSession = new Shell.Builder().
-                    useSU().
-                    setWantSTDERR(true).
-                    setWatchdogTimeout(5).
-                    open(new Shell.OnCommandResultListener() {
-                        public void onCommandResult(int commandCode, int exitCode, List<String> output) {
-                            if (exitCode < 0) {
-                                Log.e(TAG, "Can't open root shell: exitCode " + exitCode);
-                                rootState = ShellState.FAIL;
-                            } else {
-                                Log.d(TAG, "Root shell is open");
-                                rootState = ShellState.READY;
-                            }
-                            runNextSubmission();
-                        }
-                    });
-        }
-
-    }
-
-    private static void reOpenShell(Context context) {
-        if (rootState == null || rootState != ShellState.READY || rootState == ShellState.FAIL) {
-            if (notificationManager != null) {
-                notificationManager.cancel(NOTIFICATION_ID);
-            }
-            rootState = ShellState.BUSY;
-            startShellInBackground();
-            Intent intent = new Intent(context, RootShellService.class);
-            context.startService(intent);
-        }
-    }
-
-
-    public static void runScriptAsRoot(Context ctx, List<String> cmds, RootCommand state, boolean useThreads) {
+    /**
+     * Reset a submission for a new run and start its deadline
+     */
+    static void prepare(Context ctx, List<String> cmds, final RootCommand state) {
         Log.i(TAG, "Received cmds: #" + cmds.size());
         state.setCommmands(cmds);
         state.commandIndex = 0;
         state.retryCount = 0;
+        state.superseded = false;
         if (mContext == null) {
             mContext = ctx.getApplicationContext();
         }
-        waitQueue.add(state);
-        if (rootState == ShellState.INIT || (rootState == ShellState.FAIL && state.reopenShell)) {
-            reOpenShell(ctx);
-        } else if (rootState != ShellState.BUSY) {
-            runNextSubmission();
-        } else {
-            new Timer().schedule(new TimerTask() {
+        if (state.timeout > 0 && state.deadline == null) {
+            state.deadline = new TimerTask() {
                 @Override
                 public void run() {
-                    Log.i(TAG, "State of rootShell" + rootState);
-                    if (rootState == ShellState.BUSY) {
-                        //try resetting state to READY forcefully
-                        Log.i(TAG, "Forcefully changing the state " + rootState);
-                        rootState = ShellState.READY;
-                    }
-                    runNextSubmission();
+                    Log.w(TAG, "Root command timed out after " + state.timeout + " ms");
+                    state.cancel(EXIT_TIMEOUT);
                 }
-            }, 5000);
+            };
+            deadlines.schedule(state.deadline, state.timeout);
         }
     }
 
+    public static void runScriptAsRoot(Context ctx, List<String> cmds, RootCommand state, boolean useThreads) {
+        prepare(ctx, cmds, state);
+        rootPipeline.submit(ctx, state);
+    }
+
+    /**
+     * Queue a script on the dedicated IPv6 root shell.  It runs independently of (and
+     * concurrently with) anything queued through {@link #runScriptAsRoot}.
+     */
+    public static void runScriptAsRootV6(Context ctx, List<String> cmds, RootCommand state) {
+        prepare(ctx, cmds, state);
+        ipv6Pipeline.submit(ctx, state);
+    }
+
+    static void skip(Context ctx, RootCommand state) {
+        prepare(ctx, new ArrayList<String>(), state);
+        complete(state, 0);
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
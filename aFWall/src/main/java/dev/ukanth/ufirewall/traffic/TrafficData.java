@@ -0,0 +1,60 @@
+package dev.ukanth.ufirewall.traffic;
+
+import com.raizlabs.android.dbflow.annotation.Column;
+import com.raizlabs.android.dbflow.annotation.PrimaryKey;
+import com.raizlabs.android.dbflow.annotation.Table;
+import com.raizlabs.android.dbflow.structure.BaseModel;
+
+/**
+ * Bytes moved by one UID within one time bucket.  Samples falling into the same bucket
+ * are added up, so the table grows by at most one row per active UID per bucket.
+ */
+
+@Table(database = TrafficDatabase.class)
+public class TrafficData extends BaseModel {
+    @Column
+    @PrimaryKey
+    private int uid;
+
+    @Column
+    @PrimaryKey
+    private long bucket;
+
+    @Column
+    private long rx;
+
+    @Column
+    private long tx;
+
+    public int getUid() {
+        return uid;
+    }
+
+    public void setUid(int uid) {
+        this.uid = uid;
+    }
+
+    public long getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(long bucket) {
+        this.bucket = bucket;
+    }
+
+    public long getRx() {
+        return rx;
+    }
+
+    public void setRx(long rx) {
+        this.rx = rx;
+    }
+
+    public long getTx() {
+        return tx;
+    }
+
+    public void setTx(long tx) {
+        this.tx = tx;
+    }
+}
@@ -0,0 +1,11 @@
+package dev.ukanth.ufirewall.traffic;
+
+import com.raizlabs.android.dbflow.annotation.Database;
+
+@Database(name = TrafficDatabase.NAME, version = TrafficDatabase.VERSION)
+public class TrafficDatabase {
+
+    public static final String NAME = "Traffic";
+
+    public static final int VERSION = 1;
+}
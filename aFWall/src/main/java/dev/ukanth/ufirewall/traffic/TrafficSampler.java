@@ -0,0 +1,296 @@
+package dev.ukanth.ufirewall.traffic;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.raizlabs.android.dbflow.config.FlowManager;
+import com.raizlabs.android.dbflow.structure.database.DatabaseWrapper;
+import com.raizlabs.android.dbflow.structure.database.transaction.ITransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.broadcast.TrafficSampleReceiver;
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.service.RootSessions;
+import dev.ukanth.ufirewall.util.G;
+
+/**
+ * Per-UID traffic accounting.  Every sample reads the counters of all UIDs with one root call
+ * and adds the growth since the previous sample to hourly TrafficData buckets.  The counters
+ * come from /proc/net/xt_qtaguid/stats, which apps can't read themselves since Nougat.  Where
+ * that file is gone (Android 9+) the byte counters of the per-app rules in the afwall chains
+ * are used instead: those only see sent traffic of apps with a rule of their own.
+ */
+
+public final class TrafficSampler {
+
+    public static final String TAG = "AFWall";
+
+    private static final String QTAGUID_STATS = "/proc/net/xt_qtaguid/stats";
+
+    /* "owner UID match 10123", ranges can't be split between their UIDs */
+    private static final Pattern OWNER = Pattern.compile("owner UID match (\\d+)(\\s|$)");
+
+    private static final long BUCKET_SIZE = 60 * 60 * 1000;
+    public static final long RETENTION = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String PREFS_NAME = "AFWallTraffic";
+    private static final String KEY_BOOT = "boot";
+
+    private static final int REQUEST_CODE = 10223;
+
+    /* counters seen by the previous sample: uid -> {rx, tx} */
+    private static SparseArray<long[]> lastCounters;
+
+    private TrafficSampler() {
+    }
+
+    /**
+     * Sample every 15 minutes while accounting is switched on and the firewall is enabled,
+     * otherwise cancel the alarm.  Each sample is a root call, so nothing runs for users who
+     * never opted in.
+     *
+     * @param ctx
+     */
+    public static void schedule(Context ctx) {
+        Intent intent = new Intent(ctx, TrafficSampleReceiver.class);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(ctx.getApplicationContext(), REQUEST_CODE,
+                intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        if (G.trafficAccounting() && Api.isEnabled(ctx)) {
+            alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                    SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_FIFTEEN_MINUTES,
+                    AlarmManager.INTERVAL_FIFTEEN_MINUTES, pendingIntent);
+        } else {
+            alarmManager.cancel(pendingIntent);
+        }
+    }
+
+    /**
+     * Take one sample and store the deltas.  Blocking, call it off the UI thread.
+     *
+     * @param ctx
+     */
+    public static synchronized void sample(Context ctx) {
+        SparseArray<long[]> counters = readCounters(ctx);
+        if (counters == null) {
+            return;
+        }
+
+        SparseArray<long[]> previous = lastCounters;
+        if (previous == null && isNewBoot(ctx)) {
+            // everything since boot is unaccounted yet
+            previous = new SparseArray<long[]>();
+        }
+        lastCounters = counters;
+        if (previous == null) {
+            // process restarted within the same boot, this sample is only the baseline
+            return;
+        }
+
+        final long bucket = System.currentTimeMillis() / BUCKET_SIZE * BUCKET_SIZE;
+        final List<long[]> deltas = new ArrayList<long[]>();
+        for (int i = 0; i < counters.size(); i++) {
+            long[] now = counters.valueAt(i);
+            long[] before = previous.get(counters.keyAt(i));
+            long rx = now[0];
+            long tx = now[1];
+            // counters going backwards were reset, count from zero
+            if (before != null && before[0] <= now[0] && before[1] <= now[1]) {
+                rx -= before[0];
+                tx -= before[1];
+            }
+            if (rx > 0 || tx > 0) {
+                deltas.add(new long[]{counters.keyAt(i), rx, tx});
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            FlowManager.getDatabase(TrafficDatabase.class).executeTransaction(new ITransaction() {
+                @Override
+                public void execute(DatabaseWrapper databaseWrapper) {
+                    for (long[] delta : deltas) {
+                        databaseWrapper.execSQL("INSERT OR IGNORE INTO TrafficData (uid, bucket, rx, tx) VALUES ("
+                                + delta[0] + ", " + bucket + ", 0, 0)");
+                        databaseWrapper.execSQL("UPDATE TrafficData SET rx = rx + " + delta[1] + ", tx = tx + "
+                                + delta[2] + " WHERE uid = " + delta[0] + " AND bucket = " + bucket);
+                    }
+                    databaseWrapper.execSQL("DELETE FROM TrafficData WHERE bucket < "
+                            + (bucket - RETENTION));
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Exception while saving traffic data: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * The kernel counters restart at boot; remember which boot the last sample belongs to.
+     */
+    private static boolean isNewBoot(Context ctx) {
+        SharedPreferences prefs = ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        long saved = prefs.getLong(KEY_BOOT, 0);
+        prefs.edit().putLong(KEY_BOOT, bootTime).apply();
+        // wall clock adjustments move the computed boot time a little
+        return Math.abs(bootTime - saved) > 60 * 1000;
+    }
+
+    /**
+     * @return counters of every UID, null if root is not available
+     */
+    private static SparseArray<long[]> readCounters(Context ctx) {
+        StringBuilder rules = new StringBuilder(Api.getBinaryPath(ctx, false)).append(" -L -v -x -n");
+        if (G.enableIPv6()) {
+            rules.append("; ").append(Api.getBinaryPath(ctx, true)).append(" -L -v -x -n");
+        }
+        List<String> output = new ArrayList<String>();
+        int exitCode = RootSessions.run(RootSessions.Priority.DIAGNOSTICS, "if [ -r " + QTAGUID_STATS + " ]; then cat "
+                + QTAGUID_STATS + "; else " + rules + "; fi", output);
+        if (exitCode == RootSessions.EXIT_NO_ROOT) {
+            Log.e(TAG, "Unable to read traffic counters, no root");
+            return null;
+        }
+        SparseArray<long[]> counters = new SparseArray<long[]>();
+        if (!output.isEmpty() && output.get(0).startsWith("idx ")) {
+            parseQtaguid(output, counters);
+        } else {
+            parseRuleCounters(output, counters);
+        }
+        return counters;
+    }
+
+    private static long[] total(SparseArray<long[]> counters, int uid) {
+        long[] total = counters.get(uid);
+        if (total == null) {
+            total = new long[2];
+            counters.put(uid, total);
+        }
+        return total;
+    }
+
+    /**
+     * Sum the untagged rx/tx bytes of every UID over all interfaces and counter sets.
+     */
+    private static void parseQtaguid(List<String> lines, SparseArray<long[]> counters) {
+        // idx iface acct_tag_hex uid_tag_int cnt_set rx_bytes rx_packets tx_bytes ...
+        for (String line : lines) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length < 8 || !parts[2].equals("0x0")) {
+                continue;
+            }
+            try {
+                long[] total = total(counters, Integer.parseInt(parts[3]));
+                total[0] += Long.parseLong(parts[5]);
+                total[1] += Long.parseLong(parts[7]);
+            } catch (NumberFormatException e) {
+                // header line
+            }
+        }
+    }
+
+    /**
+     * Sum the bytes of the rules that let a single UID through, per UID, over the afwall chains
+     * of both families.  Owner matches only see outgoing packets, rx stays 0.
+     */
+    private static void parseRuleCounters(List<String> lines, SparseArray<long[]> counters) {
+        boolean inChain = false;
+        // pkts bytes target prot opt in out source destination [match]
+        for (String line : lines) {
+            if (line.startsWith("Chain ")) {
+                inChain = line.startsWith("Chain afwall");
+                continue;
+            }
+            if (!inChain) {
+                continue;
+            }
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length < 3 || !(parts[2].equals("RETURN") || parts[2].equals("ACCEPT"))) {
+                continue;
+            }
+            Matcher matcher = OWNER.matcher(line);
+            if (!matcher.find()) {
+                continue;
+            }
+            try {
+                int uid = Integer.parseInt(matcher.group(1));
+                total(counters, uid)[1] += Long.parseLong(parts[1]);
+            } catch (NumberFormatException e) {
+                // column header
+            }
+        }
+    }
+
+    /**
+     * Bytes received and sent by a UID
+     *
+     * @param uid
+     * @param since start of the range (ms), 0 for everything kept
+     * @return {rx, tx}
+     */
+    public static long[] getUsage(int uid, long since) {
+        long[] usage = new long[2];
+        Cursor cursor = null;
+        try {
+            cursor = FlowManager.getDatabase(TrafficDatabase.class).getWritableDatabase()
+                    .rawQuery("SELECT SUM(rx), SUM(tx) FROM TrafficData WHERE uid = ? AND bucket >= ?",
+                            new String[]{String.valueOf(uid), String.valueOf(since / BUCKET_SIZE * BUCKET_SIZE)});
+            if (cursor.moveToFirst()) {
+                usage[0] = cursor.getLong(0);
+                usage[1] = cursor.getLong(1);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Exception while reading traffic data: " + e.getLocalizedMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * UIDs with the most traffic in a range, totals summed into one TrafficData per UID
+     *
+     * @param since start of the range (ms)
+     * @param limit maximum number of entries
+     * @return entries ordered by rx + tx, descending
+     */
+    public static List<TrafficData> getTop(long since, int limit) {
+        List<TrafficData> top = new ArrayList<TrafficData>();
+        Cursor cursor = null;
+        try {
+            cursor = FlowManager.getDatabase(TrafficDatabase.class).getWritableDatabase()
+                    .rawQuery("SELECT uid, SUM(rx) AS r, SUM(tx) AS t FROM TrafficData WHERE bucket >= ? "
+                                    + "GROUP BY uid ORDER BY r + t DESC LIMIT ?",
+                            new String[]{String.valueOf(since / BUCKET_SIZE * BUCKET_SIZE), String.valueOf(limit)});
+            while (cursor.moveToNext()) {
+                TrafficData data = new TrafficData();
+                data.setUid(cursor.getInt(0));
+                data.setBucket(since);
+                data.setRx(cursor.getLong(1));
+                data.setTx(cursor.getLong(2));
+                top.add(data);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Exception while reading traffic data: " + e.getLocalizedMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return top;
+    }
+}
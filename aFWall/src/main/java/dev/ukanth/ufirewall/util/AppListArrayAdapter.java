@@ -182,8 +182,7 @@ public class AppListArrayAdapter extends ArrayAdapter<PackageInfoData> {
                 @Override
                 public void onCheckedChanged(CompoundButton compoundButton, boolean isChecked) {
                     if(compoundButton.isPressed()) {
-                        if (holder.app.selected_lan != isChecked) {
-                            holder.app.selected_lan = isChecked;
+                        if (RuleState.set(holder.app, RuleState.LAN, isChecked)) {
                             MainActivity.dirty = true;
                             notifyDataSetChanged();
                             //Log.i(TAG, "Application state changed: " + holder.app.pkgName);
@@ -200,8 +199,7 @@ public class AppListArrayAdapter extends ArrayAdapter<PackageInfoData> {
                 @Override
                 public void onCheckedChanged(CompoundButton compoundButton, boolean isChecked) {
                     if(compoundButton.isPressed()) {
-                        if (holder.app.selected_wifi != isChecked) {
-                            holder.app.selected_wifi = isChecked;
+                        if (RuleState.set(holder.app, RuleState.WIFI, isChecked)) {
                             MainActivity.dirty = true;
                             notifyDataSetChanged();
                             //Log.i(TAG, "Application state changed: " + holder.app.pkgName);
@@ -217,8 +215,7 @@ public class AppListArrayAdapter extends ArrayAdapter<PackageInfoData> {
                 @Override
                 public void onCheckedChanged(CompoundButton compoundButton, boolean isChecked) {
                     if(compoundButton.isPressed()) {
-                        if (holder.app.selected_3g != isChecked) {
-                            holder.app.selected_3g = isChecked;
+                        if (RuleState.set(holder.app, RuleState.DATA, isChecked)) {
                             MainActivity.dirty = true;
                             notifyDataSetChanged();
                             //Log.i(TAG, "Application state changed: " + holder.app.pkgName);
@@ -234,8 +231,7 @@ public class AppListArrayAdapter extends ArrayAdapter<PackageInfoData> {
                 @Override
                 public void onCheckedChanged(CompoundButton compoundButton, boolean isChecked) {
                     if(compoundButton.isPressed()) {
-                        if (holder.app.selected_roam != isChecked) {
-                            holder.app.selected_roam = isChecked;
+                        if (RuleState.set(holder.app, RuleState.ROAM, isChecked)) {
                             MainActivity.dirty = true;
                             notifyDataSetChanged();
                             //Log.i(TAG, "Application state changed: " + holder.app.pkgName);
@@ -251,8 +247,7 @@ public class AppListArrayAdapter extends ArrayAdapter<PackageInfoData> {
                 @Override
                 public void onCheckedChanged(CompoundButton compoundButton, boolean isChecked) {
                     if(compoundButton.isPressed()) {
-                        if (holder.app.selected_vpn != isChecked) {
-                            holder.app.selected_vpn = isChecked;
+                        if (RuleState.set(holder.app, RuleState.VPN, isChecked)) {
                             MainActivity.dirty = true;
                             notifyDataSetChanged();
                             //Log.i(TAG, "Application state changed: " + holder.app.pkgName);
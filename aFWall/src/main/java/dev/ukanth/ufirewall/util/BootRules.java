@@ -0,0 +1,212 @@
+package dev.ukanth.ufirewall.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import dev.ukanth.ufirewall.log.Log;
+
+/**
+ * Ready-to-restore copy of the afwall chains for the afwallstart init script.  Written after
+ * every successful apply from the same kernel snapshot RulesFingerprint stores, so the rules
+ * restored at boot hash to the stored kernel fingerprint and the BOOT_COMPLETED apply only has
+ * to verify them.
+ * <p>
+ * The script leaves a status line (uptime, exit codes) behind, which is kept together with the
+ * time the app got the rules enforced to compare both paths.
+ */
+
+public class BootRules {
+
+    private static final String TAG = "AFWall";
+
+    /* names are shared with res/raw/afwallstart */
+    private static final String RULES_V4 = "rules.v4";
+    private static final String RULES_V6 = "rules.v6";
+    private static final String STATUS = "boot_status";
+
+    private static final String PREFS_NAME = "AFWallBoot";
+    private static final String KEY_RESTORED = "restored";
+    private static final String KEY_RESTORE_RESULT = "restoreResult";
+    private static final String KEY_RECEIVED = "received";
+    private static final String KEY_ENFORCED = "enforced";
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static File file(Context ctx, String name) {
+        return new File(ctx.getDir("bin", 0), name);
+    }
+
+    /**
+     * Write the restore files from a snapshot of the live chains
+     *
+     * @param ctx
+     * @param dump output of RulesFingerprint.snapshotCommands()
+     */
+    public static void save(Context ctx, String dump) {
+        if (!G.fixLeak()) {
+            clear(ctx);
+            return;
+        }
+        write(file(ctx, RULES_V4), toRestore(RulesFingerprint.chainLines(dump, false),
+                G.ipv4Input(), G.ipv4Fwd(), G.ipv4Output(), true));
+        List<String> lines6 = RulesFingerprint.chainLines(dump, true);
+        if (lines6.isEmpty()) {
+            file(ctx, RULES_V6).delete();
+        } else {
+            write(file(ctx, RULES_V6), toRestore(lines6,
+                    G.ipv6Input(), G.ipv6Fwd(), G.ipv6Output(), G.controlIPv6()));
+        }
+    }
+
+    /**
+     * Remove the restore files, e.g. once the firewall is disabled
+     *
+     * @param ctx
+     */
+    public static void clear(Context ctx) {
+        file(ctx, RULES_V4).delete();
+        file(ctx, RULES_V6).delete();
+    }
+
+    /**
+     * Turn "iptables -S" lines into an iptables-restore --noflush script for the filter table
+     *
+     * @param lines    as returned by RulesFingerprint.chainLines()
+     * @param policies whether the built-in policies are part of the script
+     * @return
+     */
+    static String toRestore(List<String> lines, boolean input, boolean forward, boolean output, boolean policies) {
+        StringBuilder restore = new StringBuilder("*filter\n");
+        if (policies) {
+            // same policies applyDefaultChains() sets, the leak fix left everything at DROP
+            restore.append(":INPUT ").append(input ? "ACCEPT" : "DROP").append(" [0:0]\n");
+            restore.append(":FORWARD ").append(forward ? "ACCEPT" : "DROP").append(" [0:0]\n");
+            restore.append(":OUTPUT ").append(output ? "ACCEPT" : "DROP").append(" [0:0]\n");
+        }
+        // chains have to be declared before any rule jumps to them
+        for (String line : lines) {
+            if (line.startsWith("-N ")) {
+                restore.append(':').append(line.substring(3).trim()).append(" - [0:0]\n");
+            }
+        }
+        for (String line : lines) {
+            // ipsets are gone after a reboot, the first apply creates them and their rules again.
+            // Rules of other tools above our jumps are theirs to restore.
+            if (line.startsWith("-A ") && line.contains(RulesFingerprint.CHAIN_PREFIX)
+                    && !line.contains(" --match-set ")) {
+                restore.append(line).append('\n');
+            }
+        }
+        return restore.append("COMMIT\n").toString();
+    }
+
+    private static void write(File target, String content) {
+        File temp = new File(target.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), Charset.forName("UTF-8"));
+            writer.write(content);
+            writer.close();
+            writer = null;
+            // the init script must never see a half written file
+            if (!temp.renameTo(target)) {
+                Log.e(TAG, "Unable to replace " + target.getName());
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write " + target.getName() + ": " + e.getLocalizedMessage());
+            temp.delete();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Pick up the status the init script left for this boot
+     *
+     * @param ctx
+     */
+    public static void onBoot(Context ctx) {
+        SharedPreferences.Editor editor = prefs(ctx).edit()
+                .putLong(KEY_RECEIVED, SystemClock.elapsedRealtime())
+                .remove(KEY_ENFORCED)
+                .remove(KEY_RESTORED)
+                .remove(KEY_RESTORE_RESULT);
+        File status = file(ctx, STATUS);
+        BufferedReader reader = null;
+        try {
+            if (status.exists()) {
+                reader = new BufferedReader(new FileReader(status));
+                String line = reader.readLine();
+                if (line != null) {
+                    // <uptime> <iptables-restore exit code> <ip6tables-restore exit code>
+                    String[] fields = line.trim().split(" ");
+                    editor.putLong(KEY_RESTORED, (long) (Float.parseFloat(fields[0]) * 1000));
+                    editor.putString(KEY_RESTORE_RESULT, line.substring(fields[0].length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Unable to read boot status: " + e.getLocalizedMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+            status.delete();
+        }
+        editor.apply();
+    }
+
+    /**
+     * Record when the rules were applied (or verified) by the app after boot, first call only
+     *
+     * @param ctx
+     */
+    public static void enforced(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        if (prefs.contains(KEY_RECEIVED) && !prefs.contains(KEY_ENFORCED)) {
+            prefs.edit().putLong(KEY_ENFORCED, SystemClock.elapsedRealtime()).apply();
+        }
+    }
+
+    public static String getStats(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        StringBuilder result = new StringBuilder("Boot rules: ");
+        if (!file(ctx, RULES_V4).exists()) {
+            result.append("no restore file");
+        } else {
+            result.append("restore file ").append(file(ctx, RULES_V4).length()).append(" bytes");
+        }
+        if (prefs.contains(KEY_RESTORED)) {
+            result.append(", restored ").append(prefs.getLong(KEY_RESTORED, 0) / 1000).append(" s after boot (exit ")
+                    .append(prefs.getString(KEY_RESTORE_RESULT, "")).append(")");
+        }
+        if (prefs.contains(KEY_RECEIVED)) {
+            result.append(", boot broadcast at ").append(prefs.getLong(KEY_RECEIVED, 0) / 1000).append(" s");
+        }
+        if (prefs.contains(KEY_ENFORCED)) {
+            result.append(", app enforced at ").append(prefs.getLong(KEY_ENFORCED, 0) / 1000).append(" s");
+        }
+        return result.append("\n").toString();
+    }
+}
@@ -43,7 +43,7 @@ public class CustomRuleOld {
                         rule.setIpv4(list4);
                         JSONArray v6Array = row.getJSONArray("v6");
                         List<String> list6 = new ArrayList<>();
-                        for(int item=0;item < v4Array.length(); item++) {
+                        for(int item=0;item < v6Array.length(); item++) {
                             list6.add(v6Array.getString(item));
                         }
                         rule.setIpv6(list6);
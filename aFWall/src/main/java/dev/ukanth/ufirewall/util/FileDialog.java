@@ -49,6 +49,7 @@ public class FileDialog {
     private final Activity activity;
     private boolean selectDirectoryOption;
     private String[] fileEndsWith;
+    private Pattern fileNamePattern;
 
     /**
      * @param activity
@@ -62,6 +63,18 @@ public class FileDialog {
         loadFileList(path,flag);
     }
 
+    /**
+     * @param activity
+     * @param path
+     * @param fileNamePattern files to list, instead of the backup names
+     */
+    public FileDialog(Activity activity, File path, Pattern fileNamePattern) {
+        this.activity = activity;
+        this.fileNamePattern = fileNamePattern;
+        if (!path.exists()) path = Environment.getExternalStorageDirectory();
+        loadFileList(path, false);
+    }
+
     /**
      * @return file dialog
      */
@@ -166,7 +179,9 @@ public class FileDialog {
                         //backup.json - [a-z]+.json
                     else {
                         boolean endsWith;
-                        if(flag) {
+                        if (fileNamePattern != null) {
+                            endsWith = fileNamePattern.matcher(filename).matches();
+                        } else if(flag) {
                             Pattern p1 = Pattern.compile("[a-z]+.json");
                             Matcher m1 = p1.matcher(filename);
 
@@ -40,6 +40,7 @@ import com.raizlabs.android.dbflow.config.FlowManager;
 import com.raizlabs.android.dbflow.sql.language.SQLite;
 import com.raizlabs.android.dbflow.structure.database.DatabaseWrapper;
 import com.raizlabs.android.dbflow.structure.database.transaction.ITransaction;
+import com.raizlabs.android.dbflow.structure.database.transaction.Transaction;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -53,6 +54,7 @@ import dev.ukanth.ufirewall.log.Log;
 import dev.ukanth.ufirewall.log.LogPreference;
 import dev.ukanth.ufirewall.log.LogPreferenceDB;
 import dev.ukanth.ufirewall.log.LogPreference_Table;
+import dev.ukanth.ufirewall.traffic.TrafficSampler;
 
 public class G extends Application {
 
@@ -102,6 +104,13 @@ public class G extends Application {
     private static final String ACTIVE_RULES = "activeRules";
     private static final String ACTIVE_NOTIFICATION = "activeNotification";
     private static final String PROFILE_SWITCH = "applyOnSwitchProfiles";
+    private static final String PREBUILT_PROFILE_CHAINS = "prebuiltProfileChains";
+    private static final String RESOLVE_LOG_HOSTS = "resolveLogHosts";
+    private static final String ENABLE_METRICS = "enableMetrics";
+    private static final String TRAFFIC_ACCOUNTING = "trafficAccounting";
+    private static final String LOG_HASHLIMIT = "logHashlimit";
+    private static final String NFLOG_THRESHOLD = "nflogThreshold";
+    private static final String NFLOG_SIZE = "nflogSize";
     private static final String LOG_TARGET = "logTarget";
     private static final String APP_VERSION = "appVersion";
     private static final String DNS_PROXY = "dns_value";
@@ -552,6 +561,22 @@ public class G extends Application {
         return gPrefs.getBoolean(PROFILE_SWITCH, false);
     }
 
+    public static boolean prebuiltProfileChains() {
+        return gPrefs.getBoolean(PREBUILT_PROFILE_CHAINS, false);
+    }
+
+    public static boolean resolveLogHosts() {
+        return gPrefs.getBoolean(RESOLVE_LOG_HOSTS, false);
+    }
+
+    public static boolean enableMetrics() {
+        return gPrefs.getBoolean(ENABLE_METRICS, false);
+    }
+
+    public static boolean trafficAccounting() {
+        return gPrefs.getBoolean(TRAFFIC_ACCOUNTING, false);
+    }
+
     public static String logTarget() {
         return gPrefs.getString(LOG_TARGET, "");
     }
@@ -561,6 +586,38 @@ public class G extends Application {
         return val;
     }
 
+    public static boolean logHashlimit() {
+        return gPrefs.getBoolean(LOG_HASHLIMIT, false);
+    }
+
+    public static boolean logHashlimit(boolean val) {
+        gPrefs.edit().putBoolean(LOG_HASHLIMIT, val).commit();
+        return val;
+    }
+
+    /**
+     * @return false until the iptables matches were probed once
+     */
+    public static boolean isLogMatchesProbed() {
+        return gPrefs.contains(LOG_HASHLIMIT);
+    }
+
+    public static int nflogThreshold() {
+        return parseInt(gPrefs.getString(NFLOG_THRESHOLD, "1"), 1);
+    }
+
+    public static int nflogSize() {
+        return parseInt(gPrefs.getString(NFLOG_SIZE, "0"), 0);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     public static int appVersion() {
         return gPrefs.getInt(APP_VERSION, 0);
     }
@@ -598,6 +655,16 @@ public class G extends Application {
         return gPrefs.getBoolean("oldLogView", false);
     }
 
+    public static long logRange() {
+        // 3 days, what the log view always loaded
+        return gPrefs.getLong("logRange", 259200000L);
+    }
+
+    public static long logRange(long val) {
+        gPrefs.edit().putLong("logRange", val).apply();
+        return val;
+    }
+
     public static boolean isDo(boolean val) {
         gPrefs.edit().putBoolean(REG_DO, val).commit();
         return val;
@@ -752,6 +819,8 @@ public class G extends Application {
         }
         ctx = this.getApplicationContext();
         reloadPrefs();
+        Metrics.setEnabled(enableMetrics());
+        TrafficSampler.schedule(ctx);
     }
 
     public static void reloadPrefs() {
@@ -848,20 +917,71 @@ public class G extends Application {
         return items;
     }
 
+    /* uids with notifications disabled, immutable so canShow() never locks */
+    private static volatile UidSet logNotificationPolicy;
+
+    private static synchronized UidSet loadLogNotificationPolicy() {
+        if (logNotificationPolicy == null) {
+            UidSet policy = UidSet.EMPTY;
+            for (LogPreference preference : SQLite.select().from(LogPreference.class).queryList()) {
+                if (preference.isDisable()) {
+                    policy = policy.with(preference.getUid());
+                }
+            }
+            logNotificationPolicy = policy;
+        }
+        return logNotificationPolicy;
+    }
+
     public static void updateLogNotification(int uid, boolean isChecked) {
-        //update logic here
-        LogPreference preference = new LogPreference();
-        preference.setUid(uid);
-        preference.setTimestamp(System.currentTimeMillis());
-        preference.setDisable(isChecked);
+        synchronized (G.class) {
+            UidSet policy = loadLogNotificationPolicy();
+            logNotificationPolicy = isChecked ? policy.with(uid) : policy.without(uid);
+        }
         FlowManager.getDatabase(LogPreferenceDB.class).beginTransactionAsync(new ITransaction() {
             @Override
             public void execute(DatabaseWrapper databaseWrapper) {
+                LogPreference preference = getLogPreference(uid);
+                preference.setTimestamp(System.currentTimeMillis());
+                preference.setDisable(isChecked);
                 preference.save(databaseWrapper);
             }
         }).build().execute();
     }
 
+    /**
+     * Exclude a uid from logging in the kernel, takes effect with the next log rules update
+     *
+     * @param uid
+     * @param skip
+     * @param success called once the setting is stored
+     */
+    public static void updateLogSkip(int uid, boolean skip, Transaction.Success success) {
+        FlowManager.getDatabase(LogPreferenceDB.class).beginTransactionAsync(new ITransaction() {
+            @Override
+            public void execute(DatabaseWrapper databaseWrapper) {
+                LogPreference preference = getLogPreference(uid);
+                preference.setTimestamp(System.currentTimeMillis());
+                preference.setSkip(skip);
+                preference.save(databaseWrapper);
+            }
+        }).success(success).build().execute();
+    }
+
+    /**
+     * @param uid
+     * @return stored settings, or defaults for a uid without settings
+     */
+    public static LogPreference getLogPreference(int uid) {
+        LogPreference preference = SQLite.select().from(LogPreference.class)
+                .where(LogPreference_Table.uid.eq(uid)).querySingle();
+        if (preference == null) {
+            preference = new LogPreference();
+            preference.setUid(uid);
+        }
+        return preference;
+    }
+
     public static void isNotificationMigrated(boolean b) {
         gPrefs.edit().putBoolean("NewDBNotification", b).commit();
         gPrefs.edit().putString(BLOCKED_NOTIFICATION, "").commit();
@@ -871,10 +991,17 @@ public class G extends Application {
         return gPrefs.getBoolean("NewDBNotification", false);
     }
 
+    /**
+     * Called for every blocked packet, answered from memory
+     *
+     * @param uid
+     * @return false if the user disabled notifications for this uid
+     */
     public static boolean canShow(int uid) {
-        LogPreference logPreference = SQLite.select()
-                .from(LogPreference.class)
-                .where(LogPreference_Table.uid.eq(uid)).querySingle();
-        return (logPreference == null) || !logPreference.isDisable();
+        UidSet policy = logNotificationPolicy;
+        if (policy == null) {
+            policy = loadLogNotificationPolicy();
+        }
+        return !policy.contains(uid);
     }
 }
\ No newline at end of file
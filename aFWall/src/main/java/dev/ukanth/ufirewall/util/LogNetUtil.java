@@ -11,13 +11,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.List;
 
 import dev.ukanth.ufirewall.Api;
 import dev.ukanth.ufirewall.R;
+import dev.ukanth.ufirewall.log.HostResolver;
 import dev.ukanth.ufirewall.log.Log;
-import eu.chainfire.libsuperuser.Shell;
+import dev.ukanth.ufirewall.service.RootSessions;
 
 /**
  * This file was created to simplify Network Function in AFWall+ log system
@@ -100,12 +101,11 @@ public class LogNetUtil {
                         }
                     case RESOLVE:
                         // Resolve
-                        try {
-                            return InetAddress.getByName(params[0].address).getCanonicalHostName();
-                        } catch (UnknownHostException ex) {
-                            Log.e(TAG, "Exception(02): " + ex.getMessage());
+                        String host = HostResolver.lookup(params[0].address);
+                        if (host == null) {
                             return String.format("Currently can not resolve Host for IP(%s), timeout: %d ms", params[0].address, finish_time());
                         }
+                        return host;
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Exception(03): " + e.getMessage());
@@ -169,7 +169,9 @@ public class LogNetUtil {
             String result = "";
             String command = String.format(PING_CMD, Api.getBusyBoxPath(context, true), G.logPingTimeout(), ip);
             Log.d(TAG, "Execute CMD: " + command);
-            result = parse(Shell.run("su", new String[]{command}, null, true));
+            List<String> output = new ArrayList<String>();
+            RootSessions.run(RootSessions.Priority.DIAGNOSTICS, command, output);
+            result = parse(output);
             if (result.isEmpty()) {
 
                 return context.getString(R.string.network_connection_not_available);
@@ -0,0 +1,284 @@
+package dev.ukanth.ufirewall.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process metrics: counters, gauges and latency histograms with fixed buckets.  Recording
+ * is a few atomic increments and does nothing while metrics are disabled, so call sites keep
+ * their instruments in static fields and record unconditionally.
+ * <p>
+ * Usage:
+ * <pre>
+ * long start = Metrics.start();
+ * ...
+ * APPLY_TIME.stop(start);
+ * </pre>
+ * Paths that run thousands of times per second time only every n-th call, see
+ * histogram(String, int), since two clock reads cost more than the rest of a sample.
+ */
+
+public final class Metrics {
+
+    /* upper bounds of the histogram buckets in ms, the last bucket takes everything above */
+    private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void inc() {
+            if (enabled) {
+                value.incrementAndGet();
+            }
+        }
+
+        public void add(long delta) {
+            if (enabled) {
+                value.addAndGet(delta);
+            }
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public static final class Gauge {
+        private volatile long value;
+
+        public void set(long value) {
+            if (enabled) {
+                this.value = value;
+            }
+        }
+
+        public long get() {
+            return value;
+        }
+    }
+
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final int sampleEvery;
+        /* calls since the last timed one, racy on purpose: a lost update only shifts the sampling */
+        private int skipped;
+
+        private Histogram(int sampleEvery) {
+            this.sampleEvery = sampleEvery;
+        }
+
+        /**
+         * @return start time for stop(), 0 while disabled or if this call is not sampled
+         */
+        public long start() {
+            if (!enabled) {
+                return 0;
+            }
+            if (sampleEvery > 1) {
+                if (++skipped < sampleEvery) {
+                    return 0;
+                }
+                skipped = 0;
+            }
+            return System.nanoTime();
+        }
+
+        /**
+         * Record the time since start
+         *
+         * @param start value of Metrics.start(), 0 records nothing
+         */
+        public void stop(long start) {
+            if (start != 0) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        public void record(long nanos) {
+            if (!enabled) {
+                return;
+            }
+            long millis = nanos / 1000000;
+            int i = 0;
+            while (i < BOUNDS.length && millis > BOUNDS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // lost a race with another thread, retry
+            }
+        }
+
+        /**
+         * @param percentile 0..100
+         * @return upper bound of the bucket holding the percentile in ms, -1 if empty
+         */
+        public long percentile(int percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return -1;
+            }
+            long rank = (total * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return BOUNDS[i];
+                }
+            }
+            return maxNanos.get() / 1000000;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * @return start time for Histogram.stop(), 0 while disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            Counter previous = counters.putIfAbsent(name, counter);
+            if (previous != null) {
+                counter = previous;
+            }
+        }
+        return counter;
+    }
+
+    public static Gauge gauge(String name) {
+        Gauge gauge = gauges.get(name);
+        if (gauge == null) {
+            gauge = new Gauge();
+            Gauge previous = gauges.putIfAbsent(name, gauge);
+            if (previous != null) {
+                gauge = previous;
+            }
+        }
+        return gauge;
+    }
+
+    public static Histogram histogram(String name) {
+        return histogram(name, 1);
+    }
+
+    /**
+     * @param sampleEvery time one call in sampleEvery, Histogram.start() returns 0 for the others
+     */
+    public static Histogram histogram(String name, int sampleEvery) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(sampleEvery);
+            Histogram previous = histograms.putIfAbsent(name, histogram);
+            if (previous != null) {
+                histogram = previous;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Cost of one timed sample (Metrics.start() plus Histogram.stop()), measured on a
+     * scratch histogram
+     *
+     * @return ns per sample
+     */
+    private static long measureOverhead() {
+        Histogram scratch = new Histogram(1);
+        final int samples = 10000;
+        long begin = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            scratch.stop(start());
+        }
+        return (System.nanoTime() - begin) / samples;
+    }
+
+    /**
+     * Text dump of all instruments, sorted by name
+     *
+     * @return
+     */
+    public static String getStats() {
+        if (!enabled) {
+            return "Metrics: disabled\n";
+        }
+        StringBuilder result = new StringBuilder();
+        List<String> names = new ArrayList<>(counters.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            result.append(name).append(": ").append(counters.get(name).get()).append("\n");
+        }
+        names = new ArrayList<>(gauges.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            result.append(name).append(": ").append(gauges.get(name).get()).append("\n");
+        }
+        names = new ArrayList<>(histograms.keySet());
+        Collections.sort(names);
+        long samples = 0;
+        long measured = 0;
+        for (String name : names) {
+            Histogram histogram = histograms.get(name);
+            long count = histogram.getCount();
+            samples += count;
+            measured += histogram.getTotalNanos();
+            result.append(name).append(": ").append(count).append(" samples");
+            if (histogram.sampleEvery > 1) {
+                result.append(" (1 in ").append(histogram.sampleEvery).append(")");
+            }
+            if (count > 0) {
+                result.append(", avg ").append(histogram.getTotalNanos() / count / 1000).append(" us")
+                        .append(", p50 <= ").append(histogram.percentile(50)).append(" ms")
+                        .append(", p95 <= ").append(histogram.percentile(95)).append(" ms")
+                        .append(", max ").append(histogram.maxNanos.get() / 1000000).append(" ms");
+            }
+            result.append("\n");
+        }
+        long overhead = measureOverhead();
+        result.append("Metrics overhead: ").append(overhead).append(" ns per sample");
+        if (measured > 0) {
+            // timed samples only, counters and gauges are a single atomic add
+            result.append(", ").append(samples * overhead * 100 / measured).append("% of measured time");
+        }
+        result.append("\n");
+        return result.toString();
+    }
+}
@@ -0,0 +1,337 @@
+package dev.ukanth.ufirewall.util;
+
+import android.content.pm.ApplicationInfo;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.Api.PackageInfoData;
+
+/**
+ * Edits of the per-app checkboxes since the last apply.  Every edit is kept as (uid, network
+ * class, value) together with the value last saved, so apply only has to touch the uids that
+ * really changed.  Bulk operations are one undo step each.
+ */
+
+public final class RuleState {
+
+    public static final int WIFI = 0;
+    public static final int DATA = 1;
+    public static final int ROAM = 2;
+    public static final int VPN = 3;
+    public static final int LAN = 4;
+    private static final int CLASSES = 5;
+
+    private static final int MAX_UNDO = 50;
+
+    private static final Metrics.Histogram BULK_TIME = Metrics.histogram("rules.edit.bulk");
+
+    /**
+     * A saved selection that differs from the in-memory one
+     */
+    public static final class Change {
+        public final int uid;
+        public final int net;
+        public final boolean value;
+
+        public Change(int uid, int net, boolean value) {
+            this.uid = uid;
+            this.net = net;
+            this.value = value;
+        }
+    }
+
+    private static final class Edit {
+        final PackageInfoData app;
+        final int net;
+        final boolean value;
+
+        Edit(PackageInfoData app, int net, boolean value) {
+            this.app = app;
+            this.net = net;
+            this.value = value;
+        }
+    }
+
+    // per network class: uid -> value as saved, only for uids edited since the last commit
+    private static final SparseBooleanArray[] saved = new SparseBooleanArray[CLASSES];
+    private static final SparseArray<PackageInfoData> touched = new SparseArray<>();
+    private static final LinkedList<List<Edit>> undo = new LinkedList<>();
+    private static final LinkedList<List<Edit>> redo = new LinkedList<>();
+
+    static {
+        for (int i = 0; i < CLASSES; i++) {
+            saved[i] = new SparseBooleanArray();
+        }
+    }
+
+    private RuleState() {
+    }
+
+    public static boolean get(PackageInfoData app, int net) {
+        switch (net) {
+            case WIFI:
+                return app.selected_wifi;
+            case DATA:
+                return app.selected_3g;
+            case ROAM:
+                return app.selected_roam;
+            case VPN:
+                return app.selected_vpn;
+            default:
+                return app.selected_lan;
+        }
+    }
+
+    private static void put(PackageInfoData app, int net, boolean value) {
+        switch (net) {
+            case WIFI:
+                app.selected_wifi = value;
+                break;
+            case DATA:
+                app.selected_3g = value;
+                break;
+            case ROAM:
+                app.selected_roam = value;
+                break;
+            case VPN:
+                app.selected_vpn = value;
+                break;
+            default:
+                app.selected_lan = value;
+        }
+    }
+
+    /**
+     * @return false for the classes switched off in the preferences
+     */
+    public static boolean isEnabled(int net) {
+        switch (net) {
+            case ROAM:
+                return G.enableRoam();
+            case VPN:
+                return G.enableVPN();
+            case LAN:
+                return G.enableLAN();
+            default:
+                return true;
+        }
+    }
+
+    private static boolean record(List<Edit> batch, PackageInfoData app, int net, boolean value) {
+        boolean old = get(app, net);
+        if (old == value) {
+            return false;
+        }
+        if (saved[net].indexOfKey(app.uid) < 0) {
+            saved[net].put(app.uid, old);
+        }
+        touched.put(app.uid, app);
+        put(app, net, value);
+        batch.add(new Edit(app, net, old));
+        return true;
+    }
+
+    private static int finish(List<Edit> batch, long start) {
+        if (!batch.isEmpty()) {
+            undo.push(batch);
+            if (undo.size() > MAX_UNDO) {
+                undo.removeLast();
+            }
+            redo.clear();
+        }
+        BULK_TIME.stop(start);
+        return batch.size();
+    }
+
+    private static boolean isSystem(PackageInfoData app) {
+        return app.appinfo != null && (app.appinfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+    }
+
+    /**
+     * Single checkbox edit
+     *
+     * @return true if the value changed
+     */
+    public static synchronized boolean set(PackageInfoData app, int net, boolean value) {
+        List<Edit> batch = new ArrayList<>(1);
+        record(batch, app, net, value);
+        return finish(batch, 0) > 0;
+    }
+
+    /**
+     * Check or uncheck one network class for every app but "any"
+     *
+     * @param systemOnly only touch system apps
+     * @return number of changed checkboxes
+     */
+    public static synchronized int setAll(List<PackageInfoData> apps, int net, boolean value, boolean systemOnly) {
+        long start = Metrics.start();
+        List<Edit> batch = new ArrayList<>();
+        for (PackageInfoData app : apps) {
+            if (app.uid != Api.SPECIAL_UID_ANY && (!systemOnly || isSystem(app))) {
+                record(batch, app, net, value);
+            }
+        }
+        return finish(batch, start);
+    }
+
+    /**
+     * @param net network class, -1 for all of them
+     * @return number of changed checkboxes
+     */
+    public static synchronized int invert(List<PackageInfoData> apps, int net) {
+        long start = Metrics.start();
+        List<Edit> batch = new ArrayList<>();
+        for (PackageInfoData app : apps) {
+            if (app.uid == Api.SPECIAL_UID_ANY) {
+                continue;
+            }
+            for (int i = 0; i < CLASSES; i++) {
+                if (net < 0 || net == i) {
+                    record(batch, app, i, !get(app, i));
+                }
+            }
+        }
+        return finish(batch, start);
+    }
+
+    /**
+     * Uncheck every network class of every app
+     *
+     * @return number of changed checkboxes
+     */
+    public static synchronized int clear(List<PackageInfoData> apps) {
+        long start = Metrics.start();
+        List<Edit> batch = new ArrayList<>();
+        for (PackageInfoData app : apps) {
+            for (int i = 0; i < CLASSES; i++) {
+                record(batch, app, i, false);
+            }
+        }
+        return finish(batch, start);
+    }
+
+    /**
+     * Make one network class match another, e.g. wifi -> mobile data
+     *
+     * @return number of changed checkboxes
+     */
+    public static synchronized int copy(List<PackageInfoData> apps, int from, int to) {
+        long start = Metrics.start();
+        List<Edit> batch = new ArrayList<>();
+        for (PackageInfoData app : apps) {
+            if (app.uid != Api.SPECIAL_UID_ANY) {
+                record(batch, app, to, get(app, from));
+            }
+        }
+        return finish(batch, start);
+    }
+
+    private static List<Edit> revert(List<Edit> batch) {
+        List<Edit> inverse = new ArrayList<>(batch.size());
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Edit edit = batch.get(i);
+            inverse.add(new Edit(edit.app, edit.net, get(edit.app, edit.net)));
+            put(edit.app, edit.net, edit.value);
+        }
+        return inverse;
+    }
+
+    /**
+     * @return false if there was nothing to undo
+     */
+    public static synchronized boolean undo() {
+        if (undo.isEmpty()) {
+            return false;
+        }
+        redo.push(revert(undo.pop()));
+        return true;
+    }
+
+    /**
+     * @return false if there was nothing to redo
+     */
+    public static synchronized boolean redo() {
+        if (redo.isEmpty()) {
+            return false;
+        }
+        undo.push(revert(redo.pop()));
+        return true;
+    }
+
+    public static synchronized boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public static synchronized boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * @return checkboxes that differ from the saved rules; edits undone or toggled back don't count
+     */
+    public static synchronized List<Change> getChanges() {
+        List<Change> changes = new ArrayList<>();
+        for (int net = 0; net < CLASSES; net++) {
+            for (int i = 0; i < saved[net].size(); i++) {
+                int uid = saved[net].keyAt(i);
+                boolean value = get(touched.get(uid), net);
+                if (value != saved[net].valueAt(i)) {
+                    changes.add(new Change(uid, net, value));
+                }
+            }
+        }
+        return changes;
+    }
+
+    public static boolean hasChanges() {
+        return !getChanges().isEmpty();
+    }
+
+    /**
+     * Take the changes for saving and start a new log
+     *
+     * @return the changes, see getChanges()
+     */
+    public static synchronized List<Change> commit() {
+        List<Change> changes = getChanges();
+        discard();
+        return changes;
+    }
+
+    /**
+     * Rules saved behind the list's back, e.g. by the scheduler: the checkboxes take the saved
+     * values and count as saved, edits of other checkboxes stay pending
+     *
+     * @param apps the in-memory app list
+     */
+    public static synchronized void saved(List<PackageInfoData> apps, List<Change> changes) {
+        for (Change change : changes) {
+            for (PackageInfoData app : apps) {
+                if (app.uid == change.uid) {
+                    put(app, change.net, change.value);
+                }
+            }
+            if (saved[change.net].indexOfKey(change.uid) >= 0) {
+                saved[change.net].put(change.uid, change.value);
+            }
+        }
+    }
+
+    /**
+     * Forget the log without touching the apps, e.g. once the app list is reloaded
+     */
+    public static synchronized void discard() {
+        for (int i = 0; i < CLASSES; i++) {
+            saved[i].clear();
+        }
+        touched.clear();
+        undo.clear();
+        redo.clear();
+    }
+}
@@ -0,0 +1,234 @@
+package dev.ukanth.ufirewall.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.ukanth.ufirewall.Api;
+import dev.ukanth.ufirewall.log.Log;
+
+/**
+ * Persisted fingerprint of the last applied rule set and of the afwall chains the kernel
+ * reported right after it.  The generated command list already contains the mode, UID lists,
+ * interface routing, custom scripts and binary path, so hashing it covers all of them.
+ */
+
+public class RulesFingerprint {
+
+    private static final String TAG = "AFWall";
+
+    private static final String PREFS_NAME = "AFWallFingerprint";
+    private static final String KEY_RULES = "rules";
+    private static final String KEY_KERNEL = "kernel";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_MISSES = "misses";
+    private static final String KEY_EXPECTED = "expected";
+    private static final String KEY_EXPECTED6 = "expected6";
+
+    public static final String CHAIN_PREFIX = "afwall";
+
+    /* separates the iptables and ip6tables output in a snapshot */
+    private static final String IPV6_MARKER = "--ipv6--";
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String sha1(String data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(data.getBytes(Charset.forName("UTF-8")));
+            return String.format("%40s", new BigInteger(1, hash).toString(16)).replace(' ', '0');
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "SHA-1 not available", e);
+            return "";
+        }
+    }
+
+    /**
+     * Fingerprint of a compiled rule set
+     *
+     * @param cmds  IPv4 commands
+     * @param cmds6 IPv6 commands, may be null
+     * @return hex digest
+     */
+    public static String of(List<String> cmds, List<String> cmds6) {
+        StringBuilder builder = new StringBuilder();
+        for (String cmd : cmds) {
+            builder.append(cmd).append('\n');
+        }
+        builder.append("#ipv6\n");
+        if (cmds6 != null) {
+            for (String cmd : cmds6) {
+                builder.append(cmd).append('\n');
+            }
+        }
+        return sha1(builder.toString());
+    }
+
+    /**
+     * Fingerprint of the afwall chains in a "iptables -S" dump, see chainLines() for the
+     * lines taken into account.
+     *
+     * @param dump output of iptables -S (and ip6tables -S)
+     * @return hex digest
+     */
+    public static String kernelHash(String dump) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : chainLines(dump, false)) {
+            builder.append(line).append('\n');
+        }
+        builder.append(IPV6_MARKER).append('\n');
+        for (String line : chainLines(dump, true)) {
+            builder.append(line).append('\n');
+        }
+        return sha1(builder.toString());
+    }
+
+    /**
+     * Extract the lines that decide what our chains see for one address family from a
+     * snapshot: everything in our chains, and in every other chain that jumps into them all
+     * rules up to the last such jump.  A rule inserted above the jump in OUTPUT changes the
+     * result, rules of other tools below it or in chains of their own don't.
+     *
+     * @param dump output of snapshotCommands()
+     * @param ipv6 return the ip6tables part instead of the iptables part
+     * @return lines in kernel order
+     */
+    public static List<String> chainLines(String dump, boolean ipv6) {
+        List<String> lines = new ArrayList<String>();
+        if (dump == null) {
+            return lines;
+        }
+        // rules of other chains not followed by a jump into ours yet
+        Map<String, List<String>> above = new HashMap<String, List<String>>();
+        boolean inV6 = false;
+        for (String line : dump.split("\n")) {
+            line = line.trim();
+            if (line.equals(IPV6_MARKER)) {
+                inV6 = true;
+                continue;
+            }
+            if (inV6 != ipv6) {
+                continue;
+            }
+            String[] parts = line.split(" ", 3);
+            if (parts.length > 1 && parts[0].equals("-A") && !parts[1].startsWith(CHAIN_PREFIX)) {
+                List<String> pending = above.get(parts[1]);
+                if (pending == null) {
+                    pending = new ArrayList<String>();
+                    above.put(parts[1], pending);
+                }
+                if (line.contains(CHAIN_PREFIX)) {
+                    lines.addAll(pending);
+                    pending.clear();
+                    lines.add(line);
+                } else {
+                    pending.add(line);
+                }
+            } else if (line.contains(CHAIN_PREFIX)) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Commands that dump the live rules for kernelHash()
+     *
+     * @param ctx
+     * @param ipv6 include ip6tables
+     * @return
+     */
+    public static List<String> snapshotCommands(Context ctx, boolean ipv6) {
+        List<String> cmds = new ArrayList<String>();
+        cmds.add(Api.getBinaryPath(ctx, false) + " -S");
+        if (ipv6) {
+            cmds.add("echo " + IPV6_MARKER);
+            cmds.add(Api.getBinaryPath(ctx, true) + " -S");
+        }
+        return cmds;
+    }
+
+    public static boolean isStored(Context ctx, String fingerprint) {
+        return fingerprint.length() > 0 && fingerprint.equals(prefs(ctx).getString(KEY_RULES, ""));
+    }
+
+    public static boolean isKernelStored(Context ctx, String kernelHash) {
+        return kernelHash.length() > 0 && kernelHash.equals(prefs(ctx).getString(KEY_KERNEL, ""));
+    }
+
+    public static String storedKernelHash(Context ctx) {
+        return prefs(ctx).getString(KEY_KERNEL, "");
+    }
+
+    /**
+     * Remember a successfully applied rule set and the chains the kernel reported for it
+     *
+     * @param ctx
+     * @param fingerprint fingerprint of the compiled rules, null if only the chains are known
+     * @param dump        output of snapshotCommands() taken right after the apply
+     */
+    public static void store(Context ctx, String fingerprint, String dump) {
+        prefs(ctx).edit().putString(KEY_RULES, fingerprint != null ? fingerprint : "")
+                .putString(KEY_KERNEL, kernelHash(dump))
+                .putString(KEY_EXPECTED, TextUtils.join("\n", chainLines(dump, false)))
+                .putString(KEY_EXPECTED6, TextUtils.join("\n", chainLines(dump, true)))
+                .apply();
+    }
+
+    /**
+     * Chains the kernel should currently hold, as recorded by the last store()
+     *
+     * @param ctx
+     * @param ipv6
+     * @return empty if nothing has been applied (or the rules are being rewritten)
+     */
+    public static List<String> expectedLines(Context ctx, boolean ipv6) {
+        String saved = prefs(ctx).getString(ipv6 ? KEY_EXPECTED6 : KEY_EXPECTED, "");
+        List<String> lines = new ArrayList<String>();
+        if (saved.length() > 0) {
+            lines.addAll(Arrays.asList(saved.split("\n")));
+        }
+        return lines;
+    }
+
+    /**
+     * Forget the stored fingerprint, e.g. before the rules are rewritten or purged
+     *
+     * @param ctx
+     */
+    public static void invalidate(Context ctx) {
+        prefs(ctx).edit().remove(KEY_RULES).remove(KEY_KERNEL)
+                .remove(KEY_EXPECTED).remove(KEY_EXPECTED6).apply();
+    }
+
+    public static void hit(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        prefs.edit().putLong(KEY_HITS, prefs.getLong(KEY_HITS, 0) + 1).apply();
+    }
+
+    public static void miss(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        prefs.edit().putLong(KEY_MISSES, prefs.getLong(KEY_MISSES, 0) + 1).apply();
+    }
+
+    public static String getStats(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        long hits = prefs.getLong(KEY_HITS, 0);
+        long misses = prefs.getLong(KEY_MISSES, 0);
+        long total = hits + misses;
+        return "Rule fingerprint cache: " + hits + " hits, " + misses + " misses"
+                + (total > 0 ? " (" + (hits * 100 / total) + "% skipped)" : "") + "\n";
+    }
+}
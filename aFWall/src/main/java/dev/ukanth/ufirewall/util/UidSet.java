@@ -0,0 +1,63 @@
+package dev.ukanth.ufirewall.util;
+
+import java.util.Arrays;
+
+/**
+ * Immutable sorted set of UIDs, cheap enough to be checked for every packet.
+ * Changes return a new set, so readers holding a reference never need a lock.
+ */
+
+public final class UidSet {
+
+    public static final UidSet EMPTY = new UidSet(new int[0]);
+
+    private final int[] uids;
+
+    private UidSet(int[] uids) {
+        this.uids = uids;
+    }
+
+    /**
+     * @param uid
+     * @return true if the uid is in the set
+     */
+    public boolean contains(int uid) {
+        return Arrays.binarySearch(uids, uid) >= 0;
+    }
+
+    /**
+     * @param uid
+     * @return a set with the uid added, this set if it is already there
+     */
+    public UidSet with(int uid) {
+        int index = Arrays.binarySearch(uids, uid);
+        if (index >= 0) {
+            return this;
+        }
+        index = -index - 1;
+        int[] copy = new int[uids.length + 1];
+        System.arraycopy(uids, 0, copy, 0, index);
+        copy[index] = uid;
+        System.arraycopy(uids, index, copy, index + 1, uids.length - index);
+        return new UidSet(copy);
+    }
+
+    /**
+     * @param uid
+     * @return a set without the uid, this set if it is not there
+     */
+    public UidSet without(int uid) {
+        int index = Arrays.binarySearch(uids, uid);
+        if (index < 0) {
+            return this;
+        }
+        int[] copy = new int[uids.length - 1];
+        System.arraycopy(uids, 0, copy, 0, index);
+        System.arraycopy(uids, index + 1, copy, index, copy.length - index);
+        return new UidSet(copy);
+    }
+
+    public int size() {
+        return uids.length;
+    }
+}
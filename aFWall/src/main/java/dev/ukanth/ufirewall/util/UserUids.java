@@ -0,0 +1,254 @@
+package dev.ukanth.ufirewall.util;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import dev.ukanth.ufirewall.log.Log;
+import dev.ukanth.ufirewall.service.RootSessions;
+
+/**
+ * Android uids are userId * PER_USER_RANGE + appId, the same app has the same appId in every
+ * user and profile (work profile, dual apps, secondary users).
+ */
+
+public final class UserUids {
+
+    private static final String TAG = "AFWall";
+
+    public static final int PER_USER_RANGE = 100000;
+
+    private static final Metrics.Histogram USER_QUERY_TIME = Metrics.histogram("apps.users.query");
+
+    private UserUids() {
+    }
+
+    public static int userId(int uid) {
+        return uid / PER_USER_RANGE;
+    }
+
+    public static int appId(int uid) {
+        return uid % PER_USER_RANGE;
+    }
+
+    public static int uid(int userId, int appId) {
+        return userId * PER_USER_RANGE + appId;
+    }
+
+    public static int currentUserId() {
+        return userId(Process.myUid());
+    }
+
+    /**
+     * UserHandle.getIdentifier() is hidden on older releases, but the handle is parcelled as
+     * its user id
+     */
+    private static int identifier(UserHandle user) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            user.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return parcel.readInt();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @param ctx
+     * @return ids of the profiles of the current user, the current user itself excluded
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static List<Integer> getOtherUserIds(Context ctx) {
+        List<Integer> ids = new ArrayList<>();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return ids;
+        }
+        UserManager um = (UserManager) ctx.getSystemService(Context.USER_SERVICE);
+        int current = currentUserId();
+        for (UserHandle user : um.getUserProfiles()) {
+            int id = identifier(user);
+            if (id != current && !ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Find which of the given apps are installed for a user.  Asks the package manager for the
+     * whole package list of the user once; if that is not possible (no root, UI thread, old pm)
+     * falls back to one lookup per app.
+     *
+     * @param userId
+     * @param candidates apps of the current user
+     * @param pkgmanager
+     * @return appIds installed for userId
+     */
+    public static SparseBooleanArray getInstalledAppIds(int userId, List<ApplicationInfo> candidates,
+                                                        PackageManager pkgmanager) {
+        long start = Metrics.start();
+        SparseBooleanArray appIds = queryPackageList(userId);
+        if (appIds == null) {
+            appIds = new SparseBooleanArray();
+            for (ApplicationInfo info : candidates) {
+                int appId = appId(info.uid);
+                if (appIds.get(appId)) {
+                    continue;
+                }
+                try {
+                    if (pkgmanager.getPackagesForUid(uid(userId, appId)) != null) {
+                        appIds.put(appId, true);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to look up " + appId + " for user " + userId + ": " + e.getMessage());
+                }
+            }
+        }
+        USER_QUERY_TIME.stop(start);
+        return appIds;
+    }
+
+    private static SparseBooleanArray queryPackageList(int userId) {
+        // pm prints uids since N; never block the UI thread on su
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || Looper.myLooper() == Looper.getMainLooper()) {
+            return null;
+        }
+        List<String> output = new ArrayList<>();
+        if (RootSessions.run(RootSessions.Priority.DIAGNOSTICS,
+                "pm list packages -U --user " + userId, output) != 0) {
+            return null;
+        }
+        SparseBooleanArray appIds = new SparseBooleanArray();
+        for (String line : output) {
+            // package:com.example uid:1010123 (shared uids are comma separated)
+            int pos = line.indexOf(" uid:");
+            if (!line.startsWith("package:") || pos < 0) {
+                continue;
+            }
+            for (String uid : line.substring(pos + 5).trim().split(",")) {
+                try {
+                    appIds.put(appId(Integer.parseInt(uid.trim())), true);
+                } catch (NumberFormatException e) {
+                }
+            }
+        }
+        return appIds.size() > 0 ? appIds : null;
+    }
+
+    /**
+     * Collapse uids into owner match ranges, consecutive uids (e.g. a whole profile) become
+     * one "first:last" range
+     *
+     * @param uids
+     * @return values for --uid-owner, in ascending order
+     */
+    public static List<String> toRanges(List<Integer> uids) {
+        List<Integer> sorted = new ArrayList<>();
+        for (Integer uid : uids) {
+            if (uid != null && uid >= 0) {
+                sorted.add(uid);
+            }
+        }
+        Collections.sort(sorted);
+        List<String> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < sorted.size()) {
+            int first = sorted.get(i);
+            int last = first;
+            while (i + 1 < sorted.size() && sorted.get(i + 1) <= last + 1) {
+                last = sorted.get(++i);
+            }
+            ranges.add(first == last ? String.valueOf(first) : first + ":" + last);
+            i++;
+        }
+        return ranges;
+    }
+
+    /**
+     * Owner match ranges of a chain as listed by "iptables -S" ("10123" or "10100-10110")
+     *
+     * @param lines  chain lines, e.g. RulesFingerprint.expectedLines()
+     * @param chain
+     * @param action target part of the rules, e.g. " -j RETURN"
+     * @return {first, last} per rule, in chain order
+     */
+    public static List<int[]> ownerRanges(List<String> lines, String chain, String action) {
+        String prefix = "-A " + chain + " -m owner --uid-owner ";
+        List<int[]> ranges = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.startsWith(prefix) || !line.endsWith(action)) {
+                continue;
+            }
+            String value = line.substring(prefix.length(), line.length() - action.length());
+            int separator = Math.max(value.indexOf('-'), value.indexOf(':'));
+            try {
+                if (separator < 0) {
+                    int uid = Integer.parseInt(value);
+                    ranges.add(new int[]{uid, uid});
+                } else {
+                    ranges.add(new int[]{Integer.parseInt(value.substring(0, separator)),
+                            Integer.parseInt(value.substring(separator + 1))});
+                }
+            } catch (NumberFormatException e) {
+                // more matches than the owner, not one of the per-app rules
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Commands (without the iptables binary) that take one uid out of the owner rules of a
+     * chain.  A toRanges() range holding it is deleted and the parts before and after the uid
+     * are inserted again.
+     *
+     * @param ranges owner ranges of the chain, see ownerRanges(), updated to the result
+     * @param chain
+     * @param action target part of the rules, e.g. " -j RETURN"
+     * @param uid
+     * @return commands, a plain delete if no range holds uid
+     */
+    public static List<String> removeFromRanges(List<int[]> ranges, String chain, String action, int uid) {
+        List<String> cmds = new ArrayList<>();
+        String owner = " -m owner --uid-owner ";
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            if (uid < range[0] || uid > range[1] || range[0] == range[1]) {
+                continue;
+            }
+            ranges.remove(i);
+            cmds.add("-D " + chain + owner + range[0] + ":" + range[1] + action);
+            // above the catch-all at the end of the chain, like the single rules
+            if (range[0] < uid) {
+                ranges.add(new int[]{range[0], uid - 1});
+                cmds.add("-I " + chain + " 1" + owner + (range[0] == uid - 1 ? "" + range[0] : range[0] + ":" + (uid - 1)) + action);
+            }
+            if (uid < range[1]) {
+                ranges.add(new int[]{uid + 1, range[1]});
+                cmds.add("-I " + chain + " 1" + owner + (uid + 1 == range[1] ? "" + range[1] : (uid + 1) + ":" + range[1]) + action);
+            }
+            return cmds;
+        }
+        for (int i = 0; i < ranges.size(); i++) {
+            if (ranges.get(i)[0] == uid) {
+                ranges.remove(i);
+                break;
+            }
+        }
+        cmds.add("-D " + chain + owner + uid + action);
+        return cmds;
+    }
+}
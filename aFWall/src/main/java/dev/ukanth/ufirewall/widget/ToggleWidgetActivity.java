@@ -264,7 +264,7 @@ public class ToggleWidgetActivity extends Activity {
                     } else {
                         G.setProfile(true, profileName);
                     }
-                    Api.applySavedIptablesRules(context, true, new RootCommand()
+                    Api.switchProfile(context, true, new RootCommand()
                             .setSuccessToast(R.string.rules_applied)
                             .setFailureToast(R.string.error_apply)
                             .setCallback(new RootCommand.Callback() {
@@ -471,7 +471,7 @@ public class ToggleWidgetActivity extends Activity {
                             break;
                     }
                     if (i > 2) {
-                        Api.applySavedIptablesRules(context, true, new RootCommand()
+                        Api.switchProfile(context, true, new RootCommand()
                                 .setSuccessToast(R.string.rules_applied)
                                 .setFailureToast(R.string.error_apply)
                                 .setCallback(new RootCommand.Callback() {
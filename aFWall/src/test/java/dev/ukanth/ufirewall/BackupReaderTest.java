@@ -0,0 +1,238 @@
+package dev.ukanth.ufirewall;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.preference.PreferenceManager;
+
+import com.raizlabs.android.dbflow.config.FlowConfig;
+import com.raizlabs.android.dbflow.config.FlowManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowPackageManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import dev.ukanth.ufirewall.profiles.ProfileHelper;
+import dev.ukanth.ufirewall.util.G;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Streaming backup import, down to a 50 profile backup through Api's import.  Runs under
+ * Robolectric for android.util.JsonReader, the package manager and file backed
+ * SharedPreferences.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class BackupReaderTest {
+
+    private static final int PROFILES = 50;
+    private static final int PACKAGES = 200;
+    private static final int PREFS = 60;
+
+    private File file;
+    private Context ctx;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("afwall-backup-all", ".json");
+        ctx = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static String pkg(int i) {
+        return "com.example.app" + i;
+    }
+
+    private static Map<String, Integer> installed() {
+        Map<String, Integer> uids = new HashMap<>();
+        for (int i = 0; i < PACKAGES; i++) {
+            uids.put(pkg(i), 10000 + i);
+        }
+        return uids;
+    }
+
+    /**
+     * @return network classes of package i in profile p, bit per class
+     */
+    private static int flags(int p, int i) {
+        return (i * 31 + p * 7) % 32;
+    }
+
+    /**
+     * Same layout as Api.exportAll() with migrated profiles
+     */
+    private void writeBackup(int profiles) throws IOException {
+        Writer out = new FileWriter(file);
+        out.write("{\"_profiles\":{");
+        for (int p = 0; p < profiles; p++) {
+            out.write((p > 0 ? "," : "") + "\"Profile " + p + "\":{");
+            boolean first = true;
+            for (int i = 0; i < PACKAGES; i++) {
+                int flags = flags(p, i);
+                if (flags == 0) {
+                    continue;
+                }
+                out.write((first ? "" : ",") + "\"" + pkg(i) + "\":{");
+                first = false;
+                boolean firstClass = true;
+                for (int c = Api.WIFI_EXPORT; c <= Api.LAN_EXPORT; c++) {
+                    if ((flags & (1 << c)) != 0) {
+                        out.write((firstClass ? "" : ",") + "\"" + c + "\":true");
+                        firstClass = false;
+                    }
+                }
+                out.write("}");
+            }
+            out.write("}");
+        }
+        out.write("},\"prefs\":[");
+        for (int i = 0; i < PREFS; i++) {
+            String value = i % 3 == 0 ? "true" : i % 3 == 1 ? String.valueOf(i) : "value" + i;
+            out.write((i > 0 ? "," : "") + "{\"pref" + i + "\":\"" + value + "\"}");
+        }
+        out.write(",{\"enableMultiProfile\":\"true\"},{\"profilesmigrated\":\"true\"}");
+        out.write(",{\"multiUserId\":\"10\"},{\"patternMax\":\"3\"},{\"appVersion\":\"15980\"}]}");
+        out.close();
+    }
+
+    @Test
+    public void readsAllSections() throws IOException {
+        String json = "{\"default\":{\"com.a\":{\"0\":true,\"4\":true},\"com.b:1\":{\"2\":true,\"9\":true}},"
+                + "\"profiles\":{\"AFWallProfile1\":{\"com.a\":{\"1\":true}},\"broken\":\"x\"},"
+                + "\"unknown\":[1,2],"
+                + "\"prefs\":[{\"enableIPv6\":\"true\"},{\"logTarget\":null},{\"patternMax\":\"3\"}]}";
+        BackupReader backup = BackupReader.readAll(new StringReader(json));
+        assertEquals(Integer.valueOf(1 | 1 << 4), backup.defaultRules.get("com.a"));
+        // unknown network classes are dropped
+        assertEquals(Integer.valueOf(1 << 2), backup.defaultRules.get("com.b:1"));
+        Map<String, Map<String, Integer>> profiles = backup.sections.get("profiles");
+        assertEquals(1, profiles.size());
+        assertEquals(Integer.valueOf(1 << 1), profiles.get("AFWallProfile1").get("com.a"));
+        assertEquals("true", backup.prefs.get("enableIPv6"));
+        assertFalse(backup.prefs.containsKey("logTarget"));
+        assertNull(backup.sections.get("_profiles"));
+    }
+
+    @Test
+    public void readsRulesOnlyBackup() throws IOException {
+        Map<String, Integer> rules = BackupReader.readRulesOnly(new StringReader("[{\"com.a\":{\"3\":true}}]"));
+        assertEquals(Integer.valueOf(1 << 3), rules.get("com.a"));
+    }
+
+    @Test
+    public void uidListsSkipMissingPackages() {
+        Map<String, Integer> rules = new HashMap<>();
+        rules.put("com.example.app1", 1 | 1 << 2);
+        rules.put("com.example.app2:10002", 1);
+        rules.put("com.gone", 1);
+        String[] lists = BackupReader.uidLists(rules, installed());
+        assertTrue(lists[Api.WIFI_EXPORT].equals("10001|10002") || lists[Api.WIFI_EXPORT].equals("10002|10001"));
+        assertEquals("", lists[Api.DATA_EXPORT]);
+        assertEquals("10001", lists[Api.ROAM_EXPORT]);
+    }
+
+    @Test
+    public void restoresPreferenceTypes() throws IOException {
+        writeBackup(1);
+        SharedPreferences prefs = ctx.getSharedPreferences("restore", Context.MODE_PRIVATE);
+        SharedPreferences.Editor edit = prefs.edit();
+        readBackup().restorePreferences(edit);
+        edit.commit();
+        assertTrue(prefs.getBoolean("pref0", false));
+        assertEquals(1, prefs.getInt("pref1", 0));
+        assertEquals("value2", prefs.getString("pref2", null));
+        assertEquals(10, prefs.getLong("multiUserId", 0));
+        assertEquals("3", prefs.getString("patternMax", null));
+        assertFalse(prefs.getAll().containsKey("appVersion"));
+    }
+
+    private BackupReader readBackup() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            return BackupReader.readAll(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The whole import through Api.loadSharedPreferencesFromFile(): the restored preferences
+     * switch on migrated profiles, so every "_profiles" entry becomes a profile with uid lists
+     * of the installed packages only
+     */
+    @Test
+    public void importsFiftyProfiles() throws IOException {
+        writeBackup(PROFILES);
+        // every other package is installed
+        Map<String, Integer> installed = new HashMap<>();
+        ShadowPackageManager packageManager = shadowOf(ctx.getPackageManager());
+        for (int i = 0; i < PACKAGES; i += 2) {
+            PackageInfo info = new PackageInfo();
+            info.packageName = pkg(i);
+            info.applicationInfo = new ApplicationInfo();
+            info.applicationInfo.packageName = pkg(i);
+            info.applicationInfo.uid = 10000 + i;
+            packageManager.addPackage(info);
+            installed.put(pkg(i), 10000 + i);
+        }
+        G.gPrefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+        FlowManager.init(new FlowConfig.Builder(ctx).build());
+        try {
+            assertTrue(Api.loadSharedPreferencesFromFile(ctx, new StringBuilder(), file.getPath(), true));
+
+            assertTrue(G.enableMultiProfile());
+            assertTrue(G.gPrefs.getBoolean("pref0", false));
+            assertEquals(1, G.gPrefs.getInt("pref1", 0));
+            assertFalse(G.gPrefs.contains("appVersion"));
+
+            assertEquals(PROFILES, ProfileHelper.getProfiles().size());
+            String[] keys = {Api.PREF_WIFI_PKG_UIDS, Api.PREF_3G_PKG_UIDS, Api.PREF_ROAMING_PKG_UIDS,
+                    Api.PREF_VPN_PKG_UIDS, Api.PREF_LAN_PKG_UIDS};
+            for (int p = 0; p < PROFILES; p++) {
+                SharedPreferences prefs = ctx.getSharedPreferences("Profile " + p, Context.MODE_PRIVATE);
+                for (int c = Api.WIFI_EXPORT; c <= Api.LAN_EXPORT; c++) {
+                    Set<String> expected = new HashSet<>();
+                    for (int i = 0; i < PACKAGES; i++) {
+                        if ((flags(p, i) & (1 << c)) != 0 && installed.containsKey(pkg(i))) {
+                            expected.add(String.valueOf(installed.get(pkg(i))));
+                        }
+                    }
+                    String stored = prefs.getString(keys[c], null);
+                    assertEquals("Profile " + p + " class " + c, expected,
+                            stored.isEmpty() ? new HashSet<String>() : new HashSet<>(Arrays.asList(stored.split("\\|"))));
+                }
+            }
+        } finally {
+            FlowManager.destroy();
+        }
+    }
+}
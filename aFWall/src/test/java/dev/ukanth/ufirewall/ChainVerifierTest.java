@@ -0,0 +1,61 @@
+package dev.ukanth.ufirewall;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import dev.ukanth.ufirewall.util.RulesFingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Repair of drifted afwall chains, on "iptables -S" dumps.
+ */
+
+public class ChainVerifierTest {
+
+    private static final String APPLIED = "-P INPUT ACCEPT\n"
+            + "-P OUTPUT ACCEPT\n"
+            + "-N afwall\n"
+            + "-N afwall-wifi\n"
+            + "-N oem_out\n"
+            + "-A OUTPUT -j afwall\n"
+            + "-A OUTPUT -j oem_out\n"
+            + "-A afwall -o wlan+ -j afwall-wifi\n"
+            + "-A afwall-wifi -m owner --uid-owner 10123 -j RETURN\n";
+
+    private static List<String> lines(String dump) {
+        return RulesFingerprint.chainLines(dump, false);
+    }
+
+    @Test
+    public void rulesBelowTheJumpNeedNoRepair() {
+        String later = APPLIED + "-A OUTPUT -p tcp --dport 25 -j DROP\n-A oem_out -j ACCEPT\n";
+        assertTrue(ChainVerifier.repairCommands(lines(APPLIED), lines(later)).isEmpty());
+    }
+
+    @Test
+    public void ruleAboveTheJumpIsRepaired() {
+        String bypassed = APPLIED.replace("-A OUTPUT -j afwall\n", "-A OUTPUT -j ACCEPT\n-A OUTPUT -j afwall\n");
+        // only our jump moves back to the top, the other rule stays
+        assertEquals(Arrays.asList("#NOCHK# -D OUTPUT -j afwall", "-I OUTPUT 1 -j afwall"),
+                ChainVerifier.repairCommands(lines(APPLIED), lines(bypassed)));
+    }
+
+    @Test
+    public void flushedChainIsRefilled() {
+        String flushed = APPLIED.replace("-A afwall-wifi -m owner --uid-owner 10123 -j RETURN\n", "");
+        assertEquals(Arrays.asList("#NOCHK# -N afwall-wifi", "-F afwall-wifi",
+                "-A afwall-wifi -m owner --uid-owner 10123 -j RETURN"),
+                ChainVerifier.repairCommands(lines(APPLIED), lines(flushed)));
+    }
+
+    @Test
+    public void missingJumpIsInserted() {
+        String removed = APPLIED.replace("-A OUTPUT -j afwall\n", "");
+        assertEquals(Arrays.asList("-I OUTPUT 1 -j afwall"),
+                ChainVerifier.repairCommands(lines(APPLIED), lines(removed)));
+    }
+}
@@ -0,0 +1,261 @@
+package dev.ukanth.ufirewall;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.preference.PreferenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import dev.ukanth.ufirewall.util.G;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Writing and reading full and delta snapshots, and the same rules through the JSON backup.
+ * Runs under Robolectric for android.util.JsonReader and the package manager.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class RulesSnapshotTest {
+
+    private static final String DEFAULT = "AFWallPrefs";
+    private static final String PROFILE = "AFWallProfile1";
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("snapshots", "");
+        assertTrue(dir.delete() && dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static RulesSnapshot first() {
+        RulesSnapshot snapshot = new RulesSnapshot(1000);
+        snapshot.setRule(DEFAULT, "com.example.browser", Api.WIFI_EXPORT, true);
+        snapshot.setRule(DEFAULT, "com.example.browser", Api.DATA_EXPORT, true);
+        snapshot.setRule(DEFAULT, "com.example.mail", Api.WIFI_EXPORT, true);
+        snapshot.setRule(PROFILE, "com.example.mail", Api.LAN_EXPORT, true);
+        snapshot.getPrefs().put("enableIPv6", true);
+        snapshot.getPrefs().put("logTarget", "NFLOG");
+        snapshot.getPrefs().put("patternMax", 3);
+        snapshot.getPrefs().put("lastApply", 12345678901L);
+        snapshot.getPrefs().put("ratio", 0.5f);
+        snapshot.getPrefs().put("blocked", new HashSet<>(Arrays.asList("a", "b")));
+        return snapshot;
+    }
+
+    private static RulesSnapshot second() {
+        RulesSnapshot snapshot = first();
+        snapshot.setRule(DEFAULT, "com.example.browser", Api.DATA_EXPORT, false);
+        snapshot.setRule(DEFAULT, "com.example.maps", Api.VPN_EXPORT, true);
+        snapshot.getPrefs().put("logTarget", "LOG");
+        snapshot.getPrefs().remove("ratio");
+        return snapshot;
+    }
+
+    private static void assertSecond(RulesSnapshot read) {
+        assertTrue(read.isAllowed(DEFAULT, "com.example.browser", Api.WIFI_EXPORT));
+        assertFalse(read.isAllowed(DEFAULT, "com.example.browser", Api.DATA_EXPORT));
+        assertTrue(read.isAllowed(DEFAULT, "com.example.maps", Api.VPN_EXPORT));
+        assertTrue(read.isAllowed(PROFILE, "com.example.mail", Api.LAN_EXPORT));
+        assertFalse(read.isAllowed(PROFILE, "com.example.mail", Api.WIFI_EXPORT));
+        assertEquals("LOG", read.getPrefs().get("logTarget"));
+        assertFalse(read.getPrefs().containsKey("ratio"));
+        assertEquals(12345678901L, read.getPrefs().get("lastApply"));
+    }
+
+    @Test
+    public void fullRoundTrip() throws IOException {
+        File file = new File(dir, "full.afws");
+        assertNull(first().writeTo(file, ""));
+        RulesSnapshot read = RulesSnapshot.read(file);
+        assertTrue(read.isAllowed(DEFAULT, "com.example.browser", Api.DATA_EXPORT));
+        assertTrue(read.isAllowed(DEFAULT, "com.example.mail", Api.WIFI_EXPORT));
+        assertFalse(read.isAllowed(DEFAULT, "com.example.mail", Api.DATA_EXPORT));
+        assertTrue(read.isAllowed(PROFILE, "com.example.mail", Api.LAN_EXPORT));
+        assertEquals(first().getPrefs(), read.getPrefs());
+        assertEquals(0, read.getDepth());
+    }
+
+    @Test
+    public void deltaRoundTrip() throws IOException {
+        first().writeTo(new File(dir, "a.afws"), "");
+        File delta = new File(dir, "b.afws");
+        assertEquals("a.afws", second().writeTo(delta, "a.afws"));
+        RulesSnapshot read = RulesSnapshot.read(delta);
+        assertEquals(1, read.getDepth());
+        assertSecond(read);
+
+        File full = new File(dir, "c.afws");
+        second().writeTo(full, "");
+        assertTrue(delta.length() < full.length());
+    }
+
+    @Test
+    public void sameNameAsBaseWritesFull() throws IOException {
+        File file = new File(dir, "same.afws");
+        first().writeTo(file, "");
+        // two exports within one second
+        assertNull(second().writeTo(file, "same.afws"));
+        assertSecond(RulesSnapshot.read(file));
+    }
+
+    @Test
+    public void selfReferenceIsAnError() throws IOException {
+        File file = new File(dir, "loop.afws");
+        RulesSnapshot base = first();
+        base.writeTo(file, "");
+        RulesSnapshot delta = second();
+        delta.writeTo(new File(dir, "other.afws"), "loop.afws");
+        // what an export within the same second used to write
+        delta.write(file, RulesSnapshot.read(file), "loop.afws");
+        try {
+            RulesSnapshot.read(file);
+            fail("read a snapshot that is its own base");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingBase() throws IOException {
+        File base = new File(dir, "a.afws");
+        first().writeTo(base, "");
+        second().writeTo(new File(dir, "b.afws"), "a.afws");
+        assertTrue(base.delete());
+        RulesSnapshot.read(new File(dir, "b.afws"));
+    }
+
+    @Test
+    public void chainStartsOverAfterMaxDepth() throws IOException {
+        String last = "";
+        int maxDepth = 0;
+        for (int i = 0; i < 8; i++) {
+            String name = i + ".afws";
+            RulesSnapshot snapshot = i % 2 == 0 ? first() : second();
+            snapshot.writeTo(new File(dir, name), last);
+            RulesSnapshot read = RulesSnapshot.read(new File(dir, name));
+            maxDepth = Math.max(maxDepth, read.getDepth());
+            if (i % 2 == 1) {
+                assertSecond(read);
+            }
+            last = name;
+        }
+        assertEquals(5, maxDepth);
+        assertEquals(1, RulesSnapshot.read(new File(dir, "7.afws")).getDepth());
+    }
+
+    /**
+     * A JSON backup read by BackupReader, turned into a snapshot, written and read back: the
+     * snapshot holds the same rules and preferences, and restoring it stores the same uid lists
+     * as the JSON import
+     */
+    @Test
+    public void jsonRoundTrip() throws IOException {
+        StringBuilder json = new StringBuilder("{\"_profiles\":{");
+        String[] identifiers = {DEFAULT, PROFILE};
+        for (int p = 0; p < identifiers.length; p++) {
+            json.append(p > 0 ? "," : "").append('"').append(identifiers[p]).append("\":{");
+            for (int i = 0; i < 40; i++) {
+                json.append(i > 0 ? "," : "").append("\"com.example.app").append(i).append("\":{");
+                int flags = (i * 7 + p * 3) % 31 + 1;
+                boolean first = true;
+                for (int c = Api.WIFI_EXPORT; c <= Api.LAN_EXPORT; c++) {
+                    if ((flags & (1 << c)) != 0) {
+                        json.append(first ? "" : ",").append('"').append(c).append("\":true");
+                        first = false;
+                    }
+                }
+                json.append('}');
+            }
+            json.append('}');
+        }
+        json.append("},\"prefs\":[{\"enableIPv6\":\"true\"},{\"logTarget\":\"NFLOG\"},{\"patternMax\":\"3\"},"
+                + "{\"multiUserId\":\"10\"},{\"logPingTime\":\"500\"}]}");
+        BackupReader backup = BackupReader.readAll(new StringReader(json.toString()));
+        Map<String, Map<String, Integer>> profiles = backup.sections.get("_profiles");
+
+        Context ctx = RuntimeEnvironment.application;
+        SharedPreferences jsonPrefs = ctx.getSharedPreferences("json", Context.MODE_PRIVATE);
+        SharedPreferences.Editor edit = jsonPrefs.edit();
+        backup.restorePreferences(edit);
+        edit.commit();
+
+        RulesSnapshot snapshot = new RulesSnapshot(1000);
+        for (Map.Entry<String, Map<String, Integer>> profile : profiles.entrySet()) {
+            for (Map.Entry<String, Integer> rule : profile.getValue().entrySet()) {
+                for (int c = Api.WIFI_EXPORT; c <= Api.LAN_EXPORT; c++) {
+                    snapshot.setRule(profile.getKey(), rule.getKey(), c, (rule.getValue() & (1 << c)) != 0);
+                }
+            }
+        }
+        snapshot.getPrefs().putAll(jsonPrefs.getAll());
+        File file = new File(dir, "json.afws");
+        snapshot.writeTo(file, "");
+        RulesSnapshot read = RulesSnapshot.read(file);
+
+        for (Map.Entry<String, Map<String, Integer>> profile : profiles.entrySet()) {
+            for (Map.Entry<String, Integer> rule : profile.getValue().entrySet()) {
+                for (int c = Api.WIFI_EXPORT; c <= Api.LAN_EXPORT; c++) {
+                    assertEquals(profile.getKey() + " " + rule.getKey() + " " + c, (rule.getValue() & (1 << c)) != 0,
+                            read.isAllowed(profile.getKey(), rule.getKey(), c));
+                }
+            }
+        }
+        assertEquals(jsonPrefs.getAll(), read.getPrefs());
+
+        Map<String, Integer> installed = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            PackageInfo info = new PackageInfo();
+            info.packageName = "com.example.app" + i;
+            info.applicationInfo = new ApplicationInfo();
+            info.applicationInfo.packageName = info.packageName;
+            info.applicationInfo.uid = 10000 + i;
+            shadowOf(ctx.getPackageManager()).addPackage(info);
+            installed.put(info.packageName, 10000 + i);
+        }
+        G.gPrefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+        read.restore(ctx);
+        for (Map.Entry<String, Map<String, Integer>> profile : profiles.entrySet()) {
+            Api.updateRulesFromJson(ctx, profile.getValue(), "json-" + profile.getKey(), installed);
+            Map<String, ?> fromSnapshot = ctx.getSharedPreferences(profile.getKey(), Context.MODE_PRIVATE).getAll();
+            Map<String, ?> fromJson = ctx.getSharedPreferences("json-" + profile.getKey(), Context.MODE_PRIVATE).getAll();
+            assertEquals(fromJson.keySet(), fromSnapshot.keySet());
+            for (String key : fromJson.keySet()) {
+                assertEquals(key, new HashSet<>(Arrays.asList(((String) fromJson.get(key)).split("\\|"))),
+                        new HashSet<>(Arrays.asList(((String) fromSnapshot.get(key)).split("\\|"))));
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package dev.ukanth.ufirewall.customrules;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import dev.ukanth.ufirewall.Api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Blocklist parsing and compiling the AddressRule table into prefixes, without the database.
+ */
+
+public class AddressRulesTest {
+
+    private static final int CONTIGUOUS = 40000;
+    private static final int SCATTERED = 9000;
+    private static final int APP = 10123;
+
+    @Test
+    public void parsesBlocklistLines() {
+        assertEquals("10.0.0.1", AddressRules.parseLine("10.0.0.1"));
+        assertEquals("10.0.0.0/8", AddressRules.parseLine("  10.0.0.0/8   # private"));
+        assertEquals("ads.example.com", AddressRules.parseLine("0.0.0.0 Ads.Example.com"));
+        assertEquals("ads.example.com", AddressRules.parseLine("127.0.0.1\tads.example.com"));
+        assertNull(AddressRules.parseLine("# comment"));
+        assertNull(AddressRules.parseLine(""));
+        assertNull(AddressRules.parseLine("127.0.0.1 localhost"));
+        assertNull(AddressRules.parseLine("bad;name"));
+        assertTrue(AddressRules.isName("ads.example.com"));
+        assertFalse(AddressRules.isName("10.0.0.1"));
+        assertFalse(AddressRules.isName("2001:db8::1"));
+    }
+
+    private static String dotted(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xff) + "." + ((address >>> 8) & 0xff) + "." + (address & 0xff);
+    }
+
+    /**
+     * A 50k entry list: 40000 consecutive addresses, 9000 that can't be merged, 999 already
+     * covered by a prefix of the list and a line that is no address.  Allow lists come first
+     * and each app and action gets a group of its own.
+     */
+    @Test
+    public void compilesFiftyThousandEntries() {
+        List<AddressRule> rules = new ArrayList<>();
+        int base = 10 << 24;
+        for (int i = 0; i < CONTIGUOUS; i++) {
+            rules.add(new AddressRule(dotted(base + i), Api.SPECIAL_UID_ANY, false, "list"));
+        }
+        // odd addresses only, no two of them are siblings
+        for (int i = 0; i < SCATTERED; i++) {
+            rules.add(new AddressRule(dotted((172 << 24) | (16 << 16) | (i * 2 + 1)), Api.SPECIAL_UID_ANY, false, "list"));
+        }
+        rules.add(new AddressRule("192.168.0.0/16", Api.SPECIAL_UID_ANY, false, "list"));
+        for (int i = 0; i < 998; i++) {
+            rules.add(new AddressRule("192.168." + (i / 250) + "." + (i % 250), Api.SPECIAL_UID_ANY, false, "list"));
+        }
+        rules.add(new AddressRule("not-an-address", Api.SPECIAL_UID_ANY, false, "list"));
+        rules.add(new AddressRule("2001:db8::/48", APP, true, "app"));
+        rules.add(new AddressRule("2001:db8:1::/48", APP, true, "app"));
+        assertEquals(50002, rules.size());
+
+        List<AddressRules.Group> groups = AddressRules.compile(rules);
+        assertEquals(2, groups.size());
+
+        AddressRules.Group allow = groups.get(0);
+        assertTrue(allow.allow);
+        assertEquals(APP, allow.uid);
+        assertTrue(allow.prefixes4.isEmpty());
+        assertEquals(Collections.singletonList("2001:db8:0:0:0:0:0:0/47"), allow.prefixes6);
+
+        AddressRules.Group deny = groups.get(1);
+        assertFalse(deny.allow);
+        assertEquals(Api.SPECIAL_UID_ANY, deny.uid);
+        assertTrue(deny.prefixes6.isEmpty());
+        // 40000 = 32768 + 4096 + 2048 + 1024 + 64
+        assertEquals(Arrays.asList("10.0.0.0/17", "10.0.128.0/20", "10.0.144.0/21", "10.0.152.0/22", "10.0.156.0/26"),
+                deny.prefixes4.subList(0, 5));
+        assertEquals("172.16.0.1/32", deny.prefixes4.get(5));
+        assertEquals("192.168.0.0/16", deny.prefixes4.get(deny.prefixes4.size() - 1));
+        assertEquals(5 + SCATTERED + 1, deny.prefixes4.size());
+    }
+}
@@ -0,0 +1,143 @@
+package dev.ukanth.ufirewall.customrules;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Prefix merging of the address trie behind the host blocklists.
+ */
+
+public class AddressTrieTest {
+
+    private static List<String> merge(int bits, String... cidrs) {
+        AddressTrie trie = new AddressTrie(bits);
+        for (String cidr : cidrs) {
+            assertTrue(cidr, trie.add(cidr));
+        }
+        return trie.toPrefixes();
+    }
+
+    @Test
+    public void siblingsCollapseIntoParent() {
+        assertEquals(Collections.singletonList("10.0.0.0/23"), merge(32, "10.0.0.0/24", "10.0.1.0/24"));
+        // cascades: four /26 become one /24
+        assertEquals(Collections.singletonList("192.168.1.0/24"),
+                merge(32, "192.168.1.192/26", "192.168.1.0/26", "192.168.1.128/26", "192.168.1.64/26"));
+        assertEquals(Collections.singletonList("10.0.0.2/31"), merge(32, "10.0.0.2", "10.0.0.3"));
+    }
+
+    @Test
+    public void nonSiblingsStaySeparate() {
+        // adjacent but not aligned to a common parent
+        assertEquals(Arrays.asList("10.0.1.0/24", "10.0.2.0/24"), merge(32, "10.0.2.0/24", "10.0.1.0/24"));
+    }
+
+    @Test
+    public void coveredPrefixesAreDropped() {
+        // in either order
+        assertEquals(Collections.singletonList("10.0.0.0/8"), merge(32, "10.1.2.3", "10.0.0.0/8", "10.200.0.0/16"));
+        AddressTrie trie = new AddressTrie(32);
+        trie.add("10.0.0.0/8");
+        trie.add("10.1.2.3");
+        assertEquals(Collections.singletonList("10.0.0.0/8"), trie.toPrefixes());
+        assertEquals(2, trie.getAdded());
+    }
+
+    @Test
+    public void hostBitsAreIgnored() {
+        assertEquals(Collections.singletonList("10.0.0.0/8"), merge(32, "10.9.8.7/8"));
+        assertEquals(Collections.singletonList("0.0.0.0/0"), merge(32, "0.0.0.0/1", "128.0.0.0/1"));
+    }
+
+    @Test
+    public void ipv6() {
+        assertEquals(Collections.singletonList("2001:db8:0:0:0:0:0:0/47"), merge(128, "2001:db8::/48", "2001:db8:1::/48"));
+        assertEquals(Collections.singletonList("0:0:0:0:0:0:0:1/128"), merge(128, "::1"));
+    }
+
+    @Test
+    public void wrongFamilyOrSyntaxIsRejected() {
+        AddressTrie v4 = new AddressTrie(32);
+        assertFalse(v4.add("2001:db8::1"));
+        assertFalse(v4.add("10.0.0.0/33"));
+        assertFalse(v4.add("10.0.0.0/x"));
+        assertFalse(v4.add("10.0.0.256"));
+        assertFalse(v4.add("10.0.0"));
+        assertFalse(new AddressTrie(128).add("10.0.0.1"));
+        assertTrue(v4.isEmpty());
+    }
+
+    @Test
+    public void namesAreNeverResolved() {
+        assertNull(AddressTrie.parse("example.com"));
+        assertNull(AddressTrie.parse("localhost"));
+        assertNull(AddressTrie.parse("1.2.3.4.example.com"));
+        assertNull(AddressTrie.parse("fe80::1%wlan0"));
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, AddressTrie.parse("1.2.3.4"));
+    }
+
+    private static int address(String dotted) {
+        byte[] bytes = AddressTrie.parse(dotted);
+        return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+    }
+
+    private static boolean contains(int network, int length, int address) {
+        int mask = length == 0 ? 0 : -1 << (32 - length);
+        return (network & mask) == (address & mask);
+    }
+
+    /**
+     * Random prefixes inside 10.0.0.0/16: the merged list covers exactly the same addresses,
+     * and no two of its prefixes overlap or could be merged further
+     */
+    @Test
+    public void randomPrefixesMergeExactly() {
+        Random random = new Random(42);
+        for (int run = 0; run < 50; run++) {
+            AddressTrie trie = new AddressTrie(32);
+            List<int[]> added = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int length = 18 + random.nextInt(15);
+                int network = address("10.0.0.0") | random.nextInt(1 << 16);
+                trie.add(new byte[]{(byte) (network >>> 24), (byte) (network >>> 16), (byte) (network >>> 8), (byte) network}, length);
+                added.add(new int[]{network, length});
+            }
+            List<int[]> merged = new ArrayList<>();
+            for (String prefix : trie.toPrefixes()) {
+                String[] parts = prefix.split("/");
+                merged.add(new int[]{address(parts[0]), Integer.parseInt(parts[1])});
+            }
+            for (int host = 0; host < (1 << 16); host++) {
+                int candidate = address("10.0.0.0") | host;
+                boolean expected = false;
+                for (int[] prefix : added) {
+                    expected |= contains(prefix[0], prefix[1], candidate);
+                }
+                int matches = 0;
+                for (int[] prefix : merged) {
+                    if (contains(prefix[0], prefix[1], candidate)) {
+                        matches++;
+                    }
+                }
+                assertEquals(expected ? 1 : 0, matches);
+            }
+            for (int i = 1; i < merged.size(); i++) {
+                int[] a = merged.get(i - 1);
+                int[] b = merged.get(i);
+                boolean siblings = a[1] == b[1] && contains(a[0], a[1] - 1, b[0]);
+                assertFalse("mergeable " + Arrays.toString(a) + " " + Arrays.toString(b), siblings);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package dev.ukanth.ufirewall.customrules;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Validation and family split of the custom script compiler.
+ */
+
+public class CustomRulesTest {
+
+    private static String error(String line) {
+        CustomRules.Script script = CustomRules.compile(line);
+        assertFalse(line, script.isValid());
+        assertEquals(1, script.errors.size());
+        assertTrue(script.v4.isEmpty());
+        assertTrue(script.v6.isEmpty());
+        return script.errors.get(0);
+    }
+
+    @Test
+    public void plainCommandsGoToBothFamilies() {
+        CustomRules.Script script = CustomRules.compile("$IPTABLES -A afwall -p tcp --dport 25 -j REJECT\n"
+                + "# comment\n\n${IPTABLES} -I afwall -o tun+ -j RETURN");
+        assertTrue(script.errors.toString(), script.isValid());
+        List<String> expected = Arrays.asList("-A afwall -p tcp --dport 25 -j REJECT", "-I afwall -o tun+ -j RETURN");
+        assertEquals(expected, script.v4);
+        assertEquals(expected, script.v6);
+    }
+
+    @Test
+    public void addressLiteralsPickTheFamily() {
+        CustomRules.Script script = CustomRules.compile("$IPTABLES -A afwall -d 10.0.0.0/8 -j DROP\n"
+                + "$IPTABLES -A afwall -d 2001:db8::/32 -j DROP\n"
+                + "$IPTABLES -A afwall -s 192.168.0.0/255.255.0.0 -j DROP\n"
+                + "$IPTABLES -A afwall -d example.com -j DROP");
+        assertTrue(script.errors.toString(), script.isValid());
+        assertEquals(Arrays.asList("-A afwall -d 10.0.0.0/8 -j DROP", "-A afwall -s 192.168.0.0/255.255.0.0 -j DROP",
+                "-A afwall -d example.com -j DROP"), script.v4);
+        assertEquals(Arrays.asList("-A afwall -d 2001:db8::/32 -j DROP", "-A afwall -d example.com -j DROP"), script.v6);
+    }
+
+    @Test
+    public void explicitBinariesStayLiteralInTheirFamily() {
+        CustomRules.Script script = CustomRules.compile("iptables -A afwall -j DROP\n/system/bin/ip6tables -A afwall -j DROP");
+        assertEquals(Collections.singletonList("#LITERAL# iptables -A afwall -j DROP"), script.v4);
+        assertEquals(Collections.singletonList("#LITERAL# /system/bin/ip6tables -A afwall -j DROP"), script.v6);
+    }
+
+    @Test
+    public void shellLinesStayLiteral() {
+        CustomRules.Script script = CustomRules.compile("echo 1 > /proc/sys/net/ipv4/ip_forward\n"
+                + "$IPTABLES -A afwall -j DROP || true\n"
+                + "$IPTABLES -A afwall -m comment --comment \"my rule\" -j DROP");
+        assertTrue(script.errors.toString(), script.isValid());
+        List<String> expected = Arrays.asList("#LITERAL# echo 1 > /proc/sys/net/ipv4/ip_forward",
+                "#LITERAL# $IPTABLES -A afwall -j DROP || true",
+                "#LITERAL# $IPTABLES -A afwall -m comment --comment \"my rule\" -j DROP");
+        assertEquals(expected, script.v4);
+        assertEquals(expected, script.v6);
+    }
+
+    @Test
+    public void shellErrors() {
+        assertTrue(error("$IPTABLES -A afwall \\").contains("line continuation is not supported"));
+        assertTrue(error("$IPTABLES -A afwall -m comment --comment 'oops -j DROP").contains("unterminated ' quote"));
+        assertTrue(error("if true; then").contains("multi-line commands are not supported"));
+        assertTrue(error("fi").contains("multi-line commands are not supported"));
+        assertTrue(error("for i in 1 2; do").contains("multi-line commands are not supported"));
+        // an escaped quote is not the start of a quoted string
+        assertTrue(CustomRules.compile("echo it\\'s").isValid());
+    }
+
+    @Test
+    public void iptablesErrors() {
+        assertEquals("Line 1: more than one command (-A, -I)", error("$IPTABLES -A afwall -I afwall -j DROP"));
+        assertEquals("Line 1: -A needs a chain name", error("$IPTABLES -A -j DROP"));
+        assertEquals("Line 1: -A needs a chain name", error("$IPTABLES -A"));
+        assertEquals("Line 1: -s needs a value", error("$IPTABLES -A afwall -s -j DROP"));
+        assertEquals("Line 1: unknown table filtr", error("$IPTABLES -t filtr -A afwall -j DROP"));
+        assertEquals("Line 1: invalid address 10.0.0.0/33", error("$IPTABLES -A afwall -d 10.0.0.0/33 -j DROP"));
+        assertEquals("Line 1: invalid address 10.0.0.1,", error("$IPTABLES -A afwall -d 10.0.0.1, -j DROP"));
+        assertEquals("Line 1: invalid address 10.0.0.1,::1", error("$IPTABLES -A afwall -d 10.0.0.1,::1 -j DROP"));
+        assertEquals("Line 1: ::1 does not match iptables", error("iptables -A afwall -d ::1 -j DROP"));
+        assertEquals("Line 1: 10.0.0.1 does not match ip6tables", error("ip6tables -A afwall -d 10.0.0.1 -j DROP"));
+        assertEquals("Line 1: no command (-A, -I, -D, -N, ...)", error("$IPTABLES -p tcp -j DROP"));
+    }
+
+    @Test
+    public void invalidLinesAreReportedByLineNumberAndSkipped() {
+        CustomRules.Script script = CustomRules.compile("$IPTABLES -A afwall -j DROP\r\n\r\n$IPTABLES -A -j DROP\n"
+                + "$IPTABLES -I afwall -j RETURN");
+        assertEquals(Collections.singletonList("Line 3: -A needs a chain name"), script.errors);
+        assertEquals(Arrays.asList("-A afwall -j DROP", "-I afwall -j RETURN"), script.v4);
+        assertEquals(script.v4, script.v6);
+    }
+
+    @Test
+    public void unchangedTextComesFromTheCache() {
+        String text = "$IPTABLES -A afwall -j DROP";
+        CustomRules.Script first = CustomRules.get("CustomRulesTest", text);
+        assertSame(first, CustomRules.get("CustomRulesTest", text));
+        CustomRules.Script edited = CustomRules.get("CustomRulesTest", text + "\n$IPTABLES -A afwall -j RETURN");
+        assertEquals(2, edited.v4.size());
+    }
+}
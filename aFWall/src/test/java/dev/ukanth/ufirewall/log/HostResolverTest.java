@@ -0,0 +1,161 @@
+package dev.ukanth.ufirewall.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * HostResolver with a local stand-in for DNS and a clock of its own, no network involved.
+ * Runs under Robolectric for the main looper the listeners are called on.  The cache is
+ * static, so every test uses addresses of its own.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class HostResolverTest {
+
+    private static final long START = 1000000000000L;
+
+    /* addresses the stand-in was asked for, "a.b.c.d" resolves to "host-d" unless d is 0 */
+    private final List<String> queried = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger failing = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile long time = START;
+
+    @Before
+    public void setUp() {
+        HostResolver.setLookup(new HostResolver.Lookup() {
+            @Override
+            public String reverse(String address) throws IOException {
+                queried.add(address);
+                try {
+                    gate.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (failing.get() > 0) {
+                    failing.decrementAndGet();
+                    throw new IOException("timeout");
+                }
+                return address.endsWith(".0") ? null : "host-" + address.substring(address.lastIndexOf('.') + 1);
+            }
+        });
+        HostResolver.setClock(new HostResolver.Clock() {
+            @Override
+            public long now() {
+                return time;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        HostResolver.setLookup(null);
+        HostResolver.setClock(null);
+    }
+
+    @Test
+    public void lookupCachesTheName() {
+        assertNull(HostResolver.get("10.1.0.1"));
+        assertEquals("host-1", HostResolver.lookup("10.1.0.1"));
+        assertEquals("host-1", HostResolver.get("10.1.0.1"));
+        assertEquals("host-1", HostResolver.lookup("10.1.0.1"));
+        assertEquals(Collections.singletonList("10.1.0.1"), queried);
+    }
+
+    /**
+     * Requests for an address that is being resolved join the running lookup, every listener
+     * hears about the result
+     */
+    @Test
+    public void concurrentRequestsShareOneLookup() throws InterruptedException {
+        gate = new CountDownLatch(1);
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        HostResolver.Listener listener = new HostResolver.Listener() {
+            @Override
+            public void onResolved(String address, String host) {
+                results.add(address + "=" + host);
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            HostResolver.request("10.2.0.7", listener);
+        }
+        HostResolver.request("10.2.0.7", null);
+        gate.countDown();
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (results.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            ShadowLooper.runUiThreadTasks();
+        }
+        assertEquals(Collections.nCopies(3, "10.2.0.7=host-7"), results);
+        assertEquals(Collections.singletonList("10.2.0.7"), queried);
+        // resolved now, nothing left to request
+        HostResolver.request("10.2.0.7", listener);
+        assertEquals(1, queried.size());
+    }
+
+    @Test
+    public void namesExpireAfterTheirTtl() {
+        assertEquals("host-3", HostResolver.lookup("10.3.0.3"));
+        time += HostResolver.TTL;
+        assertEquals("host-3", HostResolver.get("10.3.0.3"));
+        time += 1;
+        assertNull(HostResolver.get("10.3.0.3"));
+        assertEquals("host-3", HostResolver.lookup("10.3.0.3"));
+        assertEquals(2, queried.size());
+    }
+
+    /**
+     * Addresses without a name and failed lookups are remembered for the shorter negative TTL
+     */
+    @Test
+    public void missingNamesExpireSooner() {
+        assertNull(HostResolver.lookup("10.4.0.0"));
+        assertEquals("", HostResolver.get("10.4.0.0"));
+        failing.set(1);
+        assertNull(HostResolver.lookup("10.4.0.4"));
+        assertEquals("", HostResolver.get("10.4.0.4"));
+
+        time += HostResolver.NEGATIVE_TTL + 1;
+        assertNull(HostResolver.get("10.4.0.0"));
+        assertNull(HostResolver.get("10.4.0.4"));
+        assertEquals("host-4", HostResolver.lookup("10.4.0.4"));
+        assertEquals(3, queried.size());
+    }
+
+    /**
+     * The cache holds MAX_ENTRIES addresses and drops the least recently used one first
+     */
+    @Test
+    public void cacheDropsLeastRecentlyUsed() {
+        HostResolver.lookup("10.5.0.1");
+        HostResolver.lookup("10.5.0.2");
+        // 10.5.0.1 becomes the most recently used
+        assertEquals("host-1", HostResolver.get("10.5.0.1"));
+        for (int i = 0; i < HostResolver.MAX_ENTRIES - 1; i++) {
+            HostResolver.lookup("10.6." + (i / 250) + "." + (i % 250 + 1));
+        }
+        assertEquals("host-1", HostResolver.get("10.5.0.1"));
+        assertNull(HostResolver.get("10.5.0.2"));
+        assertEquals("host-1", HostResolver.get("10.6.0.1"));
+        assertTrue(HostResolver.getStats().startsWith("Host cache: " + HostResolver.MAX_ENTRIES + " entries"));
+        assertEquals(HostResolver.MAX_ENTRIES + 1, queried.size());
+    }
+}
@@ -0,0 +1,216 @@
+package dev.ukanth.ufirewall.log;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import dev.ukanth.ufirewall.Api.PackageInfoData;
+import dev.ukanth.ufirewall.util.Metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Log parsing and the LogRxEvent bus under load: 10k lines through publish(), a burst
+ * larger than the ring while the consumer is stuck, and the sampled parse time metric.
+ */
+
+public class LogInfoLoadTest {
+
+    private static final int RATE = 10000;
+    private static final int APPS = 400;
+
+    private static String line(int i) {
+        return "<4>[ 1234.567890] {AFL}IN= OUT=wlan0 SRC=192.168.1.10 DST=93.184." + (i % 250) + "." + (i % 199)
+                + " LEN=60 TOS=0x00 PREC=0x00 TTL=64 ID=" + i + " DF PROTO=TCP SPT=" + (40000 + i % 20000)
+                + " DPT=443 WINDOW=65535 RES=0x00 SYN URGP=0 UID=" + (10000 + i % APPS) + " GID=" + (10000 + i % APPS) + " ";
+    }
+
+    private static List<PackageInfoData> apps() {
+        List<PackageInfoData> apps = new ArrayList<>();
+        for (int i = 0; i < APPS; i++) {
+            apps.add(new PackageInfoData(10000 + i, "App " + i, "com.example.app" + i));
+        }
+        return apps;
+    }
+
+    @Test
+    public void parsesFields() {
+        LogInfo info = new LogInfo();
+        assertTrue(LogInfo.parse(line(7), info));
+        assertEquals(10007, info.uid);
+        assertEquals("93.184.7.7", info.dst);
+        assertEquals(443, info.dpt);
+        assertEquals(40007, info.spt);
+        assertEquals("TCP", info.proto);
+        assertEquals(60, info.len);
+        assertEquals("192.168.1.10", info.src);
+        assertEquals("wlan0", info.out);
+
+        LogInfo.describe(info, "App 7");
+        assertEquals("App 7(10007) 93.184.7.7:443\n", info.uidString);
+    }
+
+    @Test
+    public void kernelLineHasNoUid() {
+        LogInfo info = new LogInfo();
+        assertTrue(LogInfo.parse("{AFL}IN= OUT=rmnet0 SRC=10.0.0.2 DST=8.8.8.8 LEN=40 PROTO=UDP SPT=1 DPT=53 ", info));
+        assertEquals(LogInfo.UNKNOWN_UID, info.uid);
+    }
+
+    @Test
+    public void otherLinesAreIgnored() {
+        LogInfo info = new LogInfo();
+        assertFalse(LogInfo.parse("<6>[ 1.0] wlan0: link becomes ready", info));
+        assertNull(info.dst);
+    }
+
+    @Test
+    public void firstAppOfSharedUidNamesIt() {
+        List<PackageInfoData> apps = apps();
+        apps.add(new PackageInfoData(10000, "Shared", "com.example.shared"));
+        Map<Integer, String> names = LogInfo.uidNames(apps);
+        assertEquals(APPS, names.size());
+        assertEquals("App 0", names.get(10000));
+    }
+
+    /**
+     * A kernel service uid, named without the app list so lines can be published without a
+     * Context
+     *
+     * @param port source port, identifies the line on the other side of the bus
+     */
+    private static String busLine(int port) {
+        return "{AFL}IN= OUT=wlan0 SRC=192.168.1.10 DST=224.0.0.251 LEN=60 PROTO=UDP SPT=" + port
+                + " DPT=5353 UID=1020 ";
+    }
+
+    /**
+     * Collects the source ports of all delivered events, optionally holding the consumer in
+     * its first batch until released
+     */
+    private static final class Recorder implements LogRxEvent.Listener {
+        final List<Integer> ports = Collections.synchronizedList(new ArrayList<Integer>());
+        final Semaphore received = new Semaphore(0);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release;
+        volatile int largestBatch;
+
+        Recorder(boolean stall) {
+            release = new CountDownLatch(stall ? 1 : 0);
+        }
+
+        @Override
+        public void onBatch(LogInfo[] batch, int size) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            largestBatch = Math.max(largestBatch, size);
+            for (int i = 0; i < size; i++) {
+                // asserting here would only end the consumer thread, -1 fails the test instead
+                ports.add("mDNS".equals(batch[i].appName) ? batch[i].spt : -1);
+            }
+            received.release(size);
+        }
+
+        void await(int events) throws InterruptedException {
+            assertTrue("only " + ports.size() + " events delivered",
+                    received.tryAcquire(events, 30, TimeUnit.SECONDS));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        LogRxEvent.unsubscribe();
+    }
+
+    /**
+     * 10k lines in bursts that fit the ring: every line arrives, in order and in batches
+     */
+    @Test
+    public void busDeliversEveryLineInOrder() throws InterruptedException {
+        Recorder recorder = new Recorder(false);
+        LogRxEvent.subscribe(recorder);
+        int burst = LogRxEvent.CAPACITY;
+        for (int port = 0; port < RATE; port += burst) {
+            int count = Math.min(burst, RATE - port);
+            for (int i = port; i < port + count; i++) {
+                LogRxEvent.publish(busLine(i), null);
+            }
+            recorder.await(count);
+        }
+        assertEquals(RATE, recorder.ports.size());
+        for (int i = 0; i < RATE; i++) {
+            assertEquals(i, (int) recorder.ports.get(i));
+        }
+        assertTrue(recorder.largestBatch <= LogRxEvent.BATCH_SIZE);
+    }
+
+    /**
+     * With the consumer stuck, publishing does not block and a full ring overwrites its oldest
+     * events: the consumer sees the event it was holding, then the newest CAPACITY ones
+     */
+    @Test
+    public void fullRingDropsOldest() throws InterruptedException {
+        Recorder recorder = new Recorder(true);
+        LogRxEvent.subscribe(recorder);
+        LogRxEvent.publish(busLine(0), null);
+        assertTrue(recorder.entered.await(30, TimeUnit.SECONDS));
+
+        int overflow = 100;
+        for (int i = 1; i <= LogRxEvent.CAPACITY + overflow; i++) {
+            LogRxEvent.publish(busLine(i), null);
+        }
+        recorder.release.countDown();
+        recorder.await(1 + LogRxEvent.CAPACITY);
+
+        assertEquals(1 + LogRxEvent.CAPACITY, recorder.ports.size());
+        assertEquals(0, (int) recorder.ports.get(0));
+        for (int i = 1; i <= LogRxEvent.CAPACITY; i++) {
+            assertEquals(overflow + i, (int) recorder.ports.get(i));
+        }
+        // nothing else is queued
+        assertFalse(recorder.received.tryAcquire(1, 200, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * While metrics are on, one parse in PARSE_SAMPLE_EVERY is timed; while off, none is
+     */
+    @Test
+    public void parseTimeIsSampled() throws InterruptedException {
+        Recorder recorder = new Recorder(false);
+        LogRxEvent.subscribe(recorder);
+        Metrics.Histogram parseTime = Metrics.histogram("log.parse");
+        int every = LogRxEvent.PARSE_SAMPLE_EVERY;
+        int burst = LogRxEvent.CAPACITY / every * every;
+        long before = parseTime.getCount();
+        for (int i = 0; i < burst; i++) {
+            LogRxEvent.publish(busLine(i), null);
+        }
+        recorder.await(burst);
+        assertEquals(before, parseTime.getCount());
+
+        Metrics.setEnabled(true);
+        try {
+            for (int i = 0; i < burst; i++) {
+                LogRxEvent.publish(busLine(i), null);
+            }
+            recorder.await(burst);
+        } finally {
+            Metrics.setEnabled(false);
+        }
+        assertEquals(before + burst / every, parseTime.getCount());
+    }
+}
@@ -0,0 +1,73 @@
+package dev.ukanth.ufirewall.profiles;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+
+import dev.ukanth.ufirewall.util.Metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bookkeeping of the pre-built profile chains and the recorded switch latency.  The switch
+ * itself is one "iptables -R" per family and needs root, its latency is only measured on a
+ * device (profiles.switch in the metrics dump).
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class ProfileChainsTest {
+
+    /* longest chain suffix appended to a profile root, see Api.addRuleChains() */
+    private static final String LONGEST_SUFFIX = "-wifi-postcustom";
+    /* iptables chain names are limited to 28 characters */
+    private static final int MAX_CHAIN_NAME = 28;
+
+    private final Context ctx = RuntimeEnvironment.application;
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    @Test
+    public void chainNamesFitForAllProfiles() {
+        for (int i = 0; i < ProfileChains.MAX_PROFILES; i++) {
+            String chain = ProfileChains.rootChain("afwall", i) + LONGEST_SUFFIX;
+            assertTrue(chain, chain.length() <= MAX_CHAIN_NAME);
+        }
+        assertEquals("afwall-p9", ProfileChains.rootChain("afwall", 9));
+    }
+
+    @Test
+    public void builtProfilesRoundTrip() {
+        List<String> profiles = Arrays.asList("AFWallPrefs", "AFWallProfile1", "Home");
+        ProfileChains.store(ctx, profiles);
+        assertEquals(profiles, ProfileChains.getBuilt(ctx));
+        // classic layout
+        ProfileChains.store(ctx, null);
+        assertTrue(ProfileChains.getBuilt(ctx).isEmpty());
+    }
+
+    @Test
+    public void switchLatencyIsRecorded() {
+        Metrics.setEnabled(true);
+        Metrics.Histogram histogram = Metrics.histogram("profiles.switch");
+        long before = histogram.getCount();
+        ProfileChains.store(ctx, Arrays.asList("AFWallPrefs", "AFWallProfile1"));
+        ProfileChains.recordSwitch(ctx, 3400000);
+        ProfileChains.recordSwitch(ctx, 7600000);
+        assertEquals(before + 2, histogram.getCount());
+        assertEquals("Pre-built profile chains: AFWallPrefs, AFWallProfile1, 2 switches, last 7 ms, avg 5 ms\n",
+                ProfileChains.getStats(ctx));
+    }
+}
@@ -0,0 +1,133 @@
+package dev.ukanth.ufirewall.schedule;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import dev.ukanth.ufirewall.util.RuleState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rule changes at a transition and the time of the next one.
+ */
+
+public class SchedulerTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long HOUR = 3600000;
+    /* 2026-10-19 00:00 UTC, a Monday */
+    private static final long MIDNIGHT = 1792368000000L;
+
+    private static final int WIFI = 0;
+    private static final int DATA = 1;
+
+    private static TimeWindow allow(long id, int uid, int net, int startHour, int endHour) {
+        return new TimeWindow(id, uid, net, true, startHour * 60, endHour * 60, TimeWindow.ALL_DAYS);
+    }
+
+    private static TimeWindow block(long id, int uid, int net, int startHour, int endHour) {
+        return new TimeWindow(id, uid, net, false, startHour * 60, endHour * 60, TimeWindow.ALL_DAYS);
+    }
+
+    private static List<RuleState.Change> transition(List<TimeWindow> windows, Set<String> states, Set<String> next,
+                                                     boolean whitelist, int hour) {
+        return Scheduler.transition(windows, states, next, whitelist, MIDNIGHT + hour * HOUR, UTC);
+    }
+
+    @Test
+    public void newWindowsAreAlwaysApplied() {
+        List<TimeWindow> windows = Arrays.asList(allow(1, 10001, WIFI, 8, 18), allow(2, 10002, WIFI, 8, 18));
+        Set<String> next = new HashSet<>();
+        List<RuleState.Change> changes = transition(windows, Collections.<String>emptySet(), next, true, 12);
+        assertEquals(new HashSet<>(Arrays.asList("1:1", "2:1")), next);
+        assertEquals(2, changes.size());
+        assertEquals(10001, changes.get(0).uid);
+        assertEquals(WIFI, changes.get(0).net);
+        assertTrue(changes.get(0).value);
+    }
+
+    @Test
+    public void onlyWindowsThatOpenedOrClosedChange() {
+        List<TimeWindow> windows = Arrays.asList(allow(1, 10001, WIFI, 8, 18), allow(2, 10002, WIFI, 8, 20));
+        Set<String> states = new HashSet<>(Arrays.asList("1:1", "2:1"));
+        Set<String> next = new HashSet<>();
+        // nothing happened since the last transition
+        assertTrue(transition(windows, states, next, true, 12).isEmpty());
+        assertEquals(states, next);
+
+        next = new HashSet<>();
+        List<RuleState.Change> changes = transition(windows, states, next, true, 19);
+        assertEquals(new HashSet<>(Arrays.asList("1:0", "2:1")), next);
+        assertEquals(1, changes.size());
+        assertEquals(10001, changes.get(0).uid);
+        assertFalse(changes.get(0).value);
+    }
+
+    @Test
+    public void valueFollowsWindowAndMode() {
+        List<TimeWindow> allowWindow = Collections.singletonList(allow(1, 10001, WIFI, 8, 18));
+        List<TimeWindow> blockWindow = Collections.singletonList(block(1, 10001, WIFI, 8, 18));
+        Set<String> none = Collections.emptySet();
+        // checked = allowed in whitelist mode, blocked in blacklist mode
+        assertTrue(transition(allowWindow, none, new HashSet<String>(), true, 12).get(0).value);
+        assertFalse(transition(allowWindow, none, new HashSet<String>(), true, 20).get(0).value);
+        assertFalse(transition(allowWindow, none, new HashSet<String>(), false, 12).get(0).value);
+        assertTrue(transition(allowWindow, none, new HashSet<String>(), false, 20).get(0).value);
+        assertFalse(transition(blockWindow, none, new HashSet<String>(), true, 12).get(0).value);
+        assertTrue(transition(blockWindow, none, new HashSet<String>(), true, 20).get(0).value);
+        assertTrue(transition(blockWindow, none, new HashSet<String>(), false, 12).get(0).value);
+    }
+
+    @Test
+    public void overlappingWindowsLastOneWins() {
+        // all day allowed, blocked over lunch
+        List<TimeWindow> windows = Arrays.asList(allow(1, 10001, WIFI, 0, 0), block(2, 10001, WIFI, 12, 13));
+        List<RuleState.Change> changes = transition(windows, Collections.<String>emptySet(), new HashSet<String>(),
+                true, 12);
+        assertEquals(1, changes.size());
+        assertFalse(changes.get(0).value);
+
+        // the other network class of the same app is separate
+        windows = Arrays.asList(allow(1, 10001, WIFI, 8, 18), block(2, 10001, DATA, 8, 18));
+        changes = transition(windows, Collections.<String>emptySet(), new HashSet<String>(), true, 12);
+        assertEquals(2, changes.size());
+        assertEquals(WIFI, changes.get(0).net);
+        assertTrue(changes.get(0).value);
+        assertEquals(DATA, changes.get(1).net);
+        assertFalse(changes.get(1).value);
+    }
+
+    @Test
+    public void overlapEndingLeavesTheUnchangedWindowAlone() {
+        List<TimeWindow> windows = Arrays.asList(allow(1, 10001, WIFI, 0, 0), block(2, 10001, WIFI, 12, 13));
+        Set<String> states = new HashSet<>(Arrays.asList("1:1", "2:1"));
+        Set<String> next = new HashSet<>();
+        // lunch is over: only the block window changed, and out of it the app is allowed again
+        List<RuleState.Change> changes = transition(windows, states, next, true, 13);
+        assertEquals(new HashSet<>(Arrays.asList("1:1", "2:0")), next);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).value);
+    }
+
+    @Test
+    public void nextTransitionIsTheEarliest() {
+        List<TimeWindow> windows = Arrays.asList(allow(1, 10001, WIFI, 8, 18), allow(2, 10002, WIFI, 9, 10),
+                allow(3, 10003, WIFI, 0, 0));
+        long time = MIDNIGHT + 8 * HOUR + 30 * 60000;
+        assertEquals(MIDNIGHT + 9 * HOUR, Scheduler.nextTransition(windows, 0, time, UTC));
+        // resume before any window
+        assertEquals(time + 60000, Scheduler.nextTransition(windows, time + 60000, time, UTC));
+        // a resume time in the past is ignored
+        assertEquals(MIDNIGHT + 9 * HOUR, Scheduler.nextTransition(windows, time - 1, time, UTC));
+        assertEquals(-1, Scheduler.nextTransition(Collections.singletonList(windows.get(2)), 0, time, UTC));
+        assertEquals(-1, Scheduler.nextTransition(Collections.<TimeWindow>emptyList(), 0, time, UTC));
+    }
+}
@@ -0,0 +1,161 @@
+package dev.ukanth.ufirewall.schedule;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Window membership and transition times, including midnight and DST.
+ */
+
+public class TimeWindowTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    private static final int MONDAY = 1 << (Calendar.MONDAY - 1);
+    private static final int SATURDAY = 1 << (Calendar.SATURDAY - 1);
+    private static final int SUNDAY = 1 << (Calendar.SUNDAY - 1);
+    private static final int WEEKDAYS = TimeWindow.ALL_DAYS & ~(SATURDAY | SUNDAY);
+
+    private static long at(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar cal = Calendar.getInstance(zone);
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute);
+        return cal.getTimeInMillis();
+    }
+
+    /* 2026-10-19 is a Monday */
+    private static long utc(int day, int hour, int minute) {
+        return at(UTC, 2026, 10, day, hour, minute);
+    }
+
+    private static TimeWindow window(int start, int end, int days) {
+        return new TimeWindow(1, 10001, 0, true, start, end, days);
+    }
+
+    @Test
+    public void sameDayWindow() {
+        TimeWindow window = window(8 * 60, 18 * 60, TimeWindow.ALL_DAYS);
+        assertFalse(window.isActive(utc(19, 7, 59), UTC));
+        assertTrue(window.isActive(utc(19, 8, 0), UTC));
+        assertTrue(window.isActive(utc(19, 17, 59), UTC));
+        assertFalse(window.isActive(utc(19, 18, 0), UTC));
+
+        assertEquals(utc(19, 8, 0), window.nextTransition(utc(19, 7, 0), UTC));
+        assertEquals(utc(19, 18, 0), window.nextTransition(utc(19, 8, 0), UTC));
+        assertEquals(utc(20, 8, 0), window.nextTransition(utc(19, 18, 0), UTC));
+    }
+
+    @Test
+    public void crossesMidnight() {
+        TimeWindow window = window(22 * 60, 6 * 60, MONDAY);
+        assertFalse(window.isActive(utc(19, 21, 59), UTC));
+        assertTrue(window.isActive(utc(19, 22, 0), UTC));
+        assertTrue(window.isActive(utc(19, 23, 59), UTC));
+        // Tuesday morning belongs to Monday's window
+        assertTrue(window.isActive(utc(20, 0, 0), UTC));
+        assertTrue(window.isActive(utc(20, 5, 59), UTC));
+        assertFalse(window.isActive(utc(20, 6, 0), UTC));
+        // but Monday morning is not, Sunday is not in the mask
+        assertFalse(window.isActive(utc(19, 1, 0), UTC));
+        assertFalse(window.isActive(utc(20, 22, 0), UTC));
+
+        assertEquals(utc(20, 6, 0), window.nextTransition(utc(19, 23, 0), UTC));
+        assertEquals(utc(26, 22, 0), window.nextTransition(utc(20, 6, 0), UTC));
+    }
+
+    @Test
+    public void dayMask() {
+        TimeWindow window = window(9 * 60, 17 * 60, WEEKDAYS);
+        // Saturday 24th and Sunday 25th
+        assertFalse(window.isActive(utc(24, 12, 0), UTC));
+        assertFalse(window.isActive(utc(25, 12, 0), UTC));
+        assertTrue(window.isActive(utc(23, 12, 0), UTC));
+        // from Friday evening straight to Monday morning
+        assertEquals(utc(26, 9, 0), window.nextTransition(utc(23, 17, 0), UTC));
+
+        // Saturday night into Sunday, the Sunday bit itself is not needed
+        TimeWindow weekend = window(23 * 60, 60, SATURDAY);
+        assertTrue(weekend.isActive(utc(25, 0, 30), UTC));
+        assertFalse(weekend.isActive(utc(25, 23, 30), UTC));
+
+        TimeWindow never = window(9 * 60, 17 * 60, 0);
+        assertFalse(never.isActive(utc(19, 12, 0), UTC));
+        assertEquals(-1, never.nextTransition(utc(19, 12, 0), UTC));
+    }
+
+    @Test
+    public void startEqualsEndIsTwentyFourHours() {
+        TimeWindow always = window(8 * 60, 8 * 60, TimeWindow.ALL_DAYS);
+        assertTrue(always.isActive(utc(19, 7, 59), UTC));
+        assertTrue(always.isActive(utc(19, 8, 0), UTC));
+        assertEquals(-1, always.nextTransition(utc(19, 12, 0), UTC));
+
+        TimeWindow monday = window(8 * 60, 8 * 60, MONDAY);
+        assertFalse(monday.isActive(utc(19, 7, 59), UTC));
+        assertTrue(monday.isActive(utc(19, 8, 0), UTC));
+        assertTrue(monday.isActive(utc(20, 7, 59), UTC));
+        assertFalse(monday.isActive(utc(20, 8, 0), UTC));
+        assertEquals(utc(19, 8, 0), monday.nextTransition(utc(19, 0, 0), UTC));
+        assertEquals(utc(20, 8, 0), monday.nextTransition(utc(19, 8, 0), UTC));
+    }
+
+    @Test
+    public void dstGap() {
+        // 2026-03-08 02:00 EST is 03:00 EDT, 02:00-02:59 never happens
+        TimeWindow window = window(2 * 60 + 30, 4 * 60, TimeWindow.ALL_DAYS);
+        long before = at(NEW_YORK, 2026, 3, 8, 1, 0);
+        long gapEnd = at(NEW_YORK, 2026, 3, 8, 3, 0);
+        assertEquals(1, (gapEnd - before) / 3600000);
+        assertFalse(window.isActive(gapEnd - 1, NEW_YORK));
+        assertTrue(window.isActive(gapEnd, NEW_YORK));
+        // the window opens where the gap ends, not 02:30 standard time
+        assertEquals(gapEnd, window.nextTransition(before, NEW_YORK));
+        assertEquals(at(NEW_YORK, 2026, 3, 8, 4, 0), window.nextTransition(gapEnd, NEW_YORK));
+
+        // entirely inside the gap: nothing happens that day
+        TimeWindow lost = window(2 * 60, 2 * 60 + 30, TimeWindow.ALL_DAYS);
+        assertFalse(lost.isActive(gapEnd, NEW_YORK));
+        assertEquals(at(NEW_YORK, 2026, 3, 9, 2, 0), lost.nextTransition(before, NEW_YORK));
+    }
+
+    /**
+     * Whatever the zone, the state never flips between now and the next transition and does
+     * flip at it
+     */
+    @Test
+    public void nextTransitionIsTheFirstFlip() {
+        TimeWindow[] windows = {window(22 * 60, 6 * 60, MONDAY | SATURDAY), window(2 * 60 + 30, 3 * 60, WEEKDAYS),
+                window(2 * 60 + 30, 4 * 60, TimeWindow.ALL_DAYS), window(60, 60, SUNDAY)};
+        long time = at(NEW_YORK, 2026, 3, 6, 0, 0);
+        for (TimeWindow window : windows) {
+            long end = at(NEW_YORK, 2026, 3, 12, 0, 0);
+            for (long now = time; now < end; ) {
+                long next = window.nextTransition(now, NEW_YORK);
+                boolean active = window.isActive(now, NEW_YORK);
+                for (long minute = now + 60000 - now % 60000; minute < next; minute += 60000) {
+                    assertEquals(window + " at " + minute, active, window.isActive(minute, NEW_YORK));
+                }
+                assertEquals(!active, window.isActive(next, NEW_YORK));
+                now = next;
+            }
+        }
+    }
+
+    @Test
+    public void encodeDecode() {
+        TimeWindow window = new TimeWindow(1571443200000L, 10123, 3, false, 1320, 360, WEEKDAYS);
+        TimeWindow decoded = TimeWindow.decode(window.encode());
+        assertEquals(window.encode(), decoded.encode());
+        assertEquals("22:00-06:00", decoded.toString());
+        assertNull(TimeWindow.decode("1:2:3"));
+        assertNull(TimeWindow.decode("a:1:0:1:0:60:127"));
+    }
+}
@@ -0,0 +1,155 @@
+package dev.ukanth.ufirewall.service;
+
+import android.content.Intent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dev.ukanth.ufirewall.R;
+import io.reactivex.disposables.Disposable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Cancelling a RootCommand and letting it time out, without a root shell: the pipeline's part
+ * is played by RootShellService.prepare() and complete().
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class RootFutureTest {
+
+    /* exit codes the callback was called with */
+    private final List<Integer> callbacks = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<RootResult> results = Collections.synchronizedList(new ArrayList<RootResult>());
+
+    private RootCommand command() {
+        RootCommand command = new RootCommand()
+                .setFailureToast(R.string.error_apply)
+                .setCallback(new RootCommand.Callback() {
+                    @Override
+                    public void cbFunc(RootCommand state) {
+                        callbacks.add(state.exitCode);
+                    }
+                });
+        command.getFuture().setListener(new RootFuture.Listener() {
+            @Override
+            public void onResult(RootResult result) {
+                results.add(result);
+            }
+        });
+        return command;
+    }
+
+    private static boolean toasted() {
+        for (Intent intent : shadowOf(RuntimeEnvironment.application).getBroadcastIntents()) {
+            if ("TOAST".equals(intent.getAction())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The future completes on cancel(); the pipeline completes the command later with the same
+     * code, and neither shows the failure toast
+     */
+    @Test
+    public void cancelCompletesTheFutureRightAway() throws Exception {
+        RootCommand command = command();
+        RootFuture future = command.getFuture();
+        RootShellService.prepare(RuntimeEnvironment.application, Collections.singletonList("true"), command);
+
+        assertTrue(future.cancel(true));
+        assertTrue(future.isDone());
+        assertTrue(future.isCancelled());
+        assertEquals(RootShellService.EXIT_CANCELLED, future.get(0, TimeUnit.MILLISECONDS).exitCode);
+        assertEquals(RootShellService.EXIT_CANCELLED, command.cancelCode);
+        // the first code wins
+        assertFalse(future.cancel(true));
+        command.cancel(RootShellService.EXIT_TIMEOUT);
+        assertEquals(RootShellService.EXIT_CANCELLED, command.cancelCode);
+        assertTrue(callbacks.isEmpty());
+
+        RootShellService.complete(command, command.cancelCode);
+        assertEquals(Collections.singletonList(RootShellService.EXIT_CANCELLED), callbacks);
+        assertEquals(1, results.size());
+        assertEquals(RootShellService.EXIT_CANCELLED, future.get().exitCode);
+        assertFalse(toasted());
+    }
+
+    @Test
+    public void cancelAfterCompletionChangesNothing() throws Exception {
+        RootCommand command = command();
+        RootShellService.prepare(RuntimeEnvironment.application, Collections.singletonList("true"), command);
+        RootShellService.complete(command, 0);
+
+        assertFalse(command.getFuture().cancel(true));
+        command.cancel(RootShellService.EXIT_CANCELLED);
+        assertEquals(0, command.cancelCode);
+        assertFalse(command.getFuture().isCancelled());
+        assertTrue(command.getFuture().get().isSuccess());
+        assertEquals(Collections.singletonList(0), callbacks);
+        assertEquals(1, results.size());
+    }
+
+    /**
+     * A command still in flight at its deadline completes with EXIT_TIMEOUT
+     */
+    @Test
+    public void deadlineCompletesWithTimeout() throws Exception {
+        RootCommand command = command().setTimeout(50);
+        RootFuture future = command.getFuture();
+        RootShellService.prepare(RuntimeEnvironment.application, Collections.singletonList("true"), command);
+
+        RootResult result = future.get(30, TimeUnit.SECONDS);
+        assertEquals(RootShellService.EXIT_TIMEOUT, result.exitCode);
+        assertTrue(result.isCancelled());
+        assertTrue(future.isCancelled());
+        assertEquals(RootShellService.EXIT_TIMEOUT, command.cancelCode);
+
+        RootShellService.complete(command, command.cancelCode);
+        assertEquals(Collections.singletonList(RootShellService.EXIT_TIMEOUT), callbacks);
+        assertEquals(1, results.size());
+        assertFalse(toasted());
+    }
+
+    @Test
+    public void completionStopsTheDeadline() throws Exception {
+        RootCommand command = command().setTimeout(60000);
+        RootShellService.prepare(RuntimeEnvironment.application, Collections.singletonList("true"), command);
+        assertNotNull(command.deadline);
+
+        RootShellService.complete(command, 0);
+        assertNull(command.deadline);
+        assertTrue(command.getFuture().get().isSuccess());
+        assertEquals(0, command.cancelCode);
+    }
+
+    /**
+     * Disposing a RootCommand.single() cancels the command it started
+     */
+    @Test
+    public void disposingTheSingleCancels() throws Exception {
+        final RootCommand[] started = new RootCommand[1];
+        Disposable subscription = RootCommand.single(cmd -> started[0] = cmd).subscribe();
+        assertFalse(started[0].getFuture().isDone());
+
+        subscription.dispose();
+        assertEquals(RootShellService.EXIT_CANCELLED, started[0].cancelCode);
+        assertEquals(RootShellService.EXIT_CANCELLED, started[0].getFuture().get(0, TimeUnit.MILLISECONDS).exitCode);
+    }
+}
@@ -0,0 +1,137 @@
+package dev.ukanth.ufirewall.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ordering and merging of a pipeline's wait queue, without a root shell: submissions are only
+ * queued, and the leader is completed the way the pipeline would after running it.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class RootShellQueueTest {
+
+    private final RootShellService.Pipeline pipeline = new RootShellService.Pipeline("test");
+
+    /* "name:exitCode" per callback, with a trailing * for superseded submissions */
+    private final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+
+    private RootCommand submission(final String name, RootCommand.Priority priority, int scope, String... script) {
+        RootCommand command = new RootCommand()
+                .setPriority(priority)
+                .setScope(scope)
+                .setCallback(new RootCommand.Callback() {
+                    @Override
+                    public void cbFunc(RootCommand state) {
+                        completed.add(name + ":" + state.exitCode + (state.superseded ? "*" : ""));
+                    }
+                });
+        command.setCommmands(Arrays.asList(script));
+        return command;
+    }
+
+    private List<RootCommand> queue() {
+        synchronized (pipeline.waitQueue) {
+            return new ArrayList<>(pipeline.waitQueue);
+        }
+    }
+
+    /**
+     * More urgent classes go first, submissions of one class keep their order
+     */
+    @Test
+    public void queueOrdersByPriority() {
+        RootCommand diag1 = submission("diag1", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_OTHER, "d1");
+        RootCommand user1 = submission("user1", RootCommand.Priority.INTERACTIVE, RootCommand.SCOPE_OTHER, "u1");
+        RootCommand conn = submission("conn", RootCommand.Priority.CONNECTIVITY, RootCommand.SCOPE_OTHER, "c");
+        RootCommand user2 = submission("user2", RootCommand.Priority.INTERACTIVE, RootCommand.SCOPE_OTHER, "u2");
+        RootCommand diag2 = submission("diag2", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_OTHER, "d2");
+        for (RootCommand command : Arrays.asList(diag1, user1, conn, user2, diag2)) {
+            assertTrue(pipeline.enqueue(command));
+        }
+        assertEquals(Arrays.asList(user1, user2, conn, diag1, diag2), queue());
+    }
+
+    /**
+     * An identical script rides along with the queued one, which moves up to the more urgent
+     * class; both callbacks run, the leader's first
+     */
+    @Test
+    public void duplicateMergesIntoQueued() {
+        RootCommand conn = submission("conn", RootCommand.Priority.CONNECTIVITY, RootCommand.SCOPE_OTHER, "c");
+        RootCommand queued = submission("queued", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_OTHER, "x", "y");
+        RootCommand duplicate = submission("duplicate", RootCommand.Priority.INTERACTIVE, RootCommand.SCOPE_OTHER, "x", "y");
+        assertTrue(pipeline.enqueue(conn));
+        assertTrue(pipeline.enqueue(queued));
+        assertFalse(pipeline.enqueue(duplicate));
+
+        assertEquals(Arrays.asList(queued, conn), queue());
+        assertSame(RootCommand.Priority.INTERACTIVE, queued.getPriority());
+
+        RootShellService.complete(queued, 0);
+        assertEquals(Arrays.asList("queued:0", "duplicate:0"), completed);
+        assertEquals(Arrays.asList("x", "y"), duplicate.getCommmands());
+    }
+
+    /**
+     * A submission that wants the output doesn't ride along with one that doesn't collect it,
+     * nor with a different scope or a cancelled one
+     */
+    @Test
+    public void mergeNeedsTheSameSubmission() {
+        RootCommand quiet = submission("quiet", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_OTHER, "x");
+        RootCommand logging = submission("logging", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_OTHER, "x")
+                .setLogging(true);
+        RootCommand partial = submission("partial", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_PARTIAL, "x");
+        assertTrue(pipeline.enqueue(quiet));
+        assertTrue(pipeline.enqueue(logging));
+        assertTrue(pipeline.enqueue(partial));
+        // a second quiet one does ride along
+        assertFalse(pipeline.enqueue(submission("quiet2", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_OTHER, "x")));
+
+        partial.cancel(RootShellService.EXIT_CANCELLED);
+        assertTrue(pipeline.enqueue(submission("partial2", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_PARTIAL, "x")));
+        assertEquals(4, queue().size());
+    }
+
+    /**
+     * A full apply takes over the queued partial applies, inheriting the most urgent class of
+     * them; they complete after it, marked as superseded
+     */
+    @Test
+    public void fullApplySupersedesPartials() {
+        RootCommand other = submission("other", RootCommand.Priority.INTERACTIVE, RootCommand.SCOPE_OTHER, "o");
+        RootCommand partial1 = submission("partial1", RootCommand.Priority.CONNECTIVITY, RootCommand.SCOPE_PARTIAL, "p1");
+        RootCommand partial2 = submission("partial2", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_PARTIAL, "p2");
+        RootCommand cancelled = submission("cancelled", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_PARTIAL, "p3");
+        RootCommand full = submission("full", RootCommand.Priority.DIAGNOSTICS, RootCommand.SCOPE_FULL, "f");
+        for (RootCommand command : Arrays.asList(other, partial1, partial2, cancelled)) {
+            assertTrue(pipeline.enqueue(command));
+        }
+        cancelled.cancel(RootShellService.EXIT_CANCELLED);
+        assertTrue(pipeline.enqueue(full));
+
+        assertEquals(Arrays.asList(other, full, cancelled), queue());
+        assertSame(RootCommand.Priority.CONNECTIVITY, full.getPriority());
+        assertTrue(partial1.superseded);
+        assertTrue(partial2.superseded);
+        assertFalse(full.superseded);
+        assertFalse(cancelled.superseded);
+
+        RootShellService.complete(full, 0);
+        assertEquals(Arrays.asList("full:0", "partial1:0*", "partial2:0*"), completed);
+    }
+}
@@ -0,0 +1,88 @@
+package dev.ukanth.ufirewall.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counters, gauges and histogram buckets of the metrics registry.
+ */
+
+public class MetricsTest {
+
+    private static final long MS = 1000000;
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    @Test
+    public void sameNameSameInstrument() {
+        assertSame(Metrics.counter("test.same"), Metrics.counter("test.same"));
+        assertSame(Metrics.histogram("test.same"), Metrics.histogram("test.same"));
+    }
+
+    @Test
+    public void percentilesUseBucketBounds() {
+        Metrics.Histogram histogram = Metrics.histogram("test.buckets");
+        histogram.record(MS / 2);
+        histogram.record(3 * MS);
+        histogram.record(3 * MS);
+        histogram.record(15000 * MS);
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.percentile(25));
+        assertEquals(5, histogram.percentile(50));
+        // above the last bound the maximum is reported
+        assertEquals(15000, histogram.percentile(100));
+        assertEquals(-1, Metrics.histogram("test.empty").percentile(50));
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        Metrics.setEnabled(false);
+        Metrics.Counter counter = Metrics.counter("test.disabled");
+        Metrics.Histogram histogram = Metrics.histogram("test.disabled");
+        counter.inc();
+        counter.add(5);
+        Metrics.gauge("test.disabled").set(7);
+        assertEquals(0, Metrics.start());
+        histogram.stop(Metrics.start());
+        histogram.record(MS);
+        assertEquals(0, counter.get());
+        assertEquals(0, Metrics.gauge("test.disabled").get());
+        assertEquals(0, histogram.getCount());
+        assertEquals("Metrics: disabled\n", Metrics.getStats());
+    }
+
+    @Test
+    public void concurrentCounts() throws InterruptedException {
+        final Metrics.Counter counter = Metrics.counter("test.concurrent");
+        final Metrics.Histogram histogram = Metrics.histogram("test.concurrent");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    counter.inc();
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, counter.get());
+        assertEquals(40000, histogram.getCount());
+        assertTrue(Metrics.getStats().contains("test.concurrent: 40000 samples"));
+    }
+}
@@ -0,0 +1,46 @@
+package dev.ukanth.ufirewall.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drift detection of the afwall chains, on "iptables -S" dumps.
+ */
+
+public class RulesFingerprintTest {
+
+    private static final String APPLIED = "-P INPUT ACCEPT\n"
+            + "-P OUTPUT ACCEPT\n"
+            + "-N afwall\n"
+            + "-N afwall-wifi\n"
+            + "-N oem_out\n"
+            + "-A OUTPUT -j afwall\n"
+            + "-A OUTPUT -j oem_out\n"
+            + "-A afwall -o wlan+ -j afwall-wifi\n"
+            + "-A afwall-wifi -m owner --uid-owner 10123 -j RETURN\n";
+
+    @Test
+    public void rulesBelowTheJumpDoNotMatter() {
+        String later = APPLIED + "-A OUTPUT -p tcp --dport 25 -j DROP\n-A oem_out -j ACCEPT\n";
+        assertEquals(RulesFingerprint.kernelHash(APPLIED), RulesFingerprint.kernelHash(later));
+    }
+
+    @Test
+    public void ruleAboveTheJumpChangesTheHash() {
+        String bypassed = APPLIED.replace("-A OUTPUT -j afwall\n", "-A OUTPUT -j ACCEPT\n-A OUTPUT -j afwall\n");
+        assertNotEquals(RulesFingerprint.kernelHash(APPLIED), RulesFingerprint.kernelHash(bypassed));
+        assertTrue(RulesFingerprint.chainLines(bypassed, false).contains("-A OUTPUT -j ACCEPT"));
+    }
+
+    @Test
+    public void familiesAreSeparate() {
+        String dump = APPLIED + "--ipv6--\n-N afwall\n-A OUTPUT -j afwall\n";
+        assertEquals(Arrays.asList("-N afwall", "-A OUTPUT -j afwall"), RulesFingerprint.chainLines(dump, true));
+        assertEquals(RulesFingerprint.chainLines(APPLIED, false), RulesFingerprint.chainLines(dump, false));
+    }
+}
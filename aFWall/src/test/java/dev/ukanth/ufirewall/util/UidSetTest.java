@@ -0,0 +1,138 @@
+package dev.ukanth.ufirewall.util;
+
+import com.raizlabs.android.dbflow.config.FlowConfig;
+import com.raizlabs.android.dbflow.config.FlowManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.ukanth.ufirewall.log.LogPreference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The uid set behind the per-packet G.canShow() check, and that check against the
+ * LogPreference table.  Runs under Robolectric for DBFlow.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class UidSetTest {
+
+    private static final int TOGGLES = 200;
+
+    @Before
+    public void setUp() throws Exception {
+        FlowManager.init(new FlowConfig.Builder(RuntimeEnvironment.application).build());
+        // the policy is cached for the life of the process, start each test from the database
+        Field policy = G.class.getDeclaredField("logNotificationPolicy");
+        policy.setAccessible(true);
+        policy.set(null, null);
+    }
+
+    @After
+    public void tearDown() {
+        FlowManager.destroy();
+    }
+
+    @Test
+    public void addAndRemove() {
+        UidSet set = UidSet.EMPTY.with(10050).with(0).with(10010).with(-1);
+        assertEquals(4, set.size());
+        assertTrue(set.contains(-1));
+        assertTrue(set.contains(10010));
+        assertFalse(set.contains(10011));
+
+        UidSet removed = set.without(10010);
+        assertFalse(removed.contains(10010));
+        assertTrue(removed.contains(10050));
+        // the old set is untouched
+        assertTrue(set.contains(10010));
+    }
+
+    @Test
+    public void noChangeKeepsTheSet() {
+        UidSet set = UidSet.EMPTY.with(10001);
+        assertSame(set, set.with(10001));
+        assertSame(set, set.without(10002));
+        assertSame(UidSet.EMPTY, UidSet.EMPTY.without(10001));
+    }
+
+    /**
+     * Rows stored before the first packet are loaded once, updates are visible to the next
+     * packet without waiting for the database write
+     */
+    @Test
+    public void canShowFollowsUpdates() {
+        LogPreference stored = new LogPreference();
+        stored.setUid(10001);
+        stored.setDisable(true);
+        stored.save();
+
+        assertFalse(G.canShow(10001));
+        assertTrue(G.canShow(10002));
+
+        G.updateLogNotification(10002, true);
+        assertFalse(G.canShow(10002));
+        G.updateLogNotification(10001, false);
+        assertTrue(G.canShow(10001));
+        awaitStored(10002, true);
+        awaitStored(10001, false);
+    }
+
+    /**
+     * Packets of other uids keep getting the right answer while the settings screen toggles
+     */
+    @Test
+    public void canShowWhileToggling() throws InterruptedException {
+        G.updateLogNotification(10003, true);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger wrong = new AtomicInteger();
+        AtomicInteger checks = new AtomicInteger();
+        Thread packets = new Thread(() -> {
+            while (running.get()) {
+                if (G.canShow(10003) || !G.canShow(10004)) {
+                    wrong.incrementAndGet();
+                }
+                checks.incrementAndGet();
+            }
+        });
+        packets.start();
+        for (int uid = 20000; uid < 20000 + TOGGLES; uid++) {
+            G.updateLogNotification(uid, true);
+            G.updateLogNotification(uid, uid % 2 == 0);
+        }
+        running.set(false);
+        packets.join();
+
+        assertEquals(0, wrong.get());
+        assertTrue(checks.get() > 0);
+        for (int uid = 20000; uid < 20000 + TOGGLES; uid++) {
+            assertEquals(uid % 2 != 0, G.canShow(uid));
+        }
+        awaitStored(20000 + TOGGLES - 1, false);
+    }
+
+    /**
+     * The database writes are asynchronous and run in order
+     */
+    private static void awaitStored(int uid, boolean disable) {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (G.getLogPreference(uid).isDisable() != disable) {
+            assertTrue("uid " + uid + " not stored", System.currentTimeMillis() < deadline);
+            Thread.yield();
+        }
+    }
+}
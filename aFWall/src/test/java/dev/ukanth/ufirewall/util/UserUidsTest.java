@@ -0,0 +1,83 @@
+package dev.ukanth.ufirewall.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Owner match ranges: collapsing uids and taking single uids out of a range again.
+ */
+
+public class UserUidsTest {
+
+    private static final String CHAIN = "afwall-wifi-wan";
+    private static final String ACTION = " -j RETURN";
+
+    private static String format(List<int[]> ranges) {
+        StringBuilder result = new StringBuilder();
+        for (int[] range : ranges) {
+            result.append(range[0]).append('-').append(range[1]).append(' ');
+        }
+        return result.toString().trim();
+    }
+
+    @Test
+    public void consecutiveUidsBecomeOneRange() {
+        assertEquals(Arrays.asList("1000", "10001:10003", "10005"),
+                UserUids.toRanges(Arrays.asList(10003, 10001, 1000, 10002, 10005, -11)));
+    }
+
+    @Test
+    public void ownerRangesReadIptablesList() {
+        List<String> lines = Arrays.asList(
+                "-N " + CHAIN,
+                "-A " + CHAIN + " -m owner --uid-owner 10001-10003 -j RETURN",
+                "-A " + CHAIN + " -m owner --uid-owner 10005 -j RETURN",
+                "-A " + CHAIN + " -p udp -m owner --uid-owner 0 -m udp --dport 53 -j RETURN",
+                "-A afwall-3g-home -m owner --uid-owner 10007 -j RETURN",
+                "-A " + CHAIN + " -m owner --uid-owner 0-999999999 -j afwall-reject");
+        assertEquals("10001-10003 10005-10005", format(UserUids.ownerRanges(lines, CHAIN, ACTION)));
+    }
+
+    @Test
+    public void removingFromTheMiddleSplitsTheRange() {
+        List<int[]> ranges = new ArrayList<>(Arrays.asList(new int[]{10001, 10005}));
+        assertEquals(Arrays.asList(
+                "-D " + CHAIN + " -m owner --uid-owner 10001:10005 -j RETURN",
+                "-I " + CHAIN + " 1 -m owner --uid-owner 10001:10002 -j RETURN",
+                "-I " + CHAIN + " 1 -m owner --uid-owner 10004:10005 -j RETURN"),
+                UserUids.removeFromRanges(ranges, CHAIN, ACTION, 10003));
+        assertEquals("10001-10002 10004-10005", format(ranges));
+
+        // the second edit of a batch works on the split ranges
+        assertEquals(Arrays.asList(
+                "-D " + CHAIN + " -m owner --uid-owner 10004:10005 -j RETURN",
+                "-I " + CHAIN + " 1 -m owner --uid-owner 10005 -j RETURN"),
+                UserUids.removeFromRanges(ranges, CHAIN, ACTION, 10004));
+        assertEquals("10001-10002 10005-10005", format(ranges));
+    }
+
+    @Test
+    public void removingAnEndLeavesOneRange() {
+        List<int[]> ranges = new ArrayList<>(Arrays.asList(new int[]{10001, 10002}));
+        assertEquals(Arrays.asList(
+                "-D " + CHAIN + " -m owner --uid-owner 10001:10002 -j RETURN",
+                "-I " + CHAIN + " 1 -m owner --uid-owner 10002 -j RETURN"),
+                UserUids.removeFromRanges(ranges, CHAIN, ACTION, 10001));
+    }
+
+    @Test
+    public void singleRuleIsDeleted() {
+        List<int[]> ranges = new ArrayList<>(Arrays.asList(new int[]{10005, 10005}));
+        assertEquals(Arrays.asList("-D " + CHAIN + " -m owner --uid-owner 10005 -j RETURN"),
+                UserUids.removeFromRanges(ranges, CHAIN, ACTION, 10005));
+        assertEquals(0, ranges.size());
+        // not recorded at all, the delete fails and a full apply follows
+        assertEquals(Arrays.asList("-D " + CHAIN + " -m owner --uid-owner 10009 -j RETURN"),
+                UserUids.removeFromRanges(ranges, CHAIN, ACTION, 10009));
+    }
+}